@@ -30,10 +30,10 @@ public class BroadcastExperiment extends SimulationTask {
 		SimulationExecutor executor = new SimulationExecutor();
 		
 		executor.addTask(new BroadcastExperiment("broadcast-1", 6198910678692541341l));
-//		executor.addTask(new BroadcastExperiment("broadcast-2", 5646441053220106016l));
-//		executor.addTask(new BroadcastExperiment("broadcast-3", -5705302823151233610l));
-//		executor.addTask(new BroadcastExperiment("broadcast-4", 8289672009575825404l));
-//		executor.addTask(new BroadcastExperiment("broadcast-5", -4637549055860880177l));
+		executor.addTask(new BroadcastExperiment("broadcast-2", 5646441053220106016l));
+		executor.addTask(new BroadcastExperiment("broadcast-3", -5705302823151233610l));
+		executor.addTask(new BroadcastExperiment("broadcast-4", 8289672009575825404l));
+		executor.addTask(new BroadcastExperiment("broadcast-5", -4637549055860880177l));
 		
 		completedTasks = executor.execute();
 		
@@ -0,0 +1,132 @@
+package edu.uwo.csd.dcsim.projects.distributed;
+
+import java.util.ArrayList;
+
+import edu.uwo.csd.dcsim.core.SimulationEventBroadcastGroup;
+import edu.uwo.csd.dcsim.core.SimulationEventListener;
+
+/**
+ * Partitions hosts into a hierarchy of broadcast groups, so that messages are sent to a small group of hosts first
+ * and only escalated to a larger (parent) group if needed. Hosts are identified by their index (order of creation).
+ * At level i, group g holds hosts [g * groupSizes[i], (g + 1) * groupSizes[i]); the top level, groupSizes.length,
+ * is a single group holding every host. With no group sizes, all hosts share one group (no partitioning).
+ *
+ * @author Michael Tighe
+ *
+ */
+public class BroadcastGroups {
+
+	private int[] groupSizes;
+	private ArrayList<ArrayList<SimulationEventBroadcastGroup>> levels = new ArrayList<ArrayList<SimulationEventBroadcastGroup>>();
+	private ArrayList<SimulationEventListener> observers = new ArrayList<SimulationEventListener>();
+
+	/**
+	 * @param groupSizes number of hosts per group at each level below the top, in increasing order
+	 */
+	public BroadcastGroups(int[] groupSizes) {
+		for (int i = 0; i < groupSizes.length; ++i) {
+			if (groupSizes[i] <= 0 || (i > 0 && groupSizes[i] <= groupSizes[i - 1]))
+				throw new IllegalArgumentException("Broadcast group sizes must be positive and increasing");
+		}
+
+		this.groupSizes = groupSizes.clone();
+
+		for (int i = 0; i <= groupSizes.length; ++i) {
+			levels.add(new ArrayList<SimulationEventBroadcastGroup>());
+		}
+		levels.get(groupSizes.length).add(new SimulationEventBroadcastGroup());
+	}
+
+	/**
+	 * Add a host's manager to its group at every level.
+	 * @param hostIndex
+	 * @param member
+	 */
+	public void addHost(int hostIndex, SimulationEventListener member) {
+		for (int level = 0; level < getLevelCount(); ++level) {
+			getGroup(hostIndex, level).addMember(member);
+		}
+	}
+
+	/**
+	 * Add a member that is not a host (e.g., the data centre manager) to the top group and to every group of the
+	 * lowest level, including those created later, so that it receives the messages hosts send to their own
+	 * group (e.g., power state changes).
+	 * @param member
+	 */
+	public void addObserver(SimulationEventListener member) {
+		observers.add(member);
+
+		getTopGroup().addMember(member);
+
+		if (groupSizes.length > 0) {
+			for (SimulationEventBroadcastGroup group : levels.get(0)) {
+				group.addMember(member);
+			}
+		}
+	}
+
+	/**
+	 * Get the group of the given host at the given level, creating it if necessary.
+	 * @param hostIndex
+	 * @param level
+	 * @return
+	 */
+	public SimulationEventBroadcastGroup getGroup(int hostIndex, int level) {
+		if (level >= groupSizes.length) return getTopGroup();
+
+		ArrayList<SimulationEventBroadcastGroup> groups = levels.get(level);
+		int index = hostIndex / groupSizes[level];
+		while (groups.size() <= index) {
+			SimulationEventBroadcastGroup group = new SimulationEventBroadcastGroup();
+			if (level == 0) {
+				for (SimulationEventListener observer : observers) group.addMember(observer);
+			}
+			groups.add(group);
+		}
+
+		return groups.get(index);
+	}
+
+	/**
+	 * Get the index of the given host's group at the given level (0 at the top level).
+	 * @param hostIndex
+	 * @param level
+	 * @return
+	 */
+	public int getGroupIndex(int hostIndex, int level) {
+		if (level >= groupSizes.length) return 0;
+		return hostIndex / groupSizes[level];
+	}
+
+	public SimulationEventBroadcastGroup getTopGroup() {
+		return levels.get(groupSizes.length).get(0);
+	}
+
+	/**
+	 * Get the number of levels, including the top level.
+	 * @return
+	 */
+	public int getLevelCount() {
+		return groupSizes.length + 1;
+	}
+
+	/**
+	 * Get the number of groups at the lowest level.
+	 * @return
+	 */
+	public int getPartitionCount() {
+		return levels.get(0).size();
+	}
+
+	/**
+	 * Get the index of the first host of the given group of the lowest level.
+	 * @param partition
+	 * @return
+	 */
+	public int getPartitionHostIndex(int partition) {
+		if (groupSizes.length == 0) return 0;
+		return partition * groupSizes[0];
+	}
+
+}
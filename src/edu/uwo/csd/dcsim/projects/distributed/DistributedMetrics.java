@@ -1,6 +1,7 @@
 package edu.uwo.csd.dcsim.projects.distributed;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -23,16 +24,35 @@ public class DistributedMetrics extends MetricCollection {
 	public long msgBasic = 0;
 	public long msgSingle = 0;
 	
+	public long requestEscalations = 0; //resource requests re-sent to a parent broadcast group
+	public long earlyCloses = 0; //resource requests closed before the end of the offer window
+	public long shutdownDeferrals = 0; //shutdowns not attempted since a higher ranked host should shut down (ranked election)
+	public long shutdownBackoffs = 0; //shutdown announcements withdrawn for a simultaneous, higher ranked one (ranked election)
+	private long[] receivedResourceRequestByLevel = new long[1]; //indexed by broadcast group level (see BroadcastGroups)
+	
 	public long hostPowerOn = 0;
 	public long servicesReceived = 0;
 	public long servicesPlaced = 0;
 	public long servicePlacementsFailed = 0;
+	public long placementBatches = 0; //resource requests sent for several VMs at once
 	
 	public DistributedMetrics(Simulation simulation) {
 		super(simulation);
 		// TODO Auto-generated constructor stub
 	}
 
+	public void addReceivedResourceRequest(int level) {
+		if (level >= receivedResourceRequestByLevel.length)
+			receivedResourceRequestByLevel = Arrays.copyOf(receivedResourceRequestByLevel, level + 1);
+		
+		receivedResourceRequestByLevel[level]++;
+	}
+	
+	public long getReceivedResourceRequests(int level) {
+		if (level >= receivedResourceRequestByLevel.length) return 0;
+		return receivedResourceRequestByLevel[level];
+	}
+	
 	@Override
 	public void completeSimulation() {
 		// TODO Auto-generated method stub
@@ -51,6 +71,13 @@ public class DistributedMetrics extends MetricCollection {
 		out.info("   hostPowerOn: " + hostPowerOn);
 		out.info("Messaging");
 		out.info("   receivedResourceRequest: " + receivedResourceRequest);
+		for (int level = 0; level < receivedResourceRequestByLevel.length; ++level) {
+			out.info("      level " + level + ": " + receivedResourceRequestByLevel[level]);
+		}
+		out.info("   requestEscalations: " + requestEscalations);
+		out.info("   earlyCloses: " + earlyCloses);
+		out.info("   shutdownDeferrals: " + shutdownDeferrals);
+		out.info("   shutdownBackoffs: " + shutdownBackoffs);
 		out.info("   receivedPowerStateMessage: " + receivedPowerStateMessage);
 		out.info("   msgResource: " + msgResource);
 		out.info("   msgBasic: " + msgBasic);
@@ -59,6 +86,7 @@ public class DistributedMetrics extends MetricCollection {
 		out.info("   servicesReceived: " + servicesReceived);
 		out.info("   servicesPlaced: " + servicesPlaced);
 		out.info("   servicePlacementsFailed: " + servicePlacementsFailed);
+		out.info("   placementBatches: " + placementBatches);
 		
 	}
 
@@ -74,6 +102,13 @@ public class DistributedMetrics extends MetricCollection {
 		metrics.add(new Tuple<String, Object>("hostPowerOn", hostPowerOn));
 		
 		metrics.add(new Tuple<String, Object>("receivedResourceRequest", receivedResourceRequest));
+		for (int level = 0; level < receivedResourceRequestByLevel.length; ++level) {
+			metrics.add(new Tuple<String, Object>("receivedResourceRequestL" + level, receivedResourceRequestByLevel[level]));
+		}
+		metrics.add(new Tuple<String, Object>("requestEscalations", requestEscalations));
+		metrics.add(new Tuple<String, Object>("earlyCloses", earlyCloses));
+		metrics.add(new Tuple<String, Object>("shutdownDeferrals", shutdownDeferrals));
+		metrics.add(new Tuple<String, Object>("shutdownBackoffs", shutdownBackoffs));
 		metrics.add(new Tuple<String, Object>("receivedPowerStateMessage", receivedPowerStateMessage));
 		metrics.add(new Tuple<String, Object>("msgResource", msgResource));
 		metrics.add(new Tuple<String, Object>("msgBasic", msgBasic));
@@ -82,6 +117,7 @@ public class DistributedMetrics extends MetricCollection {
 		metrics.add(new Tuple<String, Object>("servicesReceived", servicesReceived));
 		metrics.add(new Tuple<String, Object>("servicesPlaced", servicesPlaced));
 		metrics.add(new Tuple<String, Object>("servicePlacementsFailed", servicePlacementsFailed));
+		metrics.add(new Tuple<String, Object>("placementBatches", placementBatches));
 
 		return metrics;
 	}
@@ -16,7 +16,6 @@ import edu.uwo.csd.dcsim.application.workload.TraceWorkload;
 import edu.uwo.csd.dcsim.common.SimTime;
 import edu.uwo.csd.dcsim.common.Tuple;
 import edu.uwo.csd.dcsim.core.Simulation;
-import edu.uwo.csd.dcsim.core.SimulationEventBroadcastGroup;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.host.HostModels;
 import edu.uwo.csd.dcsim.host.resourcemanager.DefaultResourceManagerFactory;
@@ -32,6 +31,18 @@ public class DistributedTestEnvironment {
 
 	public static final int N_HOSTS = 200; // 2000
 	
+	//hosts per broadcast group at each level below the one holding all hosts, e.g. {20, 200}; empty for a single group (see BroadcastGroups)
+	public static int[] BROADCAST_GROUP_SIZES = {};
+	
+	//close a resource request without waiting out the offer window once this many offers arrive (0 to always wait)
+	public static int OFFER_QUORUM = 0;
+	//close a stress eviction or placement as soon as an offer can take the first (preferred) VM
+	public static boolean CLOSE_ON_FIT = false;
+	//place simultaneous VM requests with a single resource request, packing them onto the offers received
+	public static boolean AGGREGATE_PLACEMENTS = false;
+	//elect the shutdown host locally from a ranking of under-utilized hosts, rather than by collecting claims
+	public static boolean RANKED_SHUTDOWN_ELECTION = false;
+	
 	public static final int CPU_OVERHEAD = 200;
 	public static final int[] VM_SIZES = {1500, 2500, 2500};
 	public static final int[] VM_CORES = {1, 1, 2};
@@ -80,9 +91,11 @@ public class DistributedTestEnvironment {
 	private static void createHosts(Simulation simulation, DataCentre dataCentre, AutonomicManager dcAM, double lower, double upper, double target) {
 		
 		HostPoolManagerBroadcast hostPool = dcAM.getCapability(HostPoolManagerBroadcast.class);
-		SimulationEventBroadcastGroup broadcastingGroup = new SimulationEventBroadcastGroup();
-		broadcastingGroup.addMember(dcAM);
-		hostPool.setBroadcastingGroup(broadcastingGroup);
+		BroadcastGroups broadcastGroups = new BroadcastGroups(BROADCAST_GROUP_SIZES);
+		hostPool.setBroadcastGroups(broadcastGroups);
+		
+		//the DC manager receives every power state message, and requests sent to all hosts
+		broadcastGroups.addObserver(dcAM);
 		
 		for (int i = 0; i < N_HOSTS; ++i) {
 			Host host;
@@ -104,14 +117,14 @@ public class DistributedTestEnvironment {
 			//power hosts on by default TODO change
 			host.setState(Host.HostState.ON);
 
-			AutonomicManager hostAM = new AutonomicManager(simulation, new HostManager(host), new HostManagerBroadcast(host, broadcastingGroup));
+			AutonomicManager hostAM = new AutonomicManager(simulation, new HostManager(host), new HostManagerBroadcast(host, broadcastGroups, i));
 			hostAM.installPolicy(new HostOperationsPolicy());
 			
 			long monitorStart = simulation.getRandom().nextInt(10) * SimTime.seconds(30); //generate a random start time up to 5 minutes for monitors, with a resolution of 30 seconds for event update performance
 //			long monitorStart = simulation.getRandom().nextInt((int)(SimTime.minutes(5)));
 			hostAM.installPolicy(new HostMonitoringPolicyBroadcast(lower, upper, target), SimTime.minutes(5), monitorStart);
 
-			broadcastingGroup.addMember(hostAM);
+			broadcastGroups.addHost(i, hostAM);
 			
 			host.installAutonomicManager(hostAM);
 			
@@ -121,6 +134,13 @@ public class DistributedTestEnvironment {
 	
 	}
 	
+	/**
+	 * Get the DistributedMetrics of the given simulation, creating it if necessary. Metrics are bound to their
+	 * simulation, so simulations run concurrently (e.g., by a SimulationExecutor) do not share counters. Since
+	 * each simulation runs on a single thread, the counters need no synchronization.
+	 * @param simulation
+	 * @return
+	 */
 	public static DistributedMetrics getDistributedMetrics(Simulation simulation) {
 		DistributedMetrics metrics = simulation.getSimulationMetrics().getCustomMetricCollection(DistributedMetrics.class);
 		
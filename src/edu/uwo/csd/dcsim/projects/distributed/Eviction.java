@@ -1,8 +1,12 @@
 package edu.uwo.csd.dcsim.projects.distributed;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.uwo.csd.dcsim.common.HashCodeUtil;
+import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.host.Resources;
+import edu.uwo.csd.dcsim.management.HostStatus;
 import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.projects.distributed.events.RequestResourcesEvent;
 import edu.uwo.csd.dcsim.projects.distributed.events.ResourceOfferEvent;
@@ -12,8 +16,11 @@ public class Eviction {
 	private RequestResourcesEvent event;
 	private ArrayList<VmStatus> vmList;
 	private ArrayList<ResourceOfferEvent> resourceOffers = new ArrayList<ResourceOfferEvent>();
+	private int hostIndex = 0; //host whose broadcast groups the request is sent to (see BroadcastGroups)
+	private int level = 0; //broadcast group level the request was last sent to
+	private boolean closed = false; //offers are no longer collected
 
-	private static int hashNum = 1;
+	private static final AtomicInteger hashNum = new AtomicInteger(1); //shared by simulations running in parallel (see BroadcastExperiment)
 	private final int hashCode;
 	
 	public Eviction() {
@@ -46,6 +53,86 @@ public class Eviction {
 		this.event = event;
 	}
 	
+	public int getHostIndex() {
+		return hostIndex;
+	}
+	
+	public void setHostIndex(int hostIndex) {
+		this.hostIndex = hostIndex;
+	}
+	
+	public int getLevel() {
+		return level;
+	}
+	
+	public void setLevel(int level) {
+		this.level = level;
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	public void close() {
+		closed = true;
+	}
+	
+	/**
+	 * Determine if the eviction can be completed without waiting for more offers: either OFFER_QUORUM offers 
+	 * have been received, or (with CLOSE_ON_FIT) the latest offer can take the first VM. Used both for 
+	 * evictions from a host and for placements of new VMs.
+	 * 
+	 * @param offer the latest offer
+	 * @param closeOnFit true if a single offer able to take the first VM is enough to complete the eviction
+	 * @return
+	 */
+	public boolean canCloseEarly(ResourceOfferEvent offer, boolean closeOnFit) {
+		if (DistributedTestEnvironment.OFFER_QUORUM > 0 && resourceOffers.size() >= DistributedTestEnvironment.OFFER_QUORUM)
+			return true;
+		
+		if (DistributedTestEnvironment.CLOSE_ON_FIT && closeOnFit) {
+			VmStatus vm = vmList.get(0);
+			return canHost(offer.getHost(), offer.getHostStatus(), vm) && fits(vm, offer.getResourcesOffered());
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Determine if the VM fits in the given (remaining) resources.
+	 * 
+	 * @param vm
+	 * @param resources
+	 * @return
+	 */
+	public static boolean fits(VmStatus vm, Resources resources) {
+		return vm.getResourcesInUse().getCpu() <= resources.getCpu() &&
+				vm.getResourcesInUse().getMemory() <= resources.getMemory() &&
+				vm.getResourcesInUse().getBandwidth() <= resources.getBandwidth() &&
+				vm.getResourcesInUse().getStorage() <= resources.getStorage();
+	}
+	
+	private static boolean canHost(Host host, HostStatus hostStatus, VmStatus vm) {
+		//check capabilities
+		if (host.getCpuCount() * host.getCoreCount() < vm.getCores() ||
+				host.getCoreCapacity() < vm.getCoreCapacity()) {
+			return false;
+		}
+		
+		//check remaining capacity
+		Resources resourcesInUse = hostStatus.getResourcesInUse();
+		if (host.getResourceManager().getTotalCpu() - resourcesInUse.getCpu() < vm.getResourcesInUse().getCpu())
+			return false;
+		if (host.getResourceManager().getTotalMemory() - resourcesInUse.getMemory() < vm.getResourcesInUse().getMemory())
+			return false;
+		if (host.getResourceManager().getTotalBandwidth() - resourcesInUse.getBandwidth() < vm.getResourcesInUse().getBandwidth())
+			return false;
+		if (host.getResourceManager().getTotalStorage() - resourcesInUse.getStorage() < vm.getResourcesInUse().getStorage())
+			return false;
+		
+		return true;
+	}
+	
 	@Override
 	public int hashCode() {
 		return hashCode;
@@ -53,7 +140,7 @@ public class Eviction {
 	
 	private int generateHashCode() {
 		int result = HashCodeUtil.SEED;
-		result = HashCodeUtil.hash(result, hashNum++);
+		result = HashCodeUtil.hash(result, hashNum.getAndIncrement());
 		return result;
 	}
 	
@@ -1,11 +1,17 @@
 package edu.uwo.csd.dcsim.projects.distributed.capabilities;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import edu.uwo.csd.dcsim.core.SimulationEventBroadcastGroup;
 import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.HostStatus;
 import edu.uwo.csd.dcsim.management.capabilities.HostManager;
+import edu.uwo.csd.dcsim.projects.distributed.BroadcastGroups;
 import edu.uwo.csd.dcsim.projects.distributed.Eviction;
 import edu.uwo.csd.dcsim.projects.distributed.events.ResourceOfferEvent;
 import edu.uwo.csd.dcsim.projects.distributed.events.ShutdownClaimEvent;
@@ -15,7 +21,8 @@ public class HostManagerBroadcast extends HostManager {
 	public enum ManagementState {NORMAL, EVICTING, OFFERING;}
 	public enum ShutdownState {NONE, SHUTTING_DOWN, SUBMITTED_CLAIM, COORDINATING;}
 		
-	private SimulationEventBroadcastGroup broadcastingGroup; 
+	private BroadcastGroups broadcastGroups;
+	private int hostIndex;
 	
 	private ArrayList<HostStatus> history = new ArrayList<HostStatus>();
 	private ArrayList<Host> poweredOffHosts = new ArrayList<Host>();
@@ -42,11 +49,13 @@ public class HostManagerBroadcast extends HostManager {
 	//shutdown
 	private ArrayList<ShutdownClaimEvent> shutdownClaims = new ArrayList<ShutdownClaimEvent>();
 	private boolean shutdownResourcesAvailable = false;
+	private Map<Host, ShutdownCandidate> shutdownRanking = new HashMap<Host, ShutdownCandidate>(); //under-utilized hosts of the group, as last heard
 	
-	public HostManagerBroadcast(Host host, SimulationEventBroadcastGroup broadcastingGroup) {
+	public HostManagerBroadcast(Host host, BroadcastGroups broadcastGroups, int hostIndex) {
 		super(host);
 		
-		this.broadcastingGroup = broadcastingGroup;
+		this.broadcastGroups = broadcastGroups;
+		this.hostIndex = hostIndex;
 	}
 	
 	public void addHistoryStatus(HostStatus status, int windowSize) {
@@ -56,8 +65,32 @@ public class HostManagerBroadcast extends HostManager {
 		}
 	}
 	
+	/**
+	 * Get the host's own (lowest level) broadcast group.
+	 * @return
+	 */
 	public SimulationEventBroadcastGroup getBroadcastingGroup() {
-		return broadcastingGroup;
+		return broadcastGroups.getGroup(hostIndex, 0);
+	}
+	
+	public SimulationEventBroadcastGroup getBroadcastingGroup(int level) {
+		return broadcastGroups.getGroup(hostIndex, level);
+	}
+	
+	public int getBroadcastLevels() {
+		return broadcastGroups.getLevelCount();
+	}
+	
+	public int getHostIndex() {
+		return hostIndex;
+	}
+	
+	/**
+	 * Get the index of the host's own (lowest level) broadcast group.
+	 * @return
+	 */
+	public int getGroupId() {
+		return broadcastGroups.getGroupIndex(hostIndex, 0);
 	}
 	
 	public ArrayList<ShutdownClaimEvent> getShutdownClaims() {
@@ -114,7 +147,7 @@ public class HostManagerBroadcast extends HostManager {
 	}
 	
 	public long getGroupSize() {
-		return broadcastingGroup.size();	
+		return getBroadcastingGroup().size();	
 	}
 		
 	public boolean offersFrozen() {
@@ -176,6 +209,44 @@ public class HostManagerBroadcast extends HostManager {
 		this.powerStateListValid = powerStateListValid;
 	}
 
+	/**
+	 * Get the under-utilized hosts of this host's group, as last heard from them (used by the ranked shutdown election).
+	 * @return
+	 */
+	public Collection<ShutdownCandidate> getShutdownRanking() {
+		return shutdownRanking.values();
+	}
+	
+	public void updateShutdownCandidate(Host host, AutonomicManager hostAM, double powerEfficiency, int cpu, long time) {
+		shutdownRanking.put(host, new ShutdownCandidate(host, hostAM, powerEfficiency, cpu, time));
+	}
+	
+	public void removeShutdownCandidate(Host host) {
+		shutdownRanking.remove(host);
+	}
+	
+	public void removeShutdownCandidate(AutonomicManager hostAM) {
+		Iterator<ShutdownCandidate> iter = shutdownRanking.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().getHostAM() == hostAM) {
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Remove candidates last heard from before the given time.
+	 * @param time
+	 */
+	public void expireShutdownCandidates(long time) {
+		Iterator<ShutdownCandidate> iter = shutdownRanking.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().getTime() < time) {
+				iter.remove();
+			}
+		}
+	}
+	
 	public boolean areShutdownResourcesvailable() {
 		return shutdownResourcesAvailable;
 	}
@@ -184,4 +255,42 @@ public class HostManagerBroadcast extends HostManager {
 		this.shutdownResourcesAvailable = shutdownResourcesAvailable;
 	}
 
+	public static class ShutdownCandidate {
+		
+		private Host host;
+		private AutonomicManager hostAM;
+		private double powerEfficiency;
+		private int cpu; //CPU in use
+		private long time; //time the host was last heard from
+		
+		public ShutdownCandidate(Host host, AutonomicManager hostAM, double powerEfficiency, int cpu, long time) {
+			this.host = host;
+			this.hostAM = hostAM;
+			this.powerEfficiency = powerEfficiency;
+			this.cpu = cpu;
+			this.time = time;
+		}
+		
+		public Host getHost() {
+			return host;
+		}
+		
+		public AutonomicManager getHostAM() {
+			return hostAM;
+		}
+		
+		public double getPowerEfficiency() {
+			return powerEfficiency;
+		}
+		
+		public int getCpu() {
+			return cpu;
+		}
+		
+		public long getTime() {
+			return time;
+		}
+		
+	}
+
 }
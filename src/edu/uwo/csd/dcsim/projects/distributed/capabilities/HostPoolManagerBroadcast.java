@@ -5,17 +5,20 @@ import java.util.*;
 import edu.uwo.csd.dcsim.core.SimulationEventBroadcastGroup;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.projects.distributed.BroadcastGroups;
 import edu.uwo.csd.dcsim.projects.distributed.Eviction;
 import edu.uwo.csd.dcsim.vm.VmAllocationRequest;
 
 public class HostPoolManagerBroadcast extends HostPoolManager {
 
-	private SimulationEventBroadcastGroup broadcastingGroup;
+	private BroadcastGroups broadcastGroups;
+	private int nextPartition = 0; //lowest level broadcast group to send the next placement request to
 	
 	private long lastBoot = -1000000000;
 	
 	private ArrayList<Eviction> evictions = new ArrayList<Eviction>();
 	private Map<Eviction, VmAllocationRequest> requestMap = new HashMap<Eviction, VmAllocationRequest>();
+	private Map<Eviction, ArrayList<VmAllocationRequest>> batchRequestMap = new HashMap<Eviction, ArrayList<VmAllocationRequest>>();
 	
 	private ArrayList<Host> poweredOffHosts = new ArrayList<Host>();
 	
@@ -23,12 +26,31 @@ public class HostPoolManagerBroadcast extends HostPoolManager {
 
 	}
 	
-	public void setBroadcastingGroup(SimulationEventBroadcastGroup broadcastingGroup) {
-		this.broadcastingGroup = broadcastingGroup;
+	public void setBroadcastGroups(BroadcastGroups broadcastGroups) {
+		this.broadcastGroups = broadcastGroups;
 	}
 	
+	public BroadcastGroups getBroadcastGroups() {
+		return broadcastGroups;
+	}
+	
+	/**
+	 * Get the group containing every host.
+	 * @return
+	 */
 	public SimulationEventBroadcastGroup getBroadcastingGroup() {
-		return broadcastingGroup;
+		return broadcastGroups.getTopGroup();
+	}
+	
+	/**
+	 * Get the index of a host of the next lowest level broadcast group to send a placement request to, 
+	 * spreading requests over the groups in round-robin order.
+	 * @return
+	 */
+	public int getNextPlacementHostIndex() {
+		int partition = nextPartition;
+		nextPartition = (nextPartition + 1) % Math.max(1, broadcastGroups.getPartitionCount());
+		return broadcastGroups.getPartitionHostIndex(partition);
 	}
 	
 	public ArrayList<Eviction> getEvictions() {
@@ -55,8 +77,18 @@ public class HostPoolManagerBroadcast extends HostPoolManager {
 		return requestMap.get(eviction);
 	}
 	
+	/**
+	 * Get the requests of a placement of several VMs, in the order of the eviction's VM list.
+	 * @param eviction
+	 * @return
+	 */
+	public ArrayList<VmAllocationRequest> getRequests(Eviction eviction) {
+		return batchRequestMap.get(eviction);
+	}
+	
 	public void clearRequest(Eviction eviction) {
 		requestMap.remove(eviction);
+		batchRequestMap.remove(eviction);
 	}
 	
 	public void addEviction(Eviction eviction, VmAllocationRequest request) {
@@ -64,6 +96,11 @@ public class HostPoolManagerBroadcast extends HostPoolManager {
 		requestMap.put(eviction, request);
 	}
 	
+	public void addEviction(Eviction eviction, ArrayList<VmAllocationRequest> requests) {
+		evictions.add(eviction);
+		batchRequestMap.put(eviction, requests);
+	}
+	
 	public void clearEviction(Eviction eviction) {
 		evictions.remove(eviction);
 		clearRequest(eviction);
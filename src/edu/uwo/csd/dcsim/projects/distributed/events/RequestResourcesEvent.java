@@ -14,6 +14,7 @@ public class RequestResourcesEvent extends MessageEvent {
 	private Resources minResources;
 	private AutonomicManager hostManager;
 	private AdvertiseReason reason;
+	private int level = 0; //broadcast group level the request is sent to
 	
 	public RequestResourcesEvent(SimulationEventListener target, Resources minResources, Eviction eviction, AutonomicManager hostManager, AdvertiseReason reason) {
 		super(target);
@@ -24,6 +25,12 @@ public class RequestResourcesEvent extends MessageEvent {
 		this.reason = reason;
 	}
 	
+	public RequestResourcesEvent(SimulationEventListener target, Resources minResources, Eviction eviction, AutonomicManager hostManager, AdvertiseReason reason, int level) {
+		this(target, minResources, eviction, hostManager, reason);
+		
+		this.level = level;
+	}
+	
 	public Resources getMinResources() {
 		return minResources;
 	}
@@ -40,4 +47,8 @@ public class RequestResourcesEvent extends MessageEvent {
 		return eviction;
 	}
 	
+	public int getLevel() {
+		return level;
+	}
+	
 }
@@ -1,5 +1,7 @@
 package edu.uwo.csd.dcsim.projects.distributed.events;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import edu.uwo.csd.dcsim.core.SimulationEventListener;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.host.Resources;
@@ -10,7 +12,7 @@ import edu.uwo.csd.dcsim.projects.distributed.Eviction;
 
 public class ResourceOfferEvent extends MessageEvent {
 
-	private static long nextId = 1;
+	private static final AtomicLong nextId = new AtomicLong(1); //shared by simulations running in parallel (see BroadcastExperiment)
 	
 	private long id;
 	private Eviction eviction;
@@ -18,11 +20,13 @@ public class ResourceOfferEvent extends MessageEvent {
 	private Resources resourcesOffered;
 	private AutonomicManager hostManager;
 	private HostStatus hostStatus;
+	private int groupId; //the offering host's own (lowest level) broadcast group
 	
-	public ResourceOfferEvent(SimulationEventListener target, Eviction eviction, Host host, AutonomicManager hostManager, HostStatus hostStatus, Resources resourcesOffered) {
+	public ResourceOfferEvent(SimulationEventListener target, Eviction eviction, Host host, AutonomicManager hostManager, HostStatus hostStatus, Resources resourcesOffered, int groupId) {
 		super(target);
 		
-		id = nextId++;
+		id = nextId.getAndIncrement();
+		this.groupId = groupId;
 		this.eviction = eviction;
 		this.host = host;
 		this.hostManager = hostManager;
@@ -53,5 +57,9 @@ public class ResourceOfferEvent extends MessageEvent {
 	public Resources getResourcesOffered() {
 		return resourcesOffered;
 	}
+	
+	public int getGroupId() {
+		return groupId;
+	}
 
 }
@@ -12,10 +12,12 @@ public class TriggerShutdownEvent extends MessageEvent {
 	private Host coordinatorHost;
 	private Resources resources;
 	private int vmCount;
+	private int groupId; //the coordinator's own (lowest level) broadcast group
 	
-	public TriggerShutdownEvent(SimulationEventListener target, AutonomicManager coordinator, Host coordinatorHost, Resources resources, int vmCount) {
+	public TriggerShutdownEvent(SimulationEventListener target, AutonomicManager coordinator, Host coordinatorHost, Resources resources, int vmCount, int groupId) {
 		super(target);
 		
+		this.groupId = groupId;
 		this.coordinator = coordinator;
 		this.resources = resources;
 		this.vmCount = vmCount;
@@ -38,4 +40,8 @@ public class TriggerShutdownEvent extends MessageEvent {
 		return coordinatorHost;
 	}
 	
+	public int getGroupId() {
+		return groupId;
+	}
+	
 }
@@ -35,8 +35,9 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 	private static final long SHUTDOWN_FREEZE_AFTER_FAIL_DURATION = SimTime.minutes(15); //triggered after a failed shutdown
 	private static final long EVICTION_FREEZE_DURATION = SimTime.minutes(30);
 	private static final long OFFER_FREEZE_DURATION = SimTime.minutes(30);
+	private static final long SHUTDOWN_RANKING_EXPIRY = SimTime.minutes(30); //hosts not heard from for this long are dropped from the shutdown ranking
 	
-	private static DistributedMetrics distributedMetrics = null;
+	private DistributedMetrics distributedMetrics = null; //metrics of the simulation this policy runs in, never shared between simulations
 	
 	private double lower;
 	private double upper;
@@ -117,7 +118,15 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 					
 					//evict VMs
 					if (!hostStatus.getVms().isEmpty()) {
-						triggerShutdownElection(hostManager, hostStatus);
+						if (!DistributedTestEnvironment.RANKED_SHUTDOWN_ELECTION) {
+							triggerShutdownElection(hostManager, hostStatus);
+						} else if (isShutdownCandidate(hostManager, hostStatus.getResourcesInUse().getCpu())) {
+							//no other host should shut down first, announce the shutdown and decide once the announcement has 
+							//gone around (see execute(ShutdownElectionEvent))
+							triggerShutdownElection(hostManager, hostStatus);
+						} else if (simulation.isRecordingMetrics()) {
+							distributedMetrics.shutdownDeferrals++;
+						}
 					} else {
 						//indicate that resources are available, as we don't know, and therefore don't want to prevent another host from attempting shutdown
 						hostManager.setShutdownResourcesAvailable(true);
@@ -144,11 +153,13 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 
 		Eviction eviction = new Eviction();
 		eviction.setVmList(vmList);
+		eviction.setHostIndex(hostManager.getHostIndex());
 		
 		hostManager.setEviction(eviction);
 		hostManager.setManagementState(ManagementState.EVICTING);
 		
-		RequestResourcesEvent event = new RequestResourcesEvent(hostManager.getBroadcastingGroup(), minResources, eviction, manager, reason);
+		//start with this host's own group, see escalate()
+		RequestResourcesEvent event = new RequestResourcesEvent(hostManager.getBroadcastingGroup(), minResources, eviction, manager, reason, 0);
 		
 		eviction.setEvent(event);
 		
@@ -157,6 +168,28 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		simulation.sendEvent(new EvictionEvent(manager, eviction), simulation.getSimulationTime() + EVICTION_WAIT_TIME);
 	}
 	
+	/**
+	 * Re-send the resource request of an eviction that received no offers to the parent of the broadcast group
+	 * it was last sent to, and wait for offers again.
+	 * 
+	 * @param hostManager
+	 * @param eviction
+	 */
+	private void escalate(HostManagerBroadcast hostManager, Eviction eviction) {
+		int level = eviction.getLevel() + 1;
+		RequestResourcesEvent previous = eviction.getEvent();
+		
+		RequestResourcesEvent event = new RequestResourcesEvent(hostManager.getBroadcastingGroup(level), previous.getMinResources(), eviction, manager, previous.getReason(), level);
+		eviction.setEvent(event);
+		eviction.setLevel(level);
+		
+		simulation.sendEvent(event);
+		simulation.sendEvent(new EvictionEvent(manager, eviction), simulation.getSimulationTime() + EVICTION_WAIT_TIME);
+		
+		if (simulation.isRecordingMetrics())
+			distributedMetrics.requestEscalations++;
+	}
+	
 	private void triggerShutdownElection(HostManagerBroadcast hostManager, HostStatus hostStatus) {
 		//set up shutdown claims
 		hostManager.getShutdownClaims().clear();
@@ -167,7 +200,7 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		hostManager.setShutdownState(ShutdownState.COORDINATING);
 		
 		//send a broadcast message to get shutdown claims
-		simulation.sendEvent(new TriggerShutdownEvent(hostManager.getBroadcastingGroup(), manager, hostManager.getHost(), hostStatus.getResourcesInUse(), hostStatus.getVms().size()));
+		simulation.sendEvent(new TriggerShutdownEvent(hostManager.getBroadcastingGroup(), manager, hostManager.getHost(), hostStatus.getResourcesInUse(), hostStatus.getVms().size(), hostManager.getGroupId()));
 		
 		//set an event to trigger completion of the election, after claims have been received
 		simulation.sendEvent(new ShutdownElectionEvent(manager), simulation.getSimulationTime() + EVICTION_WAIT_TIME);
@@ -181,6 +214,26 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
 		
+		//ranked election: there are no claims. Announcements sent at the same time as this host's have arrived by now
+		//(see receiveShutdownAnnouncement), so check the ranking again, with the CPU this host announced, so that
+		//every announcer reaches the same decision
+		if (DistributedTestEnvironment.RANKED_SHUTDOWN_ELECTION) {
+			if (hostManager.getShutdownState() == ShutdownState.COORDINATING) {
+				ShutdownClaimEvent selfClaim = hostManager.getShutdownClaims().get(0);
+				if (isShutdownCandidate(hostManager, selfClaim.getResourcesInUse().getCpu())) {
+					startShutdown(hostManager);
+				} else {
+					hostManager.setShutdownState(ShutdownState.NONE);
+					hostManager.enactShutdownFreeze(simulation.getSimulationTime() + SHUTDOWN_SUBSEQUENT_FREEZE_DURATION);
+					
+					if (simulation.isRecordingMetrics())
+						distributedMetrics.shutdownBackoffs++;
+				}
+			}
+			hostManager.getShutdownClaims().clear();
+			return;
+		}
+		
 		//choose shutdown claim to accept (there will be at least one, from this host)
 		//select the host with the lowest CPU utilization TODO consider memory as well
 		ShutdownClaimEvent winner = null;
@@ -237,6 +290,12 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		if (simulation.isRecordingMetrics())
 			distributedMetrics.msgBasic++; //only using CPU value
 		
+		if (DistributedTestEnvironment.RANKED_SHUTDOWN_ELECTION) {
+			if (event.getCoordinator() != manager)
+				receiveShutdownAnnouncement(hostManager, event);
+			return;
+		}
+		
 		//if a migration is pending, wait until it is complete
 		if ((hostStatus.getIncomingMigrationCount() > 0) || (hostStatus.getOutgoingMigrationCount() > 0)) return;
 		
@@ -265,6 +324,19 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		}
 		
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
+		
+		startShutdown(hostManager);
+		
+		if (simulation.isRecordingMetrics())
+			distributedMetrics.msgBasic++;
+	}
+	
+	/**
+	 * Start shutting down this host, by evicting all of its VMs
+	 * 
+	 * @param hostManager
+	 */
+	private void startShutdown(HostManagerBroadcast hostManager) {
 		HostStatus hostStatus = new HostStatus(hostManager.getHost(), simulation.getSimulationTime());
 		
 		hostManager.setShutdownState(ShutdownState.SHUTTING_DOWN);
@@ -275,9 +347,87 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 			distributedMetrics.shutdownTriggered++;
 	
 		evict(hostManager, vmList, RequestResourcesEvent.AdvertiseReason.SHUTDOWN);	
+	}
+	
+	/**
+	 * Determine if this host should shut down, rather than another under-utilized host of its group (ranked election).
+	 * Hosts are ranked by the status piggybacked on the messages they send anyway: offers and shutdown announcements
+	 * carry the sender's status, a host requesting resources is busy evicting, and power state messages tell that a 
+	 * host shut down or just started. Every host applies the same ranking, so when the hosts' views agree only one 
+	 * of them announces its shutdown.
+	 * 
+	 * @param hostManager
+	 * @param cpuInUse this host's CPU in use
+	 * @return
+	 */
+	private boolean isShutdownCandidate(HostManagerBroadcast hostManager, int cpuInUse) {
+		hostManager.expireShutdownCandidates(simulation.getSimulationTime() - SHUTDOWN_RANKING_EXPIRY);
 		
-		if (simulation.isRecordingMetrics())
-			distributedMetrics.msgBasic++;
+		for (HostManagerBroadcast.ShutdownCandidate candidate : hostManager.getShutdownRanking()) {
+			if (ranksAhead(candidate.getHost(), candidate.getPowerEfficiency(), candidate.getCpu(),
+					hostManager.getHost(), hostManager.getHost().getPowerEfficiency(1), cpuInUse)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Determine if host a should shut down before host b: the less power efficient host first, then the one 
+	 * using less CPU, then the one with the lowest ID.
+	 * 
+	 * @param a
+	 * @param efficiencyA
+	 * @param cpuA
+	 * @param b
+	 * @param efficiencyB
+	 * @param cpuB
+	 * @return
+	 */
+	private boolean ranksAhead(Host a, double efficiencyA, int cpuA, Host b, double efficiencyB, int cpuB) {
+		if (efficiencyA != efficiencyB) return efficiencyA < efficiencyB;
+		if (cpuA != cpuB) return cpuA < cpuB;
+		return a.getId() < b.getId();
+	}
+	
+	/**
+	 * Record the status of another host of the group, for the ranked shutdown election. A host whose status shows it is 
+	 * no longer under-utilized is removed at once.
+	 * 
+	 * @param hostManager
+	 * @param groupId the other host's own (lowest level) broadcast group
+	 * @param host
+	 * @param hostAM
+	 * @param powerEfficiency
+	 * @param cpuInUse
+	 */
+	private void updateShutdownRanking(HostManagerBroadcast hostManager, int groupId, Host host, AutonomicManager hostAM, double powerEfficiency, int cpuInUse) {
+		//only hosts of this host's group compete for its shutdowns
+		if (groupId != hostManager.getGroupId()) return;
+		
+		if (cpuInUse / (double)host.getResourceManager().getTotalCpu() < lower) {
+			hostManager.updateShutdownCandidate(host, hostAM, powerEfficiency, cpuInUse, simulation.getSimulationTime());
+		} else {
+			hostManager.removeShutdownCandidate(host);
+		}
+	}
+	
+	/**
+	 * Receive another host's shutdown announcement (ranked election). The announcer is ranked with the status it 
+	 * announced. If this host announced its own shutdown at the same time, the two are compared when this host's 
+	 * election completes (see execute(ShutdownElectionEvent)), and the lower ranked one backs off. Otherwise, wait 
+	 * for the announced shutdown, as a host whose claim was denied would.
+	 * 
+	 * @param hostManager
+	 * @param event
+	 */
+	private void receiveShutdownAnnouncement(HostManagerBroadcast hostManager, TriggerShutdownEvent event) {
+		updateShutdownRanking(hostManager, event.getGroupId(), event.getCoordinatorHost(), event.getCoordinator(),
+				event.getCoordinatorHost().getPowerEfficiency(1), event.getResources().getCpu());
+		
+		if (hostManager.getShutdownState() == ShutdownState.NONE && !shutdownFrozen(hostManager)) {
+			hostManager.enactShutdownFreeze(simulation.getSimulationTime() + SHUTDOWN_SUBSEQUENT_FREEZE_DURATION);
+		}
 	}
 	
 	public void execute(DenyShutdownEvent event) {
@@ -311,20 +461,41 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
 		
+		//the eviction was closed early, when enough offers arrived (see execute(ResourceOfferEvent))
+		if (event.getEviction().isClosed())
+			return;
+		
 		if (event.getEviction() != hostManager.getEviction())
 			throw new RuntimeException("Eviction event does not match current eviction");
 		
-		if (event.getEviction().getEvent().getReason() == AdvertiseReason.STRESS) {
-			completeStressEviction(event);
-		} else {
-			completeShutdownEviction(event);
-		}
-		
 		if (simulation.isRecordingMetrics())
 			distributedMetrics.msgBasic++;
+		
+		//no host in the group offered resources, try the parent group before giving up
+		if (event.getEviction().getResourceOffers().isEmpty() && event.getEviction().getLevel() + 1 < hostManager.getBroadcastLevels()) {
+			escalate(hostManager, event.getEviction());
+			return;
+		}
+		
+		closeEviction(event.getEviction());
+	}
+	
+	/**
+	 * Stop collecting offers for the eviction, and complete it with the offers received so far.
+	 * 
+	 * @param eviction
+	 */
+	private void closeEviction(Eviction eviction) {
+		eviction.close();
+		
+		if (eviction.getEvent().getReason() == AdvertiseReason.STRESS) {
+			completeStressEviction();
+		} else {
+			completeShutdownEviction();
+		}
 	}
 	
-	private void completeStressEviction(EvictionEvent event) {
+	private void completeStressEviction() {
 		
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
 		
@@ -469,7 +640,7 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		
 	}
 	
-	private void completeShutdownEviction(EvictionEvent event) {
+	private void completeShutdownEviction() {
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
 		
 		Eviction eviction = hostManager.getEviction();
@@ -674,8 +845,14 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		Host host = hostManager.getHost();
 		HostStatus hostStatus = new HostStatus(hostManager.getHost(), simulation.getSimulationTime());
 		
-		if (simulation.isRecordingMetrics())
+		if (simulation.isRecordingMetrics()) {
 			distributedMetrics.receivedResourceRequest++;
+			distributedMetrics.addReceivedResourceRequest(event.getLevel());
+		}
+		
+		//the requesting host is evicting, so it is not about to shut down (unless it already is)
+		if (DistributedTestEnvironment.RANKED_SHUTDOWN_ELECTION)
+			hostManager.removeShutdownCandidate(event.getHostManager());
 		
 		if (simulation.isRecordingMetrics())
 			distributedMetrics.msgSingle++;
@@ -723,7 +900,7 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 					resourcesOffered.setStorage(host.getResourceManager().getTotalStorage() - resourcesInUse.getStorage());
 					
 					//send accept message
-					ResourceOfferEvent offer = new ResourceOfferEvent(event.getHostManager(), event.getEviction(), host, manager, hostStatus, resourcesOffered);
+					ResourceOfferEvent offer = new ResourceOfferEvent(event.getHostManager(), event.getEviction(), host, manager, hostStatus, resourcesOffered, hostManager.getGroupId());
 					simulation.sendEvent(offer);
 					hostManager.setManagementState(ManagementState.OFFERING);
 					hostManager.setCurrentOffer(offer);
@@ -747,10 +924,24 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		//a Host has accepted your advertised VM
 		HostManagerBroadcast hostManager = manager.getCapability(HostManagerBroadcast.class);
 		
+		if (DistributedTestEnvironment.RANKED_SHUTDOWN_ELECTION)
+			updateShutdownRanking(hostManager, event.getGroupId(), event.getHost(), event.getHostManager(),
+					event.getHost().getPowerEfficiency(1), event.getHostStatus().getResourcesInUse().getCpu());
+		
 		//ensure that this VM is still being advertised
-		if ((hostManager.getManagementState() == ManagementState.EVICTING) && hostManager.getEviction().equals(event.getEviction())) {
+		if ((hostManager.getManagementState() == ManagementState.EVICTING) && hostManager.getEviction() != null && hostManager.getEviction().equals(event.getEviction())) {
 			hostManager.getEviction().getResourceOffers().add(event);
 			
+			//complete the eviction now, rejecting the other offers, rather than keeping them waiting
+			//(shutdowns need room for every VM, which a single offer rarely shows, so only stress evictions close on a fit)
+			Eviction eviction = hostManager.getEviction();
+			if (eviction.canCloseEarly(event, eviction.getEvent().getReason() == AdvertiseReason.STRESS)) {
+				closeEviction(eviction);
+				
+				if (simulation.isRecordingMetrics())
+					distributedMetrics.earlyCloses++;
+			}
+			
 		} else {
 			//send rejection message
 			simulation.sendEvent(new RejectOfferEvent(event.getHostManager(), event));
@@ -778,6 +969,8 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		if (event.getHost() != hostManager.getHost())
 			hostManager.getPoweredOffHosts().add(event.getHost());
 		
+		hostManager.removeShutdownCandidate(event.getHost());
+		
 		//set shutdown freeze, if not set already
 		if (!shutdownFrozen(hostManager)) {
 			if (event.areShutdownResourcesAvailabe()) {
@@ -813,6 +1006,9 @@ public class HostMonitoringPolicyBroadcast extends Policy {
 		
 		hostManager.getPoweredOffHosts().remove(event.getHost());
 		
+		//a host that just started is frozen for a while, it should not hold back the hosts ranked after it
+		hostManager.removeShutdownCandidate(event.getHost());
+		
 		if (simulation.isRecordingMetrics())
 			distributedMetrics.receivedPowerStateMessage++;
 		
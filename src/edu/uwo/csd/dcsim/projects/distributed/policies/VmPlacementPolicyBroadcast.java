@@ -2,6 +2,7 @@ package edu.uwo.csd.dcsim.projects.distributed.policies;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 
 import edu.uwo.csd.dcsim.common.SimTime;
 import edu.uwo.csd.dcsim.host.Host;
@@ -36,7 +37,7 @@ public class VmPlacementPolicyBroadcast extends Policy {
 	private static final long PLACEMENT_WAIT_TIME = 500; //the number of milliseconds to wait to place a VM
 	private static final long BOOT_WAIT_TIME = SimTime.minutes(1); //the number of milliseconds to wait after booting a host, before booting anothor
 	
-	private static DistributedMetrics distributedMetrics = null;
+	private DistributedMetrics distributedMetrics = null; //metrics of the simulation this policy runs in, never shared between simulations
 	
 	private double lower;
 	private double upper;
@@ -57,32 +58,95 @@ public class VmPlacementPolicyBroadcast extends Policy {
 		}
 		
 		HostPoolManagerBroadcast hostPool = manager.getCapability(HostPoolManagerBroadcast.class);
-				
-		//TODO there is a very good chance this will fail with multiple simultaneous VM requests
+		
+		//place simultaneous requests together, rather than having them compete for the same offers
+		if (DistributedTestEnvironment.AGGREGATE_PLACEMENTS && event.getVMAllocationRequests().size() > 1) {
+			requestBatchPlacement(event);
+			return;
+		}
+		
 		for (VmAllocationRequest request : event.getVMAllocationRequests()) {
 			//send resource request message
-			Resources resources = new Resources();
-			resources.setCpu(request.getCpu());
-			resources.setMemory(request.getMemory());
-			resources.setBandwidth(request.getBandwidth());
-			resources.setStorage(request.getStorage());
-			
-			VmStatus vm = new VmStatus(request.getVMDescription().getCores(),
-					request.getVMDescription().getCoreCapacity(),
-					resources);
+			VmStatus vm = createVmStatus(request);
+			Resources resources = vm.getResourcesInUse();
 			
 			Eviction eviction = new Eviction();
 			eviction.setVmList(vm);
+			eviction.setHostIndex(hostPool.getNextPlacementHostIndex());
 			
 			hostPool.addEviction(eviction, request);
 			
-			simulation.sendEvent(new RequestResourcesEvent(hostPool.getBroadcastingGroup(), resources, eviction, manager, RequestResourcesEvent.AdvertiseReason.PLACEMENT));
+			//start with a single (lowest level) group of hosts, escalating to larger groups if no host offers resources
+			RequestResourcesEvent requestEvent = new RequestResourcesEvent(hostPool.getBroadcastGroups().getGroup(eviction.getHostIndex(), 0), 
+					resources, eviction, manager, RequestResourcesEvent.AdvertiseReason.PLACEMENT, 0);
+			eviction.setEvent(requestEvent);
+			
+			simulation.sendEvent(requestEvent);
 			simulation.sendEvent(new EvictionEvent(manager, eviction), simulation.getSimulationTime() + PLACEMENT_WAIT_TIME);
 			
 			distributedMetrics.servicesReceived++;
 		}
 	}
 	
+	/**
+	 * Request resources for all of the event's VMs with a single message, asking for the smallest amount of each 
+	 * resource any of them needs. Hosts reply with a single offer of all of their spare capacity, and the VMs 
+	 * are packed onto the offers when the placement completes (see completeBatchPlacement).
+	 * 
+	 * @param event
+	 */
+	private void requestBatchPlacement(VmPlacementEvent event) {
+		
+		HostPoolManagerBroadcast hostPool = manager.getCapability(HostPoolManagerBroadcast.class);
+		
+		ArrayList<VmAllocationRequest> requests = new ArrayList<VmAllocationRequest>(event.getVMAllocationRequests());
+		ArrayList<VmStatus> vmList = new ArrayList<VmStatus>();
+		Resources minResources = null;
+		
+		for (VmAllocationRequest request : requests) {
+			VmStatus vm = createVmStatus(request);
+			vmList.add(vm);
+			
+			Resources resources = vm.getResourcesInUse();
+			if (minResources == null) {
+				minResources = resources.copy();
+			} else {
+				minResources.setCpu(Math.min(minResources.getCpu(), resources.getCpu()));
+				minResources.setMemory(Math.min(minResources.getMemory(), resources.getMemory()));
+				minResources.setBandwidth(Math.min(minResources.getBandwidth(), resources.getBandwidth()));
+				minResources.setStorage(Math.min(minResources.getStorage(), resources.getStorage()));
+			}
+		}
+		
+		Eviction eviction = new Eviction();
+		eviction.setVmList(vmList);
+		eviction.setHostIndex(hostPool.getNextPlacementHostIndex());
+		
+		hostPool.addEviction(eviction, requests);
+		
+		RequestResourcesEvent requestEvent = new RequestResourcesEvent(hostPool.getBroadcastGroups().getGroup(eviction.getHostIndex(), 0), 
+				minResources, eviction, manager, RequestResourcesEvent.AdvertiseReason.PLACEMENT, 0);
+		eviction.setEvent(requestEvent);
+		
+		simulation.sendEvent(requestEvent);
+		simulation.sendEvent(new EvictionEvent(manager, eviction), simulation.getSimulationTime() + PLACEMENT_WAIT_TIME);
+		
+		distributedMetrics.servicesReceived += requests.size();
+		distributedMetrics.placementBatches++;
+	}
+	
+	private VmStatus createVmStatus(VmAllocationRequest request) {
+		Resources resources = new Resources();
+		resources.setCpu(request.getCpu());
+		resources.setMemory(request.getMemory());
+		resources.setBandwidth(request.getBandwidth());
+		resources.setStorage(request.getStorage());
+		
+		return new VmStatus(request.getVMDescription().getCores(),
+				request.getVMDescription().getCoreCapacity(),
+				resources);
+	}
+	
 	
 	public void execute(EvictionEvent event) {
 		
@@ -93,6 +157,196 @@ public class VmPlacementPolicyBroadcast extends Policy {
 		HostPoolManagerBroadcast hostPool = manager.getCapability(HostPoolManagerBroadcast.class);
 		
 		Eviction eviction = event.getEviction();
+		
+		//the placement was closed early, when enough offers arrived (see execute(ResourceOfferEvent))
+		if (eviction.isClosed())
+			return;
+		
+		//no host in the group offered resources, try the parent group before booting a host
+		if (eviction.getResourceOffers().isEmpty() && eviction.getLevel() + 1 < hostPool.getBroadcastGroups().getLevelCount()) {
+			int level = eviction.getLevel() + 1;
+			RequestResourcesEvent previous = eviction.getEvent();
+			
+			RequestResourcesEvent requestEvent = new RequestResourcesEvent(hostPool.getBroadcastGroups().getGroup(eviction.getHostIndex(), level), 
+					previous.getMinResources(), eviction, manager, previous.getReason(), level);
+			eviction.setEvent(requestEvent);
+			eviction.setLevel(level);
+			
+			simulation.sendEvent(requestEvent);
+			simulation.sendEvent(new EvictionEvent(manager, eviction), simulation.getSimulationTime() + PLACEMENT_WAIT_TIME);
+			
+			if (simulation.isRecordingMetrics())
+				distributedMetrics.requestEscalations++;
+			return;
+		}
+		
+		closePlacement(eviction);
+	}
+	
+	private void closePlacement(Eviction eviction) {
+		if (eviction.getVmList().size() > 1) {
+			completeBatchPlacement(eviction);
+		} else {
+			completePlacement(eviction);
+		}
+	}
+	
+	/**
+	 * Stop collecting offers for a placement of several VMs, and pack the VMs onto the offers received so far, 
+	 * largest first. VMs that do not fit any offer are packed onto powered off hosts, which are booted.
+	 * 
+	 * @param eviction
+	 */
+	private void completeBatchPlacement(Eviction eviction) {
+		
+		HostPoolManagerBroadcast hostPool = manager.getCapability(HostPoolManagerBroadcast.class);
+		
+		eviction.close();
+		
+		final ArrayList<VmStatus> vmList = eviction.getVmList();
+		ArrayList<VmAllocationRequest> requests = hostPool.getRequests(eviction);
+		
+		//sort VMs in decreasing order by CPU
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < vmList.size(); ++i) order.add(i);
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return vmList.get(b).getResourcesInUse().getCpu() - vmList.get(a).getResourcesInUse().getCpu();
+			}
+		});
+		
+		ArrayList<ResourceOfferEvent> targets = sortTargetHosts(eviction.getResourceOffers());
+		ArrayList<ResourceOfferEvent> acceptedOffers = new ArrayList<ResourceOfferEvent>();
+		ArrayList<Integer> unplaced = new ArrayList<Integer>();
+		
+		for (int i : order) {
+			VmStatus vm = vmList.get(i);
+			
+			ResourceOfferEvent target = null;
+			for (ResourceOfferEvent hostOffer : targets) {
+				if (canHost(hostOffer.getHost(), hostOffer.getHostStatus(), vm) && Eviction.fits(vm, hostOffer.getResourcesOffered())) {
+					target = hostOffer;
+					break;
+				}
+			}
+			
+			if (target != null) {
+				simulation.sendEvent(new InstantiateVmEvent(target.getHostManager(), requests.get(i)));
+				
+				//the rest of the offer remains available to the next VMs
+				reserve(vm, target.getResourcesOffered());
+				if (!acceptedOffers.contains(target))
+					acceptedOffers.add(target);
+				
+				distributedMetrics.servicesPlaced++;
+			} else {
+				unplaced.add(i);
+			}
+		}
+		
+		//send accept messages to hosts that received VMs, and rejection messages to the others
+		for (ResourceOfferEvent offerEvent : eviction.getResourceOffers()) {
+			if (acceptedOffers.contains(offerEvent)) {
+				simulation.sendEvent(new AcceptOfferEvent(offerEvent.getHostManager(), offerEvent));
+			} else {
+				simulation.sendEvent(new RejectOfferEvent(offerEvent.getHostManager(), offerEvent));
+			}
+		}
+		
+		if (!unplaced.isEmpty()) {
+			
+			ArrayList<Host> poweredOffHosts = new ArrayList<Host>();
+			ArrayList<Host> booted = new ArrayList<Host>();
+			ArrayList<Resources> bootedRemaining = new ArrayList<Resources>();
+			
+			//at most one host is booted per batch, and only if no host was booted within the last BOOT_WAIT_TIME
+			if (simulation.getSimulationTime() - hostPool.getLastBoot() >= BOOT_WAIT_TIME) {
+				poweredOffHosts.addAll(hostPool.getPoweredOffHosts());
+				
+				//Sort Empty hosts in decreasing order by <power efficiency, power state>.
+				Collections.sort(poweredOffHosts, HostComparator.getComparator(HostComparator.EFFICIENCY));
+				Collections.reverse(poweredOffHosts);
+			}
+			
+			for (int i : unplaced) {
+				VmStatus vm = vmList.get(i);
+				
+				//use a host booted for a previous VM, if it has room
+				Host target = null;
+				int bootedIndex;
+				for (bootedIndex = 0; bootedIndex < booted.size(); ++bootedIndex) {
+					if (canHost(booted.get(bootedIndex), vm) && Eviction.fits(vm, bootedRemaining.get(bootedIndex))) {
+						target = booted.get(bootedIndex);
+						break;
+					}
+				}
+				
+				//otherwise, boot a new host
+				if (target == null) {
+					for (Host host : poweredOffHosts) {
+						if (canHost(host, vm)) {
+							target = host;
+							break;
+						}
+					}
+					
+					if (target != null) {
+						poweredOffHosts.clear();
+						
+						Resources capacity = new Resources();
+						capacity.setCpu((int)(target.getResourceManager().getTotalCpu() * this.target));
+						capacity.setMemory(target.getResourceManager().getTotalMemory());
+						capacity.setBandwidth(target.getResourceManager().getTotalBandwidth());
+						capacity.setStorage(target.getResourceManager().getTotalStorage());
+						booted.add(target);
+						bootedRemaining.add(capacity);
+						
+						simulation.sendEvent(new PowerStateEvent(target, PowerState.POWER_ON));
+						simulation.sendEvent(new UpdatePowerStateListEvent(target.getAutonomicManager(), hostPool.getPoweredOffHosts()));
+						
+						distributedMetrics.hostPowerOn++;
+						hostPool.setLastBoot(simulation.getSimulationTime());
+					}
+				}
+				
+				if (target != null) {
+					simulation.sendEvent(new InstantiateVmEvent(target.getAutonomicManager(), requests.get(i)));
+					reserve(vm, bootedRemaining.get(booted.indexOf(target)));
+					
+					distributedMetrics.servicesPlaced++;
+				} else {
+					distributedMetrics.servicePlacementsFailed++;
+				}
+			}
+		}
+		
+		hostPool.clearEviction(eviction);
+	}
+	
+	/**
+	 * Subtract the VM's resources from the given (remaining) resources.
+	 * 
+	 * @param vm
+	 * @param resources
+	 */
+	private void reserve(VmStatus vm, Resources resources) {
+		resources.setCpu(resources.getCpu() - vm.getResourcesInUse().getCpu());
+		resources.setMemory(resources.getMemory() - vm.getResourcesInUse().getMemory());
+		resources.setBandwidth(resources.getBandwidth() - vm.getResourcesInUse().getBandwidth());
+		resources.setStorage(resources.getStorage() - vm.getResourcesInUse().getStorage());
+	}
+	
+	/**
+	 * Stop collecting offers for the placement, and place the VM using the offers received so far.
+	 * 
+	 * @param eviction
+	 */
+	private void completePlacement(Eviction eviction) {
+		
+		HostPoolManagerBroadcast hostPool = manager.getCapability(HostPoolManagerBroadcast.class);
+		
+		eviction.close();
 			
 		VmStatus vm = eviction.getVmList().get(0);
 		
@@ -111,12 +365,7 @@ public class VmPlacementPolicyBroadcast extends Policy {
 				Resources resourcesOffered = hostOffer.getResourcesOffered();
 				
 				//check capability & capacity
-				if (canHost(host, hostStatus, vm) &&
-						vm.getResourcesInUse().getCpu() <= resourcesOffered.getCpu() &&
-						vm.getResourcesInUse().getMemory() <= resourcesOffered.getMemory() &&
-						vm.getResourcesInUse().getBandwidth() <= resourcesOffered.getBandwidth() &&
-						vm.getResourcesInUse().getStorage() <= resourcesOffered.getStorage()
-						) {
+				if (canHost(host, hostStatus, vm) && Eviction.fits(vm, resourcesOffered)) {
 					
 					target = hostOffer;
 					break;
@@ -148,7 +397,7 @@ public class VmPlacementPolicyBroadcast extends Policy {
 		}
 		
 		if (!targetFound) {
-			if ((hostPool.getLastBoot() < simulation.getSimulationTime() + BOOT_WAIT_TIME) && (hostPool.getPoweredOffHosts().size() > 0)) {
+			if ((simulation.getSimulationTime() - hostPool.getLastBoot() >= BOOT_WAIT_TIME) && (hostPool.getPoweredOffHosts().size() > 0)) {
 				
 				//look for a new host to boot
 				
@@ -204,6 +453,14 @@ public class VmPlacementPolicyBroadcast extends Policy {
 		
 		if (hostPool.getEvictions().contains(eviction)) {
 			eviction.getResourceOffers().add(event);
+			
+			//place the VM now, rejecting the other offers, rather than keeping them waiting (a batch of VMs may need several offers)
+			if (eviction.canCloseEarly(event, eviction.getVmList().size() == 1)) {
+				closePlacement(eviction);
+				
+				if (simulation.isRecordingMetrics())
+					distributedMetrics.earlyCloses++;
+			}
 		} else {
 			//send rejection message
 			simulation.sendEvent(new RejectOfferEvent(event.getHostManager(), event));
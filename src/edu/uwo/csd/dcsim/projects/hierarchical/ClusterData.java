@@ -1,6 +1,7 @@
 package edu.uwo.csd.dcsim.projects.hierarchical;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import edu.uwo.csd.dcsim.common.HashCodeUtil;
 import edu.uwo.csd.dcsim.host.*;
@@ -19,7 +20,7 @@ public class ClusterData {
 	
 	private boolean active = false;
 	
-	private ArrayList<ClusterStatus> history = new ArrayList<ClusterStatus>();
+	private StatusHistory<ClusterStatus> history = new StatusHistory<ClusterStatus>(1);
 	
 	private final int hashCode;
 	
@@ -55,10 +56,7 @@ public class ClusterData {
 			statusValid = true; // If status had been invalidated, we now know it is correct.
 		}
 		
-		history.add(0, clusterStatus);
-		if (history.size() > historyWindowSize) {
-			history.remove(history.size() - 1);
-		}
+		history.push(clusterStatus, historyWindowSize);
 	}
 	
 	/**
@@ -82,6 +80,22 @@ public class ClusterData {
 		return RackData.canHost(vm, currentStatus, clusterDescription.getRackDescription());
 	}
 	
+	/**
+	 * Same as canHost(), but looking up and storing the underlying Host activations calculation 
+	 * in the given cache.
+	 */
+	public static boolean canHost(AppStatus application, RackStatusVector currentStatus, ClusterDescription clusterDescription, HostActivationCache activationCache) {
+		return RackData.canHost(application, currentStatus, clusterDescription.getRackDescription(), activationCache);
+	}
+	
+	public static boolean canHost(ConstrainedAppAllocationRequest request, RackStatusVector currentStatus, ClusterDescription clusterDescription, HostActivationCache activationCache) {
+		return RackData.canHost(request, currentStatus, clusterDescription.getRackDescription(), activationCache);
+	}
+	
+	public static boolean canHost(VmStatus vm, RackStatusVector currentStatus, ClusterDescription clusterDescription, HostActivationCache activationCache) {
+		return RackData.canHost(vm, currentStatus, clusterDescription.getRackDescription(), activationCache);
+	}
+	
 	public boolean isStatusValid() {
 		return statusValid;
 	}
@@ -115,14 +129,34 @@ public class ClusterData {
 		return clusterDescription;
 	}
 	
+	/**
+	 * Returns the current status of the Cluster. The status is a snapshot shared with other 
+	 * readers and MUST NOT be modified; use copyCurrentStatus() to obtain a modifiable copy.
+	 */
 	public ClusterStatus getCurrentStatus() {
-		// Return a copy of the status to ensure that it is read-only.
+		return currentStatus;
+	}
+	
+	/**
+	 * Returns a copy of the current status, which can be freely modified.
+	 */
+	public ClusterStatus copyCurrentStatus() {
 		return currentStatus.copy();
 	}
 	
-	public ArrayList<ClusterStatus> getHistory() {
-		// Return a copy of the history to ensure that it is read-only.
-		ArrayList<ClusterStatus> historyCopy = new ArrayList<ClusterStatus>();
+	/**
+	 * Returns a read-only view of the status history, from newest to oldest. The statuses 
+	 * MUST NOT be modified; use copyHistory() to obtain modifiable copies.
+	 */
+	public List<ClusterStatus> getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Returns a copy of the status history, from newest to oldest, which can be freely modified.
+	 */
+	public ArrayList<ClusterStatus> copyHistory() {
+		ArrayList<ClusterStatus> historyCopy = new ArrayList<ClusterStatus>(history.size());
 		for (ClusterStatus status : history) {
 			historyCopy.add(status.copy());
 		}
@@ -2,10 +2,14 @@ package edu.uwo.csd.dcsim.projects.hierarchical;
 
 import edu.uwo.csd.dcsim.host.Cluster;
 import edu.uwo.csd.dcsim.host.Cluster.ClusterState;
-import edu.uwo.csd.dcsim.host.Rack;
 import edu.uwo.csd.dcsim.host.Switch;
-import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackPoolManager;
 
+/**
+ * Snapshot of a Cluster's status. Once created, a ClusterStatus is shared by the ClusterData 
+ * that stores it and all its readers, and is not modified. Its status vector may only be 
+ * probed in place if it is restored afterwards (see RackStatusVector.mark() and rollback()); 
+ * use copy() to obtain a modifiable instance.
+ */
 public class ClusterStatus {
 
 	private long timeStamp;
@@ -24,50 +28,25 @@ public class ClusterStatus {
 	}
 	
 	/**
-	 * Creates a *complete* ClusterStatus instance.
+	 * Creates a *complete* ClusterStatus instance from already aggregated Rack data (see 
+	 * RackPoolManager.getClusterStatus()). The status vector, if any, is copied.
 	 */
-	public ClusterStatus(Cluster cluster, RackPoolManager capability, long timeStamp) {
+	public ClusterStatus(Cluster cluster, RackStatusVector statusVector, int activeRacks, double rackPowerConsumption, long timeStamp) {
 		this.timeStamp = timeStamp;
 		id = cluster.getId();
 		state = cluster.getState();
+		this.statusVector = null != statusVector ? statusVector.copy() : null;
+		this.activeRacks = activeRacks;
 		
-		if (ClusterState.OFF != state) {
-			
-			int minActiveHosts = Integer.MAX_VALUE;
-			for (RackData rack : capability.getRacks()) {
-				
-				// Calculate number of active Racks.
-				RackStatus status = rack.getCurrentStatus();
-				if (status.getState() == Rack.RackState.ON) {
-					activeRacks++;
-					
-					// Check Rack status. If invalid, we cannot make any assertions.
-					if (rack.isStatusValid()) {
-						
-						// Find the least loaded Rack (i.e., the Rack with the least number
-						// of active Hosts) and obtain its status vector.
-						if (status.getActiveHosts() < minActiveHosts) {
-							minActiveHosts = status.getActiveHosts();
-							statusVector = status.getStatusVector().copy();
-						}
-					}
-				}
-				
-				// Calculate Cluster's total power consumption.
-				// Note: Even Racks with an invalid status are accounted for here, given that
-				// skipping them would represent a good chunk of missing info.
-				powerConsumption += rack.getCurrentStatus().getPowerConsumption();
-			}
-			
-			// Add power consumption of the Cluster's Switches.
-			powerConsumption += cluster.getMainDataSwitch().getPowerConsumption();
-			powerConsumption += cluster.getMainMgmtSwitch().getPowerConsumption();
-			if (cluster.getSwitchCount() > 1) {		// Star topology.
-				for (Switch s : cluster.getDataSwitches())
-					powerConsumption += s.getPowerConsumption();
-				for (Switch s : cluster.getMgmtSwitches())
-					powerConsumption += s.getPowerConsumption();
-			}
+		// Add power consumption of the Cluster's Switches.
+		powerConsumption = rackPowerConsumption;
+		powerConsumption += cluster.getMainDataSwitch().getPowerConsumption();
+		powerConsumption += cluster.getMainMgmtSwitch().getPowerConsumption();
+		if (cluster.getSwitchCount() > 1) {		// Star topology.
+			for (Switch s : cluster.getDataSwitches())
+				powerConsumption += s.getPowerConsumption();
+			for (Switch s : cluster.getMgmtSwitches())
+				powerConsumption += s.getPowerConsumption();
 		}
 	}
 	
@@ -123,7 +102,7 @@ public class ClusterStatus {
 		
 		if (null != statusVector)
 			for (int i = statusVector.vmVector.length - 1; i >= 0; i--) {
-				if (statusVector.vector[i] > 0)
+				if (statusVector.vector[statusVector.iVmVector + i] > 0)
 					return StandardVmSizes.calculateSpareCapacity(statusVector.vmVector[i]);
 			}
 		
@@ -106,7 +106,7 @@ public class Experiment extends SimulationTask {
 		
 		// Create DC Manager.
 		ClusterPoolManager clusterPool = new ClusterPoolManager();
-		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord());
+		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord(SimTime.minutes(30)));
 		
 		// Install management policies in the autonomic manager.
 		dcManager.installPolicy(new ClusterStatusPolicy(5));
@@ -119,7 +119,7 @@ public class Experiment extends SimulationTask {
 			
 			// Create Cluster's autonomic manager.
 			RackPoolManager rackPool = new RackPoolManager();
-			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord());
+			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord(SimTime.minutes(30)));
 			
 			// Install management policies in the autonomic manager.
 			clusterManager.installPolicy(new ClusterMonitoringPolicy(dcManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
@@ -136,7 +136,7 @@ public class Experiment extends SimulationTask {
 				
 				// Create Rack's autonomic manager.
 				HostPoolManager hostPool = new HostPoolManager();
-				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), hostPool, new MigRequestRecord());
+				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), hostPool, new RackStatusAggregator(), new MigRequestRecord(SimTime.minutes(30)));
 				
 				// Install management policies in the autonomic manager.
 				rackManager.installPolicy(new RackMonitoringPolicy(clusterManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
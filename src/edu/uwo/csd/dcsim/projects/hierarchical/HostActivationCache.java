@@ -0,0 +1,156 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.uwo.csd.dcsim.core.Simulation;
+
+/**
+ * Size-bounded, least-recently-used cache of the number of Host activations needed to place an
+ * application in a Rack (see RackData.calculateMinHostActivations()).
+ *
+ * The calculation is a pure function of the Rack's status vector, the Hosts' resource capacity and
+ * the application's packed resource demands, so results are keyed on the concatenation of those
+ * values. Keys are compared in full -- a hash collision never produces a wrong result.
+ *
+ * A cache belongs to a single simulation (it is owned by the RackPoolManager or ClusterPoolManager
+ * capabilities, or shared among those of one simulation) and is not thread-safe. Lookups are made
+ * against a reusable key buffer (see getKeyBuffer()), so only misses allocate a new key.
+ *
+ * When created for a simulation, hits and misses are only counted while the simulation is recording
+ * metrics (i.e., not during the warm-up period), as done for the rest of the simulation's metrics.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class HostActivationCache {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final Simulation simulation;
+	private final LinkedHashMap<Key, Integer> entries;
+	private final Key probe = new Key(new int[64], 0);
+	private long hits = 0;
+	private long misses = 0;
+
+	public HostActivationCache() {
+		this(null, DEFAULT_CAPACITY);
+	}
+
+	public HostActivationCache(Simulation simulation) {
+		this(simulation, DEFAULT_CAPACITY);
+	}
+
+	public HostActivationCache(Simulation simulation, final int capacity) {
+		this.simulation = simulation;
+		entries = new LinkedHashMap<Key, Integer>(Math.min(capacity, 1024), 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the buffer in which to build a key of the given length before calling get() and put().
+	 * The buffer is reused by subsequent lookups.
+	 */
+	public int[] getKeyBuffer(int length) {
+		if (probe.values.length < length)
+			probe.values = new int[Math.max(length, probe.values.length * 2)];
+
+		return probe.values;
+	}
+
+	/**
+	 * Returns the cached result for the key of the given length held in the key buffer, or NULL if
+	 * there is none. Records a hit or a miss (see class comment).
+	 */
+	public Integer get(int length) {
+		probe.rehash(length);
+		Integer result = entries.get(probe);
+		if (null != simulation && !simulation.isRecordingMetrics())
+			return result;
+
+		if (null != result)
+			hits++;
+		else
+			misses++;
+
+		return result;
+	}
+
+	/**
+	 * Stores the result for the key of the given length held in the key buffer.
+	 */
+	public void put(int length, int result) {
+		entries.put(new Key(Arrays.copyOf(probe.values, length), length), result);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Cache key: the first 'length' values of the array. The hash code is computed once, as keys 
+	 * are probed far more often than built.
+	 */
+	private static class Key {
+
+		private int[] values;
+		private int length;
+		private int hashCode;
+
+		public Key(int[] values, int length) {
+			this.values = values;
+			this.rehash(length);
+		}
+
+		public void rehash(int length) {
+			this.length = length;
+			hashCode = 1;
+			for (int i = 0; i < length; i++)
+				hashCode = 31 * hashCode + values[i];
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			if (hashCode != other.hashCode || length != other.length)
+				return false;
+
+			for (int i = 0; i < length; i++) {
+				if (values[i] != other.values[i])
+					return false;
+			}
+
+			return true;
+		}
+	}
+
+}
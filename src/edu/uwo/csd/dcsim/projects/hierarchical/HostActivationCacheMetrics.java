@@ -0,0 +1,63 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import edu.uwo.csd.dcsim.common.Tuple;
+import edu.uwo.csd.dcsim.common.Utility;
+import edu.uwo.csd.dcsim.core.Simulation;
+import edu.uwo.csd.dcsim.core.metrics.MetricCollection;
+
+/**
+ * Hit and miss counts of the Host activations cache (see HostActivationCache) of a simulation.
+ *
+ * The cache is created along with the simulation's pool managers, so its counters are read as is.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class HostActivationCacheMetrics extends MetricCollection {
+
+	private final HostActivationCache cache;
+
+	public HostActivationCacheMetrics(Simulation simulation, HostActivationCache cache) {
+		super(simulation);
+
+		this.cache = cache;
+	}
+
+	@Override
+	public void completeSimulation() {
+		// Nothing to do -- the counters are read from the cache.
+	}
+
+	public double getHitRate() {
+		long lookups = cache.getHits() + cache.getMisses();
+		if (lookups == 0)
+			return 0;
+
+		return cache.getHits() / (double) lookups;
+	}
+
+	@Override
+	public void printDefault(Logger out) {
+		out.info("-- HOST ACTIVATIONS CACHE --");
+		out.info("   hits: " + cache.getHits());
+		out.info("   misses: " + cache.getMisses());
+		out.info("   hit rate: " + Utility.roundDouble(Utility.toPercentage(this.getHitRate()), Simulation.getMetricPrecision()) + "%");
+	}
+
+	@Override
+	public List<Tuple<String, Object>> getMetricValues() {
+		List<Tuple<String, Object>> metrics = new ArrayList<Tuple<String, Object>>();
+
+		metrics.add(new Tuple<String, Object>("activationCacheHits", cache.getHits()));
+		metrics.add(new Tuple<String, Object>("activationCacheMisses", cache.getMisses()));
+		metrics.add(new Tuple<String, Object>("activationCacheHitRate", Utility.roundDouble(Utility.toPercentage(this.getHitRate()), Simulation.getMetricPrecision())));
+
+		return metrics;
+	}
+
+}
@@ -6,8 +6,9 @@ import edu.uwo.csd.dcsim.management.VmStatus;
 
 public class MigRequestEntry {
 
-	// Entry ID: the tuple < origin , application > or < origin , vm > is used to identify an entry.
+	// Entry ID: the tuple < origin , request ID > is used to identify an entry.
 	private AutonomicManager origin;				// Manager of the Rack requesting the migration.
+	private long requestId;						// ID given to the request by the origin (see MigRequestRecord.nextRequestId).
 	private AppStatus application;					// Application to migrate.
 	private VmStatus vm;							// VM to migrate.
 	
@@ -19,37 +20,44 @@ public class MigRequestEntry {
 	// timestamp ?
 	// attempts ?
 	
-	public MigRequestEntry(AppStatus application, AutonomicManager origin) {
+	public MigRequestEntry(AppStatus application, AutonomicManager origin, long requestId) {
 		this.application = application;
 		this.origin = origin;
+		this.requestId = requestId;
 	}
 	
-	public MigRequestEntry(AppStatus application, AutonomicManager origin, int sender) {
+	public MigRequestEntry(AppStatus application, AutonomicManager origin, long requestId, int sender) {
 		this.application = application;
 		this.origin = origin;
+		this.requestId = requestId;
 		this.sender = sender;
 	}
 	
-	public MigRequestEntry(VmStatus vm, AutonomicManager origin) {
+	public MigRequestEntry(VmStatus vm, AutonomicManager origin, long requestId) {
 		this.vm = vm;
 		this.origin = origin;
+		this.requestId = requestId;
 	}
 	
 	@Deprecated
-	public MigRequestEntry(VmStatus vm, AutonomicManager origin, HostData host) {
+	public MigRequestEntry(VmStatus vm, AutonomicManager origin, long requestId, HostData host) {
 		this.vm = vm;
 		this.origin = origin;
+		this.requestId = requestId;
 		this.host = host;
 	}
 	
-	public MigRequestEntry(VmStatus vm, AutonomicManager origin, int sender) {
+	public MigRequestEntry(VmStatus vm, AutonomicManager origin, long requestId, int sender) {
 		this.vm = vm;
 		this.origin = origin;
+		this.requestId = requestId;
 		this.sender = sender;
 	}
 	
 	public AutonomicManager getOrigin() { return origin; }
 	
+	public long getRequestId() { return requestId; }
+	
 	public AppStatus getApplication() { return application; }
 	
 	public VmStatus getVm() { return vm; }
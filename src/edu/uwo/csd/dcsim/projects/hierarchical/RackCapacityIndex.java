@@ -0,0 +1,260 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * Index of the Racks in a Cluster by spare capacity, used to select target Racks without
+ * scanning all the Racks in the Cluster.
+ *
+ * Only Racks with a valid status are indexed. Each Rack is indexed by:
+ *
+ * + the largest VM flavour with a non-empty bucket in its status vector (i.e., the largest
+ *   VM flavour that one of its active Hosts can take); and
+ * + its number of inactive (suspended or powered off) Hosts.
+ *
+ * For every VM flavour F, the index keeps the set of Racks that have an active Host able to
+ * take F, sorted from most to least loaded (i.e., by decreasing number of active Hosts). It
+ * also keeps the sets of Racks with inactive Hosts, with suspended Hosts and with powered off
+ * Hosts, each sorted from most to least loaded (i.e., by increasing number of inactive Hosts).
+ * Updating a Rack costs O(F log n) and queries cost O(log n).
+ *
+ * The index is maintained by RackPoolManager, which updates it whenever a Rack's status
+ * changes or is invalidated.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class RackCapacityIndex {
+
+	private static final int NOT_INDEXED = -2;
+	private static final int NO_FLAVOUR = -1;
+
+	private Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+	// capable[f] contains the Racks whose largest spare capacity bucket is f or larger.
+	@SuppressWarnings("unchecked")
+	private TreeSet<Entry>[] capable = new TreeSet[RackStatusVector.N_FLAVOURS];
+	private TreeSet<Entry> withInactiveHosts = new TreeSet<Entry>(MOST_INACTIVE_HOSTS_LOADED);
+	private TreeSet<Entry> withSuspendedHosts = new TreeSet<Entry>(MOST_INACTIVE_HOSTS_LOADED);
+	private TreeSet<Entry> withPoweredOffHosts = new TreeSet<Entry>(MOST_INACTIVE_HOSTS_LOADED);
+
+	public RackCapacityIndex() {
+		for (int i = 0; i < capable.length; i++) {
+			capable[i] = new TreeSet<Entry>(MOST_ACTIVE_HOSTS_LOADED);
+		}
+	}
+
+	/**
+	 * Re-indexes the given Rack based on its current status.
+	 */
+	public void update(RackData rack) {
+		Entry entry = entries.get(rack.getId());
+		if (null == entry) {
+			entry = new Entry(rack);
+			entries.put(rack.getId(), entry);
+		}
+
+		this.unindex(entry);
+
+		if (!rack.isStatusValid())
+			return;
+
+		RackStatusVector statusVector = rack.getCurrentStatus().getStatusVector();
+		entry.activeHosts = statusVector.vector[statusVector.iActive];
+		entry.suspendedHosts = statusVector.vector[statusVector.iSuspended];
+		entry.poweredOffHosts = statusVector.vector[statusVector.iPoweredOff];
+		entry.largestFlavour = NO_FLAVOUR;
+		for (int i = RackStatusVector.N_FLAVOURS - 1; i >= 0; i--) {
+			if (statusVector.vector[statusVector.iVmVector + i] > 0) {
+				entry.largestFlavour = i;
+				break;
+			}
+		}
+
+		for (int i = 0; i <= entry.largestFlavour; i++) {
+			capable[i].add(entry);
+		}
+		if (entry.suspendedHosts + entry.poweredOffHosts > 0)
+			withInactiveHosts.add(entry);
+		if (entry.suspendedHosts > 0)
+			withSuspendedHosts.add(entry);
+		if (entry.poweredOffHosts > 0)
+			withPoweredOffHosts.add(entry);
+	}
+
+	/**
+	 * Removes the given Rack from the index.
+	 */
+	public void remove(RackData rack) {
+		Entry entry = entries.remove(rack.getId());
+		if (null != entry)
+			this.unindex(entry);
+	}
+
+	private void unindex(Entry entry) {
+		if (NOT_INDEXED == entry.largestFlavour)
+			return;
+
+		for (int i = 0; i <= entry.largestFlavour; i++) {
+			capable[i].remove(entry);
+		}
+		if (entry.suspendedHosts + entry.poweredOffHosts > 0)
+			withInactiveHosts.remove(entry);
+		if (entry.suspendedHosts > 0)
+			withSuspendedHosts.remove(entry);
+		if (entry.poweredOffHosts > 0)
+			withPoweredOffHosts.remove(entry);
+
+		entry.largestFlavour = NOT_INDEXED;
+	}
+
+	/**
+	 * Returns the most loaded Rack (i.e., with the most active Hosts) that has an active Host
+	 * able to take the given VM flavour, or NULL if there is no such Rack.
+	 */
+	public RackData getMostLoadedCapableRack(int flavour) {
+		if (flavour < 0)
+			flavour = 0;
+		if (flavour >= capable.length || capable[flavour].isEmpty())
+			return null;
+
+		return capable[flavour].first().rack;
+	}
+
+	/**
+	 * Returns the Racks that have an active Host able to take the given VM flavour, from most
+	 * to least loaded (i.e., by decreasing number of active Hosts).
+	 */
+	public Iterable<RackData> getCapableRacks(int flavour) {
+		if (flavour < 0)
+			flavour = 0;
+		if (flavour >= capable.length)
+			return new RackIterable(new TreeSet<Entry>(MOST_ACTIVE_HOSTS_LOADED));
+
+		return new RackIterable(capable[flavour]);
+	}
+
+	/**
+	 * Returns the Rack whose least loaded active Host has the most spare capacity (measured
+	 * as the largest VM flavour it can take), or NULL if no Rack has an active Host with spare
+	 * capacity. Among equals, the most loaded Rack is returned.
+	 */
+	public RackData getMaxSpareCapacityRack() {
+		for (int i = capable.length - 1; i >= 0; i--) {
+			if (!capable[i].isEmpty())
+				return capable[i].first().rack;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the Racks that have at least one inactive (suspended or powered off) Host, from
+	 * most to least loaded (i.e., by increasing number of inactive Hosts).
+	 */
+	public Iterable<RackData> getRacksWithInactiveHosts() {
+		return new RackIterable(withInactiveHosts);
+	}
+
+	/**
+	 * Returns the most loaded Rack (i.e., with the fewest inactive Hosts) that has at least one
+	 * suspended Host, or NULL if there is no such Rack.
+	 */
+	public RackData getMostLoadedRackWithSuspendedHosts() {
+		if (withSuspendedHosts.isEmpty())
+			return null;
+
+		return withSuspendedHosts.first().rack;
+	}
+
+	/**
+	 * Returns the most loaded Rack (i.e., with the fewest inactive Hosts) that has at least one
+	 * powered off Host, or NULL if there is no such Rack.
+	 */
+	public RackData getMostLoadedRackWithPoweredOffHosts() {
+		if (withPoweredOffHosts.isEmpty())
+			return null;
+
+		return withPoweredOffHosts.first().rack;
+	}
+
+	/**
+	 * Sorts entries by decreasing number of active Hosts, and then by Rack ID.
+	 */
+	private static final Comparator<Entry> MOST_ACTIVE_HOSTS_LOADED = new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			if (o1.activeHosts != o2.activeHosts)
+				return o1.activeHosts > o2.activeHosts ? -1 : 1;
+			return o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Sorts entries by increasing number of inactive Hosts, and then by Rack ID.
+	 */
+	private static final Comparator<Entry> MOST_INACTIVE_HOSTS_LOADED = new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			int inactive1 = o1.suspendedHosts + o1.poweredOffHosts;
+			int inactive2 = o2.suspendedHosts + o2.poweredOffHosts;
+			if (inactive1 != inactive2)
+				return inactive1 < inactive2 ? -1 : 1;
+			return o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Indexed values of a Rack. The values are only modified while the entry is not indexed.
+	 */
+	private static class Entry {
+
+		private final RackData rack;
+		private final int id;
+		private int activeHosts = 0;
+		private int suspendedHosts = 0;
+		private int poweredOffHosts = 0;
+		private int largestFlavour = NOT_INDEXED;
+
+		public Entry(RackData rack) {
+			this.rack = rack;
+			id = rack.getId();
+		}
+	}
+
+	/**
+	 * Read-only iteration over the Racks in a set of entries.
+	 */
+	private static class RackIterable implements Iterable<RackData> {
+
+		private final TreeSet<Entry> set;
+
+		public RackIterable(TreeSet<Entry> set) {
+			this.set = set;
+		}
+
+		@Override
+		public Iterator<RackData> iterator() {
+			final Iterator<Entry> iterator = set.iterator();
+			return new Iterator<RackData>() {
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				public RackData next() {
+					if (!iterator.hasNext())
+						throw new NoSuchElementException();
+					return iterator.next().rack;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+}
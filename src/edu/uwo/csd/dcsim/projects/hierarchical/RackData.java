@@ -1,6 +1,9 @@
 package edu.uwo.csd.dcsim.projects.hierarchical;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import edu.uwo.csd.dcsim.common.HashCodeUtil;
 import edu.uwo.csd.dcsim.host.Rack;
@@ -8,6 +11,7 @@ import edu.uwo.csd.dcsim.host.Resources;
 import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.HostDescription;
 import edu.uwo.csd.dcsim.management.VmStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackPoolManager;
 import edu.uwo.csd.dcsim.vm.VmAllocationRequest;
 
 public class RackData {
@@ -15,6 +19,7 @@ public class RackData {
 	private Rack rack;
 	private AutonomicManager rackManager;
 	private RackDescription rackDescription;
+	private RackPoolManager rackPool = null;		// Pool to notify of status changes, if any.
 	
 	private RackStatus currentStatus = null;
 //	private RackStatus sandboxStatus = null; //this is a RackStatus variable that can be freely modified for use in policies
@@ -23,7 +28,7 @@ public class RackData {
 	
 	private boolean active = false;
 	
-	private ArrayList<RackStatus> history = new ArrayList<RackStatus>();
+	private StatusHistory<RackStatus> history = new StatusHistory<RackStatus>(1);
 	
 	private final int hashCode;
 	
@@ -40,6 +45,12 @@ public class RackData {
 		hashCode = generateHashCode();
 	}
 	
+	public RackData(Rack rack, AutonomicManager rackManager, RackPoolManager rackPool) {
+		this(rack, rackManager);
+		
+		this.rackPool = rackPool;
+	}
+	
 	public void addRackStatus(RackStatus rackStatus, int historyWindowSize) {
 		currentStatus = rackStatus;
 		
@@ -59,10 +70,10 @@ public class RackData {
 			statusValid = true; // If status had been invalidated, we now know it is correct.
 		}
 		
-		history.add(0, rackStatus);
-		if (history.size() > historyWindowSize) {
-			history.remove(history.size() - 1);
-		}
+		history.push(rackStatus, historyWindowSize);
+		
+		if (null != rackPool)
+			rackPool.rackStatusChanged(this);
 	}
 	
 	/**
@@ -70,216 +81,231 @@ public class RackData {
 	 * considering the Rack's max spare capacity and number of suspended and powered off Hosts.
 	 */
 	public static boolean canHost(AppStatus application, RackStatusVector currentStatus, RackDescription rackDescription) {
-		return RackData.canHost(new AppResources(application), currentStatus, rackDescription);
+		return RackData.canHost(new AppResources(application), currentStatus, rackDescription, null);
 	}
 	
 	public static boolean canHost(ConstrainedAppAllocationRequest request, RackStatusVector currentStatus, RackDescription rackDescription) {
-		return RackData.canHost(new AppResources(request), currentStatus, rackDescription);
+		return RackData.canHost(new AppResources(request), currentStatus, rackDescription, null);
 	}
 	
 	public static boolean canHost(VmStatus vm, RackStatusVector currentStatus, RackDescription rackDescription) {
-		return RackData.canHost(new AppResources(vm), currentStatus, rackDescription);
+		return RackData.canHost(new AppResources(vm), currentStatus, rackDescription, null);
+	}
+	
+	/**
+	 * Same as canHost(), but looking up and storing the underlying Host activations calculation 
+	 * in the given cache.
+	 */
+	public static boolean canHost(AppStatus application, RackStatusVector currentStatus, RackDescription rackDescription, HostActivationCache activationCache) {
+		return RackData.canHost(new AppResources(application), currentStatus, rackDescription, activationCache);
 	}
 	
-	private static boolean canHost(AppResources application, RackStatusVector currentStatus, RackDescription rackDescription) {
-		if (RackData.calculateMinHostActivations(application, currentStatus, rackDescription.getHostDescription()) >= 0)
+	public static boolean canHost(ConstrainedAppAllocationRequest request, RackStatusVector currentStatus, RackDescription rackDescription, HostActivationCache activationCache) {
+		return RackData.canHost(new AppResources(request), currentStatus, rackDescription, activationCache);
+	}
+	
+	public static boolean canHost(VmStatus vm, RackStatusVector currentStatus, RackDescription rackDescription, HostActivationCache activationCache) {
+		return RackData.canHost(new AppResources(vm), currentStatus, rackDescription, activationCache);
+	}
+	
+	private static boolean canHost(AppResources application, RackStatusVector currentStatus, RackDescription rackDescription, HostActivationCache activationCache) {
+		if (RackData.calculateMinHostActivations(application, currentStatus, rackDescription.getHostDescription(), activationCache) >= 0)
 			return true;
 		
 		return false;
 	}
 	
 	public static int calculateMinHostActivations(AppStatus application, RackStatusVector currentStatus, HostDescription hostDescription) {
-		return RackData.calculateMinHostActivations(new AppResources(application), currentStatus, hostDescription);
+		return RackData.calculateMinHostActivations(new AppResources(application), currentStatus, hostDescription, null);
 	}
 	
 	public static int calculateMinHostActivations(ConstrainedAppAllocationRequest request, RackStatusVector currentStatus, HostDescription hostDescription) {
-		return RackData.calculateMinHostActivations(new AppResources(request), currentStatus, hostDescription);
+		return RackData.calculateMinHostActivations(new AppResources(request), currentStatus, hostDescription, null);
 	}
 	
 	public static int calculateMinHostActivations(VmStatus vm, RackStatusVector currentStatus, HostDescription hostDescription) {
-		return RackData.calculateMinHostActivations(new AppResources(vm), currentStatus, hostDescription);
+		return RackData.calculateMinHostActivations(new AppResources(vm), currentStatus, hostDescription, null);
+	}
+	
+	/**
+	 * Same as calculateMinHostActivations(), but looking up and storing the result in the given cache.
+	 */
+	public static int calculateMinHostActivations(AppStatus application, RackStatusVector currentStatus, HostDescription hostDescription, HostActivationCache activationCache) {
+		return RackData.calculateMinHostActivations(new AppResources(application), currentStatus, hostDescription, activationCache);
+	}
+	
+	public static int calculateMinHostActivations(ConstrainedAppAllocationRequest request, RackStatusVector currentStatus, HostDescription hostDescription, HostActivationCache activationCache) {
+		return RackData.calculateMinHostActivations(new AppResources(request), currentStatus, hostDescription, activationCache);
+	}
+	
+	public static int calculateMinHostActivations(VmStatus vm, RackStatusVector currentStatus, HostDescription hostDescription, HostActivationCache activationCache) {
+		return RackData.calculateMinHostActivations(new AppResources(vm), currentStatus, hostDescription, activationCache);
+	}
+	
+	/**
+	 * Returns the smallest VM flavour that an active Host must be able to take for the application 
+	 * to be placed in a Rack without activating any Hosts, or RackStatusVector.N_FLAVOURS if the 
+	 * application cannot be placed in active Hosts only.
+	 */
+	public static int calculateRequiredFlavour(ConstrainedAppAllocationRequest request) {
+		return RackData.calculateRequiredFlavour(new AppResources(request));
+	}
+	
+	public static int calculateRequiredFlavour(AppStatus application) {
+		return RackData.calculateRequiredFlavour(new AppResources(application));
+	}
+	
+	public static int calculateRequiredFlavour(VmStatus vm) {
+		return RackData.calculateRequiredFlavour(new AppResources(vm));
+	}
+	
+	private static int calculateRequiredFlavour(AppResources application) {
+		int flavour = 0;
+		for (int[] demands : new int[][] {application.getAffinityVms(), application.getAntiAffinityVms(), application.getIndependentVms()}) {
+			for (int offset = 0; offset < demands.length; offset += RackStatusVector.RESOURCE_DIMENSIONS) {
+				flavour = Math.max(flavour, RackStatusVector.findSmallestCoveringFlavour(demands, offset));
+			}
+		}
+		
+		return flavour;
+	}
+	
+	/**
+	 * Returns the given requests sorted in the order in which they are to be bin-packed in a 
+	 * batch: largest first. Requests are compared by the largest unit that must be placed in a
+	 * single Host -- affinity sets count as one unit, with the combined size of their VMs -- 
+	 * then by total CPU demand, and then by ID.
+	 */
+	public static ArrayList<ConstrainedAppAllocationRequest> sortLargestFirst(Collection<ConstrainedAppAllocationRequest> requests) {
+		ArrayList<PlacementOrder> keys = new ArrayList<PlacementOrder>(requests.size());
+		for (ConstrainedAppAllocationRequest request : requests) {
+			keys.add(new PlacementOrder(request));
+		}
+		Collections.sort(keys);
+		
+		ArrayList<ConstrainedAppAllocationRequest> sorted = new ArrayList<ConstrainedAppAllocationRequest>(keys.size());
+		for (PlacementOrder key : keys) {
+			sorted.add(key.request);
+		}
+		
+		return sorted;
 	}
 	
 	/**
 	 * Verifies whether the given Rack can meet the resource requirements of the application,
 	 * based on the Rack's status vector.
+	 * 
+	 * The status vector is probed in place and restored before returning, so no copy of the 
+	 * vector is made. If a cache is given, the result is looked up and stored there.
 	 */
-	private static int calculateMinHostActivations(AppResources application, RackStatusVector currentStatus, HostDescription hostDescription) {
+	private static int calculateMinHostActivations(AppResources application, RackStatusVector statusVector, HostDescription hostDescription, HostActivationCache activationCache) {
+		
+		// The result only depends on the status vector, the Hosts' capacity and the application's demands.
+		int keyLength = 0;
+		if (null != activationCache) {
+			keyLength = application.buildKey(statusVector, hostDescription.getResourceCapacity(), activationCache);
+			Integer cached = activationCache.get(keyLength);
+			if (null != cached)
+				return cached;
+		}
+		
+		int hostActivations;
+		statusVector.mark();
+		try {
+			hostActivations = RackData.allocate(application, statusVector, hostDescription);
+		}
+		finally {
+			statusVector.rollback();
+		}
+		
+		if (null != activationCache)
+			activationCache.put(keyLength, hostActivations);
+		
+		return hostActivations;
+	}
+	
+	/**
+	 * Reserves the resources required by the application in the given status vector, which 
+	 * is updated in place -- used to bin-pack several applications against the same (sandbox)
+	 * vector. Returns the number of Hosts that had to be activated, or -1 if the application 
+	 * does not fit, in which case the vector is left untouched.
+	 * 
+	 * Note: The vector's mark is overwritten.
+	 */
+	public static int reserve(ConstrainedAppAllocationRequest request, RackStatusVector statusVector, HostDescription hostDescription) {
+		statusVector.mark();
+		int hostActivations = RackData.allocate(new AppResources(request), statusVector, hostDescription);
+		if (hostActivations < 0)
+			statusVector.rollback();
+		
+		return hostActivations;
+	}
+	
+	/**
+	 * Reserves the resources required by the application in the given status vector. Returns 
+	 * the number of Hosts that had to be activated, or -1 if the application does not fit, in 
+	 * which case the vector is left in an undefined state (the caller is expected to restore it).
+	 */
+	private static int allocate(AppResources application, RackStatusVector statusVector, HostDescription hostDescription) {
 		int failed = -1;
 		
 		// TODO: THIS METHOD DOES NOT CHECK THE HW CAPABILITIES OF THE RACK; THAT SHOULD BE DONE AT A HIGHER LEVEL.
 		// AT THIS STAGE, WE ASSUME THAT ANY REQUEST THAT COMES THIS WAY WOULD HAVE ITS HW NEEDS MET (I.E., CPU CORES & CORE CAPACITY).
 		
-		// Get Rack status vector.
-		RackStatusVector statusVector = currentStatus.copy();
+		Resources hostCapacity = hostDescription.getResourceCapacity();
+		int activeHosts = statusVector.vector[statusVector.iActive];
 		
 		// Affinity sets
-		for (ArrayList<Resources> affinitySet : application.getAffinityVms()) {
-			
-			// Calculate total resource needs of the VMs in the affinity set.
-			Resources totalReqResources = new Resources();
-			for (Resources vmSize : affinitySet) {
-				totalReqResources = totalReqResources.add(vmSize);
-			}
+		int[] affinityVms = application.getAffinityVms();
+		for (int offset = 0; offset < affinityVms.length; offset += RackStatusVector.RESOURCE_DIMENSIONS) {
 			
 			// Check if a currently active Host has enough spare capacity to host the set.
-			boolean found = false;
-			for (int i = statusVector.vmVector.length - 1; i >= 0; i--) {
+			if (!statusVector.tryReserveOnLargestActive(affinityVms, offset)) {
 				
-				if (statusVector.vector[statusVector.iVmVector + i] > 0) {
-					if (RackData.theresEnoughCapacity(totalReqResources, statusVector.vmVector[i])) {
-						found = true;
-						statusVector.vector[statusVector.iVmVector + i]--;
-						Resources reminder = statusVector.vmVector[i].subtract(totalReqResources);
-						RackData.updateSpareCapacityVector(statusVector, reminder, 1);
-						break;
-					}
-					else
-						break;		// Won't find a suitable active Host down the vector -- Hosts in lower positions have even less spare capacity.
-				}
-			}
-			
-			if (!found) {	// Activate a new Host.
-				if (statusVector.vector[statusVector.iSuspended] > 0 || statusVector.vector[statusVector.iPoweredOff] > 0) {
-					Resources hostCapacity = hostDescription.getResourceCapacity();
-					if (RackData.theresEnoughCapacity(totalReqResources, hostCapacity)) {
-						found = true;
-						if (statusVector.vector[statusVector.iSuspended] > 0)
-							statusVector.vector[statusVector.iSuspended]--;
-						else
-							statusVector.vector[statusVector.iPoweredOff]--;
-						statusVector.vector[statusVector.iActive]++;
-						Resources reminder = hostCapacity.subtract(totalReqResources);
-						RackData.updateSpareCapacityVector(statusVector, reminder, 1);
-					}
-					else
-						return failed;
-				}
-				else
+				// Activate a new Host.
+				if (statusVector.getInactiveHosts() == 0 || !RackStatusVector.capacityFits(hostCapacity, affinityVms, offset))
 					return failed;
+				statusVector.activateHosts(affinityVms, offset, 1, hostCapacity);
 			}
 		}
 		
 		// Anti-affinity sets
-		for (ArrayList<Resources> antiAffinitySet : application.getAntiAffinityVms()) {
+		int[] antiAffinityVms = application.getAntiAffinityVms();
+		int[] antiAffinitySizes = application.getAntiAffinitySizes();
+		for (int set = 0; set < antiAffinitySizes.length; set++) {
 			
 			// Note: All VMs in the set have equal size and MUST be placed in different Hosts each.
 			
 			// TODO: Is is true that all VMs in the set can be considered equal in terms of resource usage? Only if they are perfectly load balanced...
 			
-			if (antiAffinitySet.size() == 0)	// Checking that the set is not empty -- which should never occur, but...
-				continue;
-			Resources vmSize = antiAffinitySet.get(0);
-			int nVms = antiAffinitySet.size();
+			int offset = set * RackStatusVector.RESOURCE_DIMENSIONS;
 			
 			// Check if there are currently active Hosts with enough spare capacity to take the VMs.
-			for (int i = 0; i < statusVector.vmVector.length; i++) {
-				
-				if (statusVector.vector[statusVector.iVmVector + i] > 0 &&
-					RackData.theresEnoughCapacity(vmSize, statusVector.vmVector[i])) {
-					
-					int hosts = Math.min(nVms, statusVector.vector[statusVector.iVmVector + i]);
-					nVms -= hosts;
-					statusVector.vector[statusVector.iVmVector + i] -= hosts;
-					Resources reminder = statusVector.vmVector[i].subtract(vmSize);
-					RackData.updateSpareCapacityVector(statusVector, reminder, hosts);
-				}
-				
-				if (nVms == 0)	// All VMs were accounted for.
-					break;
-			}
+			int nVms = statusVector.tryReserveOnActive(antiAffinityVms, offset, antiAffinitySizes[set]);
 			
-			// If there are still VMs to account for, activate suspended Hosts.
-			if (nVms > 0 && statusVector.vector[statusVector.iSuspended] > 0) {
-				int hosts = Math.min(nVms, statusVector.vector[statusVector.iSuspended]);
-				nVms -= hosts;
-				statusVector.vector[statusVector.iSuspended] -= hosts;
-				statusVector.vector[statusVector.iActive] += hosts;
-				Resources reminder = hostDescription.getResourceCapacity().subtract(vmSize);
-				RackData.updateSpareCapacityVector(statusVector, reminder, hosts);
-			}
-			
-			// If there are still VMs to account for, activate powered-off Hosts.
-			if (nVms > 0 && statusVector.vector[statusVector.iPoweredOff] > 0) {
-				int hosts = Math.min(nVms, statusVector.vector[statusVector.iPoweredOff]);
-				nVms -= hosts;
-				statusVector.vector[statusVector.iPoweredOff] -= hosts;
-				statusVector.vector[statusVector.iActive] += hosts;
-				Resources reminder = hostDescription.getResourceCapacity().subtract(vmSize);
-				RackData.updateSpareCapacityVector(statusVector, reminder, hosts);
-			}
+			// If there are still VMs to account for, activate suspended Hosts, then powered-off Hosts.
+			if (nVms > 0)
+				nVms = statusVector.activateHosts(antiAffinityVms, offset, nVms, hostCapacity);
 			
 			if (nVms > 0)
 				return failed;
 		}
 		
 		// Independent set
-		for (Resources vmSize : application.getIndependentVms()) {
+		int[] independentVms = application.getIndependentVms();
+		for (int offset = 0; offset < independentVms.length; offset += RackStatusVector.RESOURCE_DIMENSIONS) {
 			
 			// Check if a currently active Host has enough spare capacity to take the VM.
-			boolean found = false;
-			for (int i = 0; i < statusVector.vmVector.length; i++) {
+			if (statusVector.tryReserveOnActive(independentVms, offset, 1) > 0) {
 				
-				if (statusVector.vector[statusVector.iVmVector + i] > 0 &&
-					RackData.theresEnoughCapacity(vmSize, statusVector.vmVector[i])) {
-					
-					found = true;
-					statusVector.vector[statusVector.iVmVector + i]--;
-					Resources reminder = statusVector.vmVector[i].subtract(vmSize);
-					RackData.updateSpareCapacityVector(statusVector, reminder, 1);
-					break;
-				}
-			}
-			
-			if (!found) {	// Activate a new Host.
-				if (statusVector.vector[statusVector.iSuspended] > 0 || statusVector.vector[statusVector.iPoweredOff] > 0) {
-					Resources hostCapacity = hostDescription.getResourceCapacity();
-					if (RackData.theresEnoughCapacity(vmSize, hostCapacity)) {
-						if (statusVector.vector[statusVector.iSuspended] > 0)
-							statusVector.vector[statusVector.iSuspended]--;
-						else
-							statusVector.vector[statusVector.iPoweredOff]--;
-						statusVector.vector[statusVector.iActive]++;
-						Resources reminder = hostCapacity.subtract(vmSize);
-						RackData.updateSpareCapacityVector(statusVector, reminder, 1);
-					}
-					else
-						return failed;
-				}
-				else
+				// Activate a new Host.
+				if (statusVector.getInactiveHosts() == 0 || !RackStatusVector.capacityFits(hostCapacity, independentVms, offset))
 					return failed;
+				statusVector.activateHosts(independentVms, offset, 1, hostCapacity);
 			}
 		}
 		
-		return statusVector.vector[statusVector.iActive] - currentStatus.vector[currentStatus.iActive];
-	}
-	
-	private static void updateSpareCapacityVector(RackStatusVector statusVector, Resources reminder, int count) {
-		
-
-		// TODO: Shouldn't this method belong in RackStatusVector class ??
-		
-		
-		for (int i = statusVector.vmVector.length - 1; i >= 0; i--) {
-			if (theresEnoughCapacity(statusVector.vmVector[i], reminder)) {
-				statusVector.vector[statusVector.iVmVector + i] += count;
-				break;
-			}
-		}
-	}
-	
-	private static boolean theresEnoughCapacity(Resources requiredResources, Resources availableResources) {
-		// Check available resources.
-		if (availableResources.getCpu() < requiredResources.getCpu())
-			return false;
-		if (availableResources.getMemory() < requiredResources.getMemory())
-			return false;
-		if (availableResources.getBandwidth() < requiredResources.getBandwidth())
-			return false;
-		if (availableResources.getStorage() < requiredResources.getStorage())
-			return false;
-		
-		return true;
+		return statusVector.vector[statusVector.iActive] - activeHosts;
 	}
 	
 	public boolean isStatusValid() {
@@ -289,6 +315,9 @@ public class RackData {
 	public void invalidateStatus(long time) {
 		statusValid = false;
 		invalidationTime = time;
+		
+		if (null != rackPool)
+			rackPool.rackStatusChanged(this);
 	}
 	
 	public boolean isRackActive() {
@@ -315,14 +344,34 @@ public class RackData {
 		return rackDescription;
 	}
 	
+	/**
+	 * Returns the current status of the Rack. The status is a snapshot shared with other 
+	 * readers and MUST NOT be modified; use copyCurrentStatus() to obtain a modifiable copy.
+	 */
 	public RackStatus getCurrentStatus() {
-		// Return a copy of the status to ensure that it is read-only.
+		return currentStatus;
+	}
+	
+	/**
+	 * Returns a copy of the current status, which can be freely modified.
+	 */
+	public RackStatus copyCurrentStatus() {
 		return currentStatus.copy();
 	}
 	
-	public ArrayList<RackStatus> getHistory() {
-		// Return a copy of the history to ensure that it is read-only.
-		ArrayList<RackStatus> historyCopy = new ArrayList<RackStatus>();
+	/**
+	 * Returns a read-only view of the status history, from newest to oldest. The statuses 
+	 * MUST NOT be modified; use copyHistory() to obtain modifiable copies.
+	 */
+	public List<RackStatus> getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Returns a copy of the status history, from newest to oldest, which can be freely modified.
+	 */
+	public ArrayList<RackStatus> copyHistory() {
+		ArrayList<RackStatus> historyCopy = new ArrayList<RackStatus>(history.size());
 		for (RackStatus status : history) {
 			historyCopy.add(status.copy());
 		}
@@ -340,71 +389,179 @@ public class RackData {
 		return result;
 	}
 	
+	/**
+	 * Sort key of a request in a batch placement (see sortLargestFirst()).
+	 */
+	private static class PlacementOrder implements Comparable<PlacementOrder> {
+		
+		private final ConstrainedAppAllocationRequest request;
+		private final int requiredFlavour;
+		private final long totalCpu;
+		
+		public PlacementOrder(ConstrainedAppAllocationRequest request) {
+			this.request = request;
+			
+			requiredFlavour = RackData.calculateRequiredFlavour(new AppResources(request));
+			
+			long cpu = 0;
+			for (VmAllocationRequest vm : request.getAllVmAllocationRequests()) {
+				cpu += vm.getCpu();
+			}
+			totalCpu = cpu;
+		}
+		
+		@Override
+		public int compareTo(PlacementOrder o) {
+			if (requiredFlavour != o.requiredFlavour)
+				return requiredFlavour > o.requiredFlavour ? -1 : 1;
+			if (totalCpu != o.totalCpu)
+				return totalCpu > o.totalCpu ? -1 : 1;
+			return request.getId() < o.request.getId() ? -1 : (request.getId() == o.request.getId() ? 0 : 1);
+		}
+	}
+	
+	/**
+	 * Resource demands of an application (or single VM), packed as consecutive 
+	 * [cpu, memory, bandwidth, storage] entries (see RackStatusVector).
+	 * 
+	 * Affinity sets are stored as the total resource needs of the VMs in the set. Anti-affinity 
+	 * sets are stored as the size of a single VM in the set, along with the number of VMs in it.
+	 */
 	private static class AppResources {
 		
-		private ArrayList<Resources> independentVms = new ArrayList<Resources>();
-		private ArrayList<ArrayList<Resources>> antiAffinityVms = new ArrayList<ArrayList<Resources>>();
-		private ArrayList<ArrayList<Resources>> affinityVms = new ArrayList<ArrayList<Resources>>();
+		private int[] independentVms;
+		private int[] antiAffinityVms;
+		private int[] antiAffinitySizes;
+		private int[] affinityVms;
 		
 		public AppResources(AppStatus application) {
 			
-			for (VmStatus vm : application.getIndependentVms()) {
-				independentVms.add(vm.getResourcesInUse());
+			ArrayList<VmStatus> independentSet = application.getIndependentVms();
+			independentVms = new int[independentSet.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			for (int i = 0; i < independentSet.size(); i++) {
+				pack(independentSet.get(i).getResourcesInUse(), independentVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
 			}
 			
-			for (ArrayList<VmStatus> antiAffinitySet : application.getAntiAffinityVms()) {
-				ArrayList<Resources> vms = new ArrayList<Resources>();
-				for (VmStatus vm : antiAffinitySet) {
-					vms.add(vm.getResourcesInUse());
-				}
-				antiAffinityVms.add(vms);
+			ArrayList<ArrayList<VmStatus>> antiAffinitySets = nonEmpty(application.getAntiAffinityVms());
+			antiAffinityVms = new int[antiAffinitySets.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			antiAffinitySizes = new int[antiAffinitySets.size()];
+			for (int i = 0; i < antiAffinitySets.size(); i++) {
+				pack(antiAffinitySets.get(i).get(0).getResourcesInUse(), antiAffinityVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
+				antiAffinitySizes[i] = antiAffinitySets.get(i).size();
 			}
 			
-			for (ArrayList<VmStatus> affinitySet : application.getAntiAffinityVms()) {
-				ArrayList<Resources> vms = new ArrayList<Resources>();
-				for (VmStatus vm : affinitySet) {
-					vms.add(vm.getResourcesInUse());
+			ArrayList<ArrayList<VmStatus>> affinitySets = nonEmpty(application.getAffinityVms());
+			affinityVms = new int[affinitySets.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			for (int i = 0; i < affinitySets.size(); i++) {
+				for (VmStatus vm : affinitySets.get(i)) {
+					accumulate(vm.getResourcesInUse(), affinityVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
 				}
-				affinityVms.add(vms);
 			}
 		}
 		
 		public AppResources(ConstrainedAppAllocationRequest application) {
 			
-			for (VmAllocationRequest vm : application.getIndependentVms()) {
-				independentVms.add(vm.getResources());
+			ArrayList<VmAllocationRequest> independentSet = application.getIndependentVms();
+			independentVms = new int[independentSet.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			for (int i = 0; i < independentSet.size(); i++) {
+				pack(independentSet.get(i).getResources(), independentVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
 			}
 			
-			for (ArrayList<VmAllocationRequest> antiAffinitySet : application.getAntiAffinityVms()) {
-				ArrayList<Resources> vms = new ArrayList<Resources>();
-				for (VmAllocationRequest vm : antiAffinitySet) {
-					vms.add(vm.getResources());
-				}
-				antiAffinityVms.add(vms);
+			ArrayList<ArrayList<VmAllocationRequest>> antiAffinitySets = nonEmpty(application.getAntiAffinityVms());
+			antiAffinityVms = new int[antiAffinitySets.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			antiAffinitySizes = new int[antiAffinitySets.size()];
+			for (int i = 0; i < antiAffinitySets.size(); i++) {
+				pack(antiAffinitySets.get(i).get(0).getResources(), antiAffinityVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
+				antiAffinitySizes[i] = antiAffinitySets.get(i).size();
 			}
 			
-			for (ArrayList<VmAllocationRequest> affinitySet : application.getAntiAffinityVms()) {
-				ArrayList<Resources> vms = new ArrayList<Resources>();
-				for (VmAllocationRequest vm : affinitySet) {
-					vms.add(vm.getResources());
+			ArrayList<ArrayList<VmAllocationRequest>> affinitySets = nonEmpty(application.getAffinityVms());
+			affinityVms = new int[affinitySets.size() * RackStatusVector.RESOURCE_DIMENSIONS];
+			for (int i = 0; i < affinitySets.size(); i++) {
+				for (VmAllocationRequest vm : affinitySets.get(i)) {
+					accumulate(vm.getResources(), affinityVms, i * RackStatusVector.RESOURCE_DIMENSIONS);
 				}
-				affinityVms.add(vms);
 			}
 		}
 		
 		public AppResources(VmStatus vm) {
-			independentVms.add(vm.getResourcesInUse());
+			independentVms = new int[RackStatusVector.RESOURCE_DIMENSIONS];
+			pack(vm.getResourcesInUse(), independentVms, 0);
+			antiAffinityVms = new int[0];
+			antiAffinitySizes = new int[0];
+			affinityVms = new int[0];
+		}
+		
+		private static void pack(Resources resources, int[] packed, int offset) {
+			packed[offset + RackStatusVector.CPU] = resources.getCpu();
+			packed[offset + RackStatusVector.MEMORY] = resources.getMemory();
+			packed[offset + RackStatusVector.BANDWIDTH] = resources.getBandwidth();
+			packed[offset + RackStatusVector.STORAGE] = resources.getStorage();
+		}
+		
+		private static void accumulate(Resources resources, int[] packed, int offset) {
+			packed[offset + RackStatusVector.CPU] += resources.getCpu();
+			packed[offset + RackStatusVector.MEMORY] += resources.getMemory();
+			packed[offset + RackStatusVector.BANDWIDTH] += resources.getBandwidth();
+			packed[offset + RackStatusVector.STORAGE] += resources.getStorage();
+		}
+		
+		private static <T> ArrayList<ArrayList<T>> nonEmpty(ArrayList<ArrayList<T>> sets) {
+			// Checking that the sets are not empty -- which should never occur, but...
+			ArrayList<ArrayList<T>> nonEmpty = new ArrayList<ArrayList<T>>(sets.size());
+			for (ArrayList<T> set : sets) {
+				if (set.size() > 0)
+					nonEmpty.add(set);
+			}
+			return nonEmpty;
 		}
 		
-		public ArrayList<Resources> getIndependentVms() {
+		/**
+		 * Builds, in the cache's key buffer, the key identifying a Host activations calculation 
+		 * for this application on the given status vector and Host capacity: the concatenation 
+		 * of the vector, the capacity and the application's packed demands (each array preceded 
+		 * by its length). Returns the length of the key.
+		 */
+		public int buildKey(RackStatusVector statusVector, Resources hostCapacity, HostActivationCache activationCache) {
+			int length = statusVector.vector.length + RackStatusVector.RESOURCE_DIMENSIONS + 4 +
+					affinityVms.length + antiAffinityVms.length + antiAffinitySizes.length + independentVms.length;
+			int[] key = activationCache.getKeyBuffer(length);
+			
+			int i = 0;
+			System.arraycopy(statusVector.vector, 0, key, i, statusVector.vector.length);
+			i += statusVector.vector.length;
+			key[i + RackStatusVector.CPU] = hostCapacity.getCpu();
+			key[i + RackStatusVector.MEMORY] = hostCapacity.getMemory();
+			key[i + RackStatusVector.BANDWIDTH] = hostCapacity.getBandwidth();
+			key[i + RackStatusVector.STORAGE] = hostCapacity.getStorage();
+			i += RackStatusVector.RESOURCE_DIMENSIONS;
+			i = appendKey(affinityVms, key, i);
+			i = appendKey(antiAffinityVms, key, i);
+			i = appendKey(antiAffinitySizes, key, i);
+			appendKey(independentVms, key, i);
+			
+			return length;
+		}
+		
+		private static int appendKey(int[] demands, int[] key, int offset) {
+			key[offset++] = demands.length;
+			System.arraycopy(demands, 0, key, offset, demands.length);
+			return offset + demands.length;
+		}
+		
+		public int[] getIndependentVms() {
 			return independentVms;
 		}
 		
-		public ArrayList<ArrayList<Resources>> getAntiAffinityVms() {
+		public int[] getAntiAffinityVms() {
 			return antiAffinityVms;
 		}
 		
-		public ArrayList<ArrayList<Resources>> getAffinityVms() {
+		public int[] getAntiAffinitySizes() {
+			return antiAffinitySizes;
+		}
+		
+		public int[] getAffinityVms() {
 			return affinityVms;
 		}
 	}
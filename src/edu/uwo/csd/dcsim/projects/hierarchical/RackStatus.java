@@ -3,9 +3,17 @@ package edu.uwo.csd.dcsim.projects.hierarchical;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.host.Rack;
 import edu.uwo.csd.dcsim.host.Rack.RackState;
+import edu.uwo.csd.dcsim.host.Resources;
 import edu.uwo.csd.dcsim.management.HostData;
+import edu.uwo.csd.dcsim.management.HostDescription;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
 
+/**
+ * Snapshot of a Rack's status. Once created, a RackStatus is shared by the RackData that 
+ * stores it and all its readers, and is not modified. Its status vector may only be probed 
+ * in place if it is restored afterwards (see RackStatusVector.mark() and rollback()); use 
+ * copy() to obtain a modifiable instance.
+ */
 public class RackStatus {
 
 	private long timeStamp;
@@ -44,15 +52,22 @@ public class RackStatus {
 					// Calculate spare capacity for each active Host.
 					// Check Host status. If invalid, we cannot make any assertions.
 					if (host.isStatusValid()) {
-						for (int i = statusVector.vmVector.length - 1; i >= 0; i--) {
-							
-							// TODO: canHost() checks space up to full Host capacity, being completely unaware of any target or stress thresholds. THIS IS A PROBLEM.
-							
-							if (HostData.canHost(statusVector.vmVector[i].getCores(), statusVector.vmVector[i].getCoreCapacity(), statusVector.vmVector[i], host.getCurrentStatus(), host.getHostDescription())) {
-								statusVector.vector[statusVector.iVmVector + i]++;
-								break;
-							}
-						}
+						
+						// TODO: canHost() checks space up to full Host capacity, being completely unaware of any target or stress thresholds. THIS IS A PROBLEM.
+						
+						// Find the largest VM flavour the Host can take -- same checks as HostData.canHost(), 
+						// but computing the Host's spare resources only once.
+						HostDescription hostDescription = host.getHostDescription();
+						Resources capacity = hostDescription.getResourceCapacity();
+						Resources inUse = host.getCurrentStatus().getResourcesInUse();
+						int flavour = RackStatusVector.findLargestFittingFlavour(capacity.getCpu() - inUse.getCpu(), 
+								capacity.getMemory() - inUse.getMemory(), 
+								capacity.getBandwidth() - inUse.getBandwidth(), 
+								capacity.getStorage() - inUse.getStorage(), 
+								hostDescription.getCpuCount() * hostDescription.getCoreCount(), 
+								hostDescription.getCoreCapacity());
+						if (flavour >= 0)
+							statusVector.vector[statusVector.iVmVector + flavour]++;
 					}
 					
 				}
@@ -73,6 +88,22 @@ public class RackStatus {
 		}
 	}
 	
+	/**
+	 * Creates a *complete* RackStatus instance from an already aggregated status vector and 
+	 * Host power consumption (see RackStatusAggregator). The status vector is copied.
+	 */
+	public RackStatus(Rack rack, RackStatusVector statusVector, double hostPowerConsumption, long timeStamp) {
+		this.timeStamp = timeStamp;
+		id = rack.getId();
+		state = rack.getState();
+		this.statusVector = statusVector.copy();
+		
+		// Add power consumption of the Rack's switches.
+		powerConsumption = hostPowerConsumption;
+		powerConsumption += rack.getDataNetworkSwitch().getPowerConsumption();
+		powerConsumption += rack.getMgmtNetworkSwitch().getPowerConsumption();
+	}
+	
 	public RackStatus(RackStatus status) {
 		timeStamp = status.timeStamp;
 		id = status.id;
@@ -123,7 +154,7 @@ public class RackStatus {
 	public double getMaxSpareCapacity() {
 		
 		for (int i = statusVector.vmVector.length - 1; i >= 0; i--) {
-			if (statusVector.vector[i] > 0)
+			if (statusVector.vector[statusVector.iVmVector + i] > 0)
 				return StandardVmSizes.calculateSpareCapacity(statusVector.vmVector[i]);
 		}
 		
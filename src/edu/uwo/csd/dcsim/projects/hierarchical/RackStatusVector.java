@@ -5,32 +5,276 @@ import java.util.Arrays;
 import edu.uwo.csd.dcsim.host.Resources;
 
 /**
+ * Spare capacity vector of a Rack: number of active, suspended and powered-off Hosts, plus
+ * the number of active Hosts whose spare capacity is best described by each VM flavour.
+ *
+ * The VM flavours are kept in static, shared tables -- both as Resources objects and as
+ * packed primitive arrays -- so that building, copying and probing vectors does not
+ * allocate. Resource demands are expressed as packed int arrays of RESOURCE_DIMENSIONS
+ * values each: [cpu, memory, bandwidth, storage].
+ *
+ * Capacity probes can be run directly on a vector by calling mark(), any number of
+ * tryReserve*() / activateHosts() operations, and rollback() to restore the vector.
+ *
  * @author Gaston Keller
  *
  */
 public class RackStatusVector {
 
-	public final Resources[] vmVector = {VmFlavours.xtiny(), VmFlavours.tiny(), VmFlavours.small(), VmFlavours.medium(), VmFlavours.large(), VmFlavours.xlarge()};
-	public int[] vector = new int[3 + vmVector.length];	// spare capacity vector: [active, suspended, poweredOff] + vmVector
+	public static final Resources[] VM_FLAVOURS = {VmFlavours.xtiny(), VmFlavours.tiny(), VmFlavours.small(), VmFlavours.medium(), VmFlavours.large(), VmFlavours.xlarge()};
+	public static final int N_FLAVOURS = VM_FLAVOURS.length;
+
+	// Packed resource demands: [cpu, memory, bandwidth, storage].
+	public static final int RESOURCE_DIMENSIONS = 4;
+	public static final int CPU = 0;
+	public static final int MEMORY = 1;
+	public static final int BANDWIDTH = 2;
+	public static final int STORAGE = 3;
+
+	// VM flavours packed as consecutive [cpu, memory, bandwidth, storage] entries.
+	private static final int[] FLAVOUR_RESOURCES = new int[N_FLAVOURS * RESOURCE_DIMENSIONS];
+	private static final int[] FLAVOUR_CORES = new int[N_FLAVOURS];
+	private static final int[] FLAVOUR_CORE_CAPACITY = new int[N_FLAVOURS];
+
+	static {
+		for (int i = 0; i < N_FLAVOURS; i++) {
+			Resources flavour = VM_FLAVOURS[i];
+			FLAVOUR_RESOURCES[i * RESOURCE_DIMENSIONS + CPU] = flavour.getCpu();
+			FLAVOUR_RESOURCES[i * RESOURCE_DIMENSIONS + MEMORY] = flavour.getMemory();
+			FLAVOUR_RESOURCES[i * RESOURCE_DIMENSIONS + BANDWIDTH] = flavour.getBandwidth();
+			FLAVOUR_RESOURCES[i * RESOURCE_DIMENSIONS + STORAGE] = flavour.getStorage();
+			FLAVOUR_CORES[i] = flavour.getCores();
+			FLAVOUR_CORE_CAPACITY[i] = flavour.getCoreCapacity();
+		}
+	}
+
+	public final Resources[] vmVector = VM_FLAVOURS;		// Shared table; DO NOT modify.
+	public int[] vector = new int[3 + N_FLAVOURS];	// spare capacity vector: [active, suspended, poweredOff] + vmVector
 	public final int iActive = 0;
 	public final int iSuspended = 1;
 	public final int iPoweredOff = 2;
 	public final int iVmVector = 3;
-	
+
+	private int[] marked = null;		// Copy of the vector taken by mark(); allocated on first use.
+
 	public RackStatusVector() {
 		// Do nothing.
 	}
-	
+
 	public RackStatusVector(RackStatusVector source) {
-		for (int i = 0; i < vector.length; i++) {
-			vector[i] = source.vector[i];
-		}
+		System.arraycopy(source.vector, 0, vector, 0, vector.length);
 	}
-	
+
 	public RackStatusVector copy() {
 		return new RackStatusVector(this);
 	}
-	
+
+	/**
+	 * Copies the contents of the given vector into this vector.
+	 */
+	public void copyFrom(RackStatusVector source) {
+		System.arraycopy(source.vector, 0, vector, 0, vector.length);
+	}
+
+	/**
+	 * Saves the current contents of the vector, so that they can be restored by rollback().
+	 * Marks do not nest; a new mark overwrites the previous one.
+	 */
+	public void mark() {
+		if (null == marked)
+			marked = new int[vector.length];
+		System.arraycopy(vector, 0, marked, 0, vector.length);
+	}
+
+	/**
+	 * Restores the contents of the vector saved by the last call to mark().
+	 */
+	public void rollback() {
+		if (null == marked)
+			throw new IllegalStateException("RackStatusVector#rollback() called without a previous mark().");
+		System.arraycopy(marked, 0, vector, 0, vector.length);
+	}
+
+	/**
+	 * Returns the index of the largest VM flavour that fits in the given amount of resources,
+	 * or -1 if no flavour fits.
+	 */
+	public static int findLargestFittingFlavour(int cpu, int memory, int bandwidth, int storage) {
+		for (int i = N_FLAVOURS - 1; i >= 0; i--) {
+			int base = i * RESOURCE_DIMENSIONS;
+			if (FLAVOUR_RESOURCES[base + CPU] <= cpu &&
+					FLAVOUR_RESOURCES[base + MEMORY] <= memory &&
+					FLAVOUR_RESOURCES[base + BANDWIDTH] <= bandwidth &&
+					FLAVOUR_RESOURCES[base + STORAGE] <= storage)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the largest VM flavour that fits in the given amount of resources
+	 * and that a Host with the given core count and core capacity could run, or -1 if no
+	 * flavour qualifies.
+	 */
+	public static int findLargestFittingFlavour(int cpu, int memory, int bandwidth, int storage, int hostCores, int hostCoreCapacity) {
+		for (int i = N_FLAVOURS - 1; i >= 0; i--) {
+			if (FLAVOUR_CORES[i] > hostCores || FLAVOUR_CORE_CAPACITY[i] > hostCoreCapacity)
+				continue;
+
+			int base = i * RESOURCE_DIMENSIONS;
+			if (FLAVOUR_RESOURCES[base + CPU] <= cpu &&
+					FLAVOUR_RESOURCES[base + MEMORY] <= memory &&
+					FLAVOUR_RESOURCES[base + BANDWIDTH] <= bandwidth &&
+					FLAVOUR_RESOURCES[base + STORAGE] <= storage)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the smallest VM flavour with enough capacity to satisfy the demand
+	 * stored in the packed array at the given offset, or N_FLAVOURS if no flavour is large enough.
+	 *
+	 * Note: VM flavours are sorted in such a way that each flavour is at least as large as the
+	 * previous one in every resource dimension.
+	 */
+	public static int findSmallestCoveringFlavour(int[] demand, int offset) {
+		for (int i = 0; i < N_FLAVOURS; i++) {
+			if (flavourFits(i, demand, offset))
+				return i;
+		}
+
+		return N_FLAVOURS;
+	}
+
+	/**
+	 * Verifies whether the given VM flavour has enough capacity to satisfy the demand stored
+	 * in the packed array at the given offset.
+	 */
+	public static boolean flavourFits(int flavour, int[] demand, int offset) {
+		int base = flavour * RESOURCE_DIMENSIONS;
+		return FLAVOUR_RESOURCES[base + CPU] >= demand[offset + CPU] &&
+				FLAVOUR_RESOURCES[base + MEMORY] >= demand[offset + MEMORY] &&
+				FLAVOUR_RESOURCES[base + BANDWIDTH] >= demand[offset + BANDWIDTH] &&
+				FLAVOUR_RESOURCES[base + STORAGE] >= demand[offset + STORAGE];
+	}
+
+	/**
+	 * Verifies whether the given (Host) capacity is enough to satisfy the demand stored in the
+	 * packed array at the given offset.
+	 */
+	public static boolean capacityFits(Resources capacity, int[] demand, int offset) {
+		return capacity.getCpu() >= demand[offset + CPU] &&
+				capacity.getMemory() >= demand[offset + MEMORY] &&
+				capacity.getBandwidth() >= demand[offset + BANDWIDTH] &&
+				capacity.getStorage() >= demand[offset + STORAGE];
+	}
+
+	/**
+	 * Returns the number of inactive (i.e., suspended or powered-off) Hosts.
+	 */
+	public int getInactiveHosts() {
+		return vector[iSuspended] + vector[iPoweredOff];
+	}
+
+	/**
+	 * Adds *count* Hosts with the given amount of spare resources to the bucket of the
+	 * largest VM flavour that fits in those resources. If no flavour fits, nothing is added.
+	 */
+	public void addSpareCapacity(int cpu, int memory, int bandwidth, int storage, int count) {
+		int flavour = findLargestFittingFlavour(cpu, memory, bandwidth, storage);
+		if (flavour >= 0)
+			vector[iVmVector + flavour] += count;
+	}
+
+	/**
+	 * Attempts to reserve the demand stored in the packed array at the given offset in the
+	 * active Host with the most spare capacity, updating the vector in place.
+	 *
+	 * Returns false (leaving the vector untouched) if there are no active Hosts with spare
+	 * capacity or if the most spare one cannot satisfy the demand.
+	 */
+	public boolean tryReserveOnLargestActive(int[] demand, int offset) {
+		for (int i = N_FLAVOURS - 1; i >= 0; i--) {
+			if (vector[iVmVector + i] > 0) {
+				if (!flavourFits(i, demand, offset))
+					return false;		// Won't find a suitable active Host down the vector -- Hosts in lower positions have even less spare capacity.
+
+				vector[iVmVector + i]--;
+				this.addRemainder(i, demand, offset, 1);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Attempts to reserve the demand stored in the packed array at the given offset in up to
+	 * *count* different active Hosts, using the Hosts with the least spare capacity first.
+	 * The vector is updated in place.
+	 *
+	 * Returns the number of reservations that could not be satisfied.
+	 */
+	public int tryReserveOnActive(int[] demand, int offset, int count) {
+		for (int i = 0; i < N_FLAVOURS && count > 0; i++) {
+			if (vector[iVmVector + i] > 0 && flavourFits(i, demand, offset)) {
+				int hosts = Math.min(count, vector[iVmVector + i]);
+				count -= hosts;
+				vector[iVmVector + i] -= hosts;
+				this.addRemainder(i, demand, offset, hosts);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Activates up to *count* inactive Hosts (suspended ones first) and reserves in each of
+	 * them the demand stored in the packed array at the given offset. The vector is updated
+	 * in place.
+	 *
+	 * This method does not check whether the demand fits in the Host capacity; if it does
+	 * not, the activated Hosts are left without spare capacity.
+	 *
+	 * Returns the number of Hosts that could not be activated.
+	 */
+	public int activateHosts(int[] demand, int offset, int count, Resources hostCapacity) {
+		int remainderCpu = hostCapacity.getCpu() - demand[offset + CPU];
+		int remainderMemory = hostCapacity.getMemory() - demand[offset + MEMORY];
+		int remainderBandwidth = hostCapacity.getBandwidth() - demand[offset + BANDWIDTH];
+		int remainderStorage = hostCapacity.getStorage() - demand[offset + STORAGE];
+
+		if (count > 0 && vector[iSuspended] > 0) {
+			int hosts = Math.min(count, vector[iSuspended]);
+			count -= hosts;
+			vector[iSuspended] -= hosts;
+			vector[iActive] += hosts;
+			this.addSpareCapacity(remainderCpu, remainderMemory, remainderBandwidth, remainderStorage, hosts);
+		}
+
+		if (count > 0 && vector[iPoweredOff] > 0) {
+			int hosts = Math.min(count, vector[iPoweredOff]);
+			count -= hosts;
+			vector[iPoweredOff] -= hosts;
+			vector[iActive] += hosts;
+			this.addSpareCapacity(remainderCpu, remainderMemory, remainderBandwidth, remainderStorage, hosts);
+		}
+
+		return count;
+	}
+
+	private void addRemainder(int flavour, int[] demand, int offset, int count) {
+		int base = flavour * RESOURCE_DIMENSIONS;
+		this.addSpareCapacity(FLAVOUR_RESOURCES[base + CPU] - demand[offset + CPU],
+				FLAVOUR_RESOURCES[base + MEMORY] - demand[offset + MEMORY],
+				FLAVOUR_RESOURCES[base + BANDWIDTH] - demand[offset + BANDWIDTH],
+				FLAVOUR_RESOURCES[base + STORAGE] - demand[offset + STORAGE],
+				count);
+	}
+
 	@Override
 	public String toString() {
 		return Arrays.toString(vector);
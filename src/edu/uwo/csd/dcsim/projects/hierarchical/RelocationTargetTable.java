@@ -0,0 +1,268 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uwo.csd.dcsim.application.Task.TaskConstraintType;
+import edu.uwo.csd.dcsim.host.Resources;
+import edu.uwo.csd.dcsim.management.HostData;
+import edu.uwo.csd.dcsim.management.HostDescription;
+import edu.uwo.csd.dcsim.management.HostStatus;
+import edu.uwo.csd.dcsim.management.VmStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.MigrationTrackingManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.VmPoolManager;
+
+/**
+ * Snapshot of the target Hosts' sandbox status, used to evaluate VM migration candidates against
+ * every target Host without re-reading Host status objects.
+ *
+ * The table is built once per relocation attempt from an ordered list of target Hosts. It keeps,
+ * for each target, its spare resources, CPU in use and capacity, HW capabilities and migration
+ * counts in primitive arrays. For Anti-affinity checks, it also keeps, for each Task with instances
+ * in the target Hosts, the set of targets hosting an instance (built on first use).
+ *
+ * A target qualifies for a VM (or set of VMs) if its pending migrations do not exceed the given
+ * limits, it has the required HW capabilities and spare resources, and the migration would not push
+ * its CPU utilization above the target utilization. Targets are always searched in list order.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class RelocationTargetTable {
+
+	private final HostData[] hosts;
+	private final int[] spareCpu;
+	private final int[] spareMemory;
+	private final int[] spareBandwidth;
+	private final int[] spareStorage;
+	private final int[] cpuInUse;
+	private final int[] cpuCapacity;
+	private final int[] cores;
+	private final int[] coreCapacity;
+	private final int[] incomingMigrations;
+	private final int[] outgoingMigrations;
+
+	private final double targetUtilization;
+	private final int maxIncomingMigrations;
+	private final int maxOutgoingMigrations;
+
+	private final VmPoolManager vmPool;
+	private Map<Long, BitSet> taskHosts = null;		// Targets hosting an instance of each Task, keyed by <app ID, task ID>.
+
+	/**
+	 * Creates a table for the given target Hosts, whose sandbox status is expected to be up to date.
+	 *
+	 * @param vmPool	pool used to map VMs to Tasks for Anti-affinity checks; may be NULL if
+	 * 					Anti-affinity candidates are never evaluated
+	 */
+	public RelocationTargetTable(List<HostData> targets, double targetUtilization, int maxIncomingMigrations, int maxOutgoingMigrations, VmPoolManager vmPool) {
+		int n = targets.size();
+		hosts = targets.toArray(new HostData[n]);
+		spareCpu = new int[n];
+		spareMemory = new int[n];
+		spareBandwidth = new int[n];
+		spareStorage = new int[n];
+		cpuInUse = new int[n];
+		cpuCapacity = new int[n];
+		cores = new int[n];
+		coreCapacity = new int[n];
+		incomingMigrations = new int[n];
+		outgoingMigrations = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			HostStatus status = hosts[i].getSandboxStatus();
+			HostDescription description = hosts[i].getHostDescription();
+			Resources capacity = description.getResourceCapacity();
+			Resources inUse = status.getResourcesInUse();
+
+			spareCpu[i] = capacity.getCpu() - inUse.getCpu();
+			spareMemory[i] = capacity.getMemory() - inUse.getMemory();
+			spareBandwidth[i] = capacity.getBandwidth() - inUse.getBandwidth();
+			spareStorage[i] = capacity.getStorage() - inUse.getStorage();
+			cpuInUse[i] = inUse.getCpu();
+			cpuCapacity[i] = capacity.getCpu();
+			cores[i] = description.getCpuCount() * description.getCoreCount();
+			coreCapacity[i] = description.getCoreCapacity();
+			incomingMigrations[i] = status.getIncomingMigrationCount();
+			outgoingMigrations[i] = status.getOutgoingMigrationCount();
+		}
+
+		this.targetUtilization = targetUtilization;
+		this.maxIncomingMigrations = maxIncomingMigrations;
+		this.maxOutgoingMigrations = maxOutgoingMigrations;
+		this.vmPool = vmPool;
+	}
+
+	public int size() {
+		return hosts.length;
+	}
+
+	public HostData getHost(int target) {
+		return hosts[target];
+	}
+
+	/**
+	 * Returns the first target that can take the given VM, or -1 if there is none.
+	 */
+	public int findTarget(VmStatus vm) {
+		Resources resources = vm.getResourcesInUse();
+		return this.findTarget(vm.getCores(), vm.getCoreCapacity(), resources.getCpu(), resources.getMemory(), resources.getBandwidth(), resources.getStorage(), null);
+	}
+
+	/**
+	 * Returns the first target that can take the given VM and does not host an instance of the
+	 * VM's Task, or -1 if there is none.
+	 */
+	public int findTargetApart(VmStatus vm) {
+		TaskInstanceData task = vmPool.getVm(vm.getId()).getTask();
+		Resources resources = vm.getResourcesInUse();
+		return this.findTarget(vm.getCores(), vm.getCoreCapacity(), resources.getCpu(), resources.getMemory(), resources.getBandwidth(), resources.getStorage(),
+				this.getTaskHosts().get(taskKey(task.getAppId(), task.getTaskId())));
+	}
+
+	/**
+	 * Returns the first target that can take all the VMs in the given (Affinity) set together, or
+	 * -1 if there is none.
+	 */
+	public int findTarget(List<VmStatus> affinitySet) {
+		int maxReqCores = 0;
+		int maxReqCoreCapacity = 0;
+		int cpu = 0;
+		int memory = 0;
+		int bandwidth = 0;
+		int storage = 0;
+		for (VmStatus vm : affinitySet) {
+			if (vm.getCores() > maxReqCores)
+				maxReqCores = vm.getCores();
+
+			if (vm.getCoreCapacity() > maxReqCoreCapacity)
+				maxReqCoreCapacity = vm.getCoreCapacity();
+
+			Resources resources = vm.getResourcesInUse();
+			cpu += resources.getCpu();
+			memory += resources.getMemory();
+			bandwidth += resources.getBandwidth();
+			storage += resources.getStorage();
+		}
+
+		return this.findTarget(maxReqCores, maxReqCoreCapacity, cpu, memory, bandwidth, storage, null);
+	}
+
+	private int findTarget(int reqCores, int reqCoreCapacity, int cpu, int memory, int bandwidth, int storage, BitSet excluded) {
+		for (int i = 0; i < hosts.length; i++) {
+			if (incomingMigrations[i] <= maxIncomingMigrations && outgoingMigrations[i] <= maxOutgoingMigrations &&
+				cores[i] >= reqCores && coreCapacity[i] >= reqCoreCapacity &&
+				spareCpu[i] >= cpu && spareMemory[i] >= memory && spareBandwidth[i] >= bandwidth && spareStorage[i] >= storage &&
+				(cpuInUse[i] + cpu) / (double) cpuCapacity[i] <= targetUtilization &&
+				(null == excluded || !excluded.get(i))) {
+
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Searches for a migration for one of the given candidates, considering Independent VMs first,
+	 * then Anti-affinity VMs, and finally Affinity-sets -- each group in the given order. VMs migrating
+	 * out or scheduled to do so are skipped.
+	 *
+	 * Returns NULL if no candidate can be migrated to any of the targets.
+	 */
+	public Selection select(List<VmStatus> independent, List<VmStatus> antiAffinity, List<? extends List<VmStatus>> affinitySets, MigrationTrackingManager ongoingMigs) {
+
+		for (VmStatus vm : independent) {
+			if (ongoingMigs.isMigrating(vm.getId()))
+				continue;
+
+			int target = this.findTarget(vm);
+			if (target >= 0)
+				return new Selection(Collections.singletonList(vm), hosts[target], TaskConstraintType.INDEPENDENT);
+		}
+
+		for (VmStatus vm : antiAffinity) {
+			if (ongoingMigs.isMigrating(vm.getId()))
+				continue;
+
+			int target = this.findTargetApart(vm);
+			if (target >= 0)
+				return new Selection(Collections.singletonList(vm), hosts[target], TaskConstraintType.ANTI_AFFINITY);
+		}
+
+		for (List<VmStatus> affinitySet : affinitySets) {
+			// Since these VMs are constrained by affinity, if one VM is migrating, we know that the others in the affinity-set are, too.
+			if (!affinitySet.isEmpty() && ongoingMigs.isMigrating(affinitySet.get(0).getId()))
+				continue;
+
+			int target = this.findTarget(affinitySet);
+			if (target >= 0)
+				return new Selection(affinitySet, hosts[target], TaskConstraintType.AFFINITY);
+		}
+
+		return null;
+	}
+
+	private Map<Long, BitSet> getTaskHosts() {
+		if (null == taskHosts) {
+			taskHosts = new HashMap<Long, BitSet>();
+			for (int i = 0; i < hosts.length; i++) {
+				for (VmStatus vm : hosts[i].getSandboxStatus().getVms()) {
+					VmData vmData = vmPool.getVm(vm.getId());
+
+					if (null == vmData)								// VM does not belong in this Rack any longer.
+						continue;
+
+					if (vmData.getHost() != hosts[i])				// VM is actually located in another Host in this Rack.
+						continue;
+
+					long key = taskKey(vmData.getTask().getAppId(), vmData.getTask().getTaskId());
+					BitSet targets = taskHosts.get(key);
+					if (null == targets) {
+						targets = new BitSet(hosts.length);
+						taskHosts.put(key, targets);
+					}
+					targets.set(i);
+				}
+			}
+		}
+
+		return taskHosts;
+	}
+
+	private static long taskKey(int appId, int taskId) {
+		return ((long) appId << 32) | (taskId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * VM(s) selected for migration and their target Host.
+	 */
+	public static class Selection {
+
+		private final List<VmStatus> vms;
+		private final HostData target;
+		private final TaskConstraintType constraintType;
+
+		public Selection(List<VmStatus> vms, HostData target, TaskConstraintType constraintType) {
+			this.vms = vms;
+			this.target = target;
+			this.constraintType = constraintType;
+		}
+
+		public List<VmStatus> getVms() {
+			return vms;
+		}
+
+		public HostData getTarget() {
+			return target;
+		}
+
+		public TaskConstraintType getConstraintType() {
+			return constraintType;
+		}
+	}
+
+}
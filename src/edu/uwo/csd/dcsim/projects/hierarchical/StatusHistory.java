@@ -0,0 +1,79 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-capacity ring buffer of status records, ordered from newest (index 0) to oldest.
+ *
+ * Adding a record when the buffer is full overwrites the oldest one. The buffer is exposed
+ * as a read-only List: add(), set() and remove() are not supported, so that callers can
+ * iterate or index the history without copying it.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class StatusHistory<T> extends AbstractList<T> implements RandomAccess {
+
+	private Object[] records;
+	private int newest = -1;		// Position of the newest record in the buffer.
+	private int size = 0;
+
+	public StatusHistory(int capacity) {
+		records = new Object[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a record as the newest one, evicting the oldest record if the buffer is full.
+	 *
+	 * If the given capacity differs from the current one, the buffer is resized first, keeping
+	 * the newest records.
+	 */
+	public void push(T record, int capacity) {
+		if (capacity != records.length)
+			this.resize(capacity);
+
+		newest = (newest + 1) % records.length;
+		records[newest] = record;
+		if (size < records.length)
+			size++;
+	}
+
+	private void resize(int capacity) {
+		Object[] resized = new Object[Math.max(capacity, 1)];
+		int kept = Math.min(size, resized.length);
+
+		// Keep the newest records, storing them from oldest to newest.
+		for (int i = 0; i < kept; i++) {
+			resized[kept - 1 - i] = records[this.position(i)];
+		}
+
+		records = resized;
+		size = kept;
+		newest = kept - 1;
+	}
+
+	private int position(int index) {
+		int position = newest - index;
+		return position >= 0 ? position : position + records.length;
+	}
+
+	public int capacity() {
+		return records.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return (T) records[this.position(index)];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+}
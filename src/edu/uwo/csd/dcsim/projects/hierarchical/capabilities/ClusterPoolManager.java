@@ -6,11 +6,26 @@ import edu.uwo.csd.dcsim.host.Cluster;
 import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.capabilities.ManagerCapability;
 import edu.uwo.csd.dcsim.projects.hierarchical.ClusterData;
+import edu.uwo.csd.dcsim.projects.hierarchical.HostActivationCache;
 
 public class ClusterPoolManager extends ManagerCapability {
 	
 	private Map<Integer, ClusterData> clusterMap = new HashMap<Integer, ClusterData>();
 	
+	private final HostActivationCache activationCache;
+	
+	public ClusterPoolManager() {
+		this(new HostActivationCache());
+	}
+	
+	/**
+	 * Creates a pool using the given Host activations cache, which may be shared with other pools 
+	 * of the same simulation.
+	 */
+	public ClusterPoolManager(HostActivationCache activationCache) {
+		this.activationCache = activationCache;
+	}
+	
 	public void addCluster(Cluster cluster, AutonomicManager clusterManager) {
 		clusterMap.put(cluster.getId(), new ClusterData(cluster, clusterManager));
 	}
@@ -22,4 +37,8 @@ public class ClusterPoolManager extends ManagerCapability {
 	public ClusterData getCluster(int id) {
 		return clusterMap.get(id);
 	}
+	
+	public HostActivationCache getActivationCache() {
+		return activationCache;
+	}
 }
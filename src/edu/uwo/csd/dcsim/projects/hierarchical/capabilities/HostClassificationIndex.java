@@ -0,0 +1,229 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.capabilities;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import edu.uwo.csd.dcsim.common.Utility;
+import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.management.HostData;
+import edu.uwo.csd.dcsim.management.HostStatus;
+import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.management.capabilities.ManagerCapability;
+
+/**
+ * Keeps the Hosts in a Rack classified and sorted for VM Relocation, so that policies do not have
+ * to re-classify and re-sort every Host each time they look for a migration target.
+ *
+ * For every Host, the index keeps the Host's average CPU utilization over the last window of time
+ * and the sort keys used to order target Hosts (CPU utilization, power efficiency and power state),
+ * all taken from the Host's current status. Non-empty Hosts are kept sorted in increasing order by
+ * <CPU utilization, power efficiency>, and Empty Hosts in decreasing order by <power efficiency,
+ * power state>. The classification thresholds are supplied by the caller, so that the same index
+ * can serve policies with different thresholds.
+ *
+ * Hosts are marked as changed when a HostStatusEvent arrives (see RackMonitoringPolicy) and are
+ * re-indexed the next time the index is queried. Since Host status invalidations are not notified,
+ * the validity of each Host is checked at query time.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class HostClassificationIndex extends ManagerCapability {
+
+	private Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	private HashSet<Integer> changedHosts = new HashSet<Integer>();
+
+	private TreeSet<Entry> nonEmpty = new TreeSet<Entry>(LEAST_UTILIZED_FIRST);
+	private TreeSet<Entry> empty = new TreeSet<Entry>(MOST_EFFICIENT_FIRST);
+
+	/**
+	 * Marks the given Host as changed, so that it is re-indexed the next time the index is queried.
+	 */
+	public void hostStatusChanged(int hostId) {
+		changedHosts.add(hostId);
+	}
+
+	/**
+	 * Returns the Host's average CPU utilization over the last window of time, as of the Host's
+	 * last status update.
+	 *
+	 * @return		value in range [0,1] (i.e., percentage)
+	 */
+	public double getAvgCpuUtilization(HostData host, HostPoolManager hostPool) {
+		this.refresh(hostPool);
+
+		Entry entry = entries.get(host.getId());
+		if (null == entry)
+			return calculateAvgCpuUtilization(host);
+
+		return entry.avgCpuUtilization;
+	}
+
+	/**
+	 * Returns the target Hosts for VM Relocation -- i.e., Partially-Utilized, Under-Utilized and Empty
+	 * Hosts, in that order -- ignoring Stressed Hosts and Hosts with a currently invalid status.
+	 *
+	 * Partially-Utilized Hosts are sorted in increasing order by <CPU utilization, power efficiency>,
+	 * Under-Utilized Hosts in decreasing order by <CPU utilization, power efficiency>, and Empty Hosts
+	 * in decreasing order by <power efficiency, power state>.
+	 */
+	public ArrayList<HostData> getTargetHosts(HostPoolManager hostPool, double lowerThreshold, double upperThreshold) {
+		this.refresh(hostPool);
+
+		ArrayList<HostData> targets = new ArrayList<HostData>();
+
+		// Partially-Utilized Hosts.
+		for (Entry entry : nonEmpty) {
+			if (entry.avgCpuUtilization >= lowerThreshold && entry.avgCpuUtilization < upperThreshold && entry.host.isStatusValid())
+				targets.add(entry.host);
+		}
+
+		// Under-Utilized Hosts.
+		Iterator<Entry> iterator = nonEmpty.descendingIterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.avgCpuUtilization < lowerThreshold && entry.host.isStatusValid())
+				targets.add(entry.host);
+		}
+
+		// Empty Hosts.
+		for (Entry entry : empty) {
+			if (entry.host.isStatusValid())
+				targets.add(entry.host);
+		}
+
+		return targets;
+	}
+
+	/**
+	 * Re-indexes the Hosts whose status changed since the last invocation.
+	 */
+	private void refresh(HostPoolManager hostPool) {
+
+		// Pick up Hosts not seen before (e.g., first invocation).
+		if (entries.size() != hostPool.getHosts().size()) {
+			for (HostData host : hostPool.getHosts()) {
+				if (!entries.containsKey(host.getId()))
+					changedHosts.add(host.getId());
+			}
+		}
+
+		for (int hostId : changedHosts) {
+			HostData host = hostPool.getHost(hostId);
+			if (null == host)
+				continue;
+
+			Entry entry = entries.get(hostId);
+			if (null == entry) {
+				entry = new Entry(host);
+				entries.put(hostId, entry);
+			}
+			else if (entry.empty)
+				empty.remove(entry);
+			else
+				nonEmpty.remove(entry);
+
+			// Update the sort keys while the entry is not indexed.
+			HostStatus status = host.getCurrentStatus();
+			entry.avgCpuUtilization = calculateAvgCpuUtilization(host);
+			entry.cpuUtilization = status.getResourcesInUse().getCpu() / (double) host.getHostDescription().getResourceCapacity().getCpu();
+			entry.powerEfficiency = host.getHostDescription().getPowerEfficiency();
+			entry.powerState = powerStateRank(status.getState());
+			entry.empty = status.getVms().size() == 0;
+
+			if (entry.empty)
+				empty.add(entry);
+			else
+				nonEmpty.add(entry);
+		}
+		changedHosts.clear();
+	}
+
+	/**
+	 * Calculates Host's average CPU utilization over the last window of time.
+	 *
+	 * @return		value in range [0,1] (i.e., percentage)
+	 */
+	public static double calculateAvgCpuUtilization(HostData host) {
+		double avgCpuInUse = 0;
+		int count = 0;
+		for (HostStatus status : host.getHistory()) {
+			// Only consider times when the host is powered ON.
+			if (status.getState() == Host.HostState.ON) {
+				avgCpuInUse += status.getResourcesInUse().getCpu();
+				++count;
+			}
+			else
+				break;
+		}
+		if (count != 0) {
+			avgCpuInUse = avgCpuInUse / count;
+		}
+
+		return Utility.roundDouble(avgCpuInUse / host.getHostDescription().getResourceCapacity().getCpu());
+	}
+
+	/**
+	 * Ranks power states from least (powered off) to most (powered on) ready to take VMs.
+	 */
+	private static int powerStateRank(Host.HostState state) {
+		if (state == Host.HostState.ON || state == Host.HostState.POWERING_ON)
+			return 2;
+		if (state == Host.HostState.SUSPENDED || state == Host.HostState.SUSPENDING)
+			return 1;
+		return 0;
+	}
+
+	/**
+	 * Sorts entries in increasing order by <CPU utilization, power efficiency>, and then by Host ID.
+	 */
+	private static final Comparator<Entry> LEAST_UTILIZED_FIRST = new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			int compare = Double.compare(o1.cpuUtilization, o2.cpuUtilization);
+			if (0 == compare)
+				compare = Double.compare(o1.powerEfficiency, o2.powerEfficiency);
+			if (0 == compare)
+				compare = o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+			return compare;
+		}
+	};
+
+	/**
+	 * Sorts entries in decreasing order by <power efficiency, power state>, and then by Host ID.
+	 */
+	private static final Comparator<Entry> MOST_EFFICIENT_FIRST = new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			int compare = Double.compare(o2.powerEfficiency, o1.powerEfficiency);
+			if (0 == compare)
+				compare = o2.powerState - o1.powerState;
+			if (0 == compare)
+				compare = o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+			return compare;
+		}
+	};
+
+	/**
+	 * Indexed values of a Host. The sort keys are only modified while the entry is not indexed.
+	 */
+	private static class Entry {
+
+		private final HostData host;
+		private final int id;
+		private double avgCpuUtilization = 0;
+		private double cpuUtilization = 0;
+		private double powerEfficiency = 0;
+		private int powerState = 0;
+		private boolean empty = true;
+
+		public Entry(HostData host) {
+			this.host = host;
+			id = host.getId();
+		}
+	}
+
+}
@@ -2,45 +2,205 @@ package edu.uwo.csd.dcsim.projects.hierarchical.capabilities;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
 
 import edu.uwo.csd.dcsim.management.AutonomicManager;
-import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.management.capabilities.ManagerCapability;
-import edu.uwo.csd.dcsim.projects.hierarchical.AppStatus;
 import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
 
+/**
+ * Record of the migration requests sent or forwarded by a manager and still awaiting an answer.
+ *
+ * Entries are indexed by < origin , request ID >, where request IDs are handed out by the origin
+ * (see nextRequestId), so that an answer to an old request for a VM or application is never
+ * matched with a newer request for the same VM or application. Optionally, entries can be given
+ * a timeout, after which they are considered lost and can be expired (see
+ * expireEntries). Timed entries are kept in a timing wheel, so expiring entries only visits the
+ * wheel slots elapsed since the last invocation.
+ *
+ * @author Gaston Keller
+ *
+ */
 public class MigRequestRecord extends ManagerCapability {
 
-	private Collection<MigRequestEntry> record = new ArrayList<MigRequestEntry>();
+	private static final int WHEEL_SIZE = 64;
+	private static final int EXPIRED_HISTORY = 256;
+
+	private Map<Key, MigRequestEntry> record = new HashMap<Key, MigRequestEntry>();
+
+	private final long timeout;							// Time after which an entry is considered lost; 0 for no timeout.
+	private final long tickLength;
+	private final ArrayList<LinkedList<Timer>> wheel;
+	private long lastTick = -1;
 	
+	private long nextRequestId = 1;
+
+	// Keys of the most recently expired entries, so that late answers can be told apart from unexpected ones.
+	private Map<Key, Boolean> expired = new LinkedHashMap<Key, Boolean>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+			return this.size() > EXPIRED_HISTORY;
+		}
+	};
+
+	/**
+	 * Creates a record whose entries never expire.
+	 */
+	public MigRequestRecord() {
+		this(0);
+	}
+
+	/**
+	 * Creates a record whose timed entries expire after the given time.
+	 */
+	public MigRequestRecord(long timeout) {
+		this.timeout = timeout;
+		tickLength = Math.max(1, timeout / WHEEL_SIZE);
+
+		wheel = new ArrayList<LinkedList<Timer>>(WHEEL_SIZE);
+		if (timeout > 0) {
+			for (int i = 0; i < WHEEL_SIZE; i++)
+				wheel.add(new LinkedList<Timer>());
+		}
+	}
+
+	/**
+	 * Returns a new ID for a migration request sent by this manager.
+	 */
+	public long nextRequestId() {
+		return nextRequestId++;
+	}
+
 	public void addEntry(MigRequestEntry entry) {
-		record.add(entry);
+		record.put(keyOf(entry), entry);
 	}
-	
+
+	/**
+	 * Adds the entry, setting it to expire after the record's timeout (if any) counting from the
+	 * given time.
+	 */
+	public void addEntry(MigRequestEntry entry, long time) {
+		this.addEntry(entry);
+
+		if (timeout > 0) {
+			long deadline = time + timeout;
+			wheel.get((int) ((deadline / tickLength) % WHEEL_SIZE)).add(new Timer(entry, deadline));
+		}
+	}
+
 	public boolean removeEntry(MigRequestEntry entry) {
-		return record.remove(entry);
+		if (null == entry)
+			return false;
+
+		// Timers of removed entries are discarded when their wheel slot comes up.
+		Key key = keyOf(entry);
+		if (record.get(key) != entry)
+			return false;
+
+		record.remove(key);
+		return true;
 	}
-	
-	public MigRequestEntry getEntry(AppStatus application, AutonomicManager origin) {
-		for (MigRequestEntry entry : record) {
-			if (entry.getApplication() == application && entry.getOrigin() == origin) {
-				return entry;
+
+	public MigRequestEntry getEntry(long requestId, AutonomicManager origin) {
+		return record.get(new Key(requestId, origin));
+	}
+
+	/**
+	 * Determines whether the given request was recently expired.
+	 */
+	public boolean hasExpired(long requestId, AutonomicManager origin) {
+		return expired.containsKey(new Key(requestId, origin));
+	}
+
+	/**
+	 * Removes and returns the timed entries whose timeout has elapsed by the given time.
+	 */
+	public Collection<MigRequestEntry> expireEntries(long time) {
+		ArrayList<MigRequestEntry> expiredEntries = new ArrayList<MigRequestEntry>();
+		if (timeout <= 0)
+			return expiredEntries;
+
+		long currentTick = time / tickLength;
+		long firstTick = lastTick < 0 ? currentTick - WHEEL_SIZE + 1 : lastTick;
+
+		// Visit each slot at most once, starting from the last visited slot, as it may hold entries that were not yet due.
+		if (currentTick - firstTick >= WHEEL_SIZE)
+			firstTick = currentTick - WHEEL_SIZE + 1;
+		// No timer is due before time 0.
+		if (firstTick < 0)
+			firstTick = 0;
+
+		for (long tick = firstTick; tick <= currentTick; tick++) {
+			Iterator<Timer> timers = wheel.get((int) (tick % WHEEL_SIZE)).iterator();
+			while (timers.hasNext()) {
+				Timer timer = timers.next();
+				Key key = keyOf(timer.entry);
+
+				if (record.get(key) != timer.entry) {			// Entry already removed.
+					timers.remove();
+				}
+				else if (timer.deadline <= time) {
+					timers.remove();
+					record.remove(key);
+					expired.put(key, Boolean.TRUE);
+					expiredEntries.add(timer.entry);
+				}
 			}
 		}
-		
-		return null;
+		lastTick = currentTick;
+
+		return expiredEntries;
 	}
-	
-	public MigRequestEntry getEntry(VmStatus vm, AutonomicManager origin) {
-		for (MigRequestEntry entry : record) {
-			if (entry.getVm() == vm && entry.getOrigin() == origin) {
-				return entry;
-			}
+
+	public Collection<MigRequestEntry> getEntries() { return record.values(); }
+
+	private static Key keyOf(MigRequestEntry entry) {
+		return new Key(entry.getRequestId(), entry.getOrigin());
+	}
+
+	/**
+	 * Entry ID: < origin , request ID >. Origins are compared by reference.
+	 */
+	private static final class Key {
+
+		private final long requestId;
+		private final AutonomicManager origin;
+
+		public Key(long requestId, AutonomicManager origin) {
+			this.requestId = requestId;
+			this.origin = origin;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return requestId == other.requestId && origin == other.origin;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (int) (requestId ^ (requestId >>> 32)) + System.identityHashCode(origin);
+		}
+	}
+
+	private static final class Timer {
+
+		private final MigRequestEntry entry;
+		private final long deadline;
+
+		public Timer(MigRequestEntry entry, long deadline) {
+			this.entry = entry;
+			this.deadline = deadline;
 		}
-		
-		return null;
 	}
-	
-	public Collection<MigRequestEntry> getEntries() { return record; }
 
 }
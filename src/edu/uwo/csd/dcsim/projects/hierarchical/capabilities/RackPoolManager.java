@@ -2,25 +2,164 @@ package edu.uwo.csd.dcsim.projects.hierarchical.capabilities;
 
 import java.util.*;
 
+import edu.uwo.csd.dcsim.host.Cluster;
 import edu.uwo.csd.dcsim.host.Rack;
 import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.capabilities.ManagerCapability;
+import edu.uwo.csd.dcsim.projects.hierarchical.ClusterStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.HostActivationCache;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackCapacityIndex;
 import edu.uwo.csd.dcsim.projects.hierarchical.RackData;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackStatus;
 
 public class RackPoolManager extends ManagerCapability {
-	
+
+	private static final int RESUM_INTERVAL = 100;		// Refreshes between re-computations of the power consumption sum from scratch.
+
 	private Map<Integer, RackData> rackMap = new HashMap<Integer, RackData>();
-	
+
+	// Incrementally maintained Cluster status (see getClusterStatus()).
+	private HashSet<RackData> changedRacks = new HashSet<RackData>();
+	private Map<Integer, RackContribution> contributions = new HashMap<Integer, RackContribution>();
+	private TreeSet<Long> leastLoadedRacks = new TreeSet<Long>();		// Valid, active Racks, sorted by number of active Hosts and then by ID.
+	private int activeRacks = 0;
+	private double powerConsumption = 0;
+	private int refreshes = 0;
+
+	private RackCapacityIndex capacityIndex = new RackCapacityIndex();
+
+	private final HostActivationCache activationCache;
+
+	public RackPoolManager() {
+		this(new HostActivationCache());
+	}
+
+	/**
+	 * Creates a pool using the given Host activations cache, which may be shared with other pools 
+	 * of the same simulation.
+	 */
+	public RackPoolManager(HostActivationCache activationCache) {
+		this.activationCache = activationCache;
+	}
+
 	public void addRack(Rack rack, AutonomicManager rackManager) {
-		rackMap.put(rack.getId(), new RackData(rack, rackManager));
+		RackData rackData = new RackData(rack, rackManager, this);
+		rackMap.put(rack.getId(), rackData);
+		changedRacks.add(rackData);
 	}
-	
+
 	public Collection<RackData> getRacks() {
 		return rackMap.values();
 	}
-	
+
 	public RackData getRack(int id) {
 		return rackMap.get(id);
 	}
 
+	public HostActivationCache getActivationCache() {
+		return activationCache;
+	}
+
+	/**
+	 * Notifies that the status (or status validity) of the given Rack has changed. Called by RackData.
+	 */
+	public void rackStatusChanged(RackData rack) {
+		changedRacks.add(rack);
+	}
+
+	/**
+	 * Returns the index of Racks by spare capacity, updated with the latest Rack status changes.
+	 */
+	public RackCapacityIndex getCapacityIndex() {
+		this.refresh();
+
+		return capacityIndex;
+	}
+
+	/**
+	 * Returns a ClusterStatus for the given Cluster, built from an incrementally maintained
+	 * aggregate of the Racks' status. Only the Racks whose status changed since the last
+	 * invocation are re-examined.
+	 *
+	 * The result matches a full walk over the Racks, except that ties for the least loaded Rack
+	 * are broken by lowest Rack ID (rather than by map iteration order), and that the power
+	 * consumption may differ by the floating-point rounding of incremental updates, which is
+	 * discarded every RESUM_INTERVAL refreshes.
+	 */
+	public ClusterStatus getClusterStatus(Cluster cluster, long timeStamp) {
+		this.refresh();
+
+		if (Cluster.ClusterState.OFF == cluster.getState())
+			return new ClusterStatus(cluster, timeStamp);
+
+		RackData leastLoaded = null;
+		if (!leastLoadedRacks.isEmpty())
+			leastLoaded = rackMap.get((int) (leastLoadedRacks.first() & 0xFFFFFFFFL));
+
+		return new ClusterStatus(cluster,
+				null != leastLoaded ? leastLoaded.getCurrentStatus().getStatusVector() : null,
+				activeRacks,
+				powerConsumption,
+				timeStamp);
+	}
+
+	/**
+	 * Re-computes the contribution of changed Racks to the Cluster status and re-indexes them.
+	 */
+	private void refresh() {
+		for (RackData rack : changedRacks) {
+			RackContribution contribution = contributions.get(rack.getId());
+			if (null == contribution) {
+				contribution = new RackContribution();
+				contributions.put(rack.getId(), contribution);
+			}
+			this.update(rack, contribution);
+			capacityIndex.update(rack);
+		}
+		changedRacks.clear();
+
+		// Re-compute the power consumption sum, so that rounding errors do not build up.
+		if (++refreshes % RESUM_INTERVAL == 0) {
+			powerConsumption = 0;
+			for (RackContribution contribution : contributions.values())
+				powerConsumption += contribution.powerConsumption;
+		}
+	}
+
+	private void update(RackData rack, RackContribution contribution) {
+
+		// Remove previous contribution.
+		if (contribution.active)
+			activeRacks--;
+		if (contribution.leastLoadedKey >= 0)
+			leastLoadedRacks.remove(contribution.leastLoadedKey);
+		powerConsumption -= contribution.powerConsumption;
+
+		// Calculate and add new contribution.
+		RackStatus status = rack.getCurrentStatus();
+		contribution.active = status.getState() == Rack.RackState.ON;
+		contribution.leastLoadedKey = -1;
+		if (contribution.active) {
+			activeRacks++;
+
+			// Check Rack status. If invalid, we cannot make any assertions.
+			if (rack.isStatusValid()) {
+				contribution.leastLoadedKey = ((long) status.getActiveHosts() << 32) | rack.getId();
+				leastLoadedRacks.add(contribution.leastLoadedKey);
+			}
+		}
+		contribution.powerConsumption = status.getPowerConsumption();
+		powerConsumption += contribution.powerConsumption;
+	}
+
+	/**
+	 * Last known contribution of a Rack to the Cluster's status.
+	 */
+	private static class RackContribution {
+
+		private boolean active = false;
+		private long leastLoadedKey = -1;		// Key in the set of least loaded Racks; -1 if not in the set.
+		private double powerConsumption = 0;
+	}
+
 }
@@ -0,0 +1,186 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.capabilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.host.Rack;
+import edu.uwo.csd.dcsim.host.Resources;
+import edu.uwo.csd.dcsim.management.HostData;
+import edu.uwo.csd.dcsim.management.HostDescription;
+import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.management.capabilities.ManagerCapability;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackStatusVector;
+
+/**
+ * Maintains a Rack's status vector and power consumption incrementally, applying the
+ * contribution delta of each Host whose status changed, instead of walking all Hosts in the
+ * Rack every time a RackStatus is built.
+ *
+ * Hosts are marked as changed when a HostStatusEvent arrives (see RackMonitoringPolicy) and
+ * their contribution is re-computed the next time the status is requested. Since Host status
+ * invalidations are not notified, Hosts currently counted in a spare capacity bucket have their
+ * validity flag re-checked every time the status is requested.
+ *
+ * The resulting RackStatus is equivalent to the one built by
+ * RackStatus(Rack, HostPoolManager, long), except that the power consumption may differ by the
+ * floating-point rounding of incremental updates, which is discarded every RESUM_INTERVAL
+ * requests.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class RackStatusAggregator extends ManagerCapability {
+
+	private static final int RESUM_INTERVAL = 100;		// Requests between re-computations of the power consumption sum from scratch.
+	private static final int NO_STATE = -1;
+	private static final int NO_FLAVOUR = -1;
+
+	private RackStatusVector statusVector = new RackStatusVector();
+	private double powerConsumption = 0;		// Sum of power consumption from all Hosts in the Rack.
+	private int requests = 0;
+
+	private Map<Integer, HostContribution> contributions = new HashMap<Integer, HostContribution>();
+	private HashSet<Integer> changedHosts = new HashSet<Integer>();
+	private ArrayList<HostContribution> bucketedHosts = new ArrayList<HostContribution>();
+
+	/**
+	 * Marks the given Host as changed, so that its contribution is re-computed the next time
+	 * the status is requested.
+	 */
+	public void hostStatusChanged(int hostId) {
+		changedHosts.add(hostId);
+	}
+
+	/**
+	 * Returns a RackStatus for the given Rack, built from the maintained aggregate.
+	 */
+	public RackStatus getRackStatus(Rack rack, HostPoolManager hostPool, long timeStamp) {
+
+		// Pick up Hosts not seen before (e.g., first invocation).
+		if (contributions.size() != hostPool.getHosts().size()) {
+			for (HostData host : hostPool.getHosts()) {
+				if (!contributions.containsKey(host.getId()))
+					changedHosts.add(host.getId());
+			}
+		}
+
+		// Re-compute the contribution of changed Hosts.
+		for (int hostId : changedHosts) {
+			HostData host = hostPool.getHost(hostId);
+			if (null == host)
+				continue;
+
+			HostContribution contribution = contributions.get(hostId);
+			if (null == contribution) {
+				contribution = new HostContribution(host);
+				contributions.put(hostId, contribution);
+			}
+			this.update(contribution);
+		}
+		changedHosts.clear();
+
+		// Re-compute the power consumption sum, so that rounding errors do not build up.
+		if (++requests % RESUM_INTERVAL == 0) {
+			powerConsumption = 0;
+			for (HostContribution contribution : contributions.values())
+				powerConsumption += contribution.powerConsumption;
+		}
+
+		// Drop from the spare capacity buckets those Hosts whose status has been invalidated.
+		for (int i = bucketedHosts.size() - 1; i >= 0; i--) {
+			HostContribution contribution = bucketedHosts.get(i);
+			if (!contribution.host.isStatusValid()) {
+				statusVector.vector[statusVector.iVmVector + contribution.flavour]--;
+				contribution.flavour = NO_FLAVOUR;
+				this.removeBucketed(i);
+			}
+		}
+
+		if (Rack.RackState.OFF == rack.getState())
+			return new RackStatus(rack, timeStamp);
+
+		return new RackStatus(rack, statusVector, powerConsumption, timeStamp);
+	}
+
+	private void update(HostContribution contribution) {
+		HostData host = contribution.host;
+
+		// Remove previous contribution.
+		if (NO_STATE != contribution.state)
+			statusVector.vector[contribution.state]--;
+		if (NO_FLAVOUR != contribution.flavour) {
+			statusVector.vector[statusVector.iVmVector + contribution.flavour]--;
+			this.removeBucketed(contribution.bucketIndex);
+		}
+		powerConsumption -= contribution.powerConsumption;
+
+		// Calculate new contribution.
+		contribution.state = NO_STATE;
+		contribution.flavour = NO_FLAVOUR;
+		Host.HostState state = host.getCurrentStatus().getState();
+		if (state == Host.HostState.ON || state == Host.HostState.POWERING_ON) {
+			contribution.state = statusVector.iActive;
+
+			// Check Host status. If invalid, we cannot make any assertions.
+			if (host.isStatusValid()) {
+				HostDescription hostDescription = host.getHostDescription();
+				Resources capacity = hostDescription.getResourceCapacity();
+				Resources inUse = host.getCurrentStatus().getResourcesInUse();
+				contribution.flavour = RackStatusVector.findLargestFittingFlavour(capacity.getCpu() - inUse.getCpu(),
+						capacity.getMemory() - inUse.getMemory(),
+						capacity.getBandwidth() - inUse.getBandwidth(),
+						capacity.getStorage() - inUse.getStorage(),
+						hostDescription.getCpuCount() * hostDescription.getCoreCount(),
+						hostDescription.getCoreCapacity());
+			}
+		}
+		else if (state == Host.HostState.SUSPENDED || state == Host.HostState.SUSPENDING)
+			contribution.state = statusVector.iSuspended;
+		else if (state == Host.HostState.OFF || state == Host.HostState.POWERING_OFF)
+			contribution.state = statusVector.iPoweredOff;
+		contribution.powerConsumption = host.getCurrentStatus().getPowerConsumption();
+
+		// Add new contribution.
+		if (NO_STATE != contribution.state)
+			statusVector.vector[contribution.state]++;
+		if (NO_FLAVOUR != contribution.flavour) {
+			statusVector.vector[statusVector.iVmVector + contribution.flavour]++;
+			contribution.bucketIndex = bucketedHosts.size();
+			bucketedHosts.add(contribution);
+		}
+		powerConsumption += contribution.powerConsumption;
+	}
+
+	/**
+	 * Removes the element at the given index from the list of bucketed Hosts, by moving the
+	 * last element into its place.
+	 */
+	private void removeBucketed(int index) {
+		HostContribution last = bucketedHosts.remove(bucketedHosts.size() - 1);
+		if (index < bucketedHosts.size()) {
+			bucketedHosts.set(index, last);
+			last.bucketIndex = index;
+		}
+	}
+
+	/**
+	 * Last known contribution of a Host to the Rack's status.
+	 */
+	private static class HostContribution {
+
+		private final HostData host;
+		private int state = NO_STATE;			// Index in the status vector of the Host's power state.
+		private int flavour = NO_FLAVOUR;		// Spare capacity bucket (VM flavour) of the Host.
+		private int bucketIndex = -1;			// Position in the list of bucketed Hosts.
+		private double powerConsumption = 0;
+
+		public HostContribution(HostData host) {
+			this.host = host;
+		}
+	}
+
+}
@@ -21,6 +21,8 @@ import edu.uwo.csd.dcsim.management.capabilities.*;
 import edu.uwo.csd.dcsim.management.policies.*;
 import edu.uwo.csd.dcsim.projects.centralized.policies.ReactiveHostStatusPolicy;
 import edu.uwo.csd.dcsim.projects.hierarchical.HierarchicalMetrics;
+import edu.uwo.csd.dcsim.projects.hierarchical.HostActivationCache;
+import edu.uwo.csd.dcsim.projects.hierarchical.HostActivationCacheMetrics;
 import edu.uwo.csd.dcsim.projects.hierarchical.VmFlavours;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.*;
 import edu.uwo.csd.dcsim.projects.hierarchical.policies.*;
@@ -398,9 +400,13 @@ public class HierarchicalExperiment extends SimulationTask {
 	 */
 	private AutonomicManager createMgmtInfrastructure(Simulation simulation, DataCentre dc) {
 		
+		// Host activations cache shared by all the pools in the simulation.
+		HostActivationCache activationCache = new HostActivationCache(simulation);
+		simulation.getSimulationMetrics().addCustomMetricCollection(new HostActivationCacheMetrics(simulation, activationCache));
+		
 		// Create DC Manager.
-		ClusterPoolManager clusterPool = new ClusterPoolManager();
-		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord());
+		ClusterPoolManager clusterPool = new ClusterPoolManager(activationCache);
+		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord(SimTime.minutes(30)));
 		
 		// Install management policies in the autonomic manager.
 		dcManager.installPolicy(new ClusterStatusPolicy(5));
@@ -412,8 +418,8 @@ public class HierarchicalExperiment extends SimulationTask {
 		for (Cluster cluster : dc.getClusters()) {
 			
 			// Create Cluster's autonomic manager.
-			RackPoolManager rackPool = new RackPoolManager();
-			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord());
+			RackPoolManager rackPool = new RackPoolManager(activationCache);
+			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord(SimTime.minutes(30)));
 			
 			// Install management policies in the autonomic manager.
 			clusterManager.installPolicy(new ClusterMonitoringPolicy(dcManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
@@ -430,7 +436,7 @@ public class HierarchicalExperiment extends SimulationTask {
 				
 				// Create Rack's autonomic manager.
 				HostPoolManager hostPool = new HostPoolManager();
-				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), new AppPoolManager(), hostPool, new VmPoolManager(), new MigRequestRecord(), new MigrationTrackingManager());
+				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), new AppPoolManager(), hostPool, new RackStatusAggregator(), new HostClassificationIndex(), new VmPoolManager(), new MigRequestRecord(SimTime.minutes(30)), new MigrationTrackingManager());
 				
 				// Install management policies in the autonomic manager.
 				rackManager.installPolicy(new RackMonitoringPolicy(clusterManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
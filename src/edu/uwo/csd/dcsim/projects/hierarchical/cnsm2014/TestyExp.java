@@ -276,7 +276,7 @@ public class TestyExp extends SimulationTask {
 		
 		// Create DC Manager.
 		ClusterPoolManager clusterPool = new ClusterPoolManager();
-		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord());
+		AutonomicManager dcManager = new AutonomicManager(simulation, clusterPool, new MigRequestRecord(SimTime.minutes(30)));
 		
 		// Install management policies in the autonomic manager.
 		dcManager.installPolicy(new ClusterStatusPolicy(5));
@@ -289,7 +289,7 @@ public class TestyExp extends SimulationTask {
 			
 			// Create Cluster's autonomic manager.
 			RackPoolManager rackPool = new RackPoolManager();
-			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord());
+			AutonomicManager clusterManager = new AutonomicManager(simulation, new ClusterManager(cluster), rackPool, new MigRequestRecord(SimTime.minutes(30)));
 			
 			// Install management policies in the autonomic manager.
 			clusterManager.installPolicy(new ClusterMonitoringPolicy(dcManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
@@ -306,7 +306,7 @@ public class TestyExp extends SimulationTask {
 				
 				// Create Rack's autonomic manager.
 				HostPoolManager hostPool = new HostPoolManager();
-				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), new AppPoolManager(), hostPool, new VmPoolManager(), new MigRequestRecord(), new MigrationTrackingManager());
+				AutonomicManager rackManager = new AutonomicManager(simulation, new RackManager(rack), new AppPoolManager(), hostPool, new RackStatusAggregator(), new HostClassificationIndex(), new VmPoolManager(), new MigRequestRecord(SimTime.minutes(30)), new MigrationTrackingManager());
 				
 				// Install management policies in the autonomic manager.
 				rackManager.installPolicy(new RackMonitoringPolicy(clusterManager), SimTime.minutes(5), SimTime.minutes(simulation.getRandom().nextInt(5)));
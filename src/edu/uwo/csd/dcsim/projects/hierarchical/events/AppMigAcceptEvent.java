@@ -12,13 +12,15 @@ public class AppMigAcceptEvent extends MessageEvent {
 	private AppStatus application;
 	private Map<Integer, Host> vmHostMap;
 	private AutonomicManager origin;			// Manager accepting the migration.
+	private long requestId;					// ID given to the migration request by the Rack requesting the migration.
 	
-	public AppMigAcceptEvent(AutonomicManager target, AppStatus application, Map<Integer, Host> vmHostMap, AutonomicManager origin) {
+	public AppMigAcceptEvent(AutonomicManager target, AppStatus application, Map<Integer, Host> vmHostMap, AutonomicManager origin, long requestId) {
 		super(target);
 		
 		this.application = application;
 		this.vmHostMap = vmHostMap;
 		this.origin = origin;
+		this.requestId = requestId;
 	}
 	
 	public AppStatus getApplication() {
@@ -32,5 +34,9 @@ public class AppMigAcceptEvent extends MessageEvent {
 	public AutonomicManager getOrigin() {
 		return origin;
 	}
+	
+	public long getRequestId() {
+		return requestId;
+	}
 
 }
@@ -8,13 +8,15 @@ public class AppMigRejectEvent extends MessageEvent {
 
 	private AppStatus application;			// Application to migrate.
 	private AutonomicManager origin;		// Manager of the Rack requesting the migration.
+	private long requestId;				// ID of the migration request, unique per origin.
 	private int sender;					// ID of the Rack or Cluster sending (or forwarding) the request.
 	
-	public AppMigRejectEvent(AutonomicManager target, AppStatus application, AutonomicManager origin, int sender) {
+	public AppMigRejectEvent(AutonomicManager target, AppStatus application, AutonomicManager origin, long requestId, int sender) {
 		super(target);
 		
 		this.application = application;
 		this.origin = origin;
+		this.requestId = requestId;
 		this.sender = sender;
 	}
 	
@@ -22,6 +24,8 @@ public class AppMigRejectEvent extends MessageEvent {
 	
 	public AutonomicManager getOrigin() { return origin; }
 	
+	public long getRequestId() { return requestId; }
+	
 	public int getSender() { return sender; }
 
 }
@@ -0,0 +1,30 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.events;
+
+import java.util.ArrayList;
+
+import edu.uwo.csd.dcsim.core.Event;
+import edu.uwo.csd.dcsim.management.AutonomicManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.ConstrainedAppAllocationRequest;
+
+/**
+ * Placement request for several applications at once, sent by the DC Manager to a Cluster or by a
+ * Cluster to a Rack. The requests are listed in the order in which they are to be placed.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class BatchPlacementRequestEvent extends Event {
+
+	private ArrayList<ConstrainedAppAllocationRequest> requests;
+
+	public BatchPlacementRequestEvent(AutonomicManager target, ArrayList<ConstrainedAppAllocationRequest> requests) {
+		super(target);
+
+		this.requests = requests;
+	}
+
+	public ArrayList<ConstrainedAppAllocationRequest> getRequests() {
+		return requests;
+	}
+
+}
@@ -0,0 +1,33 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.events;
+
+import java.util.Collection;
+
+import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.management.AutonomicManager;
+import edu.uwo.csd.dcsim.management.events.MessageEvent;
+
+/**
+ * Sent by a Rack Manager that receives the acceptance of a migration request after the request had
+ * expired, so that the accepting Rack can release the target Hosts it had reserved.
+ */
+public class MigCancelEvent extends MessageEvent {
+
+	private long requestId;					// ID given to the migration request by the Rack requesting the migration.
+	private Collection<Host> targetHosts;		// Hosts reserved by the accepting Rack.
+	private AutonomicManager origin;		// Manager of the Rack cancelling the migration.
+	
+	public MigCancelEvent(AutonomicManager target, long requestId, Collection<Host> targetHosts, AutonomicManager origin) {
+		super(target);
+		
+		this.requestId = requestId;
+		this.targetHosts = targetHosts;
+		this.origin = origin;
+	}
+	
+	public long getRequestId() { return requestId; }
+	
+	public Collection<Host> getTargetHosts() { return targetHosts; }
+	
+	public AutonomicManager getOrigin() { return origin; }
+
+}
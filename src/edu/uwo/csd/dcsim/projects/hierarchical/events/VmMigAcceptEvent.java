@@ -10,21 +10,15 @@ public class VmMigAcceptEvent extends MessageEvent {
 	private VmStatus vm;
 	private Host targetHost;
 	private AutonomicManager origin;			// Manager accepting the migration.
+	private long requestId;					// ID given to the migration request by the Rack requesting the migration.
 	
-	@Deprecated
-	public VmMigAcceptEvent(AutonomicManager target, VmStatus vm, Host targetHost) {
-		super(target);
-		
-		this.vm = vm;
-		this.targetHost = targetHost;
-	}
-	
-	public VmMigAcceptEvent(AutonomicManager target, VmStatus vm, Host targetHost, AutonomicManager origin) {
+	public VmMigAcceptEvent(AutonomicManager target, VmStatus vm, Host targetHost, AutonomicManager origin, long requestId) {
 		super(target);
 		
 		this.vm = vm;
 		this.targetHost = targetHost;
 		this.origin = origin;
+		this.requestId = requestId;
 	}
 	
 	public VmStatus getVm() {
@@ -38,5 +32,9 @@ public class VmMigAcceptEvent extends MessageEvent {
 	public AutonomicManager getOrigin() {
 		return origin;
 	}
+	
+	public long getRequestId() {
+		return requestId;
+	}
 
 }
@@ -7,13 +7,15 @@ public class VmMigRequestEvent extends MessageEvent {
 
 	private VmStatus vm;					// VM to migrate.
 	private AutonomicManager origin;		// Manager of the Rack requesting the migration.
+	private long requestId;				// ID of the migration request, unique per origin.
 	private int sender;					// ID of the Rack or Cluster sending the request.
 	
-	public VmMigRequestEvent(AutonomicManager target, VmStatus vm, AutonomicManager origin, int sender) {
+	public VmMigRequestEvent(AutonomicManager target, VmStatus vm, AutonomicManager origin, long requestId, int sender) {
 		super(target);
 		
 		this.vm = vm;
 		this.origin = origin;
+		this.requestId = requestId;
 		this.sender = sender;
 	}
 	
@@ -21,6 +23,8 @@ public class VmMigRequestEvent extends MessageEvent {
 	
 	public AutonomicManager getOrigin() { return origin; }
 	
+	public long getRequestId() { return requestId; }
+	
 	public int getSender() { return sender; }
 
 }
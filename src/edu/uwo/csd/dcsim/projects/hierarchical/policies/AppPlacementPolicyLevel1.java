@@ -3,8 +3,11 @@ package edu.uwo.csd.dcsim.projects.hierarchical.policies;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import edu.uwo.csd.dcsim.common.Utility;
+import edu.uwo.csd.dcsim.core.Event;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.host.Resources;
 import edu.uwo.csd.dcsim.management.AutonomicManager;
@@ -20,6 +23,7 @@ import edu.uwo.csd.dcsim.projects.hierarchical.AppData;
 import edu.uwo.csd.dcsim.projects.hierarchical.ConstrainedAppAllocationRequest;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.AppPoolManager;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.BatchPlacementRequestEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRejectEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRequestEvent;
 import edu.uwo.csd.dcsim.vm.VmAllocationRequest;
@@ -44,6 +48,11 @@ public class AppPlacementPolicyLevel1 extends Policy {
 	protected double upperThreshold;
 	protected double targetUtilization;
 	
+	// Sandbox copies of the Hosts used by the application being placed in a batch, and the placeholder 
+	// VMs added to them (see execute(BatchPlacementRequestEvent)). NULL outside batch placements.
+	private Map<HostData, HostStatus> stagedSandboxes = null;
+	private Map<HostData, ArrayList<VmStatus>> stagedVms = null;
+	
 	/**
 	 * Creates an instance of AppPlacementPolicyLevel1.
 	 */
@@ -68,6 +77,9 @@ public class AppPlacementPolicyLevel1 extends Policy {
 			// Add application to the pool.
 			manager.getCapability(AppPoolManager.class).addApplication(new AppData(event.getRequest().getApplication(), manager));
 			
+			// Record application's successful deployment -- by type.
+			simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationTypeDeployed(event.getRequest().getApplication().getType());
+			
 			for (InstantiateVmAction action : placements) {
 				// Invalidate target Host's status, as we know it to be incorrect until the next status update arrives.
 				action.getTarget().invalidateStatus(simulation.getSimulationTime());
@@ -85,16 +97,110 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		}
 	}
 	
-	protected ArrayList<InstantiateVmAction> processRequest(PlacementRequestEvent event) {
-		ArrayList<InstantiateVmAction> actions = new ArrayList<InstantiateVmAction>();
+	/**
+	 * Note: This event can only come from the ClusterManager.
+	 * 
+	 * The requests are placed one after the other against the same sandbox Host status, so that 
+	 * each placement accounts for the VMs placed before it. Each request is placed against staged 
+	 * copies of the sandbox status of the Hosts it uses, which are only committed to the sandbox 
+	 * if the whole application can be placed, after which the Hosts that took VMs are classified 
+	 * again. Requests that cannot be placed are rejected individually.
+	 */
+	public void execute(BatchPlacementRequestEvent event) {
+		
+		Collection<HostData> hosts = manager.getCapability(HostPoolManager.class).getHosts();
 		
-		ConstrainedAppAllocationRequest request = event.getRequest();
+		// Reset the sandbox host status to the current host status.
+		for (HostData host : hosts) {
+			host.resetSandboxStatusToCurrent();
+		}
+		
+		// Categorize hosts.
+		ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
+		ArrayList<HostData> underUtilized = new ArrayList<HostData>();
+		ArrayList<HostData> empty = new ArrayList<HostData>();
+		this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
+		
+		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+		
+		ArrayList<InstantiateVmAction> placements = new ArrayList<InstantiateVmAction>();
+		for (ConstrainedAppAllocationRequest request : event.getRequests()) {
+			stagedSandboxes = new HashMap<HostData, HostStatus>();
+			stagedVms = new HashMap<HostData, ArrayList<VmStatus>>();
+			ArrayList<InstantiateVmAction> actions = this.placeApplication(request, targets, event);
+			
+			Map<HostData, ArrayList<VmStatus>> placeholders = stagedVms;
+			stagedSandboxes = null;
+			stagedVms = null;
+			
+			if (null != actions) {
+				
+				// Commit the placeholder VMs to the Hosts' sandbox status.
+				for (Map.Entry<HostData, ArrayList<VmStatus>> entry : placeholders.entrySet()) {
+					for (VmStatus vm : entry.getValue()) {
+						entry.getKey().getSandboxStatus().instantiateVm(vm);
+					}
+				}
+				
+				// Add application to the pool.
+				manager.getCapability(AppPoolManager.class).addApplication(new AppData(request.getApplication(), manager));
+				
+				// Record application's successful deployment -- by type.
+				simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationTypeDeployed(request.getApplication().getType());
+				
+				placements.addAll(actions);
+				
+				// Classify the Hosts that took VMs by their sandbox utilization (e.g., an Empty Host 
+				// is no longer empty) and order the target Hosts again for the next request.
+				for (HostData host : placeholders.keySet()) {
+					partiallyUtilized.remove(host);
+					underUtilized.remove(host);
+					empty.remove(host);
+					
+					double utilization = host.getSandboxStatus().getResourcesInUse().getCpu() / (double) host.getHostDescription().getResourceCapacity().getCpu();
+					if (utilization < lowerThreshold)
+						underUtilized.add(host);
+					else if (utilization < upperThreshold)
+						partiallyUtilized.add(host);
+				}
+				targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+			}
+			else {	// Contact ClusterManager - reject placement request.
+				
+				simulation.getLogger().debug(String.format("[Rack #%d] AppPlacementPolicyLevel1 - New Batch Placement request - App #%d - Failed to find target Hosts for placement.",
+						manager.getCapability(RackManager.class).getRack().getId(),
+						request.getId()));
+				
+				int rackId = manager.getCapability(RackManager.class).getRack().getId();
+				simulation.sendEvent(new PlacementRejectEvent(target, request, rackId));
+				
+				// The staged placeholders of the rejected application are discarded.
+			}
+		}
+		
+		for (InstantiateVmAction action : placements) {
+			// Invalidate target Host's status, as we know it to be incorrect until the next status update arrives.
+			action.getTarget().invalidateStatus(simulation.getSimulationTime());
+			action.execute(simulation, this);
+		}
+	}
+	
+	protected ArrayList<InstantiateVmAction> processRequest(PlacementRequestEvent event) {
 		
 		simulation.getLogger().debug(String.format("[Rack #%d] AppPlacementPolicyLevel1.processRequest() - App #%d.",
 				manager.getCapability(RackManager.class).getRack().getId(),
-				request.getId()));
+				event.getRequest().getId()));
 		
-		Collection<HostData> hosts = manager.getCapability(HostPoolManager.class).getHosts();
+		ArrayList<HostData> targets = this.prepareTargetHosts(manager.getCapability(HostPoolManager.class).getHosts());
+		
+		return this.placeApplication(event.getRequest(), targets, event);
+	}
+	
+	/**
+	 * Resets the sandbox status of the given Hosts to their current status and returns the 
+	 * target Hosts, in the order in which they are to be considered for VM Placement.
+	 */
+	protected ArrayList<HostData> prepareTargetHosts(Collection<HostData> hosts) {
 		
 		// Reset the sandbox host status to the current host status.
 		for (HostData host : hosts) {
@@ -108,7 +214,16 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
 		
 		// Create target hosts list.
-		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+		return this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+	}
+	
+	/**
+	 * Finds target Hosts for all the VMs in the application, updating the Hosts' sandbox status.
+	 * 
+	 * Returns NULL if the application cannot be placed.
+	 */
+	protected ArrayList<InstantiateVmAction> placeApplication(ConstrainedAppAllocationRequest request, ArrayList<HostData> targets, Event event) {
+		ArrayList<InstantiateVmAction> actions = new ArrayList<InstantiateVmAction>();
 		
 		for (ArrayList<VmAllocationRequest> affinitySet : request.getAffinityVms()) {
 			ArrayList<InstantiateVmAction> placements = this.placeVmsTogether(affinitySet, targets, event);
@@ -137,13 +252,42 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		// If we don't have a Placement action for each allocation request, then there's an implementation error somewhere.
 		assert request.getAllVmAllocationRequests().size() == actions.size();
 		
-		simulation.getLogger().debug(String.format("[Rack #%d] AppPlacementPolicyLevel1.processRequest() - App #%d - Found target Hosts for placement.",
+		simulation.getLogger().debug(String.format("[Rack #%d] AppPlacementPolicyLevel1.placeApplication() - App #%d - Found target Hosts for placement.",
 				manager.getCapability(RackManager.class).getRack().getId(),
 				request.getId()));
 		
 		return actions;
 	}
 	
+	/**
+	 * Returns the status against which VMs are placed on the given Host: its sandbox status or, 
+	 * during a batch placement, a staged copy of it.
+	 */
+	protected HostStatus getSandbox(HostData host) {
+		if (null == stagedSandboxes)
+			return host.getSandboxStatus();
+		
+		HostStatus sandbox = stagedSandboxes.get(host);
+		if (null == sandbox) {
+			sandbox = host.getSandboxStatus().copy();
+			stagedSandboxes.put(host, sandbox);
+		}
+		return sandbox;
+	}
+	
+	/**
+	 * Adds a dummy placeholder VM to the given Host to keep track of placed VM resource requirements.
+	 */
+	protected void addPlaceholder(HostData host, VmStatus vm) {
+		this.getSandbox(host).instantiateVm(vm);
+		
+		if (null != stagedVms) {
+			if (!stagedVms.containsKey(host))
+				stagedVms.put(host, new ArrayList<VmStatus>());
+			stagedVms.get(host).add(vm);
+		}
+	}
+	
 	public void execute(ShutdownVmEvent event) {
 		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
 		AutonomicManager hostManager = hostPool.getHost(event.getHostId()).getHostManager();
@@ -232,7 +376,7 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		return targets;
 	}
 	
-	protected InstantiateVmAction placeVmWherever(VmAllocationRequest request,	Collection<HostData> targets, PlacementRequestEvent event) {
+	protected InstantiateVmAction placeVmWherever(VmAllocationRequest request,	Collection<HostData> targets, Event event) {
 		
 		Resources reqResources = new Resources();
 		reqResources.setCpu(request.getCpu());
@@ -244,11 +388,11 @@ public class AppPlacementPolicyLevel1 extends Policy {
 			
 			// Check that target Host is capable and has enough capacity left to host the VM, 
 			// and also that it will not exceed the target utilization.
-			if (HostData.canHost(request.getVMDescription().getCores(), request.getVMDescription().getCoreCapacity(), reqResources, target.getSandboxStatus(), target.getHostDescription()) &&
-				(target.getSandboxStatus().getResourcesInUse().getCpu() + request.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
+			if (HostData.canHost(request.getVMDescription().getCores(), request.getVMDescription().getCoreCapacity(), reqResources, this.getSandbox(target), target.getHostDescription()) &&
+				(this.getSandbox(target).getResourcesInUse().getCpu() + request.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
 				
 				// Add a dummy placeholder VM to keep track of placed VM resource requirements.
-				target.getSandboxStatus().instantiateVm(new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
+				this.addPlaceholder(target, new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
 				
 				return new InstantiateVmAction(target, request, event);
 			}
@@ -257,7 +401,7 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		return null;
 	}
 	
-	protected ArrayList<InstantiateVmAction> placeVmsApart(ArrayList<VmAllocationRequest> antiAffinitySet,	Collection<HostData> targets, PlacementRequestEvent event) {
+	protected ArrayList<InstantiateVmAction> placeVmsApart(ArrayList<VmAllocationRequest> antiAffinitySet,	Collection<HostData> targets, Event event) {
 		ArrayList<InstantiateVmAction> actions = new ArrayList<InstantiateVmAction>();
 		
 		// Create copy of target hosts' list for manipulation.
@@ -276,13 +420,13 @@ public class AppPlacementPolicyLevel1 extends Policy {
 				
 				// Check that target Host is capable and has enough capacity left to host the VM, 
 				// and also that it will not exceed the target utilization.
-				if (HostData.canHost(request.getVMDescription().getCores(), request.getVMDescription().getCoreCapacity(), reqResources, target.getSandboxStatus(), target.getHostDescription()) &&
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + request.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
+				if (HostData.canHost(request.getVMDescription().getCores(), request.getVMDescription().getCoreCapacity(), reqResources, this.getSandbox(target), target.getHostDescription()) &&
+					(this.getSandbox(target).getResourcesInUse().getCpu() + request.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
 					
 					targetHost = target;
 					
 					// Add a dummy placeholder VM to keep track of placed VM resource requirements.
-					target.getSandboxStatus().instantiateVm(new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
+					this.addPlaceholder(target, new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
 					
 					break;
 				}
@@ -303,7 +447,7 @@ public class AppPlacementPolicyLevel1 extends Policy {
 		return actions;
 	}
 	
-	protected ArrayList<InstantiateVmAction> placeVmsTogether(ArrayList<VmAllocationRequest> affinitySet, Collection<HostData> targets, PlacementRequestEvent event) {
+	protected ArrayList<InstantiateVmAction> placeVmsTogether(ArrayList<VmAllocationRequest> affinitySet, Collection<HostData> targets, Event event) {
 		ArrayList<InstantiateVmAction> actions = new ArrayList<InstantiateVmAction>();
 		
 		int maxReqCores = 0;
@@ -330,8 +474,8 @@ public class AppPlacementPolicyLevel1 extends Policy {
 			
 			// Check that target Host is capable and has enough capacity left to host the VM, 
 			// and also that it will not exceed the target utilization.
-			if (HostData.canHost(maxReqCores, maxReqCoreCapacity, totalReqResources, target.getSandboxStatus(), target.getHostDescription()) &&
-				(target.getSandboxStatus().getResourcesInUse().getCpu() + totalCpu) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
+			if (HostData.canHost(maxReqCores, maxReqCoreCapacity, totalReqResources, this.getSandbox(target), target.getHostDescription()) &&
+				(this.getSandbox(target).getResourcesInUse().getCpu() + totalCpu) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
 				
 				for (VmAllocationRequest request : affinitySet) {
 					
@@ -342,7 +486,7 @@ public class AppPlacementPolicyLevel1 extends Policy {
 					reqResources.setStorage(request.getStorage());
 					
 					// Add dummy placeholder VM to keep track of placed VM' resource requirements.
-					target.getSandboxStatus().instantiateVm(new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
+					this.addPlaceholder(target, new VmStatus(request.getVMDescription().getCores(),	request.getVMDescription().getCoreCapacity(), reqResources));
 					
 					actions.add(new InstantiateVmAction(target, request, event));
 				}
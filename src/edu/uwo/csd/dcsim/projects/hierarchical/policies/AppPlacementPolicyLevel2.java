@@ -2,13 +2,19 @@ package edu.uwo.csd.dcsim.projects.hierarchical.policies;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.Policy;
 import edu.uwo.csd.dcsim.projects.hierarchical.ConstrainedAppAllocationRequest;
+import edu.uwo.csd.dcsim.projects.hierarchical.HostActivationCache;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackCapacityIndex;
 import edu.uwo.csd.dcsim.projects.hierarchical.RackData;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackStatusVector;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.ClusterManager;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackPoolManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.BatchPlacementRequestEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRejectEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRequestEvent;
 
@@ -38,6 +44,120 @@ public class AppPlacementPolicyLevel2 extends Policy {
 		this.processRequest(event.getRequest());
 	}
 	
+	/**
+	 * Note: This event can only come from the DC Manager.
+	 * 
+	 * The requests are bin-packed in one pass against sandbox copies of the Racks' status 
+	 * vectors, and the requests assigned to the same Rack are forwarded together in a single 
+	 * BatchPlacementRequestEvent. Requests that could not be packed are then processed one at 
+	 * a time.
+	 */
+	public void execute(BatchPlacementRequestEvent event) {
+		
+		simulation.getLogger().debug(String.format("[Cluster #%d] AppPlacementPolicyLevel2 - New Batch Placement request - %d Apps.",
+				manager.getCapability(ClusterManager.class).getCluster().getId(),
+				event.getRequests().size()));
+		
+		Collection<RackData> racks = manager.getCapability(RackPoolManager.class).getRacks();
+		
+		// Sandbox copies of the status vectors of active Racks (with a valid status) and of the 
+		// Racks activated while packing the batch.
+		LinkedHashMap<RackData, RackStatusVector> sandboxes = new LinkedHashMap<RackData, RackStatusVector>();
+		for (RackData rack : racks) {
+			if (rack.isRackActive() && rack.isStatusValid())
+				sandboxes.put(rack, rack.getCurrentStatus().getStatusVector().copy());
+		}
+		
+		LinkedHashMap<RackData, ArrayList<ConstrainedAppAllocationRequest>> assignments = new LinkedHashMap<RackData, ArrayList<ConstrainedAppAllocationRequest>>();
+		ArrayList<ConstrainedAppAllocationRequest> unassigned = new ArrayList<ConstrainedAppAllocationRequest>();
+		
+		for (ConstrainedAppAllocationRequest request : RackData.sortLargestFirst(event.getRequests())) {
+			RackData targetRack = this.packRequest(request, racks, sandboxes);
+			if (null != targetRack) {
+				ArrayList<ConstrainedAppAllocationRequest> assigned = assignments.get(targetRack);
+				if (null == assigned) {
+					assigned = new ArrayList<ConstrainedAppAllocationRequest>();
+					assignments.put(targetRack, assigned);
+				}
+				assigned.add(request);
+			}
+			else
+				unassigned.add(request);
+		}
+		
+		for (Map.Entry<RackData, ArrayList<ConstrainedAppAllocationRequest>> entry : assignments.entrySet()) {
+			RackData targetRack = entry.getKey();
+			
+			simulation.getLogger().debug(String.format("[Cluster #%d] AppPlacementPolicyLevel2 - Found placement target for %d Apps: Rack #%d.",
+					manager.getCapability(ClusterManager.class).getCluster().getId(),
+					entry.getValue().size(),
+					targetRack.getId()));
+			
+			// Found target. Send placement request.
+			simulation.sendEvent(new BatchPlacementRequestEvent(targetRack.getRackManager(), entry.getValue()));
+			
+			// Invalidate target Rack's status, as we know it to be incorrect until the next status update arrives.
+			targetRack.invalidateStatus(simulation.getSimulationTime());
+			
+			// Mark Rack as active (in case it was previously inactive).
+			targetRack.activateRack();
+		}
+		
+		for (ConstrainedAppAllocationRequest request : unassigned) {
+			this.processRequest(request);
+		}
+	}
+	
+	/**
+	 * Selects a target Rack for the request, reserving the required resources in the Rack's 
+	 * sandbox status vector. The Rack that would result in the least number of Host activations 
+	 * is selected; if several Racks require a minimum number of Host activations, the most loaded 
+	 * Rack among them is picked. Only if no Rack in the sandbox can take the application, a new 
+	 * Rack is activated.
+	 * 
+	 * Returns NULL if no Rack can take the application.
+	 */
+	protected RackData packRequest(ConstrainedAppAllocationRequest request, Collection<RackData> racks, LinkedHashMap<RackData, RackStatusVector> sandboxes) {
+		
+		HostActivationCache activationCache = manager.getCapability(RackPoolManager.class).getActivationCache();
+		
+		int minHostActivations = Integer.MAX_VALUE;
+		RackData mostLoaded = null;
+		for (Map.Entry<RackData, RackStatusVector> entry : sandboxes.entrySet()) {
+			RackStatusVector statusVector = entry.getValue();
+			int hostActivations = RackData.calculateMinHostActivations(request, statusVector, entry.getKey().getRackDescription().getHostDescription(), activationCache);
+			if (hostActivations >= 0) {
+				if (hostActivations < minHostActivations) {
+					minHostActivations = hostActivations;
+					mostLoaded = entry.getKey();
+				}
+				else if (hostActivations == minHostActivations) {
+					if (statusVector.vector[statusVector.iActive] > sandboxes.get(mostLoaded).vector[statusVector.iActive])
+						mostLoaded = entry.getKey();
+				}
+			}
+		}
+		
+		if (null != mostLoaded) {
+			RackData.reserve(request, sandboxes.get(mostLoaded), mostLoaded.getRackDescription().getHostDescription());
+			return mostLoaded;
+		}
+		
+		// If no Rack in the sandbox can take the application, activate a new Rack.
+		for (RackData rack : racks) {
+			if (!rack.isRackActive() && !sandboxes.containsKey(rack)) {
+				RackStatusVector statusVector = rack.getCurrentStatus().getStatusVector().copy();
+				if (RackData.reserve(request, statusVector, rack.getRackDescription().getHostDescription()) >= 0) {
+					sandboxes.put(rack, statusVector);
+					return rack;
+				}
+				break;
+			}
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * Note: This event can only come from Racks in this Cluster in response to placement requests sent by the ClusterManager.
 	 */
@@ -68,6 +188,7 @@ public class AppPlacementPolicyLevel2 extends Policy {
 				request.getId()));
 		
 		Collection<RackData> racks = manager.getCapability(RackPoolManager.class).getRacks();
+		HostActivationCache activationCache = manager.getCapability(RackPoolManager.class).getActivationCache();
 		
 		// Create sublist of active Racks (includes Racks with currently Invalid Status).
 		ArrayList<RackData> active = this.getActiveRacksSublist(racks);
@@ -83,7 +204,7 @@ public class AppPlacementPolicyLevel2 extends Policy {
 		// the VM; otherwise, activate a new Rack.
 		else if (active.size() == 1) {
 			RackData rack = active.get(0);
-			if (rack.isStatusValid() && RackData.canHost(request, rack.getCurrentStatus().getStatusVector(), rack.getRackDescription())) {
+			if (rack.isStatusValid() && RackData.canHost(request, rack.getCurrentStatus().getStatusVector(), rack.getRackDescription(), activationCache)) {
 				targetRack = rack;
 			}
 			else {
@@ -92,27 +213,43 @@ public class AppPlacementPolicyLevel2 extends Policy {
 		}
 		else {
 			// Search for a target Rack among the subset of active Racks.
+			// Racks with a currently invalid status are not indexed.
+			RackCapacityIndex capacityIndex = manager.getCapability(RackPoolManager.class).getCapacityIndex();
 			
-			int minHostActivations = Integer.MAX_VALUE;
+			// Find the Rack that would result in the least number of Host activations.
+			// If several Racks require a minimum number of Host activations,
+			// pick the most loaded Rack among them.
+			
+			// Fast path: Racks that could host the application without activating any Hosts must 
+			// have an active Host able to take the largest VM (or affinity set) in the application. 
+			// Candidate Racks are visited from most to least loaded, so the first Rack requiring 
+			// zero Host activations is the target.
 			RackData mostLoaded = null;
-			for (RackData rack : active) {
-				
-				// Filter out Racks with a currently invalid status.
-				if (!rack.isStatusValid())
-					continue;
-				
-				// Find the Rack that would result in the least number of Host activations.
-				// If several Racks require a minimum number of Host activations,
-				// pick the most loaded Rack among them.
-				int hostActivations = RackData.calculateMinHostActivations(request, rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription());
-				if (hostActivations >= 0) {
-					if (hostActivations < minHostActivations) {
-						minHostActivations = hostActivations;
-						mostLoaded = rack;
-					}
-					else if (hostActivations == minHostActivations) {
-						if (rack.getCurrentStatus().getActiveHosts() > mostLoaded.getCurrentStatus().getActiveHosts())
+			for (RackData rack : capacityIndex.getCapableRacks(RackData.calculateRequiredFlavour(request))) {
+				if (rack.isRackActive() && 
+						RackData.calculateMinHostActivations(request, rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription(), activationCache) == 0) {
+					mostLoaded = rack;
+					break;
+				}
+			}
+			
+			// Otherwise, Host activations are needed -- only Racks with inactive Hosts qualify.
+			int minHostActivations = Integer.MAX_VALUE;
+			if (null == mostLoaded) {
+				for (RackData rack : capacityIndex.getRacksWithInactiveHosts()) {
+					if (!rack.isRackActive())
+						continue;
+					
+					int hostActivations = RackData.calculateMinHostActivations(request, rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription(), activationCache);
+					if (hostActivations >= 0) {
+						if (hostActivations < minHostActivations) {
+							minHostActivations = hostActivations;
 							mostLoaded = rack;
+						}
+						else if (hostActivations == minHostActivations) {
+							if (rack.getCurrentStatus().getActiveHosts() > mostLoaded.getCurrentStatus().getActiveHosts())
+								mostLoaded = rack;
+						}
 					}
 				}
 			}
@@ -3,6 +3,9 @@ package edu.uwo.csd.dcsim.projects.hierarchical.policies;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import edu.uwo.csd.dcsim.application.Application;
 import edu.uwo.csd.dcsim.application.InteractiveApplication;
@@ -11,10 +14,13 @@ import edu.uwo.csd.dcsim.management.Policy;
 import edu.uwo.csd.dcsim.management.events.ApplicationPlacementEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.ClusterData;
 import edu.uwo.csd.dcsim.projects.hierarchical.ClusterDataComparator;
+import edu.uwo.csd.dcsim.projects.hierarchical.ClusterDescription;
 import edu.uwo.csd.dcsim.projects.hierarchical.ClusterStatus;
 import edu.uwo.csd.dcsim.projects.hierarchical.ConstrainedAppAllocationRequest;
+import edu.uwo.csd.dcsim.projects.hierarchical.RackData;
 import edu.uwo.csd.dcsim.projects.hierarchical.RackStatusVector;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.ClusterPoolManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.BatchPlacementRequestEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRejectEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.PlacementRequestEvent;
 import edu.uwo.csd.dcsim.vm.VmAllocationRequest;
@@ -22,7 +28,8 @@ import edu.uwo.csd.dcsim.vm.VmAllocationRequest;
 /**
  * This policy places applications, one at a time, in a data centre. 
  * At this level, the policy selects a target Cluster to which to forward the 
- * Application Placement request.
+ * Application Placement request. Bursts of applications are bin-packed in one 
+ * pass and forwarded to each target Cluster as a single batch.
  * 
  * @author Gaston Keller
  *
@@ -37,29 +44,158 @@ public class AppPlacementPolicyLevel3 extends Policy {
 	}
 	
 	/**
-	 * This method processes one Application Placement request at a time.
+	 * This method processes one Application Placement request at a time, unless the event 
+	 * carries several applications, in which case they are placed as a batch.
 	 */
 	public void execute(ApplicationPlacementEvent event) {
 		
+		if (event.getApplications().size() > 1) {
+			this.processBatch(event);
+			return;
+		}
+		
 		for (Application application : event.getApplications()) {
+			this.placeApplication(new ConstrainedAppAllocationRequest((InteractiveApplication) application), event);
+		}
+	}
+	
+	/**
+	 * Forwards a single Application Placement request and records its failure, if no Cluster can 
+	 * take it. (Successful deployments are recorded by the Rack that places the application.)
+	 */
+	protected void placeApplication(ConstrainedAppAllocationRequest request, ApplicationPlacementEvent event) {
+		Application application = request.getApplication();
+		
+		if (!this.processRequest(request)) {
+			event.setFailed(true);
 			
-			if (this.processRequest(new ConstrainedAppAllocationRequest((InteractiveApplication) application)))
-				// Record application's successful deployment -- by type.
-				simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationTypeDeployed(application.getType());
-			else {
-				event.setFailed(true);
-				
-				simulation.getLogger().debug(String.format("[DC Manager] AppPlacementPolicyLevel3 - PLACEMENT FAILED - App #%d.", application.getId()));
-//				System.out.println("AppPlacementPolicyLevel3 - PLACEMENT FAILED - App #" + application.getId());
-				
-				// Record failure to complete placement request.
-				simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationPlacementsFailed();
-				
-//				if (simulation.isRecordingMetrics()) {
-//					simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationPlacementsFailed();
-//				}
+			simulation.getLogger().debug(String.format("[DC Manager] AppPlacementPolicyLevel3 - PLACEMENT FAILED - App #%d.", application.getId()));
+//			System.out.println("AppPlacementPolicyLevel3 - PLACEMENT FAILED - App #" + application.getId());
+			
+			// Record failure to complete placement request.
+			simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationPlacementsFailed();
+			
+//			if (simulation.isRecordingMetrics()) {
+//				simulation.getSimulationMetrics().getApplicationMetrics().incrementApplicationPlacementsFailed();
+//			}
+		}
+	}
+	
+	/**
+	 * Places a burst of applications in one pass. The requests are sorted largest first and 
+	 * bin-packed against sandbox copies of the Clusters' status vectors, and the requests 
+	 * assigned to the same Cluster are forwarded together in a single BatchPlacementRequestEvent.
+	 * 
+	 * Requests that could not be packed are then processed one at a time.
+	 */
+	protected void processBatch(ApplicationPlacementEvent event) {
+		
+		simulation.getLogger().debug(String.format("[DC Manager] AppPlacementPolicyLevel3.processBatch() - %d Apps.", event.getApplications().size()));
+		
+		ArrayList<ConstrainedAppAllocationRequest> requests = new ArrayList<ConstrainedAppAllocationRequest>();
+		for (Application application : event.getApplications()) {
+			requests.add(new ConstrainedAppAllocationRequest((InteractiveApplication) application));
+		}
+		requests = RackData.sortLargestFirst(requests);
+		
+		// Sort Clusters in decreasing order by power efficiency.
+		ArrayList<ClusterData> clusters = new ArrayList<ClusterData>(manager.getCapability(ClusterPoolManager.class).getClusters());
+		Collections.sort(clusters, ClusterDataComparator.getComparator(ClusterDataComparator.POWER_EFFICIENCY));
+		Collections.reverse(clusters);
+		
+		Map<ClusterData, ClusterSandbox> sandboxes = new HashMap<ClusterData, ClusterSandbox>();
+		LinkedHashMap<ClusterData, ArrayList<ConstrainedAppAllocationRequest>> assignments = new LinkedHashMap<ClusterData, ArrayList<ConstrainedAppAllocationRequest>>();
+		ArrayList<ConstrainedAppAllocationRequest> unassigned = new ArrayList<ConstrainedAppAllocationRequest>();
+		
+		for (ConstrainedAppAllocationRequest request : requests) {
+			ClusterData targetCluster = this.packRequest(request, this.getCapableClustersSublist(request, clusters), sandboxes);
+			if (null != targetCluster) {
+				ArrayList<ConstrainedAppAllocationRequest> assigned = assignments.get(targetCluster);
+				if (null == assigned) {
+					assigned = new ArrayList<ConstrainedAppAllocationRequest>();
+					assignments.put(targetCluster, assigned);
+				}
+				assigned.add(request);
+			}
+			else
+				unassigned.add(request);
+		}
+		
+		for (Map.Entry<ClusterData, ArrayList<ConstrainedAppAllocationRequest>> entry : assignments.entrySet()) {
+			ClusterData targetCluster = entry.getKey();
+			
+			simulation.getLogger().debug(String.format("[DC Manager] AppPlacementPolicyLevel3.processBatch() - Found placement target for %d Apps: Cluster #%d.", entry.getValue().size(), targetCluster.getId()));
+			
+			// Found target. Send placement request.
+			simulation.sendEvent(new BatchPlacementRequestEvent(targetCluster.getClusterManager(), entry.getValue()));
+			
+			// Invalidate target Cluster's status, as we know it to be incorrect until the next status update arrives.
+			targetCluster.invalidateStatus(simulation.getSimulationTime());
+			
+			// Mark Cluster as active (in case it was previously inactive).
+			targetCluster.activateCluster();
+		}
+		
+		for (ConstrainedAppAllocationRequest request : unassigned) {
+			this.placeApplication(request, event);
+		}
+	}
+	
+	/**
+	 * Selects a target Cluster for the request among the given (capable) Clusters, reserving the 
+	 * required resources in the Cluster's sandbox. Clusters are considered in the given order, 
+	 * first to take the application in their least loaded Rack, then to take it in a newly 
+	 * activated Rack. Only if no active Cluster can take the application, a new Cluster is 
+	 * activated.
+	 * 
+	 * Returns NULL if no Cluster can take the application.
+	 */
+	protected ClusterData packRequest(ConstrainedAppAllocationRequest request, ArrayList<ClusterData> candidates, Map<ClusterData, ClusterSandbox> sandboxes) {
+		
+		// Least loaded Rack in active Clusters.
+		for (ClusterData cluster : candidates) {
+			ClusterSandbox sandbox = this.getSandbox(cluster, sandboxes);
+			if (null != sandbox && sandbox.active && sandbox.reserve(request))
+				return cluster;
+		}
+		
+		// New Rack in active Clusters.
+		for (ClusterData cluster : candidates) {
+			ClusterSandbox sandbox = this.getSandbox(cluster, sandboxes);
+			if (null != sandbox && sandbox.active && sandbox.reserveInNewRack(request))
+				return cluster;
+		}
+		
+		// New Rack in inactive Clusters.
+		for (ClusterData cluster : candidates) {
+			ClusterSandbox sandbox = this.getSandbox(cluster, sandboxes);
+			if (null != sandbox && !sandbox.active && sandbox.reserveInNewRack(request)) {
+				sandbox.active = true;
+				return cluster;
 			}
 		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the sandbox of the given Cluster, creating it if necessary, or NULL if the Cluster
+	 * is active but its status is currently invalid.
+	 */
+	private ClusterSandbox getSandbox(ClusterData cluster, Map<ClusterData, ClusterSandbox> sandboxes) {
+		if (sandboxes.containsKey(cluster))
+			return sandboxes.get(cluster);
+		
+		ClusterSandbox sandbox = null;
+		if (!cluster.isClusterActive())
+			sandbox = new ClusterSandbox(cluster.getClusterDescription(), null, 0, false);
+		else if (cluster.isStatusValid()) {
+			ClusterStatus status = cluster.getCurrentStatus();
+			sandbox = new ClusterSandbox(cluster.getClusterDescription(), status.getStatusVector(), status.getActiveRacks(), true);
+		}
+		sandboxes.put(cluster, sandbox);
+		
+		return sandbox;
 	}
 	
 	/**
@@ -122,7 +258,7 @@ public class AppPlacementPolicyLevel3 extends Policy {
 			if (cluster.isStatusValid()) {
 				if (cluster.getCurrentStatus().getActiveRacks() < cluster.getClusterDescription().getRackCount()
 						|| (cluster.getCurrentStatus().getStatusVector() != null
-							&& ClusterData.canHost(request, cluster.getCurrentStatus().getStatusVector(), cluster.getClusterDescription()))) {
+							&& ClusterData.canHost(request, cluster.getCurrentStatus().getStatusVector(), cluster.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache()))) {
 					
 					targetCluster = cluster;
 				}
@@ -163,7 +299,7 @@ public class AppPlacementPolicyLevel3 extends Policy {
 					// Check if the Cluster with the least loaded Rack can take the application.
 					if (null != leastLoadedRack
 							&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-							&& ClusterData.canHost(request, leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+							&& ClusterData.canHost(request, leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 						
 						targetCluster = leastLoadedRack;
 						break;
@@ -202,7 +338,7 @@ public class AppPlacementPolicyLevel3 extends Policy {
 				// Check if the Cluster with the least loaded Rack can take the application.
 				if (null != leastLoadedRack
 						&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-						&& ClusterData.canHost(request, leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+						&& ClusterData.canHost(request, leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 					
 					targetCluster = leastLoadedRack;
 				}
@@ -298,6 +434,52 @@ public class AppPlacementPolicyLevel3 extends Policy {
 		return null;
 	}
 	
+	/**
+	 * Sandbox view of a Cluster's spare capacity, used while packing a batch of requests: copies 
+	 * of the status vectors of the Racks known to have spare capacity (initially, the least loaded 
+	 * Rack; then also the Racks activated in the sandbox), plus the number of Racks left to 
+	 * activate. Every reservation updates the vector of the Rack that takes the application.
+	 */
+	protected static class ClusterSandbox {
+		
+		private final ClusterDescription description;
+		private ArrayList<RackStatusVector> rackVectors = new ArrayList<RackStatusVector>();
+		private int inactiveRacks;
+		private boolean active;
+		
+		public ClusterSandbox(ClusterDescription description, RackStatusVector statusVector, int activeRacks, boolean active) {
+			this.description = description;
+			if (null != statusVector)
+				rackVectors.add(statusVector.copy());
+			inactiveRacks = description.getRackCount() - activeRacks;
+			this.active = active;
+		}
+		
+		public boolean reserve(ConstrainedAppAllocationRequest request) {
+			for (RackStatusVector rackVector : rackVectors) {
+				if (RackData.reserve(request, rackVector, description.getRackDescription().getHostDescription()) >= 0)
+					return true;
+			}
+			
+			return false;
+		}
+		
+		public boolean reserveInNewRack(ConstrainedAppAllocationRequest request) {
+			if (inactiveRacks <= 0)
+				return false;
+			
+			RackStatusVector rackVector = new RackStatusVector();
+			rackVector.vector[rackVector.iPoweredOff] = description.getRackDescription().getHostCount();
+			if (RackData.reserve(request, rackVector, description.getRackDescription().getHostDescription()) < 0)
+				return false;
+			
+			// Keep the new Rack's (remaining) capacity available to the next requests.
+			rackVectors.add(rackVector);
+			inactiveRacks--;
+			return true;
+		}
+	}
+	
 	@Override
 	public void onInstall() {
 		// Auto-generated method stub
@@ -17,7 +17,6 @@ import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.HostData;
 import edu.uwo.csd.dcsim.management.HostDataComparator;
 import edu.uwo.csd.dcsim.management.HostStatus;
-import edu.uwo.csd.dcsim.management.Policy;
 import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.management.VmStatusComparator;
 import edu.uwo.csd.dcsim.management.action.ConcurrentManagementActionExecutor;
@@ -27,6 +26,7 @@ import edu.uwo.csd.dcsim.projects.centralized.events.StressCheckEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.AppData;
 import edu.uwo.csd.dcsim.projects.hierarchical.AppStatus;
 import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
+import edu.uwo.csd.dcsim.projects.hierarchical.RelocationTargetTable;
 import edu.uwo.csd.dcsim.projects.hierarchical.TaskInstanceData;
 import edu.uwo.csd.dcsim.projects.hierarchical.VmData;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.AppPoolManager;
@@ -38,6 +38,7 @@ import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigAcceptEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigRequestEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigRejectEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.IncomingMigrationEvent;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.MigCancelEvent;
 
 /**
  * This policy implements the VM Relocation process in two steps. First, the 
@@ -61,7 +62,7 @@ import edu.uwo.csd.dcsim.projects.hierarchical.events.IncomingMigrationEvent;
  * @author Gaston Keller
  *
  */
-public class AppRelocationPolicyLevel1 extends Policy {
+public class AppRelocationPolicyLevel1 extends RelocationPolicyLevel1Base {
 	
 	protected AutonomicManager target;
 	
@@ -96,7 +97,17 @@ public class AppRelocationPolicyLevel1 extends Policy {
 				event.getApplication().getId()));
 		
 		// Get entry from migration requests record.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getApplication(), manager);
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		MigRequestEntry entry = record.getEntry(event.getRequestId(), manager);
+		if (null == entry && record.hasExpired(event.getRequestId(), manager)) {
+			simulation.getLogger().debug(String.format("[Rack #%%d] %s - MigRequest had expired. Cancelling acceptance - App #%%d." ,
+					manager.getCapability(RackManager.class).getRack().getId(),
+					event.getApplication().getId()));
+			
+			// Let the accepting Rack release the Hosts it reserved for the application.
+			simulation.sendEvent(new MigCancelEvent(event.getOrigin(), event.getRequestId(), event.getTargetHosts().values(), manager));
+			return;
+		}
 		if (null == entry)
 			throw new RuntimeException(String.format("Received a migration request acceptance for App #%d, but there is no record of such a request being made.", event.getApplication().getId()));
 		
@@ -135,7 +146,7 @@ public class AppRelocationPolicyLevel1 extends Policy {
 		migrations.execute(simulation, this);
 		
 		// Delete entry from migration requests record.
-		manager.getCapability(MigRequestRecord.class).removeEntry(entry);
+		record.removeEntry(entry);
 	}
 	
 	/**
@@ -149,7 +160,9 @@ public class AppRelocationPolicyLevel1 extends Policy {
 		
 		// Delete entry from migration requests record.
 		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
-		MigRequestEntry entry = record.getEntry(event.getApplication(), event.getOrigin());
+		MigRequestEntry entry = record.getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired and its VMs were already cleared.
+			return;
 		record.removeEntry(entry);
 		
 		// The application's VMs had been marked for migration. Clear them.
@@ -186,14 +199,14 @@ public class AppRelocationPolicyLevel1 extends Policy {
 			simulation.getLogger().debug(String.format("[Rack #%d] AppRelocationPolicyLevel1 - ACCEPTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new AppMigAcceptEvent(event.getOrigin(), event.getApplication(), targets, manager));
+			simulation.sendEvent(new AppMigAcceptEvent(event.getOrigin(), event.getApplication(), targets, manager, event.getRequestId()));
 		}
 		else {	// Otherwise, send message to ClusterManager rejecting the migration request.
 			
 			simulation.getLogger().debug(String.format("[Rack #%d] AppRelocationPolicyLevel1 - REJECTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new AppMigRejectEvent(target, event.getApplication(), event.getOrigin(), manager.getCapability(RackManager.class).getRack().getId()));
+			simulation.sendEvent(new AppMigRejectEvent(target, event.getApplication(), event.getOrigin(), event.getRequestId(), manager.getCapability(RackManager.class).getRack().getId()));
 		}
 	}
 	
@@ -204,6 +217,8 @@ public class AppRelocationPolicyLevel1 extends Policy {
 	public void execute(StressCheckEvent event) {
 		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
 		
+		this.releaseExpiredRequests();
+		
 		HostData host = hostPool.getHost(event.getHostId());
 		if (this.isStressed(host) && host.getCurrentStatus().getOutgoingMigrationCount() == 0) {
 			
@@ -260,117 +275,10 @@ public class AppRelocationPolicyLevel1 extends Policy {
 		ArrayList<VmStatus> affinity = new ArrayList<VmStatus>();
 		this.classifyVms(source.getCurrentStatus().getVms(), independent, antiAffinity, affinity);
 		
-		// Process Independent VMs.
-		
 		// Sort VMs, removing small VMs from consideration for migration.
 		independent = this.orderSourceVms(independent, source);
-		
-		MigrationAction mig = null;
-		for (VmStatus vm : independent) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			if (ongoingMigs.isMigrating(vm.getId()))
-				continue;
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					// Mark VM as scheduled for migration.
-					ongoingMigs.addMigratingVm(vm.getId());
-					
-					mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
-					
-					simulation.getLogger().debug(String.format("[Rack #%d] AppRelocationPolicyLevel1 - Migrating (Independent) VM #%d from Host #%d to Host #%d.",
-							manager.getCapability(RackManager.class).getRack().getId(),
-							vm.getId(),
-							source.getId(),
-							target.getId()));
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != mig)		// Found VM migration. Exit loop.
-				break;
-		}
-		
-		if (null != mig) {			// Trigger migration and exit.
-			mig.execute(simulation, this);
-			return true;
-		}
-		
-		// Process Anti-affinity VMs.
-		
-		// Sort VMs, removing small VMs from consideration for migration.
 		antiAffinity = this.orderSourceVms(antiAffinity, source);
 		
-		for (VmStatus vm : antiAffinity) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			if (ongoingMigs.isMigrating(vm.getId()))
-				continue;
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization &&
-					!this.isHostingTask(vmPool.getVm(vm.getId()).getTask(), target)) {
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					// Mark VM as scheduled for migration.
-					ongoingMigs.addMigratingVm(vm.getId());
-					
-					mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
-					
-					simulation.getLogger().debug(String.format("[Rack #%d] AppRelocationPolicyLevel1 - Migrating (Anti-affinity) VM #%d from Host #%d to Host #%d.",
-							manager.getCapability(RackManager.class).getRack().getId(),
-							vm.getId(),
-							source.getId(),
-							target.getId()));
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != mig)		// Found VM migration. Exit loop.
-				break;
-		}
-		
-		if (null != mig) {			// Trigger migration and exit.
-			mig.execute(simulation, this);
-			return true;
-		}
-		
-		// Process Affinity VMs.
-		
-		// TODO: Migrations are issued concurrently. Should they be issued sequentially instead?
-		ConcurrentManagementActionExecutor migs = null;
-		
 		ArrayList<ArrayList<VmStatus>> affinitySets = this.groupVmsByAffinity(affinity);
 		
 		// If there's more than one Affinity-set, sort them in increasing order by size.
@@ -385,75 +293,16 @@ public class AppRelocationPolicyLevel1 extends Policy {
 				}
 			});
 		
-		for (ArrayList<VmStatus> affinitySet : affinitySets) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			// Since these VMs are constrained by affinity, if one VM is migration, we know that the others in the affinity-set are, too.
-			if (!affinitySet.isEmpty() && ongoingMigs.isMigrating(affinitySet.get(0).getId()))
-				continue;
-			
-			// Calculate total required resources for all the VMs in the Affinity-set.
-			int maxReqCores = 0;
-			int maxReqCoreCapacity = 0;
-			Resources totalReqResources = new Resources();
-			for (VmStatus vm : affinitySet) {
-				if (vm.getCores() > maxReqCores)
-					maxReqCores = vm.getCores();
-				
-				if (vm.getCoreCapacity() > maxReqCoreCapacity)
-					maxReqCoreCapacity = vm.getCoreCapacity();
-				
-				totalReqResources = totalReqResources.add(vm.getResourcesInUse());
-			}
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(maxReqCores, maxReqCoreCapacity, totalReqResources, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + totalReqResources.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-					
-					migs = new ConcurrentManagementActionExecutor();
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					// Create a migration action per VM in the Affinity-set.
-					for (VmStatus vm : affinitySet) {
-						source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-						
-						// Mark VM as scheduled for migration.
-						ongoingMigs.addMigratingVm(vm.getId());
-						
-						migs.addAction(new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId()));
-						
-						simulation.getLogger().debug(String.format("[Rack #%d] AppRelocationPolicyLevel1 - Migrating (Affinity) VM #%d from Host #%d to Host #%d.",
-								manager.getCapability(RackManager.class).getRack().getId(),
-								vm.getId(),
-								source.getId(),
-								target.getId()));
-						
-					}
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != migs)		// Found VM migration. Exit loop.
-				break;
-		}
-		
-		if (null != migs) {			// Trigger migrations and exit.
-			migs.execute(simulation, this);
-			return true;
-		}
+		// Search for a VM migration -- Independent VMs first, then Anti-affinity VMs, and finally Affinity-sets --
+		// to a target Host that is not currently involved in migrations, has enough capacity left to host the VM(s),
+		// and whose utilization won't be pushed above the target utilization threshold by the migration.
+		RelocationTargetTable table = new RelocationTargetTable(targets, targetUtilization, 0, 0, vmPool);
+		RelocationTargetTable.Selection selection = table.select(independent, antiAffinity, affinitySets, ongoingMigs);
+		if (null == selection)
+			return false;
 		
-		return false;
+		this.migrate(source, selection);
+		return true;
 	}
 	
 	/**
@@ -485,10 +334,11 @@ public class AppRelocationPolicyLevel1 extends Policy {
 		}
 		
 		// Request assistance from ClusterManager to find a target Rack to which to migrate the selected application.
-		simulation.sendEvent(new AppMigRequestEvent(target, application, manager, manager.getCapability(RackManager.class).getRack().getId()));
+		long requestId = manager.getCapability(MigRequestRecord.class).nextRequestId();
+		simulation.sendEvent(new AppMigRequestEvent(target, application, manager, requestId, manager.getCapability(RackManager.class).getRack().getId()));
 		
 		// Keep track of the migration request just sent.
-		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(application, manager));
+		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(application, manager, requestId), simulation.getSimulationTime());
 		
 		return true;
 	}
@@ -775,26 +625,6 @@ public class AppRelocationPolicyLevel1 extends Policy {
 		return affinitySets;
 	}
 	
-	/**
-	 * Determines whether the given Host is hosting an instance of the given Task.
-	 */
-	private boolean isHostingTask(TaskInstanceData task, HostData host) {
-		VmPoolManager vmPool = manager.getCapability(VmPoolManager.class);
-		
-		for (VmStatus vm : host.getSandboxStatus().getVms()) {
-			VmData vmData = vmPool.getVm(vm.getId());
-			
-			if (vmData.getHost() != host)					// VM is actually located in another Host in this Rack.
-				continue;
-			
-			TaskInstanceData vmTask = vmData.getTask();
-			if (vmTask.getTaskId() == task.getTaskId() && vmTask.getAppId() == task.getAppId())
-				return true;
-		}
-		
-		return false;
-	}
-	
 	/**
 	 * Determines if the Host is Stressed or not, based on its average
 	 * CPU utilization over the last window of time.
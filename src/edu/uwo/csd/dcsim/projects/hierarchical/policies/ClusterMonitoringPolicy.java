@@ -28,7 +28,9 @@ public class ClusterMonitoringPolicy extends Policy {
 		ClusterManager clusterManager = manager.getCapability(ClusterManager.class);
 		RackPoolManager rackPoolManager = manager.getCapability(RackPoolManager.class);
 		
-		ClusterStatus status = new ClusterStatus(clusterManager.getCluster(), rackPoolManager, simulation.getSimulationTime());
+		// Build the status from the aggregate maintained by the Rack pool, which only re-examines 
+		// the Racks whose status changed since the last update.
+		ClusterStatus status = rackPoolManager.getClusterStatus(clusterManager.getCluster(), simulation.getSimulationTime());
 		
 		simulation.sendEvent(new ClusterStatusEvent(target, status));
 		
@@ -3,10 +3,21 @@ package edu.uwo.csd.dcsim.projects.hierarchical.policies;
 import edu.uwo.csd.dcsim.core.SimulationEventListener;
 import edu.uwo.csd.dcsim.management.Policy;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.management.events.HostStatusEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.RackStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.HostClassificationIndex;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackStatusAggregator;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.RackStatusEvent;
 
+/**
+ * Periodically sends the Rack's status to the Cluster manager.
+ * 
+ * If the Rack manager has a RackStatusAggregator capability, the status is built from the 
+ * incrementally maintained aggregate (Hosts are marked as changed as their HostStatusEvents 
+ * arrive). Otherwise, the status is built by walking every Host in the Rack. Arriving 
+ * HostStatusEvents are also forwarded to the HostClassificationIndex capability, if any.
+ */
 public class RackMonitoringPolicy extends Policy {
 
 	SimulationEventListener target;
@@ -28,7 +39,13 @@ public class RackMonitoringPolicy extends Policy {
 		RackManager rackManager = manager.getCapability(RackManager.class);
 		HostPoolManager hostPoolManager = manager.getCapability(HostPoolManager.class);
 		
-		RackStatus status = new RackStatus(rackManager.getRack(), hostPoolManager, simulation.getSimulationTime());
+		RackStatusAggregator aggregator = manager.getCapability(RackStatusAggregator.class);
+		
+		RackStatus status = null;
+		if (null != aggregator)
+			status = aggregator.getRackStatus(rackManager.getRack(), hostPoolManager, simulation.getSimulationTime());
+		else
+			status = new RackStatus(rackManager.getRack(), hostPoolManager, simulation.getSimulationTime());
 		
 		simulation.sendEvent(new RackStatusEvent(target, status));
 		
@@ -39,6 +56,16 @@ public class RackMonitoringPolicy extends Policy {
 		}
 	}
 
+	public void execute(HostStatusEvent event) {
+		RackStatusAggregator aggregator = manager.getCapability(RackStatusAggregator.class);
+		if (null != aggregator)
+			aggregator.hostStatusChanged(event.getHostStatus().getId());
+		
+		HostClassificationIndex classificationIndex = manager.getCapability(HostClassificationIndex.class);
+		if (null != classificationIndex)
+			classificationIndex.hostStatusChanged(event.getHostStatus().getId());
+	}
+
 	@Override
 	public void onInstall() {
 		// Auto-generated method stub
@@ -11,14 +11,11 @@ import java.util.Map;
 import edu.uwo.csd.dcsim.application.InteractiveTask;
 import edu.uwo.csd.dcsim.application.Task.TaskConstraintType;
 import edu.uwo.csd.dcsim.common.SimTime;
-import edu.uwo.csd.dcsim.common.Utility;
 import edu.uwo.csd.dcsim.host.Host;
 import edu.uwo.csd.dcsim.host.Resources;
 import edu.uwo.csd.dcsim.management.AutonomicManager;
 import edu.uwo.csd.dcsim.management.HostData;
 import edu.uwo.csd.dcsim.management.HostDataComparator;
-import edu.uwo.csd.dcsim.management.HostStatus;
-import edu.uwo.csd.dcsim.management.Policy;
 import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.management.VmStatusComparator;
 import edu.uwo.csd.dcsim.management.action.ConcurrentManagementActionExecutor;
@@ -28,10 +25,12 @@ import edu.uwo.csd.dcsim.projects.centralized.events.StressCheckEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.AppData;
 import edu.uwo.csd.dcsim.projects.hierarchical.AppStatus;
 import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
+import edu.uwo.csd.dcsim.projects.hierarchical.RelocationTargetTable;
 import edu.uwo.csd.dcsim.projects.hierarchical.TaskData;
 import edu.uwo.csd.dcsim.projects.hierarchical.TaskInstanceData;
 import edu.uwo.csd.dcsim.projects.hierarchical.VmData;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.AppPoolManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.HostClassificationIndex;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.MigRequestRecord;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackManager;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.MigrationTrackingManager;
@@ -40,6 +39,7 @@ import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigAcceptEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigRequestEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.AppMigRejectEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.IncomingMigrationEvent;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.MigCancelEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.RepairBrokenAppEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.SurrogateAppDataEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.SurrogateAppMigrateEvent;
@@ -71,7 +71,7 @@ import edu.uwo.csd.dcsim.projects.hierarchical.events.VmMigRequestEvent;
  * @author Gaston Keller
  *
  */
-public class RelocationPolicyLevel1 extends Policy {
+public class RelocationPolicyLevel1 extends RelocationPolicyLevel1Base {
 	
 	protected AutonomicManager target;
 	
@@ -109,6 +109,8 @@ public class RelocationPolicyLevel1 extends Policy {
 	public void execute(StressCheckEvent event) {
 		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
 		
+		this.releaseExpiredRequests();
+		
 		HostData host = hostPool.getHost(event.getHostId());
 		if (this.isStressed(host) && host.getCurrentStatus().getOutgoingMigrationCount() == 0) {
 			
@@ -199,14 +201,14 @@ public class RelocationPolicyLevel1 extends Policy {
 			simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - ACCEPTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new AppMigAcceptEvent(event.getOrigin(), event.getApplication(), targets, manager));
+			simulation.sendEvent(new AppMigAcceptEvent(event.getOrigin(), event.getApplication(), targets, manager, event.getRequestId()));
 		}
 		else {	// Otherwise, send message to ClusterManager rejecting the migration request.
 			
 			simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - REJECTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new AppMigRejectEvent(target, event.getApplication(), event.getOrigin(), manager.getCapability(RackManager.class).getRack().getId()));
+			simulation.sendEvent(new AppMigRejectEvent(target, event.getApplication(), event.getOrigin(), event.getRequestId(), manager.getCapability(RackManager.class).getRack().getId()));
 		}
 	}
 	
@@ -220,7 +222,17 @@ public class RelocationPolicyLevel1 extends Policy {
 				event.getApplication().getId()));
 		
 		// Get entry from migration requests record.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getApplication(), manager);
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		MigRequestEntry entry = record.getEntry(event.getRequestId(), manager);
+		if (null == entry && record.hasExpired(event.getRequestId(), manager)) {
+			simulation.getLogger().debug(String.format("[Rack #%%d] %s - MigRequest had expired. Cancelling acceptance - App #%%d." ,
+					manager.getCapability(RackManager.class).getRack().getId(),
+					event.getApplication().getId()));
+			
+			// Let the accepting Rack release the Hosts it reserved for the application.
+			simulation.sendEvent(new MigCancelEvent(event.getOrigin(), event.getRequestId(), event.getTargetHosts().values(), manager));
+			return;
+		}
 		if (null == entry)
 			throw new RuntimeException(String.format("Received a migration request acceptance for App #%d, but there is no record of such a request being made.", event.getApplication().getId()));
 		
@@ -259,7 +271,7 @@ public class RelocationPolicyLevel1 extends Policy {
 		migrations.execute(simulation, this);
 		
 		// Delete entry from migration requests record.
-		manager.getCapability(MigRequestRecord.class).removeEntry(entry);
+		record.removeEntry(entry);
 	}
 	
 	/**
@@ -273,7 +285,9 @@ public class RelocationPolicyLevel1 extends Policy {
 		
 		// Delete entry from migration requests record.
 		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
-		MigRequestEntry entry = record.getEntry(event.getApplication(), event.getOrigin());
+		MigRequestEntry entry = record.getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired and its VMs were already cleared.
+			return;
 		record.removeEntry(entry);
 		
 		// The application's VMs had been marked for migration. Clear them.
@@ -309,14 +323,14 @@ public class RelocationPolicyLevel1 extends Policy {
 			simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - ACCEPTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new VmMigAcceptEvent(event.getOrigin(), event.getVm(), targetHost.getHost(), manager));
+			simulation.sendEvent(new VmMigAcceptEvent(event.getOrigin(), event.getVm(), targetHost.getHost(), manager, event.getRequestId()));
 		}
 		else {	// Otherwise, send message to ClusterManager rejecting the migration request.
 			
 			simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - REJECTED.",
 					manager.getCapability(RackManager.class).getRack().getId()));
 			
-			simulation.sendEvent(new VmMigRejectEvent(target, event.getVm(), event.getOrigin(), manager.getCapability(RackManager.class).getRack().getId()));
+			simulation.sendEvent(new VmMigRejectEvent(target, event.getVm(), event.getOrigin(), event.getRequestId(), manager.getCapability(RackManager.class).getRack().getId()));
 		}
 	}
 	
@@ -330,7 +344,17 @@ public class RelocationPolicyLevel1 extends Policy {
 				event.getVm().getId()));
 		
 		// Get entry from migration requests record.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), manager);
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		MigRequestEntry entry = record.getEntry(event.getRequestId(), manager);
+		if (null == entry && record.hasExpired(event.getRequestId(), manager)) {
+			simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - MigRequest had expired. Cancelling acceptance - VM #%d." ,
+					manager.getCapability(RackManager.class).getRack().getId(),
+					event.getVm().getId()));
+			
+			// Let the accepting Rack release the Host it reserved for the VM.
+			simulation.sendEvent(new MigCancelEvent(event.getOrigin(), event.getRequestId(), Collections.singletonList(event.getTargetHost()), manager));
+			return;
+		}
 		if (null == entry)
 			throw new RuntimeException(String.format("Received a migration request acceptance for VM #%d, but there is no record of such a request being made.", event.getVm().getId()));
 		
@@ -426,7 +450,7 @@ public class RelocationPolicyLevel1 extends Policy {
 		simulation.sendEvent(new RepairBrokenAppEvent(manager, surrogate.getId()), simulation.getSimulationTime() + delay);
 		
 		// Delete entry from migration requests record.
-		manager.getCapability(MigRequestRecord.class).removeEntry(entry);
+		record.removeEntry(entry);
 	}
 	
 	/**
@@ -440,7 +464,8 @@ public class RelocationPolicyLevel1 extends Policy {
 		
 		// Delete entry from migration requests record.
 		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
-		record.removeEntry(record.getEntry(event.getVm(), event.getOrigin()));
+		if (!record.removeEntry(record.getEntry(event.getRequestId(), event.getOrigin())))
+			return;			// The request had expired and its VM was already cleared.
 		
 		// The VM had been marked for migration. Clear it.
 		manager.getCapability(MigrationTrackingManager.class).removeMigratingVm(event.getVm().getId());
@@ -574,12 +599,8 @@ public class RelocationPolicyLevel1 extends Policy {
 		
 		if (null == targets) {		// Task constraint type = INDEPENDENT or ANTI_AFFINITY. Need list of potential target Hosts.
 			
-			ArrayList<HostData> hosts = new ArrayList<HostData>(manager.getCapability(HostPoolManager.class).getHosts());
-			
-			// Reset the sandbox host status to the current host status.
-			for (HostData host : hosts) {
-				host.resetSandboxStatusToCurrent();
-			}
+			// Create sorted list of target Hosts.
+			targets = this.getTargetHosts();
 			
 			// ANTI-AFFINITY: purge every Host that is hosting an instance of the given task.
 			
@@ -591,22 +612,12 @@ public class RelocationPolicyLevel1 extends Policy {
 					
 					// For each task instance, remove the Host currently hosting the VM carrying said instance.
 					for (TaskInstanceData instance : task.getInstances()) {
-						hosts.remove(vmPool.getVm(instance.getHostingVmId()).getHost());
+						targets.remove(vmPool.getVm(instance.getHostingVmId()).getHost());
 					}
 				}
 			}
 			
 			// INDEPENDENT: Do nothing.
-			
-			// Classify Hosts as Partially-Utilized, Under-Utilized or Empty; ignore Stressed Hosts
-			// and Hosts with currently invalid status.
-			ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
-			ArrayList<HostData> underUtilized = new ArrayList<HostData>();
-			ArrayList<HostData> empty = new ArrayList<HostData>();
-			this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
-			
-			// Create target Hosts list.
-			targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
 		}
 		
 		HostData targetHost = null;
@@ -748,25 +759,13 @@ public class RelocationPolicyLevel1 extends Policy {
 		MigrationTrackingManager ongoingMigs = manager.getCapability(MigrationTrackingManager.class);
 		VmPoolManager vmPool = manager.getCapability(VmPoolManager.class);
 		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
-		Collection<HostData> hosts = hostPool.getHosts();
-		
-		// Reset the sandbox host status to the current host status.
-		for (HostData host : hosts) {
-			host.resetSandboxStatusToCurrent();
-		}
 		
 		// Stressed Host becomes the source for the VM migration.
 		HostData source = hostPool.getHost(hostId);
-		
-		// Classify Hosts as Partially-Utilized, Under-Utilized or Empty; ignore Stressed Hosts
-		// and Hosts with currently invalid status.
-		ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> underUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> empty = new ArrayList<HostData>();
-		this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
+		source.resetSandboxStatusToCurrent();
 		
 		// Create sorted list of target Hosts.
-		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+		ArrayList<HostData> targets = this.getTargetHosts();
 		
 		// Classify source Host's VMs according to the constraint-type of their hosted Task instance.
 		ArrayList<VmStatus> independent = new ArrayList<VmStatus>();
@@ -774,117 +773,10 @@ public class RelocationPolicyLevel1 extends Policy {
 		ArrayList<VmStatus> affinity = new ArrayList<VmStatus>();
 		this.classifyVms(source.getCurrentStatus().getVms(), independent, antiAffinity, affinity);
 		
-		// Process Independent VMs.
-		
 		// Sort VMs, removing small VMs from consideration for migration.
 		independent = this.orderSourceVms(independent, source);
-		
-		MigrationAction mig = null;
-		for (VmStatus vm : independent) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			if (ongoingMigs.isMigrating(vm.getId()))
-				continue;
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					// Mark VM as scheduled for migration.
-					ongoingMigs.addMigratingVm(vm.getId());
-					
-					mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
-					
-					simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - Migrating (Independent) VM #%d from Host #%d to Host #%d.",
-							manager.getCapability(RackManager.class).getRack().getId(),
-							vm.getId(),
-							source.getId(),
-							target.getId()));
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != mig)		// Found VM migration. Exit loop.
-				break;
-		}
-		
-		if (null != mig) {			// Trigger migration and exit.
-			mig.execute(simulation, this);
-			return true;
-		}
-		
-		// Process Anti-affinity VMs.
-		
-		// Sort VMs, removing small VMs from consideration for migration.
 		antiAffinity = this.orderSourceVms(antiAffinity, source);
 		
-		for (VmStatus vm : antiAffinity) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			if (ongoingMigs.isMigrating(vm.getId()))
-				continue;
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization &&
-					!this.isHostingTask(vmPool.getVm(vm.getId()).getTask(), target)) {
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					// Mark VM as scheduled for migration.
-					ongoingMigs.addMigratingVm(vm.getId());
-					
-					mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
-					
-					simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - Migrating (Anti-affinity) VM #%d from Host #%d to Host #%d.",
-							manager.getCapability(RackManager.class).getRack().getId(),
-							vm.getId(),
-							source.getId(),
-							target.getId()));
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != mig)		// Found VM migration. Exit loop.
-				break;
-		}
-		
-		if (null != mig) {			// Trigger migration and exit.
-			mig.execute(simulation, this);
-			return true;
-		}
-		
-		// Process Affinity VMs.
-		
-		// TODO: Migrations are issued concurrently. Should they be issued sequentially instead?
-		ConcurrentManagementActionExecutor migs = null;
-		
 		ArrayList<ArrayList<VmStatus>> affinitySets = this.groupVmsByAffinity(affinity);
 		
 		// If there's more than one Affinity-set, sort them in increasing order by size.
@@ -899,75 +791,16 @@ public class RelocationPolicyLevel1 extends Policy {
 				}
 			});
 		
-		for (ArrayList<VmStatus> affinitySet : affinitySets) {
-			
-			// Skip VMs migrating out or scheduled to do so.
-			// Since these VMs are constrained by affinity, if one VM is migration, we know that the others in the affinity-set are, too.
-			if (!affinitySet.isEmpty() && ongoingMigs.isMigrating(affinitySet.get(0).getId()))
-				continue;
-			
-			// Calculate total required resources for all the VMs in the Affinity-set.
-			int maxReqCores = 0;
-			int maxReqCoreCapacity = 0;
-			Resources totalReqResources = new Resources();
-			for (VmStatus vm : affinitySet) {
-				if (vm.getCores() > maxReqCores)
-					maxReqCores = vm.getCores();
-				
-				if (vm.getCoreCapacity() > maxReqCoreCapacity)
-					maxReqCoreCapacity = vm.getCoreCapacity();
-				
-				totalReqResources = totalReqResources.add(vm.getResourcesInUse());
-			}
-			
-			for (HostData target : targets) {
-				
-				// Check that the target host is not currently involved in migrations,
-				// that the target host has enough capacity left to host the VM, 
-				// and that the migration won't push the Host's utilization above the target utilization threshold.
-				if (target.getSandboxStatus().getIncomingMigrationCount() == 0 && target.getSandboxStatus().getOutgoingMigrationCount() == 0 &&
-					HostData.canHost(maxReqCores, maxReqCoreCapacity, totalReqResources, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + totalReqResources.getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-					
-					migs = new ConcurrentManagementActionExecutor();
-					
-					// Modify host and VM states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					// Create a migration action per VM in the Affinity-set.
-					for (VmStatus vm : affinitySet) {
-						source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-						
-						// Mark VM as scheduled for migration.
-						ongoingMigs.addMigratingVm(vm.getId());
-						
-						migs.addAction(new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId()));
-						
-						simulation.getLogger().debug(String.format("[Rack #%d] RelocationPolicyLevel1 - Migrating (Affinity) VM #%d from Host #%d to Host #%d.",
-								manager.getCapability(RackManager.class).getRack().getId(),
-								vm.getId(),
-								source.getId(),
-								target.getId()));
-						
-					}
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					break;			// Found VM migration. Exit loop.
-				}
-			}
-			
-			if (null != migs)		// Found VM migration. Exit loop.
-				break;
-		}
+		// Search for a VM migration -- Independent VMs first, then Anti-affinity VMs, and finally Affinity-sets --
+		// to a target Host that is not currently involved in migrations, has enough capacity left to host the VM(s),
+		// and whose utilization won't be pushed above the target utilization threshold by the migration.
+		RelocationTargetTable table = new RelocationTargetTable(targets, targetUtilization, 0, 0, vmPool);
+		RelocationTargetTable.Selection selection = table.select(independent, antiAffinity, affinitySets, ongoingMigs);
+		if (null == selection)
+			return false;
 		
-		if (null != migs) {			// Trigger migrations and exit.
-			migs.execute(simulation, this);
-			return true;
-		}
-		
-		return false;
+		this.migrate(source, selection);
+		return true;
 	}
 	
 	/**
@@ -1040,10 +873,11 @@ public class RelocationPolicyLevel1 extends Policy {
 			}
 			
 			// Request assistance from ClusterManager to find a target Rack to which to migrate the selected application.
-			simulation.sendEvent(new AppMigRequestEvent(target, application, manager, manager.getCapability(RackManager.class).getRack().getId()));
+			long requestId = manager.getCapability(MigRequestRecord.class).nextRequestId();
+			simulation.sendEvent(new AppMigRequestEvent(target, application, manager, requestId, manager.getCapability(RackManager.class).getRack().getId()));
 			
 			// Keep track of the migration request just sent.
-			manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(application, manager));
+			manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(application, manager, requestId), simulation.getSimulationTime());
 			
 			return true;
 		}
@@ -1062,10 +896,11 @@ public class RelocationPolicyLevel1 extends Policy {
 		ongoingMigs.addMigratingVm(candidateVm.getId());
 		
 		// Request assistance from ClusterManager to find a target Rack to which to migrate the selected VM.
-		simulation.sendEvent(new VmMigRequestEvent(target, candidateVm, manager, manager.getCapability(RackManager.class).getRack().getId()));
+		long requestId = manager.getCapability(MigRequestRecord.class).nextRequestId();
+		simulation.sendEvent(new VmMigRequestEvent(target, candidateVm, manager, requestId, manager.getCapability(RackManager.class).getRack().getId()));
 		
 		// Keep track of the migration request just sent.
-		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(candidateVm, manager));
+		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(candidateVm, manager, requestId), simulation.getSimulationTime());
 		
 		return true;
 	}
@@ -1074,22 +909,8 @@ public class RelocationPolicyLevel1 extends Policy {
 	 * Search for a target Host that could take the given VM.
 	 */
 	protected HostData findMigrationTarget(VmStatus vm) {
-		Collection<HostData> hosts = manager.getCapability(HostPoolManager.class).getHosts();
-		
-		// Reset the sandbox host status to the current host status.
-		for (HostData host : hosts) {
-			host.resetSandboxStatusToCurrent();
-		}
-		
-		// Classify Hosts as Partially-Utilized, Under-Utilized or Empty; ignore Stressed Hosts
-		// and Hosts with currently invalid status.
-		ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> underUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> empty = new ArrayList<HostData>();
-		this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
-		
 		// Create target Hosts list.
-		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+		ArrayList<HostData> targets = this.getTargetHosts();
 		
 		return this.placeVmWherever(vm, targets);
 	}
@@ -1097,22 +918,8 @@ public class RelocationPolicyLevel1 extends Policy {
 	protected Map<Integer, HostData> findMigrationTargets(AppStatus application) {
 		Map<Integer, HostData> vmHostMap = new HashMap<Integer, HostData>();
 		
-		Collection<HostData> hosts = manager.getCapability(HostPoolManager.class).getHosts();
-		
-		// Reset the sandbox host status to the current host status.
-		for (HostData host : hosts) {
-			host.resetSandboxStatusToCurrent();
-		}
-		
-		// Classify Hosts as Partially-Utilized, Under-Utilized or Empty; ignore Stressed Hosts
-		// and Hosts with currently invalid status.
-		ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> underUtilized = new ArrayList<HostData>();
-		ArrayList<HostData> empty = new ArrayList<HostData>();
-		this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
-		
 		// Create target Hosts list.
-		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
+		ArrayList<HostData> targets = this.getTargetHosts();
 		
 		for (ArrayList<VmStatus> affinitySet : application.getAffinityVms()) {
 			Map<Integer, HostData> mapping = this.placeVmsTogether(affinitySet, targets);
@@ -1145,27 +952,58 @@ public class RelocationPolicyLevel1 extends Policy {
 	}
 	
 	/**
-	 * Calculates Host's average CPU utilization over the last window of time.
+	 * Returns the sorted list of target Hosts (Partially-Utilized, Under-Utilized and Empty), ignoring 
+	 * Stressed Hosts and Hosts with currently invalid status. The sandbox status of the target Hosts is 
+	 * reset to their current status.
 	 * 
-	 * @return		value in range [0,1] (i.e., percentage)
+	 * If the Rack manager has a HostClassificationIndex capability, the targets are taken from the 
+	 * incrementally maintained index. Otherwise, every Host is classified and the lists are sorted.
 	 */
-	protected double calculateHostAvgCpuUtilization(HostData host) {
-		double avgCpuInUse = 0;
-		int count = 0;
-		for (HostStatus status : host.getHistory()) {
-			// Only consider times when the host is powered ON.
-			if (status.getState() == Host.HostState.ON) {
-				avgCpuInUse += status.getResourcesInUse().getCpu();
-				++count;
+	protected ArrayList<HostData> getTargetHosts() {
+		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
+		HostClassificationIndex index = manager.getCapability(HostClassificationIndex.class);
+		
+		ArrayList<HostData> targets = null;
+		if (null != index) {
+			targets = index.getTargetHosts(hostPool, lowerThreshold, upperThreshold);
+			
+			// Reset the sandbox host status to the current host status.
+			for (HostData host : targets) {
+				host.resetSandboxStatusToCurrent();
 			}
-			else
-				break;
 		}
-		if (count != 0) {
-			avgCpuInUse = avgCpuInUse / count;
+		else {
+			Collection<HostData> hosts = hostPool.getHosts();
+			
+			// Reset the sandbox host status to the current host status.
+			for (HostData host : hosts) {
+				host.resetSandboxStatusToCurrent();
+			}
+			
+			// Classify Hosts as Partially-Utilized, Under-Utilized or Empty; ignore Stressed Hosts
+			// and Hosts with currently invalid status.
+			ArrayList<HostData> partiallyUtilized = new ArrayList<HostData>();
+			ArrayList<HostData> underUtilized = new ArrayList<HostData>();
+			ArrayList<HostData> empty = new ArrayList<HostData>();
+			this.classifyHosts(hosts, partiallyUtilized, underUtilized, empty);
+			
+			targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
 		}
 		
-		return Utility.roundDouble(avgCpuInUse / host.getHostDescription().getResourceCapacity().getCpu());
+		return targets;
+	}
+	
+	/**
+	 * Calculates Host's average CPU utilization over the last window of time.
+	 * 
+	 * @return		value in range [0,1] (i.e., percentage)
+	 */
+	protected double calculateHostAvgCpuUtilization(HostData host) {
+		HostClassificationIndex index = manager.getCapability(HostClassificationIndex.class);
+		if (null != index)
+			return index.getAvgCpuUtilization(host, manager.getCapability(HostPoolManager.class));
+		
+		return HostClassificationIndex.calculateAvgCpuUtilization(host);
 	}
 	
 	/**
@@ -1273,29 +1111,6 @@ public class RelocationPolicyLevel1 extends Policy {
 		return affinitySets;
 	}
 	
-	/**
-	 * Determines whether the given Host is hosting an instance of the given Task.
-	 */
-	private boolean isHostingTask(TaskInstanceData task, HostData host) {
-		VmPoolManager vmPool = manager.getCapability(VmPoolManager.class);
-		
-		for (VmStatus vm : host.getSandboxStatus().getVms()) {
-			VmData vmData = vmPool.getVm(vm.getId());
-			
-			if (null == vmData)								// VM does not belong in this Rack any longer.
-				continue;
-			
-			if (vmData.getHost() != host)					// VM is actually located in another Host in this Rack.
-				continue;
-			
-			TaskInstanceData vmTask = vmData.getTask();
-			if (vmTask.getTaskId() == task.getTaskId() && vmTask.getAppId() == task.getAppId())
-				return true;
-		}
-		
-		return false;
-	}
-	
 	/**
 	 * Determines if the Host is Stressed or not, based on its average
 	 * CPU utilization over the last window of time.
@@ -0,0 +1,134 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.policies;
+
+import edu.uwo.csd.dcsim.application.Task.TaskConstraintType;
+import edu.uwo.csd.dcsim.host.Host;
+import edu.uwo.csd.dcsim.management.HostData;
+import edu.uwo.csd.dcsim.management.Policy;
+import edu.uwo.csd.dcsim.management.VmStatus;
+import edu.uwo.csd.dcsim.management.action.ConcurrentManagementActionExecutor;
+import edu.uwo.csd.dcsim.management.action.MigrationAction;
+import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
+import edu.uwo.csd.dcsim.projects.hierarchical.RelocationTargetTable;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.MigRequestRecord;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.MigrationTrackingManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.RackManager;
+import edu.uwo.csd.dcsim.projects.hierarchical.events.MigCancelEvent;
+
+/**
+ * Base class of the Rack-level Relocation policies (see RelocationPolicyLevel1 and 
+ * AppRelocationPolicyLevel1), implementing the steps they share: triggering the migration(s) 
+ * selected by the internal Relocation process, releasing expired migration requests and 
+ * releasing the Hosts reserved for migration requests that were cancelled.
+ * 
+ * Subclasses must require the HostPoolManager, MigrationTrackingManager, MigRequestRecord and 
+ * RackManager capabilities.
+ * 
+ * @author Gaston Keller
+ *
+ */
+public abstract class RelocationPolicyLevel1Base extends Policy {
+	
+	/**
+	 * Records the selected VM migration(s) in the sandbox status of the source and target Hosts and
+	 * triggers the migration(s). VMs in an Affinity-set are migrated concurrently.
+	 */
+	protected void migrate(HostData source, RelocationTargetTable.Selection selection) {
+		MigrationTrackingManager ongoingMigs = manager.getCapability(MigrationTrackingManager.class);
+		HostData target = selection.getTarget();
+		
+		String constraint = "Independent";
+		if (selection.getConstraintType() == TaskConstraintType.ANTI_AFFINITY)
+			constraint = "Anti-affinity";
+		else if (selection.getConstraintType() == TaskConstraintType.AFFINITY)
+			constraint = "Affinity";
+		
+		// Migrations are issued concurrently, so that the VMs in an Affinity-set move together and the 
+		// set is never split across Hosts for longer than the migrations take.
+		ConcurrentManagementActionExecutor migs = new ConcurrentManagementActionExecutor();
+		MigrationAction mig = null;
+		for (VmStatus vm : selection.getVms()) {
+			
+			// Modify host and VM states to record the future migration. Note that we 
+			// can do this because we are using the designated 'sandbox' host status.
+			source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
+			
+			// Mark VM as scheduled for migration.
+			ongoingMigs.addMigratingVm(vm.getId());
+			
+			mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
+			migs.addAction(mig);
+			
+			simulation.getLogger().debug(String.format("[Rack #%d] %s - Migrating (%s) VM #%d from Host #%d to Host #%d.",
+					manager.getCapability(RackManager.class).getRack().getId(),
+					this.getClass().getSimpleName(),
+					constraint,
+					vm.getId(),
+					source.getId(),
+					target.getId()));
+		}
+		
+		// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
+		source.invalidateStatus(simulation.getSimulationTime());
+		target.invalidateStatus(simulation.getSimulationTime());
+		
+		// Trigger migration(s).
+		if (selection.getVms().size() == 1)
+			mig.execute(simulation, this);
+		else
+			migs.execute(simulation, this);
+	}
+	
+	/**
+	 * Removes the migration requests that went unanswered for too long (see MigRequestRecord) and
+	 * clears the VMs they had marked for migration, so that the VMs can be considered again.
+	 */
+	protected void releaseExpiredRequests() {
+		MigrationTrackingManager ongoingMigs = manager.getCapability(MigrationTrackingManager.class);
+		
+		for (MigRequestEntry entry : manager.getCapability(MigRequestRecord.class).expireEntries(simulation.getSimulationTime())) {
+			if (null != entry.getApplication()) {
+				
+				simulation.getLogger().debug(String.format("[Rack #%d] %s - MigRequest expired - App #%d.",
+						manager.getCapability(RackManager.class).getRack().getId(),
+						this.getClass().getSimpleName(),
+						entry.getApplication().getId()));
+				
+				for (VmStatus vm : entry.getApplication().getAllVms()) {
+					ongoingMigs.removeMigratingVm(vm.getId());
+				}
+			}
+			else {
+				
+				simulation.getLogger().debug(String.format("[Rack #%d] %s - MigRequest expired - VM #%d.",
+						manager.getCapability(RackManager.class).getRack().getId(),
+						this.getClass().getSimpleName(),
+						entry.getVm().getId()));
+				
+				ongoingMigs.removeMigratingVm(entry.getVm().getId());
+			}
+		}
+	}
+	
+	/**
+	 * This event can only come from another Rack Manager, whose migration request had expired by the 
+	 * time this Rack's acceptance arrived.
+	 */
+	public void execute(MigCancelEvent event) {
+		
+		simulation.getLogger().debug(String.format("[Rack #%d] %s - MigRequest cancelled - Releasing %d target Host(s).",
+				manager.getCapability(RackManager.class).getRack().getId(),
+				this.getClass().getSimpleName(),
+				event.getTargetHosts().size()));
+		
+		// Drop the reservations recorded in the target Hosts' sandbox status. The Hosts' status remains 
+		// invalid until the next status update arrives.
+		HostPoolManager hostPool = manager.getCapability(HostPoolManager.class);
+		for (Host host : event.getTargetHosts()) {
+			HostData target = hostPool.getHost(host.getId());
+			if (null != target)
+				target.resetSandboxStatusToCurrent();
+		}
+	}
+	
+}
@@ -43,10 +43,12 @@ public class RelocationPolicyLevel2 extends Policy {
 		simulation.getLogger().debug(String.format("[Cluster #" + manager.getCapability(ClusterManager.class).getCluster().getId() + "]"
 				+ " AppRelocationPolicyLevel2 - New MigRequest - VM #" + event.getVm().getId()));
 		
-		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForVmMigrationTarget(entry);
 	}
@@ -59,10 +61,12 @@ public class RelocationPolicyLevel2 extends Policy {
 		simulation.getLogger().debug(String.format("[Cluster #" + manager.getCapability(ClusterManager.class).getCluster().getId() + "]"
 				+ " AppRelocationPolicyLevel2 - New MigRequest - App #" + event.getApplication().getId()));
 		
-		MigRequestEntry entry = new MigRequestEntry(event.getApplication(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getApplication(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForAppMigrationTarget(entry);
 	}
@@ -86,7 +90,10 @@ public class RelocationPolicyLevel2 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForVmMigrationTarget(entry);
 	}
 	
@@ -109,7 +116,10 @@ public class RelocationPolicyLevel2 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getApplication(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForAppMigrationTarget(entry);
 	}
 	
@@ -138,7 +148,7 @@ public class RelocationPolicyLevel2 extends Policy {
 		// then check if the Rack can host the VM; otherwise, activate a new Rack.
 		else if (active.size() == 1) {
 			RackData rack = active.get(0);
-			if (rack.getId() != entry.getSender() && rack.isStatusValid() && RackData.canHost(entry.getApplication(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription())) {
+			if (rack.getId() != entry.getSender() && rack.isStatusValid() && RackData.canHost(entry.getApplication(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription(), rackPool.getActivationCache())) {
 				targetRack = rack;
 			}
 			else {
@@ -160,7 +170,7 @@ public class RelocationPolicyLevel2 extends Policy {
 				// Find the Rack that would result in the least number of Host activations.
 				// If several Racks require a minimum number of Host activations,
 				// pick the most loaded Rack among them.
-				int hostActivations = RackData.calculateMinHostActivations(entry.getApplication(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription());
+				int hostActivations = RackData.calculateMinHostActivations(entry.getApplication(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription(), rackPool.getActivationCache());
 				if (hostActivations >= 0) {
 					if (hostActivations < minHostActivations) {
 						minHostActivations = hostActivations;
@@ -188,7 +198,7 @@ public class RelocationPolicyLevel2 extends Policy {
 					targetRack.getId()));
 			
 			// Found target. Send migration request.
-			simulation.sendEvent(new AppMigRequestEvent(targetRack.getRackManager(), entry.getApplication(), entry.getOrigin(), 0));
+			simulation.sendEvent(new AppMigRequestEvent(targetRack.getRackManager(), entry.getApplication(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Rack's status, as we know it to be incorrect until the next status update arrives.
 			targetRack.invalidateStatus(simulation.getSimulationTime());
@@ -208,7 +218,7 @@ public class RelocationPolicyLevel2 extends Policy {
 						manager.getCapability(ClusterManager.class).getCluster().getId(),
 						entry.getApplication().getId()));
 				
-				simulation.sendEvent(new AppMigRequestEvent(target, entry.getApplication(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new AppMigRequestEvent(target, entry.getApplication(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			// Event's sender does not belong in this Cluster.
 			else {
@@ -218,7 +228,7 @@ public class RelocationPolicyLevel2 extends Policy {
 						manager.getCapability(ClusterManager.class).getCluster().getId(),
 						entry.getApplication().getId()));
 				
-				simulation.sendEvent(new AppMigRejectEvent(target, entry.getApplication(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new AppMigRejectEvent(target, entry.getApplication(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			
 			// In any case, delete entry from migration requests record.
@@ -253,7 +263,7 @@ public class RelocationPolicyLevel2 extends Policy {
 		// then check if the Rack can host the VM; otherwise, activate a new Rack.
 		else if (active.size() == 1) {
 			RackData rack = active.get(0);
-			if (rack.getId() != entry.getSender() && rack.isStatusValid() && RackData.canHost(entry.getVm(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription())) {
+			if (rack.getId() != entry.getSender() && rack.isStatusValid() && RackData.canHost(entry.getVm(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription(), rackPool.getActivationCache())) {
 				targetRack = rack;
 			}
 			else {
@@ -279,7 +289,7 @@ public class RelocationPolicyLevel2 extends Policy {
 				// Find the Rack that would result in the least number of Host activations.
 				// If several Racks require a minimum number of Host activations,
 				// pick the most loaded Rack among them.
-				int hostActivations = RackData.calculateMinHostActivations(entry.getVm(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription());
+				int hostActivations = RackData.calculateMinHostActivations(entry.getVm(), rack.getCurrentStatus().getStatusVector(), rack.getRackDescription().getHostDescription(), rackPool.getActivationCache());
 				if (hostActivations >= 0) {
 					if (hostActivations < minHostActivations) {
 						minHostActivations = hostActivations;
@@ -307,7 +317,7 @@ public class RelocationPolicyLevel2 extends Policy {
 					targetRack.getId()));
 			
 			// Found target. Send migration request.
-			simulation.sendEvent(new VmMigRequestEvent(targetRack.getRackManager(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRequestEvent(targetRack.getRackManager(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Rack's status, as we know it to be incorrect until the next status update arrives.
 			targetRack.invalidateStatus(simulation.getSimulationTime());
@@ -327,7 +337,7 @@ public class RelocationPolicyLevel2 extends Policy {
 						manager.getCapability(ClusterManager.class).getCluster().getId(),
 						entry.getVm().getId()));
 				
-				simulation.sendEvent(new VmMigRequestEvent(target, entry.getVm(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new VmMigRequestEvent(target, entry.getVm(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			// Event's sender does not belong in this Cluster.
 			else {
@@ -337,7 +347,7 @@ public class RelocationPolicyLevel2 extends Policy {
 						manager.getCapability(ClusterManager.class).getCluster().getId(),
 						entry.getVm().getId()));
 				
-				simulation.sendEvent(new VmMigRejectEvent(target, entry.getVm(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new VmMigRejectEvent(target, entry.getVm(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			
 			// In any case, delete entry from migration requests record.
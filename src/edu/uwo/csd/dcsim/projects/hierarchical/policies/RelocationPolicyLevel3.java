@@ -43,10 +43,12 @@ public class RelocationPolicyLevel3 extends Policy {
 		
 		simulation.getLogger().debug(String.format("[DC Manager] RelocationPolicyLevel3 - New MigRequest - VM #%d.", event.getVm().getId()));
 		
-		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForVmMigrationTarget(entry);
 	}
@@ -58,10 +60,12 @@ public class RelocationPolicyLevel3 extends Policy {
 		
 		simulation.getLogger().debug(String.format("[DC Manager] RelocationPolicyLevel3 - New MigRequest - App #%d.", event.getApplication().getId()));
 		
-		MigRequestEntry entry = new MigRequestEntry(event.getApplication(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getApplication(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForAppMigrationTarget(entry);
 	}
@@ -83,7 +87,10 @@ public class RelocationPolicyLevel3 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForVmMigrationTarget(entry);
 	}
 	
@@ -104,7 +111,10 @@ public class RelocationPolicyLevel3 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getApplication(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForAppMigrationTarget(entry);
 	}
 	
@@ -169,7 +179,7 @@ public class RelocationPolicyLevel3 extends Policy {
 					// Check if the Cluster with the least loaded Rack can take the application.
 					if (null != leastLoadedRack
 							&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-							&& ClusterData.canHost(entry.getApplication(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+							&& ClusterData.canHost(entry.getApplication(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 						
 						targetCluster = leastLoadedRack;
 						break;
@@ -208,7 +218,7 @@ public class RelocationPolicyLevel3 extends Policy {
 				// Check if the Cluster with the least loaded Rack can take the application.
 				if (null != leastLoadedRack
 						&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-						&& ClusterData.canHost(entry.getApplication(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+						&& ClusterData.canHost(entry.getApplication(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 					
 					targetCluster = leastLoadedRack;
 				}
@@ -230,7 +240,7 @@ public class RelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug(String.format("[DC Manager] Found relocation target: Cluster #%d.", targetCluster.getId()));
 			
 			// Found target. Send migration request.
-			simulation.sendEvent(new AppMigRequestEvent(targetCluster.getClusterManager(), entry.getApplication(), entry.getOrigin(), 0));
+			simulation.sendEvent(new AppMigRequestEvent(targetCluster.getClusterManager(), entry.getApplication(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Cluster's status, as we know it to be incorrect until the next status update arrives.
 			targetCluster.invalidateStatus(simulation.getSimulationTime());
@@ -244,7 +254,7 @@ public class RelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug("[DC Manager] Failed to find relocation target.");
 			
 			// Contact RackManager origin to reject migration request.
-			simulation.sendEvent(new AppMigRejectEvent(entry.getOrigin(), entry.getApplication(), entry.getOrigin(), 0));
+			simulation.sendEvent(new AppMigRejectEvent(entry.getOrigin(), entry.getApplication(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Delete entry from migration requests record.
 			manager.getCapability(MigRequestRecord.class).removeEntry(entry);
@@ -313,7 +323,7 @@ public class RelocationPolicyLevel3 extends Policy {
 					// Check if the Cluster with the least loaded Rack can take the application.
 					if (null != leastLoadedRack
 							&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-							&& ClusterData.canHost(entry.getVm(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+							&& ClusterData.canHost(entry.getVm(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 						
 						targetCluster = leastLoadedRack;
 						break;
@@ -352,7 +362,7 @@ public class RelocationPolicyLevel3 extends Policy {
 				// Check if the Cluster with the least loaded Rack can take the application.
 				if (null != leastLoadedRack
 						&& leastLoadedRack.getCurrentStatus().getStatusVector() != null
-						&& ClusterData.canHost(entry.getVm(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription())) {
+						&& ClusterData.canHost(entry.getVm(), leastLoadedRack.getCurrentStatus().getStatusVector(), leastLoadedRack.getClusterDescription(), manager.getCapability(ClusterPoolManager.class).getActivationCache())) {
 					
 					targetCluster = leastLoadedRack;
 				}
@@ -374,7 +384,7 @@ public class RelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug(this.getClass() + " - Found relocation target: Cluster #" + targetCluster.getId());
 			
 			// Found target. Send migration request.
-			simulation.sendEvent(new VmMigRequestEvent(targetCluster.getClusterManager(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRequestEvent(targetCluster.getClusterManager(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Cluster's status, as we know it to be incorrect until the next status update arrives.
 			targetCluster.invalidateStatus(simulation.getSimulationTime());
@@ -388,7 +398,7 @@ public class RelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug(this.getClass() + " - Failed to find relocation target.");
 			
 			// Contact RackManager origin to reject migration request.
-			simulation.sendEvent(new VmMigRejectEvent(entry.getOrigin(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRejectEvent(entry.getOrigin(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Delete entry from migration requests record.
 			manager.getCapability(MigRequestRecord.class).removeEntry(entry);
@@ -84,36 +84,16 @@ public class VmPlacementPolicyLevel2 extends Policy {
 		}
 		else {
 			// Search for a target Rack among the subset of active Racks.
+			// Racks with a currently invalid status are not indexed.
+			RackCapacityIndex capacityIndex = rackPool.getCapacityIndex();
 			
-			double maxSpareCapacity = 0;
-			RackData maxSpareCapacityRack = null;
-			int minInactiveHosts = Integer.MAX_VALUE;
-			RackData mostLoadedWithSuspended = null;
-			RackData mostLoadedWithPoweredOff = null;
-			for (RackData rack : racks) {
-				// Filter out Racks with a currently invalid status.
-				if (!rack.isStatusValid())
-					continue;
-				
-				RackStatus status = rack.getCurrentStatus();
-				
-				// Find the Rack with the most spare capacity.
-				if (status.getMaxSpareCapacity() > maxSpareCapacity) {
-					maxSpareCapacity = status.getMaxSpareCapacity();
-					maxSpareCapacityRack = rack;
-				}
-				
-				// Find the most loaded Racks (i.e., the Racks with the smallest number of inactive 
-				// Hosts) that have at least one suspended or powered off Host.
-				int inactiveHosts = status.getSuspendedHosts() + status.getPoweredOffHosts();
-				if (inactiveHosts > 0 && inactiveHosts < minInactiveHosts) {
-					minInactiveHosts = inactiveHosts;
-					if (status.getSuspendedHosts() > 0)
-						mostLoadedWithSuspended = rack;
-					if (status.getPoweredOffHosts() > 0)
-						mostLoadedWithPoweredOff = rack;
-				}
-			}
+			// Find the Rack with the most spare capacity.
+			RackData maxSpareCapacityRack = capacityIndex.getMaxSpareCapacityRack();
+			
+			// Find the most loaded Racks (i.e., the Racks with the smallest number of inactive 
+			// Hosts) that have at least one suspended or powered off Host.
+			RackData mostLoadedWithSuspended = capacityIndex.getMostLoadedRackWithSuspendedHosts();
+			RackData mostLoadedWithPoweredOff = capacityIndex.getMostLoadedRackWithPoweredOffHosts();
 			
 			// Check if Rack with most spare capacity has enough resources to take the VM (i.e., become target).
 			if (null != maxSpareCapacityRack && this.hasEnoughCapacity(request, maxSpareCapacityRack)) {
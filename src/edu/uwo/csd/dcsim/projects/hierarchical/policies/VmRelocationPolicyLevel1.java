@@ -10,6 +10,7 @@ import edu.uwo.csd.dcsim.management.action.MigrationAction;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
 import edu.uwo.csd.dcsim.projects.centralized.events.StressCheckEvent;
 import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
+import edu.uwo.csd.dcsim.projects.hierarchical.RelocationTargetTable;
 import edu.uwo.csd.dcsim.projects.hierarchical.capabilities.*;
 import edu.uwo.csd.dcsim.projects.hierarchical.events.*;
 
@@ -100,13 +101,13 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 			// Invalidate target Host' status, as we know it to be incorrect until the next status update arrives.
 			targetHost.invalidateStatus(simulation.getSimulationTime());
 			
-			simulation.sendEvent(new VmMigAcceptEvent(event.getOrigin(), event.getVm(), targetHost.getHost()));
+			simulation.sendEvent(new VmMigAcceptEvent(event.getOrigin(), event.getVm(), targetHost.getHost(), manager, event.getRequestId()));
 			
 		}
 		// Otherwise, send message to ClusterManager rejecting the migration request.
 		else {
 			int rackId = manager.getCapability(RackManager.class).getRack().getId();
-			simulation.sendEvent(new VmMigRejectEvent(target, event.getVm(), event.getOrigin(), rackId));
+			simulation.sendEvent(new VmMigRejectEvent(target, event.getVm(), event.getOrigin(), event.getRequestId(), rackId));
 		}
 	}
 	
@@ -116,7 +117,7 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 	public void execute(VmMigAcceptEvent event) {
 		
 		// Get entry from migration requests record.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), manager);
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), manager);
 		HostData source = entry.getHost();
 		
 		// Invalidate source Host' status, as we know it to be incorrect until the next status update arrives.
@@ -135,7 +136,7 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 	public void execute(VmMigRejectEvent event) {
 		// Delete entry from migration requests record.
 		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
-		record.removeEntry(record.getEntry(event.getVm(), event.getOrigin()));
+		record.removeEntry(record.getEntry(event.getRequestId(), event.getOrigin()));
 	}
 	
 	/**
@@ -159,19 +160,14 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 		// Create sorted list of target Hosts.
 		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
 		
-		for (HostData target : targets) {
-			// Check that target host has at most 1 incoming migration pending, 
-			// that target host is capable and has enough capacity left to host the VM, 
-			// and also that it will not exceed the target utilization.
-			if (target.getSandboxStatus().getIncomingMigrationCount() < 2 && 
-				HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-				(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-				
-				return target;
-			}
-		}
+		// Check that target host has at most 1 incoming migration pending, 
+		// that target host is capable and has enough capacity left to host the VM, 
+		// and also that it will not exceed the target utilization.
+		int target = new RelocationTargetTable(targets, targetUtilization, 1, Integer.MAX_VALUE, null).findTarget(vm);
+		if (target < 0)
+			return null;
 		
-		return null;
+		return targets.get(target);
 	}
 	
 	/**
@@ -200,34 +196,31 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 		// Create sorted list of target Hosts.
 		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized, empty);
 		
+		// Check that target host has at most 1 incoming migration pending, 
+		// that target host is capable and has enough capacity left to host the VM, 
+		// and also that it will not exceed the target utilization.
+		RelocationTargetTable table = new RelocationTargetTable(targets, targetUtilization, 1, Integer.MAX_VALUE, null);
+		
 		MigrationAction mig = null;
 		ArrayList<VmStatus> vmList = this.orderSourceVms(source.getCurrentStatus().getVms(), source);
 		for (VmStatus vm : vmList) {
 			
-			for (HostData target : targets) {
-				// Check that target host has at most 1 incoming migration pending, 
-				// that target host is capable and has enough capacity left to host the VM, 
-				// and also that it will not exceed the target utilization.
-				if (target.getSandboxStatus().getIncomingMigrationCount() < 2 && 
-					HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) && 
-					(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
-					
-					// Modify host and vm states to record the future migration. Note that we 
-					// can do this because we are using the designated 'sandbox' host status.
-					source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
-					
-					// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
-					source.invalidateStatus(simulation.getSimulationTime());
-					target.invalidateStatus(simulation.getSimulationTime());
-					
-					mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
-					
-					break;		// Found VM migration. Exit loop.
-				}
+			int index = table.findTarget(vm);
+			if (index >= 0) {
+				HostData target = table.getHost(index);
+				
+				// Modify host and vm states to record the future migration. Note that we 
+				// can do this because we are using the designated 'sandbox' host status.
+				source.getSandboxStatus().migrate(vm, target.getSandboxStatus());
+				
+				// Invalidate source and target status, as we know them to be incorrect until the next status update arrives.
+				source.invalidateStatus(simulation.getSimulationTime());
+				target.invalidateStatus(simulation.getSimulationTime());
+				
+				mig = new MigrationAction(source.getHostManager(), source.getHost(), target.getHost(), vm.getId());
+				
+				break;			// Found VM migration. Exit loop.
 			}
-			
-			if (mig != null)	// Found VM migration. Exit loop.
-				break;
 		}
 		
 		if (mig != null) {		// Trigger migration.
@@ -252,10 +245,11 @@ public abstract class VmRelocationPolicyLevel1 extends Policy {
 		VmStatus vm = this.orderSourceVms(host.getCurrentStatus().getVms(), host).get(0);
 		
 		// Request assistance from ClusterManager to find a target Host for migrating the selected VM.
-		simulation.sendEvent(new VmMigRequestEvent(target, vm, manager, rackId));
+		long requestId = manager.getCapability(MigRequestRecord.class).nextRequestId();
+		simulation.sendEvent(new VmMigRequestEvent(target, vm, manager, requestId, rackId));
 		
 		// Keep track of the migration request just sent.
-		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(vm, manager, host));
+		manager.getCapability(MigRequestRecord.class).addEntry(new MigRequestEntry(vm, manager, requestId, host));
 	}
 	
 	/**
@@ -33,10 +33,12 @@ public class VmRelocationPolicyLevel2 extends Policy {
 	 * This event can come from a Rack in this Cluster or from the DC Manager.
 	 */
 	public void execute(VmMigRequestEvent event) {
-		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForVmMigrationTarget(entry);
 	}
@@ -55,7 +57,10 @@ public class VmRelocationPolicyLevel2 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForVmMigrationTarget(entry);
 	}
 	
@@ -142,7 +147,7 @@ public class VmRelocationPolicyLevel2 extends Policy {
 		
 		if (null != targetRack) {
 			// Found target. Send migration request.
-			simulation.sendEvent(new VmMigRequestEvent(targetRack.getRackManager(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRequestEvent(targetRack.getRackManager(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Rack's status, as we know it to be incorrect until the next status update arrives.
 			targetRack.invalidateStatus(simulation.getSimulationTime());
@@ -157,12 +162,12 @@ public class VmRelocationPolicyLevel2 extends Policy {
 			// If event's sender belongs in this Cluster, request assistance from DC Manager 
 			// to find a target Host for the VM migration in another Cluster.
 			if (null != rackPool.getRack(entry.getSender())) {
-				simulation.sendEvent(new VmMigRequestEvent(target, entry.getVm(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new VmMigRequestEvent(target, entry.getVm(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			// Event's sender does not belong in this Cluster.
 			else {
 				// Migration request was sent by DC Manager. Reject migration request.
-				simulation.sendEvent(new VmMigRejectEvent(target, entry.getVm(), entry.getOrigin(), clusterId));
+				simulation.sendEvent(new VmMigRejectEvent(target, entry.getVm(), entry.getOrigin(), entry.getRequestId(), clusterId));
 			}
 			
 			// In any case, delete entry from migration requests record.
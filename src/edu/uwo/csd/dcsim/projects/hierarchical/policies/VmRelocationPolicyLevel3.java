@@ -30,10 +30,12 @@ public class VmRelocationPolicyLevel3 extends Policy {
 	 * This event can only come from a Cluster in the Data Centre.
 	 */
 	public void execute(VmMigRequestEvent event) {
-		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getSender());
+		MigRequestEntry entry = new MigRequestEntry(event.getVm(), event.getOrigin(), event.getRequestId(), event.getSender());
 		
-		// Store info about migration request just received.
-		manager.getCapability(MigRequestRecord.class).addEntry(entry);
+		// Store info about migration request just received. Forwarded requests that went unanswered for too long are dropped.
+		MigRequestRecord record = manager.getCapability(MigRequestRecord.class);
+		record.expireEntries(simulation.getSimulationTime());
+		record.addEntry(entry, simulation.getSimulationTime());
 		
 		this.searchForVmMigrationTarget(entry);
 	}
@@ -52,7 +54,10 @@ public class VmRelocationPolicyLevel3 extends Policy {
 		}
 		
 		// Get entry from record and search again for a migration target.
-		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getVm(), event.getOrigin());
+		MigRequestEntry entry = manager.getCapability(MigRequestRecord.class).getEntry(event.getRequestId(), event.getOrigin());
+		if (null == entry)			// The request had expired. The origin Rack has already given up on it.
+			return;
+		
 		this.searchForVmMigrationTarget(entry);
 	}
 	
@@ -197,7 +202,7 @@ public class VmRelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug(this.getClass() + " - Found relocation target: Cluster #" + targetCluster.getId());
 			
 			// Found target. Send migration request.
-			simulation.sendEvent(new VmMigRequestEvent(targetCluster.getClusterManager(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRequestEvent(targetCluster.getClusterManager(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Invalidate target Cluster's status, as we know it to be incorrect until the next status update arrives.
 			targetCluster.invalidateStatus(simulation.getSimulationTime());
@@ -211,7 +216,7 @@ public class VmRelocationPolicyLevel3 extends Policy {
 			simulation.getLogger().debug(this.getClass() + " - Failed to find relocation target.");
 			
 			// Contact RackManager origin to reject migration request.
-			simulation.sendEvent(new VmMigRejectEvent(entry.getOrigin(), entry.getVm(), entry.getOrigin(), 0));
+			simulation.sendEvent(new VmMigRejectEvent(entry.getOrigin(), entry.getVm(), entry.getOrigin(), entry.getRequestId(), 0));
 			
 			// Delete entry from migration requests record.
 			manager.getCapability(MigRequestRecord.class).removeEntry(entry);
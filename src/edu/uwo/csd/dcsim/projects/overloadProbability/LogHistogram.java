@@ -0,0 +1,117 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability;
+
+/**
+ * A fixed-size histogram of non-negative long values (e.g., execution times in nanoseconds), with logarithmic
+ * buckets in the style of HdrHistogram: values below 2^precision are counted exactly, and each power of two
+ * above is split into 2^precision buckets, so percentiles are within a relative error of 2^-precision. Memory
+ * does not depend on the number of values recorded. Count, sum, min and max are exact.
+ *
+ * Not thread safe.
+ *
+ * @author michael
+ *
+ */
+public class LogHistogram {
+
+	private final int precision;
+	private final int subBuckets;
+	private final long[] counts;
+
+	private long count = 0;
+	private double sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * Create a histogram with 2^5 buckets per power of two (about 3% error).
+	 */
+	public LogHistogram() {
+		this(5);
+	}
+
+	/**
+	 * @param precision bits of precision, i.e., log2 of the number of buckets per power of two
+	 */
+	public LogHistogram(int precision) {
+		if (precision < 1 || precision > 16) throw new IllegalArgumentException("Precision must be between 1 and 16 bits");
+
+		this.precision = precision;
+		subBuckets = 1 << precision;
+		counts = new long[(64 - precision) * subBuckets];
+	}
+
+	public void record(long value) {
+		if (value < 0) throw new IllegalArgumentException("Histogram values must be non-negative");
+
+		++counts[getBucket(value)];
+		++count;
+		sum += value;
+		if (value < min) min = value;
+		if (value > max) max = value;
+	}
+
+	private int getBucket(long value) {
+		if (value < subBuckets) return (int)value;
+
+		//keep the top precision bits below the leading one
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - precision)) & (subBuckets - 1);
+		return subBuckets + (exponent - precision) * subBuckets + sub;
+	}
+
+	private long getBucketLower(int bucket) {
+		if (bucket < subBuckets) return bucket;
+
+		int k = bucket - subBuckets;
+		int shift = k / subBuckets;
+		return (long)(subBuckets + k % subBuckets) << shift;
+	}
+
+	private long getBucketWidth(int bucket) {
+		if (bucket < subBuckets) return 1;
+		return 1l << ((bucket - subBuckets) / subBuckets);
+	}
+
+	/**
+	 * Get the value at the given percentile (0 - 100], as the middle of its bucket (limited to the min and max).
+	 * @param percentile
+	 * @return the value, or 0 if no values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) return 0;
+
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= rank) {
+				long value = getBucketLower(i) + (getBucketWidth(i) - 1) / 2;
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getMean() {
+		if (count == 0) return Double.NaN;
+		return sum / count;
+	}
+
+	public long getMin() {
+		if (count == 0) return 0;
+		return min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+}
@@ -0,0 +1,185 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability;
+
+import java.io.PrintStream;
+
+import edu.uwo.csd.dcsim.projects.overloadProbability.BasicTests.WorkloadTrace;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.MarkovChainConfig;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.MarkovChainStore;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.StateLayout;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChain;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChainOriginal;
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChainUpdateOnChange;
+
+/**
+ * Replays workload traces through VmMarkovChain implementations, without running a simulation, to compare
+ * chain variants and state range layouts. Each trace is sampled every STATUS_INTERVAL (as host status updates
+ * do in StressProbabilityExperiment) for DURATION, starting at N_OFFSETS offsets evenly spread over the trace.
+ *
+ * Before each sample is recorded, the chain's transition probabilities out of its current state are used to
+ * predict it. Reported, per trace and variant:
+ *  -hit: fraction of samples falling in the most likely next state;
+ *  -pActual: average probability given to the state the sample fell in;
+ *  -utilError: average absolute error of the expected next utilization;
+ *  -overloadBrier: Brier score of the probability of the next utilization reaching UPPER_T;
+ *  -updates: transition probability updates (VmMarkovChain.nUpdates), per offset;
+ *  -nsPerSample: average time to record a sample.
+ *
+ */
+public class MarkovChainReplay {
+
+	public static final String[] TRACES = {"traces/clarknet",
+		"traces/epa",
+		"traces/sdsc",
+		"traces/google_cores_job_type_0",
+		"traces/google_cores_job_type_1",
+		"traces/google_cores_job_type_2",
+		"traces/google_cores_job_type_3"};
+
+	public static final long STATUS_INTERVAL = 5 * 60 * 1000; //5 minutes, in ms
+	public static final long DURATION = 10 * 24 * 60 * 60 * 1000l; //10 days, in ms
+	public static final int N_OFFSETS = 10;
+	public static final double UPPER_T = 0.9;
+	public static final long VM_CPU = 2500; //only scales utilization, which is what the predictions are compared on
+
+	public enum Variant {ORIGINAL, UPDATE_ON_CHANGE}
+
+	public static void main(String args[]) {
+
+		runReplaySet(System.out, new double[] {0, 0.2, 0.4, 0.6, 0.8, 1.0}, 0, new double[] {});
+//		runReplaySet(System.out, new double[] {0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0}, 0, new double[] {});
+//		runReplaySet(System.out, new double[] {0, 0.25, 0.5, 0.7, 0.8, 0.85, 0.9, 0.95, 1.0}, 0, new double[] {});
+//		runReplaySet(System.out, new double[] {0, 0.2, 0.4, 0.6, 0.8, 1.0}, 288, new double[] {0.9});
+
+	}
+
+	/**
+	 * Replay every trace with the given default state ranges. If learnSamples > 0, chains switch to state ranges
+	 * learned from their first learnSamples samples, plus the given extra boundaries (see MarkovChainConfig).
+	 * @param out
+	 * @param stateRanges
+	 * @param learnSamples
+	 * @param extraBoundaries
+	 */
+	public static void runReplaySet(PrintStream out, double[] stateRanges, int learnSamples, double[] extraBoundaries) {
+		MarkovChainConfig config = new MarkovChainConfig(stateRanges, learnSamples, MarkovChainConfig.DEFAULT_LEARNED_STATES,
+				extraBoundaries, MarkovChainConfig.DEFAULT_MIN_STATE_WIDTH);
+
+		out.print("ranges=");
+		for (int i = 0; i < stateRanges.length; ++i) out.print((i == 0 ? "" : ",") + stateRanges[i]);
+		out.print(" | learnSamples=" + learnSamples + " | extraBoundaries=");
+		for (int i = 0; i < extraBoundaries.length; ++i) out.print((i == 0 ? "" : ",") + extraBoundaries[i]);
+		out.println("");
+		out.println("trace,variant,samples,hit,pActual,utilError,overloadBrier,updates,nsPerSample");
+
+		for (String traceFile : TRACES) {
+			WorkloadTrace trace = new WorkloadTrace(traceFile);
+
+			for (Variant variant : Variant.values()) {
+				ReplayResult result = new ReplayResult();
+				for (int i = 0; i < N_OFFSETS; ++i) {
+					replay(trace, variant, (trace.getLastTime() + trace.getStepSize()) * i / N_OFFSETS, config, result);
+				}
+
+				out.printf("%s,%s,%d,%.4f,%.4f,%.4f,%.4f,%.1f,%.1f%n",
+						traceFile,
+						variant,
+						result.samples,
+						result.hits / (double)result.predictions,
+						result.pActual / result.predictions,
+						result.utilError / result.predictions,
+						result.overloadBrier / result.predictions,
+						result.updates / (double)N_OFFSETS,
+						result.recordTime / (double)result.samples);
+			}
+		}
+		out.println("");
+	}
+
+	/**
+	 * Replay a trace through a new chain, starting at the given offset (in ms), adding the results to result.
+	 * @param trace
+	 * @param variant
+	 * @param offset
+	 * @param config
+	 * @param result
+	 */
+	public static void replay(WorkloadTrace trace, Variant variant, long offset, MarkovChainConfig config, ReplayResult result) {
+		MarkovChainStore store = new MarkovChainStore(1, config);
+
+		double util = getUtilization(trace, offset);
+		VmMarkovChain chain;
+		switch (variant) {
+			case UPDATE_ON_CHANGE:
+				chain = new VmMarkovChainUpdateOnChange(0, VM_CPU, util, store);
+				break;
+			default:
+				chain = new VmMarkovChainOriginal(0, VM_CPU, util, store);
+		}
+
+		long updates = VmMarkovChain.nUpdates;
+
+		for (long time = STATUS_INTERVAL; time <= DURATION; time += STATUS_INTERVAL) {
+			double nextUtil = getUtilization(trace, offset + time);
+
+			//predict the next sample from the current transition probabilities
+			double[] p = chain.getTransitionProbabilities();
+			int current = chain.getCurrentStateIndex();
+			int mostLikely = 0;
+			double expectedUtil = 0;
+			double pOverload = 0;
+			for (int s = 0; s < p.length; ++s) {
+				if (p[s] > p[mostLikely]) mostLikely = s;
+
+				//as in HostProbabilitySolver, the current state stands for the current utilization
+				double sUtil = (s == current) ? util : chain.getStates()[s].getValue();
+				expectedUtil += p[s] * sUtil;
+				if (sUtil >= UPPER_T) pOverload += p[s];
+			}
+
+			StateLayout layout = chain.getLayout();
+
+			long start = System.nanoTime();
+			chain.recordUtilization(nextUtil, time);
+			result.recordTime += System.nanoTime() - start;
+			++result.samples;
+
+			util = nextUtil;
+
+			//the chain switched to a learned layout, so the prediction refers to different states
+			if (chain.getLayout() != layout) continue;
+
+			++result.predictions;
+			int actual = chain.getCurrentStateIndex();
+			double overload = (nextUtil >= UPPER_T) ? 1 : 0;
+
+			if (actual == mostLikely) ++result.hits;
+			result.pActual += p[actual];
+			result.utilError += Math.abs(expectedUtil - nextUtil);
+			result.overloadBrier += (pOverload - overload) * (pOverload - overload);
+		}
+
+		result.updates += VmMarkovChain.nUpdates - updates;
+	}
+
+	/**
+	 * Get the trace's utilization at the given time (in ms), wrapping around at the end of the trace.
+	 * @param trace
+	 * @param time
+	 * @return
+	 */
+	private static double getUtilization(WorkloadTrace trace, long time) {
+		return Math.min(1, trace.getValue((int)(time / trace.getStepSize())));
+	}
+
+	public static class ReplayResult {
+		public long samples = 0;
+		public long predictions = 0;
+		public long hits = 0;
+		public double pActual = 0;
+		public double utilError = 0;
+		public double overloadBrier = 0;
+		public long updates = 0;
+		public long recordTime = 0; //ns
+	}
+
+}
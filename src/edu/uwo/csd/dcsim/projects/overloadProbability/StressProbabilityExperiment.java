@@ -51,6 +51,8 @@ public class StressProbabilityExperiment extends SimulationTask {
 	
 	private static final boolean CSV_OUTPUT = false;
 	
+	private static final int RELOCATION_PARALLELISM = 1; //threads used to calculate host overload probabilities during relocation (1 = sequential)
+	
 	private static final long[] randomSeeds = {6198910678692541341l,
 		5646441053220106016l,
 		-5705302823151233610l,
@@ -103,6 +105,9 @@ public class StressProbabilityExperiment extends SimulationTask {
 //		runSimulationSet(printStream, 0.8, 0.75, 0.4, 0.2, -1, false, true);
 //		runSimulationSet(printStream, 0.8, 0.75, 0.4, 0.1, -1, false, true);
 		
+		//dynamic, probability, with one consolidation interval (1 hour / 5-minute samples) of overload forecast
+//		runSimulationSet(printStream, 0.8, 0.75, 0.4, 0.3, -1, false, true, (int)(SimTime.hours(1) / SimTime.minutes(5)));
+		
 		printStream.println("Done");
 		printStream.close();
 		
@@ -117,6 +122,19 @@ public class StressProbabilityExperiment extends SimulationTask {
 			boolean fixed,
 			boolean probability) {
 		
+		runSimulationSet(out, upper, target, lower, pThreshold, filterSize, fixed, probability, 0);
+	}
+	
+	public static void runSimulationSet(PrintStream out,
+			double upper,
+			double target,
+			double lower,
+			double pThreshold,
+			int filterSize,
+			boolean fixed,
+			boolean probability,
+			int lookahead) {
+		
 		logger.info("Started New Simulation Set");
 		logger.info(upper + "," + target + "," + lower);
 		
@@ -124,7 +142,7 @@ public class StressProbabilityExperiment extends SimulationTask {
 		SimulationExecutor executor = new SimulationExecutor();
 		for (int i = 0; i < N_SEEDS; ++i)  {
 			StressProbabilityExperiment e = new StressProbabilityExperiment("stress-probability-" + (i + 1), randomSeeds[i]);
-			e.setParameters(upper, target, lower, pThreshold, filterSize, fixed, probability);
+			e.setParameters(upper, target, lower, pThreshold, filterSize, fixed, probability, lookahead);
 			executor.addTask(e);
 		}
 		
@@ -135,7 +153,7 @@ public class StressProbabilityExperiment extends SimulationTask {
 			out.println("Autoscale+Reallocation Experiment");
 			out.println("upper=" + upper + " | target=" + target + " | lower=" + lower + 
 					" | pThreshold=" + pThreshold + " | filterSize=" + filterSize +
-					" | fixed=" + fixed + " | probability=" + probability);
+					" | fixed=" + fixed + " | probability=" + probability + " | lookahead=" + lookahead);
 			
 			for(SimulationTask task : completedTasks) {
 				if (completedTasks.indexOf(task) == 0) {
@@ -169,6 +187,7 @@ public class StressProbabilityExperiment extends SimulationTask {
 	private int filterSize = -1;
 	private boolean fixed = false;
 	private boolean probability = false;
+	private int lookahead = 0; //if > 0, steps of overload forecast used by the probability consolidation policy
 	
 	public StressProbabilityExperiment(String name, long randomSeed) {
 		super(name, DURATION);
@@ -185,6 +204,19 @@ public class StressProbabilityExperiment extends SimulationTask {
 			boolean fixed,
 			boolean probability) {
 		
+		setParameters(upper, target, lower, pThreshold, filterSize, fixed, probability, 0);
+	}
+	
+	public void setParameters(
+			double upper,
+			double target,
+			double lower,
+			double pThreshold,
+			int filterSize,
+			boolean fixed,
+			boolean probability,
+			int lookahead) {
+		
 		this.upper = upper;
 		this.target = target;
 		this.lower = lower;
@@ -192,6 +224,7 @@ public class StressProbabilityExperiment extends SimulationTask {
 		this.filterSize = filterSize;
 		this.fixed = fixed;
 		this.probability = probability;
+		this.lookahead = lookahead;
 	}
 	
 	@Override
@@ -238,8 +271,12 @@ public class StressProbabilityExperiment extends SimulationTask {
 			//NOTE, we are starting a day late to give the markov chains time to collect data
 			if (!fixed) {
 				if (probability) {
-					dcAM.installPolicy(new VmRelocationPolicyProbability(lower, upper, target, pThreshold), SimTime.minutes(10), SimTime.minutes(20) + 2);
-					dcAM.installPolicy(new VmConsolidationPolicyProbability(lower, upper, target), SimTime.hours(1), SimTime.hours(1) + 3);
+					dcAM.installPolicy(new VmRelocationPolicyProbability(lower, upper, target, pThreshold, RELOCATION_PARALLELISM), SimTime.minutes(10), SimTime.minutes(20) + 2);
+					if (lookahead > 0) {
+						dcAM.installPolicy(new VmConsolidationPolicyProbability(lower, upper, target, pThreshold, lookahead), SimTime.hours(1), SimTime.hours(1) + 3);
+					} else {
+						dcAM.installPolicy(new VmConsolidationPolicyProbability(lower, upper, target), SimTime.hours(1), SimTime.hours(1) + 3);
+					}
 				} else {
 					dcAM.installPolicy(new VmRelocationPolicyFFIMDHybrid(lower, upper, target), SimTime.minutes(10), SimTime.minutes(20) + 2);
 					dcAM.installPolicy(new VmConsolidationPolicyFFDDIHybrid(lower, upper, target), SimTime.hours(1), SimTime.hours(1) + 3);
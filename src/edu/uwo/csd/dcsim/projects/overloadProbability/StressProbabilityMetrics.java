@@ -3,8 +3,10 @@ package edu.uwo.csd.dcsim.projects.overloadProbability;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.apache.log4j.Logger;
 
 import edu.uwo.csd.dcsim.common.SimTime;
@@ -13,17 +15,34 @@ import edu.uwo.csd.dcsim.core.Simulation;
 import edu.uwo.csd.dcsim.core.metrics.MetricCollection;
 import edu.uwo.csd.dcsim.host.Host;
 
+/**
+ * Metrics of the overload probability calculations. Per-call values are kept in fixed-size histograms (see
+ * LogHistogram) rather than DescriptiveStatistics, so memory does not grow over long runs.
+ *
+ */
 public class StressProbabilityMetrics extends MetricCollection {
 	
-	DescriptiveStatistics algorithmExecTime = new DescriptiveStatistics();
-	DescriptiveStatistics filteredVms = new DescriptiveStatistics();
-	DescriptiveStatistics vmsInCalc = new DescriptiveStatistics();
-	DescriptiveStatistics stateCombinations = new DescriptiveStatistics();
+	public static boolean PER_HOST_METRICS = false; //report execution time percentiles for each host
+	public static int HOST_PRECISION = 3; //bits of precision of per-host histograms, which are kept smaller
+	
+	LogHistogram algorithmExecTime = new LogHistogram(); //ns
+	LogHistogram forecastExecTime = new LogHistogram(); //ns, multi-step forecasts (kept apart from the next-step calculations)
+	LogHistogram whatIfExecTime = new LogHistogram(); //ns, host distributions computed for what-if calculations
+	LogHistogram filteredVms = new LogHistogram();
+	LogHistogram vmsInCalc = new LogHistogram();
+	LogHistogram stateCombinations = new LogHistogram();
+	LogHistogram monteCarloSamples = new LogHistogram();
+	SummaryStatistics convolutionError = new SummaryStatistics();
+	SummaryStatistics parallelSpeedup = new SummaryStatistics();
+	Map<Integer, LogHistogram> hostExecTime = new TreeMap<Integer, LogHistogram>(); //ns, by host ID
 	long timeOver95 = 0;
 	long timeOver90 = 0;
 	
 	public long nOverFilter = 0;
 	
+	long calculationCacheHits = 0;
+	long calculationCacheMisses = 0;
+	
 	public StressProbabilityMetrics(Simulation simulation) {
 		super(simulation);
 		// TODO Auto-generated constructor stub
@@ -42,29 +61,103 @@ public class StressProbabilityMetrics extends MetricCollection {
 		
 	}
 
-	public void addAlgExecTime(long time) {
-		algorithmExecTime.addValue(time);
+	/*
+	 * Overload probabilities may be calculated for several hosts concurrently (see VmRelocationPolicyProbability),
+	 * so recording methods are synchronized.
+	 */
+	
+	/**
+	 * Record the execution time of an overload probability calculation. Times are reported in milliseconds.
+	 * @param hostId the host the calculation was for
+	 * @param nanos execution time, in nanoseconds (System.nanoTime)
+	 */
+	public synchronized void addAlgExecTime(int hostId, long nanos) {
+		algorithmExecTime.record(nanos);
+		
+		if (PER_HOST_METRICS) {
+			LogHistogram hostHistogram = hostExecTime.get(hostId);
+			if (hostHistogram == null) {
+				hostHistogram = new LogHistogram(HOST_PRECISION);
+				hostExecTime.put(hostId, hostHistogram);
+			}
+			hostHistogram.record(nanos);
+		}
+	}
+	
+	/**
+	 * Record the execution time of a multi-step overload forecast (see HostProbabilitySolver.computeStressProbabilityForecast).
+	 * @param nanos execution time, in nanoseconds (System.nanoTime)
+	 */
+	public synchronized void addForecastExecTime(long nanos) {
+		forecastExecTime.record(nanos);
+	}
+	
+	/**
+	 * Record the execution time of a what-if calculation (see HostProbabilitySolver.computeStressProbabilityWithVms),
+	 * or of computing a host's distribution for them (see HostProbabilitySolver.computeStressProbabilityWithVm).
+	 * Reused distributions are not recorded.
+	 * @param nanos execution time, in nanoseconds (System.nanoTime)
+	 */
+	public synchronized void addWhatIfExecTime(long nanos) {
+		whatIfExecTime.record(nanos);
 	}
 	
-	public void addFilteredVms(int n) {
-		filteredVms.addValue(n);
+	/**
+	 * Record the speedup of calculating a batch of overload probabilities in parallel, i.e., the sum of the
+	 * calculations' execution times over the wall-clock time of the batch.
+	 * @param speedup
+	 */
+	public synchronized void addParallelSpeedup(double speedup) {
+		parallelSpeedup.addValue(speedup);
+	}
+	
+	public synchronized void addFilteredVms(int n) {
+		filteredVms.record(n);
 	}
 
-	public void addVmsInCalc(int n) {
-		vmsInCalc.addValue(n);
+	public synchronized void addVmsInCalc(int n) {
+		vmsInCalc.record(n);
+	}
+	
+	public synchronized void addStateCombinations(long n) {
+		stateCombinations.record(n);
+	}
+	
+	public synchronized void addConvolutionError(double error) {
+		convolutionError.addValue(error);
+	}
+	
+	public synchronized void addMonteCarloSamples(long n) {
+		monteCarloSamples.record(n);
+	}
+	
+	public synchronized void addHostOverFilter() {
+		++nOverFilter;
+	}
+	
+	public synchronized void addCalculationCacheHit() {
+		++calculationCacheHits;
+	}
+	
+	public synchronized void addCalculationCacheMiss() {
+		++calculationCacheMisses;
 	}
 	
-	public void addStateCombinations(long n) {
-		stateCombinations.addValue(n);
+	public double getCalculationCacheHitRate() {
+		if (calculationCacheHits + calculationCacheMisses == 0) return 0;
+		return calculationCacheHits / (double)(calculationCacheHits + calculationCacheMisses);
 	}
 	
 	@Override
 	public void printDefault(Logger out) {
 		out.info("-- STRESS PROBABILITY --");
-		out.info("Algorithm Runtime");
-		out.info("   average: " + algorithmExecTime.getMean());
-		out.info("   max: " + algorithmExecTime.getMax());
-		out.info("   min: " + algorithmExecTime.getMin());
+		out.info("Algorithm Runtime (ms)");
+		out.info("   calculations: " + algorithmExecTime.getCount());
+		out.info("   average: " + toMillis(algorithmExecTime.getMean()));
+		out.info("   p50: " + toMillis(algorithmExecTime.getPercentile(50)));
+		out.info("   p99: " + toMillis(algorithmExecTime.getPercentile(99)));
+		out.info("   max: " + toMillis(algorithmExecTime.getMax()));
+		out.info("   min: " + toMillis(algorithmExecTime.getMin()));
 		out.info("Filtered VMs");
 		out.info("   total: " + filteredVms.getSum());
 		out.info("   average: " + filteredVms.getMean());
@@ -74,13 +167,62 @@ public class StressProbabilityMetrics extends MetricCollection {
 		out.info("VMs in Calculation");
 		out.info("   total: " + vmsInCalc.getSum());
 		out.info("   average: " + vmsInCalc.getMean());
+		out.info("   p99: " + vmsInCalc.getPercentile(99));
 		out.info("   max: " + vmsInCalc.getMax());
 		out.info("   min: " + vmsInCalc.getMin());
 		out.info("State Combinations");
 		out.info("   total: " + stateCombinations.getSum());
 		out.info("   average: " + stateCombinations.getMean());
+		out.info("   p50: " + stateCombinations.getPercentile(50));
+		out.info("   p99: " + stateCombinations.getPercentile(99));
 		out.info("   max: " + stateCombinations.getMax());
 		out.info("   min: " + stateCombinations.getMin());
+		if (forecastExecTime.getCount() > 0) {
+			out.info("Forecast Runtime (ms)");
+			out.info("   forecasts: " + forecastExecTime.getCount());
+			out.info("   average: " + toMillis(forecastExecTime.getMean()));
+			out.info("   p99: " + toMillis(forecastExecTime.getPercentile(99)));
+			out.info("   max: " + toMillis(forecastExecTime.getMax()));
+		}
+		if (whatIfExecTime.getCount() > 0) {
+			out.info("What-if Distribution Runtime (ms)");
+			out.info("   distributions: " + whatIfExecTime.getCount());
+			out.info("   average: " + toMillis(whatIfExecTime.getMean()));
+			out.info("   p99: " + toMillis(whatIfExecTime.getPercentile(99)));
+			out.info("   max: " + toMillis(whatIfExecTime.getMax()));
+		}
+		if (convolutionError.getN() > 0) {
+			out.info("Convolution Error (vs. exact)");
+			out.info("   checked: " + convolutionError.getN());
+			out.info("   average: " + convolutionError.getMean());
+			out.info("   max: " + convolutionError.getMax());
+		}
+		if (monteCarloSamples.getCount() > 0) {
+			out.info("Monte Carlo Estimates");
+			out.info("   count: " + monteCarloSamples.getCount());
+			out.info("   average samples: " + monteCarloSamples.getMean());
+			out.info("   max samples: " + monteCarloSamples.getMax());
+		}
+		if (parallelSpeedup.getN() > 0) {
+			out.info("Parallel Speedup");
+			out.info("   batches: " + parallelSpeedup.getN());
+			out.info("   average: " + parallelSpeedup.getMean());
+			out.info("   min: " + parallelSpeedup.getMin());
+		}
+		if (PER_HOST_METRICS) {
+			out.info("Algorithm Runtime by Host (ms)");
+			for (Map.Entry<Integer, LogHistogram> entry : hostExecTime.entrySet()) {
+				LogHistogram hostHistogram = entry.getValue();
+				out.info("   host " + entry.getKey() + ": calculations=" + hostHistogram.getCount() + 
+						", p50=" + toMillis(hostHistogram.getPercentile(50)) + 
+						", p99=" + toMillis(hostHistogram.getPercentile(99)) + 
+						", max=" + toMillis(hostHistogram.getMax()));
+			}
+		}
+		out.info("Calculation Cache");
+		out.info("   hits: " + calculationCacheHits);
+		out.info("   misses: " + calculationCacheMisses);
+		out.info("   hit rate: " + getCalculationCacheHitRate());
 		out.info("-- HOST OVERUTIL --");
 		out.info("   > 90: " + SimTime.toHumanReadable(timeOver90));
 		out.info("   > 95: " + SimTime.toHumanReadable(timeOver95));
@@ -90,20 +232,72 @@ public class StressProbabilityMetrics extends MetricCollection {
 	public List<Tuple<String, Object>> getMetricValues() {
 		List<Tuple<String, Object>> metrics = new ArrayList<Tuple<String, Object>>();
 	
-		metrics.add(new Tuple<String, Object>("algRuntimeAvg", algorithmExecTime.getMean()));
-		metrics.add(new Tuple<String, Object>("algRuntimeMax", algorithmExecTime.getMax()));
-		metrics.add(new Tuple<String, Object>("algRuntimeMin", algorithmExecTime.getMin()));
+		metrics.add(new Tuple<String, Object>("algRuntimeAvg", toMillis(algorithmExecTime.getMean())));
+		metrics.add(new Tuple<String, Object>("algRuntimeP50", toMillis(algorithmExecTime.getPercentile(50))));
+		metrics.add(new Tuple<String, Object>("algRuntimeP99", toMillis(algorithmExecTime.getPercentile(99))));
+		metrics.add(new Tuple<String, Object>("algRuntimeMax", toMillis(algorithmExecTime.getMax())));
+		metrics.add(new Tuple<String, Object>("algRuntimeMin", toMillis(algorithmExecTime.getMin())));
+		
+		metrics.add(new Tuple<String, Object>("stateCombinationsP50", stateCombinations.getPercentile(50)));
+		metrics.add(new Tuple<String, Object>("stateCombinationsP99", stateCombinations.getPercentile(99)));
+		metrics.add(new Tuple<String, Object>("stateCombinationsMax", stateCombinations.getMax()));
 		
 		metrics.add(new Tuple<String, Object>("filteredVmsSum", filteredVms.getSum()));
 		metrics.add(new Tuple<String, Object>("filteredVmsMean", filteredVms.getMean()));
 		metrics.add(new Tuple<String, Object>("filteredVmsMax", filteredVms.getMax()));
 		metrics.add(new Tuple<String, Object>("filteredVmsMin", filteredVms.getMin()));
 		
+		if (forecastExecTime.getCount() > 0) {
+			metrics.add(new Tuple<String, Object>("forecasts", forecastExecTime.getCount()));
+			metrics.add(new Tuple<String, Object>("forecastRuntimeAvg", toMillis(forecastExecTime.getMean())));
+			metrics.add(new Tuple<String, Object>("forecastRuntimeP99", toMillis(forecastExecTime.getPercentile(99))));
+		}
+		
+		if (whatIfExecTime.getCount() > 0) {
+			metrics.add(new Tuple<String, Object>("whatIfDistributions", whatIfExecTime.getCount()));
+			metrics.add(new Tuple<String, Object>("whatIfRuntimeAvg", toMillis(whatIfExecTime.getMean())));
+			metrics.add(new Tuple<String, Object>("whatIfRuntimeP99", toMillis(whatIfExecTime.getPercentile(99))));
+		}
+		
+		if (convolutionError.getN() > 0) {
+			metrics.add(new Tuple<String, Object>("convErrorMean", convolutionError.getMean()));
+			metrics.add(new Tuple<String, Object>("convErrorMax", convolutionError.getMax()));
+		}
+		
+		if (monteCarloSamples.getCount() > 0) {
+			metrics.add(new Tuple<String, Object>("monteCarloEstimates", monteCarloSamples.getCount()));
+			metrics.add(new Tuple<String, Object>("monteCarloSamplesMean", monteCarloSamples.getMean()));
+			metrics.add(new Tuple<String, Object>("monteCarloSamplesP99", monteCarloSamples.getPercentile(99)));
+		}
+		
+		if (parallelSpeedup.getN() > 0) {
+			metrics.add(new Tuple<String, Object>("parallelSpeedupMean", parallelSpeedup.getMean()));
+			metrics.add(new Tuple<String, Object>("parallelSpeedupMin", parallelSpeedup.getMin()));
+		}
+		
+		metrics.add(new Tuple<String, Object>("calcCacheHits", calculationCacheHits));
+		metrics.add(new Tuple<String, Object>("calcCacheMisses", calculationCacheMisses));
+		metrics.add(new Tuple<String, Object>("calcCacheHitRate", getCalculationCacheHitRate()));
+		
 		metrics.add(new Tuple<String, Object>("timeOver90", SimTime.toHours(timeOver90)));
 		metrics.add(new Tuple<String, Object>("timeOver95", SimTime.toHours(timeOver95)));
 		
+		if (PER_HOST_METRICS) {
+			for (Map.Entry<Integer, LogHistogram> entry : hostExecTime.entrySet()) {
+				LogHistogram hostHistogram = entry.getValue();
+				metrics.add(new Tuple<String, Object>("algCalls_host" + entry.getKey(), hostHistogram.getCount()));
+				metrics.add(new Tuple<String, Object>("algRuntimeP50_host" + entry.getKey(), toMillis(hostHistogram.getPercentile(50))));
+				metrics.add(new Tuple<String, Object>("algRuntimeP99_host" + entry.getKey(), toMillis(hostHistogram.getPercentile(99))));
+				metrics.add(new Tuple<String, Object>("algRuntimeMax_host" + entry.getKey(), toMillis(hostHistogram.getMax())));
+			}
+		}
+		
 		return metrics;
 	}
+	
+	private static double toMillis(double nanos) {
+		return nanos / 1000000d;
+	}
 
 }
 
@@ -1,12 +1,14 @@
 package edu.uwo.csd.dcsim.projects.overloadProbability.capabilities;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import edu.uwo.csd.dcsim.common.SimTime;
 import edu.uwo.csd.dcsim.core.Simulation;
 import edu.uwo.csd.dcsim.management.HostData;
 import edu.uwo.csd.dcsim.management.VmStatus;
@@ -17,13 +19,36 @@ public class VmMarkovChainManager extends ManagerCapability {
 	
 	private double upperThreshold;
 	private int filterSize;
+	private boolean convolution = false; //use the convolution solver instead of enumerating state combinations
 	
 	private Map<Integer, HostProbabilitySolver> hostSolvers = new HashMap<Integer, HostProbabilitySolver>();
-	private Map<Integer, VmMarkovChain> vmMCs = new HashMap<Integer, VmMarkovChain>();
+	
+	public static long CHAIN_EXPIRY = SimTime.hours(1); //chains of VMs not seen in any host update for this long are removed (VM terminated)
+	
+	//VM chains are kept in a shared store; vmMCs holds the chain of each store slot (null if the slot is free)
+	private MarkovChainStore store;
+	private VmMarkovChain[] vmMCs = new VmMarkovChain[16];
+	private long lastPrune = 0;
 	
 	public VmMarkovChainManager(double upperThreshold, int filterSize) {
+		this(upperThreshold, filterSize, MarkovChainConfig.DEFAULT);
+	}
+	
+	/**
+	 * Create a manager whose VM chains use the given configuration (state layout) rather than the default one.
+	 * @param upperThreshold
+	 * @param filterSize
+	 * @param config
+	 */
+	public VmMarkovChainManager(double upperThreshold, int filterSize, MarkovChainConfig config) {
 		this.upperThreshold = upperThreshold;
 		this.filterSize = filterSize;
+		store = new MarkovChainStore(config);
+	}
+	
+	public VmMarkovChainManager(double upperThreshold, int filterSize, boolean convolution) {
+		this(upperThreshold, filterSize);
+		this.convolution = convolution;
 	}
 	
 	public ArrayList<VmMarkovChain> getVmSourceList(ArrayList<VmStatus> sourceList, Simulation simulation) {
@@ -32,10 +57,7 @@ public class VmMarkovChainManager extends ManagerCapability {
 		//collect VMs for this host
 		VmMarkovChain mc;
 		for (VmStatus vm : sourceList) {
-			mc = vmMCs.get(vm.getId());
-			if (mc == null) {
-				mc = new VmMarkovChainOriginal(vm, simulation);
-			}
+			mc = getOrCreateVmMarkovChain(vm, simulation);
 			vmList.add(mc);
 		}
 		
@@ -53,27 +75,165 @@ public class VmMarkovChainManager extends ManagerCapability {
 		
 		//update individual VM markov chains
 		for (VmStatus vm : host.getCurrentStatus().getVms()) updateVm(vm, simulation);
+		
+		//periodically free the chains of VMs that are no longer running
+		if (simulation.getSimulationTime() - lastPrune >= CHAIN_EXPIRY) {
+			pruneChains(simulation.getSimulationTime());
+			lastPrune = simulation.getSimulationTime();
+		}
 	}
 	
 	private void updateVm(VmStatus vm, Simulation simulation) {
-		VmMarkovChain vmMC;
-		if (vmMCs.containsKey(vm.getId())) {
-			vmMC = vmMCs.get(vm.getId());
+		VmMarkovChain vmMC = getVmMarkovChain(vm.getId());
+		if (vmMC != null) {
 			vmMC.recordState(vm);
 		} else {
 			//vmMC = new VmMarkovChainOriginal(vm, simulation);
-			vmMC = new VmMarkovChainOriginal(vm, simulation);
-			vmMCs.put(vm.getId(), vmMC);
+			vmMC = new VmMarkovChainOriginal(vm, simulation, store);
+			if (vmMC.getSlot() >= vmMCs.length) vmMCs = Arrays.copyOf(vmMCs, Math.max(vmMCs.length * 2, vmMC.getSlot() + 1));
+			vmMCs[vmMC.getSlot()] = vmMC;
+		}
+		store.setLastSeen(vmMC.getSlot(), simulation.getSimulationTime());
+	}
+	
+	/**
+	 * Remove the chains of VMs that have not been seen in a host update since CHAIN_EXPIRY before the given time,
+	 * so that their store slots can be reused.
+	 * @param time
+	 */
+	private void pruneChains(long time) {
+		for (int slot = 0; slot < store.getSlotCount(); ++slot) {
+			if (vmMCs[slot] != null && time - store.getLastSeen(slot) >= CHAIN_EXPIRY) {
+				store.remove(vmMCs[slot].getId());
+				vmMCs[slot] = null;
+			}
 		}
 	}
 	
+	private VmMarkovChain getVmMarkovChain(int vmId) {
+		int slot = store.getSlot(vmId);
+		return (slot == -1) ? null : vmMCs[slot];
+	}
+	
+	/**
+	 * Get the chain of the given VM, or, if it is not being tracked, a new chain for it (with the manager's
+	 * configuration) that is not kept in the store.
+	 * @param vm
+	 * @param simulation
+	 * @return
+	 */
+	private VmMarkovChain getOrCreateVmMarkovChain(VmStatus vm, Simulation simulation) {
+		VmMarkovChain mc = getVmMarkovChain(vm.getId());
+		if (mc == null) mc = new VmMarkovChainOriginal(vm, simulation, new MarkovChainStore(1, store.getConfig()));
+		return mc;
+	}
+	
 	public double calculateOverloadProbability(HostData host) {
 		ArrayList<VmMarkovChain> vmList = new ArrayList<VmMarkovChain>();
 		for (VmStatus vm : host.getCurrentStatus().getVms()) {
-			vmList.add(vmMCs.get(vm.getId()));
+			vmList.add(getVmMarkovChain(vm.getId()));
+		}
+		
+		HostProbabilitySolver solver = hostSolvers.get(host.getId());
+		
+		//sampled estimates vary between calculations, so they are neither reused nor recorded
+		if (!convolution && HostProbabilitySolver.isSampled(vmList))
+			return solver.computeStressProbability(host, vmList, upperThreshold, filterSize);
+		
+		//reuse a previous calculation for the same combination of VM states and CPU use, if still valid
+		double p = solver.getExistingCalculation(host, vmList, upperThreshold);
+		if (p == -1) {
+			if (convolution) {
+				p = solver.computeStressProbabilityConvolution(host, vmList, upperThreshold);
+			} else {
+				p = solver.computeStressProbability(host, vmList, upperThreshold, filterSize);
+			}
+			solver.recordCalculation(host, vmList, p, upperThreshold);
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Calculate the probability of the host becoming overloaded in the next step, for callers that only compare
+	 * it against pThreshold. The calculation may stop as soon as the probability reaches pThreshold, so values at
+	 * or above pThreshold may be lower than the actual probability (values below it are exact).
+	 * @param host
+	 * @param pThreshold
+	 * @return
+	 */
+	public double estimateOverloadProbability(HostData host, double pThreshold) {
+		if (convolution) return calculateOverloadProbability(host);
+		
+		ArrayList<VmMarkovChain> vmList = new ArrayList<VmMarkovChain>();
+		for (VmStatus vm : host.getCurrentStatus().getVms()) {
+			vmList.add(getVmMarkovChain(vm.getId()));
+		}
+		
+		HostProbabilitySolver solver = hostSolvers.get(host.getId());
+		
+		//sampled estimates vary between calculations, so they are neither reused nor recorded
+		if (HostProbabilitySolver.isSampled(vmList))
+			return solver.computeStressProbability(host, vmList, upperThreshold, filterSize, pThreshold);
+		
+		//reuse a previous calculation for the same combination of VM states and CPU use, if still valid
+		double p = solver.getExistingCalculation(host, vmList, upperThreshold);
+		if (p == -1) {
+			p = solver.computeStressProbability(host, vmList, upperThreshold, filterSize, pThreshold);
+			
+			//only record exact values, as other callers may compare against a different threshold
+			if (p < pThreshold) solver.recordCalculation(host, vmList, p, upperThreshold);
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Calculate the probability of the host becoming overloaded in the next step if the given VM were migrated to
+	 * it. The host's VMs are taken from its sandbox status, so that VMs already selected to migrate to (or away
+	 * from) the host are accounted for. With the convolution solver, the distribution of the host's VMs is kept by
+	 * its solver, so checking several VMs against the same host does not repeat the full calculation.
+	 * @param host
+	 * @param vm
+	 * @param simulation
+	 * @return
+	 */
+	public double calculateOverloadProbability(HostData host, VmStatus vm, Simulation simulation) {
+		ArrayList<VmStatus> hostVms = host.getSandboxStatus().getVms();
+		
+		ArrayList<VmMarkovChain> vmList = new ArrayList<VmMarkovChain>();
+		int[] vmUtil = new int[hostVms.size() + 1];
+		for (int i = 0; i < hostVms.size(); ++i) {
+			vmList.add(getOrCreateVmMarkovChain(hostVms.get(i), simulation));
+			vmUtil[i] = hostVms.get(i).getResourcesInUse().getCpu();
+		}
+		
+		VmMarkovChain mc = getOrCreateVmMarkovChain(vm, simulation);
+		int cpu = vm.getResourcesInUse().getCpu();
+		
+		HostProbabilitySolver solver = hostSolvers.get(host.getId());
+		if (convolution) return solver.computeStressProbabilityWithVm(host, vmList, Arrays.copyOf(vmUtil, hostVms.size()), mc, cpu, upperThreshold);
+		
+		vmList.add(mc);
+		vmUtil[hostVms.size()] = cpu;
+		return solver.computeStressProbabilityWithVms(host, vmList, vmUtil, upperThreshold, filterSize);
+	}
+	
+	/**
+	 * Estimate the probability of the host becoming overloaded within the given number of steps (i.e., status updates).
+	 * @param host
+	 * @param steps
+	 * @return
+	 */
+	public double calculateOverloadProbability(HostData host, int steps) {
+		if (steps <= 1) return calculateOverloadProbability(host);
+		
+		ArrayList<VmMarkovChain> vmList = new ArrayList<VmMarkovChain>();
+		for (VmStatus vm : host.getCurrentStatus().getVms()) {
+			vmList.add(getVmMarkovChain(vm.getId()));
 		}
 		
-		return hostSolvers.get(host.getId()).computeStressProbability(host, vmList, upperThreshold, filterSize);
+		return hostSolvers.get(host.getId()).computeStressProbabilityForecast(host, vmList, upperThreshold, steps);
 	}
 	
 }
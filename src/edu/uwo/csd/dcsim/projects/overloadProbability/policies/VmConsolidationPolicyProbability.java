@@ -19,6 +19,7 @@ import edu.uwo.csd.dcsim.management.action.MigrationAction;
 import edu.uwo.csd.dcsim.management.action.SequentialManagementActionExecutor;
 import edu.uwo.csd.dcsim.management.action.ShutdownHostAction;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.projects.overloadProbability.capabilities.VmMarkovChainManager;
 
 /**
  * Implements a greedy algorithm for VM Consolidation. VMs are migrated out of 
@@ -32,6 +33,15 @@ import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
  * 
  * There's no limit to the number of VMs that can be migrated out of a host.
  * 
+ * Optionally, the policy looks ahead a number of steps (e.g., a full 
+ * consolidation interval) and does not use as targets those hosts whose 
+ * probability of becoming stressed within that time is at or above a 
+ * given threshold.
+ * 
+ * Optionally, the policy also does not migrate a VM to a target host if 
+ * the probability of the host becoming stressed in the next step with the 
+ * VM is at or above the threshold.
+ * 
  * @author Gaston Keller
  *
  */
@@ -40,6 +50,9 @@ public class VmConsolidationPolicyProbability extends Policy {
 	protected double lowerThreshold;
 	protected double upperThreshold;
 	protected double targetUtilization;
+	protected double pThreshold = 1;
+	protected int lookaheadSteps = 0;
+	protected boolean checkTargetProbability = false;
 	
 	/**
 	 * Creates an instance of VmConsolidationPolicyGreedy.
@@ -52,6 +65,30 @@ public class VmConsolidationPolicyProbability extends Policy {
 		this.targetUtilization = targetUtilization;
 	}
 	
+	/**
+	 * Creates an instance of VmConsolidationPolicyProbability that looks 
+	 * ahead the given number of steps (i.e., host status updates) when 
+	 * selecting target hosts.
+	 */
+	public VmConsolidationPolicyProbability(double lowerThreshold, double upperThreshold, double targetUtilization, double pThreshold, int lookaheadSteps) {
+		this(lowerThreshold, upperThreshold, targetUtilization);
+		addRequiredCapability(VmMarkovChainManager.class);
+		
+		this.pThreshold = pThreshold;
+		this.lookaheadSteps = lookaheadSteps;
+	}
+	
+	/**
+	 * Creates an instance of VmConsolidationPolicyProbability that, in 
+	 * addition, checks the probability of each target host becoming stressed 
+	 * with the VM to be migrated to it.
+	 */
+	public VmConsolidationPolicyProbability(double lowerThreshold, double upperThreshold, double targetUtilization, double pThreshold, int lookaheadSteps, boolean checkTargetProbability) {
+		this(lowerThreshold, upperThreshold, targetUtilization, pThreshold, lookaheadSteps);
+		
+		this.checkTargetProbability = checkTargetProbability;
+	}
+	
 	/**
 	 * Sorts VMs in decreasing order by <overall capacity, CPU load>, i.e. 
 	 * <memory, cpu cores, core capacity, CPU load>, so as to place the 
@@ -159,6 +196,18 @@ public class VmConsolidationPolicyProbability extends Policy {
 		ArrayList<HostData> sources = this.orderSourceHosts(unsortedSources);
 		ArrayList<HostData> targets = this.orderTargetHosts(partiallyUtilized, underUtilized);
 		
+		VmMarkovChainManager mcMan = manager.getCapability(VmMarkovChainManager.class);
+		
+		// Filter out target hosts likely to become stressed before the next consolidation.
+		if (lookaheadSteps > 0) {
+			ArrayList<HostData> safeTargets = new ArrayList<HostData>();
+			for (HostData target : targets) {
+				if (mcMan.calculateOverloadProbability(target, lookaheadSteps) < pThreshold)
+					safeTargets.add(target);
+			}
+			targets = safeTargets;
+		}
+		
 		HashSet<HostData> usedSources = new HashSet<HostData>();
 		HashSet<HostData> usedTargets = new HashSet<HostData>();
 		
@@ -174,11 +223,13 @@ public class VmConsolidationPolicyProbability extends Policy {
 						// Check that source and target are different hosts, 
 						// that target host hasn't been used as source, 
 						// that target host is capable and has enough capacity left to host the VM, 
-						// and also that it will not exceed the target utilization.
+						// that it will not exceed the target utilization, 
+						// and (optionally) that it is not likely to become stressed with the VM.
 						if (source != target && 
 								!usedSources.contains(target) && 
 								HostData.canHost(vm, target.getSandboxStatus(), target.getHostDescription()) &&	
-								(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization) {
+								(target.getSandboxStatus().getResourcesInUse().getCpu() + vm.getResourcesInUse().getCpu()) / target.getHostDescription().getResourceCapacity().getCpu() <= targetUtilization && 
+								(!checkTargetProbability || mcMan.calculateOverloadProbability(target, vm, simulation) < pThreshold)) {
 							
 							// Modify host and vm states to record the future migration. Note that we 
 							// can do this because we are using the designated 'sandbox' host status.
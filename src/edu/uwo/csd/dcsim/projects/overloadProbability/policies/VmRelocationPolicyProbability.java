@@ -3,6 +3,11 @@ package edu.uwo.csd.dcsim.projects.overloadProbability.policies;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import edu.uwo.csd.dcsim.common.Utility;
 import edu.uwo.csd.dcsim.host.Host;
@@ -14,6 +19,7 @@ import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.management.VmStatusComparator;
 import edu.uwo.csd.dcsim.management.action.MigrationAction;
 import edu.uwo.csd.dcsim.management.capabilities.HostPoolManager;
+import edu.uwo.csd.dcsim.projects.overloadProbability.StressProbabilityMetrics;
 import edu.uwo.csd.dcsim.projects.overloadProbability.capabilities.VmMarkovChainManager;
 import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChain;
 
@@ -35,6 +41,9 @@ public class VmRelocationPolicyProbability extends Policy {
 	protected double targetUtilization;
 	protected double pThreshold;
 	
+	protected int parallelism = 1; //number of threads used to calculate host overload probabilities
+	private ForkJoinPool pool = null;
+	
 	/**
 	 * Creates an instance of VmRelocationPolicyGreedy.
 	 */
@@ -48,6 +57,16 @@ public class VmRelocationPolicyProbability extends Policy {
 		this.pThreshold = pThreshold;
 	}
 	
+	/**
+	 * Creates an instance of VmRelocationPolicyProbability that calculates the overload probabilities of 
+	 * hosts in parallel, using a pool of (at most) the given number of threads.
+	 */
+	public VmRelocationPolicyProbability(double lowerThreshold, double upperThreshold, double targetUtilization, double pThreshold, int parallelism) {
+		this(lowerThreshold, upperThreshold, targetUtilization, pThreshold);
+		
+		this.parallelism = parallelism;
+	}
+	
 	/**
 	 * Sorts the relocation candidates in increasing order by <CPU load>, 
 	 * previously removing from consideration those VMs with less CPU load 
@@ -213,7 +232,8 @@ public class VmRelocationPolicyProbability extends Policy {
 			ArrayList<HostData> empty,
 			Collection<HostData> hosts) {
 		
-		VmMarkovChainManager mcMan = manager.getCapability(VmMarkovChainManager.class);
+		// Hosts neither empty nor underutilized, which are classified based on their overload probability.
+		ArrayList<HostData> candidates = new ArrayList<HostData>();
 		
 		for (HostData host : hosts) {
 			
@@ -242,14 +262,82 @@ public class VmRelocationPolicyProbability extends Policy {
 					empty.add(host);
 				} else if (avgCpuUtilization < lowerThreshold) {
 					underUtilized.add(host);
-				} else if (mcMan.calculateOverloadProbability(host) >= pThreshold) {
-//					System.out.println("!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!! Stress Probability High!");
-					stressed.add(host);
 				} else {
-					partiallyUtilized.add(host);
+					candidates.add(host);
+				}
+			}
+		}
+		
+		double[] overloadProbabilities = this.calculateOverloadProbabilities(candidates);
+		
+		// Candidates are classified in their original order, regardless of the order in which calculations complete.
+		for (int i = 0; i < candidates.size(); i++) {
+			if (overloadProbabilities[i] >= pThreshold) {
+//				System.out.println("!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!! Stress Probability High!");
+				stressed.add(candidates.get(i));
+			} else {
+				partiallyUtilized.add(candidates.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the overload probability of each host. Calculations stop once the probability reaches 
+	 * pThreshold, so only comparisons against pThreshold are meaningful. If parallelism > 1, calculations 
+	 * are distributed over a fork-join pool. Each host has its own HostProbabilitySolver and hosts do not share VMs, so 
+	 * calculations are independent; results are returned in the order of the given list.
+	 */
+	protected double[] calculateOverloadProbabilities(List<HostData> hosts) {
+		final VmMarkovChainManager mcMan = manager.getCapability(VmMarkovChainManager.class);
+		double[] overloadProbabilities = new double[hosts.size()];
+		
+		if (parallelism <= 1 || hosts.size() < 2) {
+			for (int i = 0; i < hosts.size(); i++) {
+				overloadProbabilities[i] = mcMan.estimateOverloadProbability(hosts.get(i), pThreshold);
+			}
+			return overloadProbabilities;
+		}
+		
+		// Make sure the metrics collection exists before worker threads look it up.
+		StressProbabilityMetrics metrics = simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class);
+		
+		if (null == pool)
+			pool = new ForkJoinPool(parallelism);
+		
+		// Each task returns < overload probability , execution time >.
+		ArrayList<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>(hosts.size());
+		for (final HostData host : hosts) {
+			tasks.add(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					long start = System.nanoTime();
+					double p = mcMan.estimateOverloadProbability(host, pThreshold);
+					return new double[] {p, System.nanoTime() - start};
 				}
+			});
+		}
+		
+		long start = System.nanoTime();
+		List<Future<double[]>> results = pool.invokeAll(tasks);
+		long wallTime = System.nanoTime() - start;
+		
+		double execTime = 0;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				double[] result = results.get(i).get();
+				overloadProbabilities[i] = result[0];
+				execTime += result[1];
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted while calculating overload probabilities", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Failed to calculate overload probability of Host #" + hosts.get(i).getId(), e.getCause());
 			}
 		}
+		
+		if (wallTime > 0)
+			metrics.addParallelSpeedup(execTime / wallTime);
+		
+		return overloadProbabilities;
 	}
 	
 	@Override
@@ -264,7 +352,10 @@ public class VmRelocationPolicyProbability extends Policy {
 
 	@Override
 	public void onManagerStop() {
-		// TODO Auto-generated method stub
+		if (null != pool) {
+			pool.shutdown();
+			pool = null;
+		}
 	}
 
 }
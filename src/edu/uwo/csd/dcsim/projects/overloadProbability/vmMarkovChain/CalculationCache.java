@@ -0,0 +1,218 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Previously completed overload probability calculations of a host (see HostProbabilitySolver), so that the
+ * probability is not recalculated while its VMs stay in the same states.
+ *
+ * All stored calculations are for the same set of VMs and threshold; recording a calculation for a different
+ * set of VMs or threshold starts over. Calculations are kept in an open addressing table keyed by the encoded
+ * states of the VMs, along with the CPU use of each VM the calculation was made with, as the states only
+ * quantize the VMs' utilization. A stored calculation is valid until the transition probabilities of the
+ * current state of one of its VMs are updated.
+ *
+ * @author michael
+ *
+ */
+public class CalculationCache {
+
+	public static final int STATE_BITS = 3; //bits used to encode a VM's state in a calculation code
+	public static final int MAX_ENCODED_VMS = 64 / STATE_BITS; //VMs that fit in a calculation code
+	public static final int MAX_CALCULATIONS = 4096; //stored calculations per host
+
+	//stored calculations, indexed by table slot (code 0 = empty slot)
+	private long[] pCodes = new long[16];
+	private int[][] pVmUtil = new int[16][]; //CPU use of each VM (in stored VM ID order) the calculation was made with
+	private double[] pValues = new double[16];
+	private long[] pTimestamps = new long[16];
+	private int nCalculations = 0;
+	private int[] previousVms = new int[0]; //sorted IDs of the VMs the host previously contained -> matches all stored calculations
+	private double previousThreshold; //the threshold value used with the stored calculations
+
+	/**
+	 * Record a calculation for potential future use.
+	 * @param vmList
+	 * @param vmUtil the CPU use of each VM the calculation was made with
+	 * @param overloadP
+	 * @param threshold
+	 * @param time the time of the calculation
+	 */
+	public void record(ArrayList<VmMarkovChain> vmList, int[] vmUtil, double overloadP, double threshold, long time) {
+		//start over if the host contains different VMs or the threshold has changed
+		if (threshold != previousThreshold || !isPreviousVmSet(vmList)) {
+			clear();
+
+			previousVms = new int[vmList.size()];
+			for (int i = 0; i < previousVms.length; ++i) previousVms[i] = vmList.get(i).getId();
+			Arrays.sort(previousVms);
+		}
+
+		//record threshold
+		previousThreshold = threshold;
+
+		long code = encodeVmStates(vmList);
+		if (code <= 0) return; //too many VMs or states to encode
+
+		//start over if the table is full, rather than keep growing
+		if (nCalculations >= MAX_CALCULATIONS) clear();
+
+		//grow table at half occupancy, so that probe sequences stay short
+		if ((nCalculations + 1) * 2 > pCodes.length) {
+			long[] codes = pCodes;
+			int[][] utils = pVmUtil;
+			double[] values = pValues;
+			long[] timestamps = pTimestamps;
+
+			pCodes = new long[codes.length * 2];
+			pVmUtil = new int[codes.length * 2][];
+			pValues = new double[codes.length * 2];
+			pTimestamps = new long[codes.length * 2];
+			for (int i = 0; i < codes.length; ++i) {
+				if (codes[i] != 0) {
+					int slot = findSlot(codes[i]);
+					pCodes[slot] = codes[i];
+					pVmUtil[slot] = utils[i];
+					pValues[slot] = values[i];
+					pTimestamps[slot] = timestamps[i];
+				}
+			}
+		}
+
+		//add calculation, replacing any stale calculation for the same state combination (or with different CPU use)
+		int slot = findSlot(code);
+		if (pCodes[slot] == 0) ++nCalculations;
+		pCodes[slot] = code;
+		pVmUtil[slot] = toStoredOrder(vmList, vmUtil);
+		pValues[slot] = overloadP;
+		pTimestamps[slot] = time;
+	}
+
+	/**
+	 * Look for a previously calculated result for the current situation
+	 * @param vmList
+	 * @param vmUtil the current CPU use of each VM
+	 * @param threshold
+	 * @return the stored overload probability, or -1 if there is no valid stored calculation
+	 */
+	public double get(ArrayList<VmMarkovChain> vmList, int[] vmUtil, double threshold) {
+		/*
+		 * First we need to verify that the previously stored calculations are still valid.
+		 * They are NOT valid if:
+		 *  -the probability threshold has changed;
+		 *  -the host now has a different number of VMs;
+		 *  -or the host has different VMs.
+		 *
+		 *  If the stored values are found to be invalid, they are cleared when the next calculation is recorded.
+		 */
+		if (threshold != previousThreshold || !isPreviousVmSet(vmList)) return -1;
+
+		/*
+		 * The set of stored calculations is potentially valid. We look for this particular state combination,
+		 * using the vm state encoding.
+		 */
+		long code = encodeVmStates(vmList);
+		int slot = (code > 0) ? findSlot(code) : -1;
+		if (slot == -1 || pCodes[slot] == 0) return -1;
+
+		/*
+		 * The states only quantize the VMs' utilization, and the calculation uses their actual CPU use, so
+		 * the stored calculation must have been made with the same CPU use for every VM.
+		 */
+		if (!Arrays.equals(pVmUtil[slot], toStoredOrder(vmList, vmUtil))) return -1;
+
+		/*
+		 * Finally, we need to verify that none of the current utilization state transition probabilities
+		 * have been updated *after* the calculation. If so, we throw out the calculation (it is replaced
+		 * when the new calculation is recorded).
+		 */
+		for (VmMarkovChain vm : vmList) {
+			if (vm.getLastProbabilityUpdate() > pTimestamps[slot]) return -1;
+		}
+
+		return pValues[slot];
+	}
+
+	/**
+	 * Get the number of stored calculations.
+	 * @return
+	 */
+	public int size() {
+		return nCalculations;
+	}
+
+	/**
+	 * Check whether the list contains exactly the VMs matching the stored calculations.
+	 * @param vmList
+	 * @return
+	 */
+	private boolean isPreviousVmSet(ArrayList<VmMarkovChain> vmList) {
+		if (vmList.size() != previousVms.length) return false;
+
+		//VM IDs are unique, so checking that every VM is present is enough
+		for (int i = 0; i < vmList.size(); ++i) {
+			if (Arrays.binarySearch(previousVms, vmList.get(i).getId()) < 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Build an encoding of the current states of a list of VMs. Each VM's state index (plus one) is
+	 * packed in STATE_BITS bits, at the position of the VM's ID in the (sorted) stored VM IDs. The
+	 * list must contain exactly the stored VMs.
+	 * @param vmList
+	 * @return the encoding, or -1 if the VMs or their states do not fit in a long
+	 */
+	private long encodeVmStates(ArrayList<VmMarkovChain> vmList) {
+		if (vmList.size() > MAX_ENCODED_VMS) return -1;
+
+		long code = 0;
+		for (int i = 0; i < vmList.size(); ++i) {
+			VmMarkovChain vm = vmList.get(i);
+			int state = vm.getCurrentStateIndex() + 1; //+1, so that 0 can mark empty table slots
+			if (state >= (1 << STATE_BITS)) return -1;
+
+			code |= (long)state << (Arrays.binarySearch(previousVms, vm.getId()) * STATE_BITS);
+		}
+
+		return code;
+	}
+
+	/**
+	 * Reorder the CPU use of each VM of the list as the (sorted) stored VM IDs. The list must contain exactly
+	 * the stored VMs.
+	 * @param vmList
+	 * @param vmUtil
+	 * @return
+	 */
+	private int[] toStoredOrder(ArrayList<VmMarkovChain> vmList, int[] vmUtil) {
+		int[] ordered = new int[vmUtil.length];
+		for (int i = 0; i < vmUtil.length; ++i) {
+			ordered[Arrays.binarySearch(previousVms, vmList.get(i).getId())] = vmUtil[i];
+		}
+		return ordered;
+	}
+
+	/**
+	 * Find the table slot holding the given code, or the empty slot where it would be stored (linear probing).
+	 * @param code
+	 * @return
+	 */
+	private int findSlot(long code) {
+		int mask = pCodes.length - 1;
+		long h = code * 0x9E3779B97F4A7C15L;
+		int slot = (int)(h ^ (h >>> 32)) & mask;
+
+		while (pCodes[slot] != 0 && pCodes[slot] != code) slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	private void clear() {
+		Arrays.fill(pCodes, 0);
+		Arrays.fill(pVmUtil, null);
+		nCalculations = 0;
+	}
+
+}
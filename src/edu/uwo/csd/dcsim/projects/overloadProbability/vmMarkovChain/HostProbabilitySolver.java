@@ -1,19 +1,16 @@
 package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 
 import edu.uwo.csd.dcsim.common.Tuple;
 import edu.uwo.csd.dcsim.core.Simulation;
 import edu.uwo.csd.dcsim.management.HostData;
 import edu.uwo.csd.dcsim.management.VmStatus;
 import edu.uwo.csd.dcsim.projects.overloadProbability.StressProbabilityMetrics;
-import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChain.UtilizationState;
 
 
 public class HostProbabilitySolver {
@@ -28,64 +25,209 @@ public class HostProbabilitySolver {
 	public static long nSkipped = 0;
 	public static long nTotal = 0;
 	
-	private Map<String, PCalculation> pCalculations = new HashMap<String, PCalculation>(); //previously completed probability calculations
-	private Map<Integer, VmMarkovChain> previousVms = new HashMap<Integer, VmMarkovChain>(); //which VMs the host previously contained -> matches all stored pCalculations
-	private double previousThreshold; //the threshold value used with the stored calculations
+	private CalculationCache calculations = new CalculationCache(); //previously completed probability calculations
+	
+	public static int CONVOLUTION_BUCKETS = 1000; //host CPU quantization used by the convolution solver (never finer than 1 CPU unit)
+	public static int VALIDATION_MAX_VMS = 0; //if > 0, convolution results for hosts with up to this many VMs are checked against the exact enumeration
+	
+	public static double MONTE_CARLO_COMBINATIONS = 0; //if > 0, hosts with more state combinations than this are sampled instead of enumerated
+	public static int MONTE_CARLO_BATCH = 1000; //samples drawn between checks of the confidence interval
+	public static int MONTE_CARLO_MAX_SAMPLES = 100000;
+	public static double MONTE_CARLO_Z = 2.576; //confidence interval z-score (99%)
+	public static double MONTE_CARLO_HALF_WIDTH = 0.01; //without a probability to compare against, sample until the interval is this narrow
+	
+	private Random random = null; //used to sample VM states, separate from the simulation's so that results do not depend on other users
+	
+	//next-step CPU distribution of the host's VMs, kept for what-if calculations (see computeStressProbabilityWithVm)
+	private double[] distributionTail = null; //distributionTail[b] = probability of using b or more buckets of CPU
+	private long[] distributionKey = new long[0]; //<VM ID, current state, version, current CPU> of each VM the distribution was computed with
+	private double distributionThreshold;
 	
 	public HostProbabilitySolver(HostData host, Simulation simulation) {
 		this.simulation = simulation;
 		hostId = host.getId();
+		
+		//seed here rather than on first use, as calculations may run on other threads (in any order)
+		if (MONTE_CARLO_COMBINATIONS > 0) random = new Random(simulation.getRandom().nextLong());
 	}
 	
 	public double computeStressProbability(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, int filterSize) {
+		return computeStressProbability(host, completeVMlist, threshold, filterSize, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step, by enumerating
+	 * the combinations of VM states. The search is bounded: once the states of the first VMs are chosen, if the
+	 * remaining VMs cannot reach the threshold (even in their highest states) the combinations are skipped, and
+	 * if they reach it even in their lowest states, the probability of all the combinations is added at once.
+	 * 
+	 * The enumeration stops as soon as the probability reaches pStop, in which case the returned value is at 
+	 * least pStop, but may be lower than the actual probability.
+	 * @param host
+	 * @param completeVMlist
+	 * @param threshold
+	 * @param filterSize
+	 * @param pStop
+	 * @return
+	 */
+	public double computeStressProbability(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, int filterSize, double pStop) {
+		return computeStressProbability(host, completeVMlist, getVmUtil(host, completeVMlist), threshold, filterSize, pStop, true);
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step with the given VMs,
+	 * whether or not they are currently on the host ("what-if"), by enumerating the combinations of VM states (see
+	 * computeStressProbability). The time taken is recorded with the other what-if calculations, apart from the
+	 * next-step calculations.
+	 * @param host
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param threshold
+	 * @param filterSize
+	 * @return
+	 */
+	public double computeStressProbabilityWithVms(HostData host, ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double threshold, int filterSize) {
+		long startTime = System.nanoTime();
+		
+		double p = computeStressProbability(host, completeVMlist, vmUtil, threshold, filterSize, Double.POSITIVE_INFINITY, false);
+		
+		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addWhatIfExecTime(System.nanoTime() - startTime);
+		
+		return p;
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step (see
+	 * computeStressProbability), recording the time taken and the states visited only if record is set.
+	 * @param host
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param threshold
+	 * @param filterSize
+	 * @param pStop
+	 * @param record
+	 * @return
+	 */
+	private double computeStressProbability(HostData host, ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double threshold, int filterSize, double pStop, boolean record) {
+		
+		//sample hosts with too many state combinations to enumerate, rather than filtering out VMs
+		if (isSampled(completeVMlist)) return computeStressProbabilityMonteCarlo(host, completeVMlist, vmUtil, threshold, pStop, record);
 	
 		long startTime;
 		long endTime;
 		
-		startTime = System.currentTimeMillis();
+		startTime = System.nanoTime();
+		
+		//move arraylist into normal array
+		VmMarkovChain[] vms = completeVMlist.toArray(new VmMarkovChain[completeVMlist.size()]);
+		double[][] transitions = new double[vms.length][]; //transition probabilities out of each VM's current state
+		for (int i = 0; i < vms.length; ++i) {
+			transitions[i] = vms[i].getTransitionProbabilities();
+		}
+		
+		double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
+		
+		//filter VMs
+		int[] vmFilter = filterVms(host, vms, transitions, vmUtil, threshold, filterSize);
+//		pLimit = calculateProbabilityLimit(vms);
+//		reduceStates(vms, transitions);
+		
+		StressProbabilityMetrics metrics = record ? simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class) : null;
+		double p = enumerateStates(vms, transitions, vmUtil, vmFilter, hostCpu, threshold, pStop, metrics);
+		
+		endTime = System.nanoTime();
+		
+		if (record) metrics.addAlgExecTime(hostId, endTime - startTime);
+		
+		return p;
+	}
+	
+	/**
+	 * Compute the exact probability of the host's utilization reaching the threshold in the next step, by 
+	 * enumerating every combination of VM states (no filtering, sampling or early stop). Nothing is recorded in 
+	 * the simulation metrics, so this can be used to check the other solvers (see VALIDATION_MAX_VMS).
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param hostCpu
+	 * @param threshold
+	 * @return
+	 */
+	public static double computeExactProbability(ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double hostCpu, double threshold) {
+		VmMarkovChain[] vms = completeVMlist.toArray(new VmMarkovChain[completeVMlist.size()]);
+		double[][] transitions = new double[vms.length][];
+		int[] vmFilter = new int[vms.length];
+		for (int i = 0; i < vms.length; ++i) {
+			transitions[i] = vms[i].getTransitionProbabilities();
+			vmFilter[i] = 1;
+		}
+		
+		return enumerateStates(vms, transitions, vmUtil, vmFilter, hostCpu, threshold, Double.POSITIVE_INFINITY, null);
+	}
+	
+	/**
+	 * Enumerate the combinations of states of the given VMs (see computeStressProbability). VMs filtered out 
+	 * (vmFilter[i] == 0) only take their current state. The number of combinations is recorded in metrics, 
+	 * unless it is null.
+	 * @param vms
+	 * @param transitions
+	 * @param vmUtil
+	 * @param vmFilter
+	 * @param hostCpu
+	 * @param threshold
+	 * @param pStop
+	 * @param metrics
+	 * @return
+	 */
+	private static double enumerateStates(VmMarkovChain[] vms, double[][] transitions, int[] vmUtil, int[] vmFilter, double hostCpu, double threshold, double pStop, StressProbabilityMetrics metrics) {
+		
 		double p = 0;
 		long nPerm = 0;
 			
-		int[] states = new int[completeVMlist.size()];
-		VmMarkovChain[] vms = new VmMarkovChain[completeVMlist.size()];
-		double[] stateUtil = new double[completeVMlist.size()];
-		double[] stateP = new double[completeVMlist.size()];
-		int[] vmFilter;
+		int[] states = new int[vms.length];
+		double[] stateUtil = new double[vms.length];
+		double[] stateP = new double[vms.length];
+		double[] prefixUtil = new double[vms.length]; //utilization of the VMs up to each position, in their chosen states
+		double[] prefixP = new double[vms.length]; //probability of the VMs up to each position being in their chosen states
+		double[] remainingMin = new double[vms.length + 1]; //minimum utilization of the VMs from each position on
+		double[] remainingMax = new double[vms.length + 1]; //maximum utilization of the VMs from each position on
+		double[] remainingP = new double[vms.length + 1]; //probability of the VMs from each position on being in any of their considered states
 		double sP;
 		double util = 0;
-		double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
-		
-		int[] vmUtil = new int[completeVMlist.size()];
 		long nStates = 0;
 		
 		double pLimit = 0;
 		
-		//move arraylist into normal array
-		{
-			int i = 0;
-			for (VmMarkovChain vm : completeVMlist) {
-				vms[i] = vm;
-				states[i] = -1;
-				++i;
-				vm.resetWorkingTransitions();
-			}
-		}
+		for (int i = 0; i < vms.length; ++i) states[i] = -1;
 		int vmPosition = 0;
 		
-		for (int i = 0; i < vms.length; ++i) {
-			for (VmStatus vm : host.getCurrentStatus().getVms()) {
-				if (vm.getId() == vms[i].id) {
-					vmUtil[i] = vm.getResourcesInUse().getCpu();
-					continue;
+		//compute bounds on the utilization and probability of the VMs from each position on, over the states considered below
+		remainingP[vms.length] = 1;
+		for (int i = vms.length - 1; i >= 0; --i) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = 0;
+			double mass = 0;
+			for (int s = 0; s < transitions[i].length; ++s) {
+				double sUtil;
+				double sMass;
+				if (vmFilter[i] == 1) {
+					if (transitions[i][s] <= 0 || (transitions[i][s] < pLimit && vms[i].getCurrentStateIndex() != s)) continue;
+					sMass = transitions[i][s];
+				} else {
+					if (vms[i].getCurrentStateIndex() != s) continue;
+					sMass = 1;
 				}
+				sUtil = (vms[i].getCurrentStateIndex() == s) ? vmUtil[i] : vms[i].getCpu() * vms[i].getStates()[s].getValue();
+				min = Math.min(min, sUtil);
+				max = Math.max(max, sUtil);
+				mass += sMass;
 			}
+			if (mass == 0) min = 0; //no states to consider, so no combination has any probability
+			
+			remainingMin[i] = remainingMin[i + 1] + min;
+			remainingMax[i] = remainingMax[i + 1] + max;
+			remainingP[i] = remainingP[i + 1] * mass;
 		}
 		
-		//filter VMs
-		vmFilter = filterVms(host, vms, vmUtil, threshold, filterSize);
-//		pLimit = calculateProbabilityLimit(vms);
-//		reduceStates(vms);
-		
 //		System.out.println("1");
 		/*
 		 * Main iteration loop. Continue until the VM stack is empty.
@@ -98,9 +240,9 @@ public class HostProbabilitySolver {
 			
 			if (vmFilter[vmPosition] == 1) {
 				//VM included in calculation, cycle through possible states
-				for (int i = states[vmPosition] + 1; i < currentVm.states.length; ++i) {
-					if (currentVm.currentState.workingTransitionProbabilities[i] > 0 && 
-							((sP = currentVm.currentState.workingTransitionProbabilities[i]) >= pLimit ||
+				for (int i = states[vmPosition] + 1; i < transitions[vmPosition].length; ++i) {
+					if (transitions[vmPosition][i] > 0 && 
+							((sP = transitions[vmPosition][i]) >= pLimit ||
 							(currentVm.getCurrentStateIndex() == i))) {
 						state = i;
 						stateP[vmPosition] = sP; 
@@ -130,6 +272,9 @@ public class HostProbabilitySolver {
 					//otherwise, use the state value
 					stateUtil[vmPosition] = currentVm.getCpu() * currentVm.getStates()[state].getValue();
 				}
+				
+				prefixUtil[vmPosition] = (vmPosition == 0 ? 0 : prefixUtil[vmPosition - 1]) + stateUtil[vmPosition];
+				prefixP[vmPosition] = (vmPosition == 0 ? 1 : prefixP[vmPosition - 1]) * stateP[vmPosition];
 
 				//if remainingVMs is empty
 				if (vmPosition == vms.length - 1) {
@@ -137,32 +282,388 @@ public class HostProbabilitySolver {
 					++nStates;
 					
 					//update p with current state information
-					util = 0;
-					for (double u : stateUtil) util += u;
-					util = util / hostCpu;
+					util = prefixUtil[vmPosition] / hostCpu;
 					if (util >= threshold) {
-						sP = 1;
-						for (double d : stateP) sP = sP * d;
-						p += sP;
+						p += prefixP[vmPosition];
 					}
 					++nPerm;
+				} else if ((prefixUtil[vmPosition] + remainingMax[vmPosition + 1]) / hostCpu < threshold) {
+					//no combination of states of the remaining VMs reaches the threshold, skip them
+					++nStates;
+				} else if ((prefixUtil[vmPosition] + remainingMin[vmPosition + 1]) / hostCpu >= threshold) {
+					//every combination of states of the remaining VMs reaches the threshold, add them all at once
+					++nStates;
+					p += prefixP[vmPosition] * remainingP[vmPosition + 1];
 				} else {
 					//move to next VM
 					++vmPosition;
 					states[vmPosition] = -1;
 				}
+				
+				//the caller only needs to know whether the probability reaches pStop
+				if (p >= pStop) break;
 			}
 		}
 
-		endTime = System.currentTimeMillis();
+		if (metrics != null) metrics.addStateCombinations(nStates);
+		
+		return p;
+	}
+
+	/**
+	 * Estimate the probability of the host's utilization reaching the threshold in the next step by sampling the
+	 * VMs' next states. Samples are drawn in batches of MONTE_CARLO_BATCH until the (Wilson score) confidence
+	 * interval of the estimate lies entirely above or below pStop, or, if pStop is not a probability, until it is
+	 * narrower than 2 * MONTE_CARLO_HALF_WIDTH; at most MONTE_CARLO_MAX_SAMPLES are drawn. All VMs are included.
+	 * @param host
+	 * @param completeVMlist
+	 * @param threshold
+	 * @param pStop
+	 * @return
+	 */
+	public double computeStressProbabilityMonteCarlo(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, double pStop) {
+		return computeStressProbabilityMonteCarlo(host, completeVMlist, getVmUtil(host, completeVMlist), threshold, pStop, true);
+	}
+	
+	/**
+	 * Check whether the probability for the given VMs is estimated by sampling (see MONTE_CARLO_COMBINATIONS)
+	 * rather than computed exactly by computeStressProbability.
+	 * @param completeVMlist
+	 * @return
+	 */
+	public static boolean isSampled(ArrayList<VmMarkovChain> completeVMlist) {
+		if (MONTE_CARLO_COMBINATIONS <= 0) return false;
+		
+		double combinations = 1;
+		for (VmMarkovChain vm : completeVMlist) combinations *= vm.getStateCount();
+		return combinations > MONTE_CARLO_COMBINATIONS;
+	}
+	
+	private double computeStressProbabilityMonteCarlo(HostData host, ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double threshold, double pStop, boolean record) {
+		
+		long startTime;
+		long endTime;
+		
+		startTime = System.nanoTime();
+		
+		if (random == null) throw new IllegalStateException("Monte Carlo estimation requires MONTE_CARLO_COMBINATIONS > 0 when the solver is created");
+		
+		int nVms = completeVMlist.size();
+		double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
+		double limit = threshold * hostCpu;
+		
+		//cumulative transition probabilities and utilization of each state, per VM
+		double[][] cumulative = new double[nVms][];
+		double[][] stateUtil = new double[nVms][];
+		for (int i = 0; i < nVms; ++i) {
+			VmMarkovChain vm = completeVMlist.get(i);
+			double[] transitions = vm.getTransitionProbabilities();
+			
+			cumulative[i] = new double[transitions.length];
+			stateUtil[i] = new double[transitions.length];
+			double sum = 0;
+			for (int s = 0; s < transitions.length; ++s) {
+				sum += transitions[s];
+				cumulative[i][s] = sum;
+				//if we are looking at the VMs current state, use it's actual utilization, otherwise use the state value
+				stateUtil[i][s] = (s == vm.getCurrentStateIndex()) ? vmUtil[i] : vm.getCpu() * vm.getStates()[s].getValue();
+			}
+		}
+		
+		long samples = 0;
+		long overloaded = 0;
+		double p = 0;
+		while (samples < MONTE_CARLO_MAX_SAMPLES) {
+			for (int b = 0; b < MONTE_CARLO_BATCH; ++b) {
+				double util = 0;
+				for (int i = 0; i < nVms; ++i) {
+					//draw the VM's next state (rows may not add up to exactly 1, so scale the draw)
+					double[] c = cumulative[i];
+					double r = random.nextDouble() * c[c.length - 1];
+					int s = 0;
+					while (s < c.length - 1 && r >= c[s]) ++s;
+					util += stateUtil[i][s];
+				}
+				if (util >= limit) ++overloaded;
+			}
+			samples += MONTE_CARLO_BATCH;
+			p = overloaded / (double)samples;
+			
+			//Wilson score interval
+			double z2 = MONTE_CARLO_Z * MONTE_CARLO_Z;
+			double centre = (p + z2 / (2 * samples)) / (1 + z2 / samples);
+			double halfWidth = MONTE_CARLO_Z * Math.sqrt(p * (1 - p) / samples + z2 / (4.0 * samples * samples)) / (1 + z2 / samples);
+			
+			if (pStop <= 1) {
+				if (centre - halfWidth > pStop || centre + halfWidth < pStop) break;
+			} else if (halfWidth <= MONTE_CARLO_HALF_WIDTH) {
+				break;
+			}
+		}
+		
+		endTime = System.nanoTime();
+		
+		if (record) {
+			StressProbabilityMetrics metrics = simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class);
+			metrics.addVmsInCalc(nVms);
+			metrics.addMonteCarloSamples(samples);
+			metrics.addAlgExecTime(hostId, endTime - startTime);
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step by convolving
+	 * the VMs' next-step CPU distributions, instead of enumerating every combination of VM states. Host CPU is
+	 * quantized into CONVOLUTION_BUCKETS buckets, and every bucket at or above the threshold is merged into one,
+	 * so the cost is O(VMs * states * buckets). All VMs are included (no filtering).
+	 * @param host
+	 * @param completeVMlist
+	 * @param threshold
+	 * @return
+	 */
+	public double computeStressProbabilityConvolution(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold) {
+		
+		long startTime;
+		long endTime;
+		
+		startTime = System.nanoTime();
+		
+		double p = convolve(host, completeVMlist, threshold, 1);
+		
+		endTime = System.nanoTime();
+		
+		StressProbabilityMetrics metrics = simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class);
+		metrics.addVmsInCalc(completeVMlist.size());
+		metrics.addAlgExecTime(hostId, endTime - startTime);
+		
+		//check against the exact enumeration on small hosts (not recorded as a calculation)
+		if (completeVMlist.size() <= VALIDATION_MAX_VMS) {
+			double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
+			metrics.addConvolutionError(Math.abs(p - computeExactProbability(completeVMlist, getVmUtil(host, completeVMlist), hostCpu, threshold)));
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Estimate the probability of the host's utilization reaching the threshold within the given number of steps,
+	 * as the highest probability of it doing so at any single step (a lower bound, as overloads at different steps
+	 * are not independent). The distribution at each step is computed by convolution, using the VMs' k-step
+	 * transition probabilities (see VmMarkovChain.getTransitionProbabilities(int)).
+	 * @param host
+	 * @param completeVMlist
+	 * @param threshold
+	 * @param steps
+	 * @return
+	 */
+	public double computeStressProbabilityForecast(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, int steps) {
 		
-		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addStateCombinations(nStates);
-		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addAlgExecTime(endTime - startTime);
+		long startTime;
+		long endTime;
+		
+		startTime = System.nanoTime();
+		
+		double p = 0;
+		for (int k = 1; k <= steps; ++k) {
+			p = Math.max(p, convolve(host, completeVMlist, threshold, k));
+		}
+		
+		endTime = System.nanoTime();
+		
+		//recorded apart from the next-step calculations, so that enabling forecasts does not skew their statistics
+		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addForecastExecTime(endTime - startTime);
 		
 		return p;
 	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in exactly the given number of steps,
+	 * by convolving the VMs' CPU distributions at that step.
+	 * @param host
+	 * @param completeVMlist
+	 * @param threshold
+	 * @param steps
+	 * @return
+	 */
+	private double convolve(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, int steps) {
+		double[] dist = computeDistribution(host, completeVMlist, threshold, steps);
+		return dist[dist.length - 1];
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step by convolution
+	 * (see computeStressProbabilityConvolution), without recording anything in the simulation metrics.
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param hostCpu
+	 * @param threshold
+	 * @return
+	 */
+	public static double computeConvolutionProbability(ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double hostCpu, double threshold) {
+		double[] dist = computeDistribution(completeVMlist, vmUtil, hostCpu, threshold, 1);
+		return dist[dist.length - 1];
+	}
+	
+	private double[] computeDistribution(HostData host, ArrayList<VmMarkovChain> completeVMlist, double threshold, int steps) {
+		double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
+		return computeDistribution(completeVMlist, getVmUtil(host, completeVMlist), hostCpu, threshold, steps);
+	}
+	
+	/**
+	 * Compute the distribution of the host's CPU use in exactly the given number of steps, in buckets of
+	 * getQuantum(hostCpu). The last bucket holds the probability of reaching the threshold.
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param hostCpu
+	 * @param threshold
+	 * @param steps
+	 * @return
+	 */
+	private static double[] computeDistribution(ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double hostCpu, double threshold, int steps) {
+		
+		double quantum = getQuantum(hostCpu);
+		int limit = (int)Math.ceil(threshold * hostCpu / quantum); //buckets at or above the limit are overloaded
+		if (limit < 0) limit = 0;
+		
+		//dist[b] = probability of the VMs processed so far using b buckets of CPU (dist[limit] = limit or more)
+		double[] dist = new double[limit + 1];
+		double[] next = new double[limit + 1];
+		double[] swap;
+		dist[0] = 1;
+		
+		for (int i = 0; i < completeVMlist.size(); ++i) {
+			VmMarkovChain vm = completeVMlist.get(i);
+			double[] transitions = (steps == 1) ? vm.getTransitionProbabilities() : vm.getTransitionProbabilities(steps);
+			
+			int current = vm.getCurrentStateIndex();
+			
+			for (int b = 0; b <= limit; ++b) next[b] = 0;
+			
+			for (int s = 0; s < transitions.length; ++s) {
+				if (transitions[s] > 0) {
+					//if we are looking at the VMs current state, use it's actual utilization, otherwise use the state value
+					double util = (s == current) ? vmUtil[i] : vm.getCpu() * vm.getStates()[s].getValue();
+					int shift = (int)Math.round(util / quantum);
+					
+					for (int b = 0; b <= limit; ++b) {
+						if (dist[b] != 0) next[Math.min(b + shift, limit)] += dist[b] * transitions[s];
+					}
+				}
+			}
+			
+			swap = dist;
+			dist = next;
+			next = swap;
+		}
+		
+		return dist;
+	}
+	
+	private double getQuantum(HostData host) {
+		return getQuantum((double)host.getHostDescription().getResourceCapacity().getCpu());
+	}
+	
+	/**
+	 * Get the size (in CPU units) of the buckets used by the convolution solver on a host with the given CPU.
+	 * @param hostCpu
+	 * @return
+	 */
+	public static double getQuantum(double hostCpu) {
+		return Math.max(1, hostCpu / CONVOLUTION_BUCKETS);
+	}
+	
+	/**
+	 * Get the current CPU use of each of the given VMs, from the host's current status.
+	 * @param host
+	 * @param completeVMlist
+	 * @return
+	 */
+	private static int[] getVmUtil(HostData host, ArrayList<VmMarkovChain> completeVMlist) {
+		int[] vmUtil = new int[completeVMlist.size()];
+		for (int i = 0; i < vmUtil.length; ++i) {
+			for (VmStatus vmStatus : host.getCurrentStatus().getVms()) {
+				if (vmStatus.getId() == completeVMlist.get(i).getId()) vmUtil[i] = vmStatus.getResourcesInUse().getCpu();
+			}
+		}
+		return vmUtil;
+	}
+	
+	/**
+	 * Compute the probability of the host's utilization reaching the threshold in the next step if the given VM
+	 * were added to it ("what-if"). The distribution of the host's current VMs is computed by convolution (see
+	 * computeStressProbabilityConvolution) and kept until their states or transition probabilities change, so
+	 * evaluating several candidate VMs against the same host only costs O(states) each.
+	 * @param host
+	 * @param completeVMlist the host's VMs, including those already on their way to it
+	 * @param hostVmUtil the current CPU use of each of the host's VMs
+	 * @param vm the VM to add
+	 * @param vmUtil the VM's current CPU use
+	 * @param threshold
+	 * @return
+	 */
+	public double computeStressProbabilityWithVm(HostData host, ArrayList<VmMarkovChain> completeVMlist, int[] hostVmUtil, VmMarkovChain vm, int vmUtil, double threshold) {
+		
+		double[] tail = getDistributionTail(host, completeVMlist, hostVmUtil, threshold);
+		double quantum = getQuantum(host);
+		int limit = tail.length - 1;
+		
+		double[] transitions = vm.getTransitionProbabilities();
+		int current = vm.getCurrentStateIndex();
+		
+		//the host is overloaded if the VM's CPU takes its current use from bucket b to limit or more
+		double p = 0;
+		for (int s = 0; s < transitions.length; ++s) {
+			if (transitions[s] > 0) {
+				double util = (s == current) ? vmUtil : vm.getCpu() * vm.getStates()[s].getValue();
+				int shift = (int)Math.round(util / quantum);
+				p += transitions[s] * tail[Math.max(0, limit - shift)];
+			}
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Get the cumulative (from the top) next-step CPU distribution of the host's VMs, computing it only if the
+	 * VMs, their states, their current CPU use or their transition probabilities changed since it was last computed.
+	 * @param host
+	 * @param completeVMlist
+	 * @param vmUtil the current CPU use of each VM
+	 * @param threshold
+	 * @return
+	 */
+	private double[] getDistributionTail(HostData host, ArrayList<VmMarkovChain> completeVMlist, int[] vmUtil, double threshold) {
+		
+		//the VMs' current CPU use is part of the key, as a VM's use may change without leaving its state
+		long[] key = new long[completeVMlist.size() * 4];
+		for (int i = 0; i < completeVMlist.size(); ++i) {
+			VmMarkovChain vm = completeVMlist.get(i);
+			key[i * 4] = vm.getId();
+			key[i * 4 + 1] = vm.getCurrentStateIndex();
+			key[i * 4 + 2] = vm.getVersion();
+			key[i * 4 + 3] = vmUtil[i];
+		}
+		
+		if (distributionTail != null && threshold == distributionThreshold && Arrays.equals(key, distributionKey)) return distributionTail;
+		
+		long startTime = System.nanoTime();
+		
+		double hostCpu = (double)host.getHostDescription().getResourceCapacity().getCpu();
+		double[] dist = computeDistribution(completeVMlist, vmUtil, hostCpu, threshold, 1);
+		for (int b = dist.length - 2; b >= 0; --b) dist[b] += dist[b + 1];
+		
+		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addWhatIfExecTime(System.nanoTime() - startTime);
+		
+		distributionTail = dist;
+		distributionKey = key;
+		distributionThreshold = threshold;
+		
+		return distributionTail;
+	}
 
-	private int[] filterVms(HostData host, VmMarkovChain[] vmList, int[] vmUtil, double threshold, int filterSize) {
+	private int[] filterVms(HostData host, VmMarkovChain[] vmList, double[][] transitions, int[] vmUtil, double threshold, int filterSize) {
 			
 		int[] vmFilter = new int[vmList.length];
 		double[] vmScore = new double[vmList.length];
@@ -210,7 +711,7 @@ public class HostProbabilitySolver {
 			
 			//iterate through each possible next state
 			for (int s = vmList[i].getCurrentStateIndex(); s < vmList[i].getStates().length; ++s) {
-				predicted += vmList[i].cpu * vmList[i].currentState.workingTransitionProbabilities[s] * vmList[i].getStates()[s].getValue();
+				predicted += vmList[i].getCpu() * transitions[i][s] * vmList[i].getStates()[s].getValue();
 			}
 			
 			vmScore[i] = Math.abs(predicted - vmUtil[i]);
@@ -274,7 +775,7 @@ public class HostProbabilitySolver {
 			throw new RuntimeException("VM Filtering missed VMs...");
 		}
 		
-		if (vmList.length > filterSize) simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).nOverFilter++;
+		if (vmList.length > filterSize) simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addHostOverFilter();
 		
 		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addFilteredVms(vmList.length - count);
 		simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class).addVmsInCalc(count);
@@ -298,7 +799,7 @@ public class HostProbabilitySolver {
 		
 		for (int i = 0; i < states.size(); ++i) {
 			VmMarkovChain vm = completeVmList.get(i);
-			p = p * vm.getCurrentState().getWorkingTransitionProbabilities()[states.get(i)];
+			p = p * vm.getTransitionProbability(states.get(i));
 			
 			if (p == 0) break;
 		}
@@ -311,7 +812,8 @@ public class HostProbabilitySolver {
 		double max;
 		int maxVm;
 		int maxState;
-		HashSet<UtilizationState> statesIncluded = new HashSet<UtilizationState>();
+		HashSet<Integer> statesIncluded = new HashSet<Integer>(); //included states, as (VM position * stride + state)
+		int stride = getMaxStateCount(vmList);
 		int[] vmStates = new int[vmList.length];
 		long combinations = 1;
 		
@@ -324,16 +826,15 @@ public class HostProbabilitySolver {
 			maxState = -1;
 			boolean found = false;
 			for (int i = 0; i < vmList.length; ++i) {
-				UtilizationState[] states = vmList[i].getStates();
-				for (int s = 0; s < states.length; ++s) {
-					if (states[s] != vmList[i].getCurrentState()) {
-						if (vmList[i].getCurrentState().transitionProbabilities[s] > max && 
-								vmList[i].getCurrentState().transitionProbabilities[s] <= p) {
+				for (int s = 0; s < vmList[i].getStateCount(); ++s) {
+					if (s != vmList[i].getCurrentStateIndex()) {
+						if (vmList[i].getTransitionProbability(s) > max && 
+								vmList[i].getTransitionProbability(s) <= p) {
 							
 							//check if not already included
-							if (!statesIncluded.contains(states[s])) {
+							if (!statesIncluded.contains(i * stride + s)) {
 								//update max
-								max = vmList[i].getCurrentState().transitionProbabilities[s];
+								max = vmList[i].getTransitionProbability(s);
 								maxVm = i;
 								maxState = s;
 								
@@ -349,7 +850,7 @@ public class HostProbabilitySolver {
 			if (!found) break;
 			
 			//include new state
-			statesIncluded.add(vmList[maxVm].getStates()[maxState]);
+			statesIncluded.add(maxVm * stride + maxState);
 			++vmStates[maxVm];
 			
 			//update p
@@ -363,12 +864,13 @@ public class HostProbabilitySolver {
 		return p;
 	}
 	
-	private void reduceStates(VmMarkovChain[] vmList) {
+	private void reduceStates(VmMarkovChain[] vmList, double[][] transitions) {
 		double p = 1;
 		double max;
 		int maxVm;
 		int maxState;
-		HashSet<UtilizationState> statesIncluded = new HashSet<UtilizationState>();
+		HashSet<Integer> statesIncluded = new HashSet<Integer>(); //included states, as (VM position * stride + state)
+		int stride = getMaxStateCount(vmList);
 		int[] vmStates = new int[vmList.length];
 		long combinations = 1;
 		
@@ -381,16 +883,15 @@ public class HostProbabilitySolver {
 			maxState = -1;
 			boolean found = false;
 			for (int i = 0; i < vmList.length; ++i) {
-				UtilizationState[] states = vmList[i].getStates();
-				for (int s = 0; s < states.length; ++s) {
-					if (states[s] != vmList[i].getCurrentState()) {
-						if (vmList[i].getCurrentState().transitionProbabilities[s] > max && 
-								vmList[i].getCurrentState().transitionProbabilities[s] <= p) {
+				for (int s = 0; s < vmList[i].getStateCount(); ++s) {
+					if (s != vmList[i].getCurrentStateIndex()) {
+						if (vmList[i].getTransitionProbability(s) > max && 
+								vmList[i].getTransitionProbability(s) <= p) {
 							
 							//check if not already included
-							if (!statesIncluded.contains(states[s])) {
+							if (!statesIncluded.contains(i * stride + s)) {
 								//update max
-								max = vmList[i].getCurrentState().transitionProbabilities[s];
+								max = vmList[i].getTransitionProbability(s);
 								maxVm = i;
 								maxState = s;
 								found = true;
@@ -404,7 +905,7 @@ public class HostProbabilitySolver {
 			if (!found) break;
 
 			//include new state
-			statesIncluded.add(vmList[maxVm].getStates()[maxState]);
+			statesIncluded.add(maxVm * stride + maxState);
 			++vmStates[maxVm];
 			
 			//update p
@@ -420,27 +921,27 @@ public class HostProbabilitySolver {
 		long totalTransitions;
 		for (int i = 0; i < vmList.length; ++i) {
 			vm = vmList[i];
-			vm.resetWorkingTransitions();
+			transitions[i] = vm.getTransitionProbabilities();
 			
 			//first, set all transitions to remove as '0'
-			for (int s = 0; s < vm.getStates().length; ++s) {
-				if(!statesIncluded.contains(vm.getStates()[s]) && vm.getStates()[s] != vm.currentState) {
-					vm.currentState.workingTransitionProbabilities[s] = 0;
+			for (int s = 0; s < transitions[i].length; ++s) {
+				if(!statesIncluded.contains(i * stride + s) && s != vm.getCurrentStateIndex()) {
+					transitions[i][s] = 0;
 				}
 			}
 			
 			//next, recalculate remaining transitions
 			totalTransitions = 0;
-			for (int t = 0; t < vm.currentState.workingTransitionProbabilities.length; ++t) {
-				if (vm.currentState.workingTransitionProbabilities[t] != 0) {
-					totalTransitions += vm.currentState.transitionCounts[t];
+			for (int t = 0; t < transitions[i].length; ++t) {
+				if (transitions[i][t] != 0) {
+					totalTransitions += vm.getTransitionCount(t);
 				}
 			}
 			
 			if (totalTransitions != 0) {
-				for (int t = 0; t < vm.currentState.workingTransitionProbabilities.length; ++t) {
-					if (vm.currentState.workingTransitionProbabilities[t] != 0) {
-						vm.currentState.workingTransitionProbabilities[t] = vm.currentState.transitionCounts[t] / (double)totalTransitions;
+				for (int t = 0; t < transitions[i].length; ++t) {
+					if (transitions[i][t] != 0) {
+						transitions[i][t] = vm.getTransitionCount(t) / (double)totalTransitions;
 					}
 				}
 			}
@@ -452,144 +953,42 @@ public class HostProbabilitySolver {
 	}
 	
 	
+	private static int getMaxStateCount(VmMarkovChain[] vmList) {
+		int max = 0;
+		for (VmMarkovChain vm : vmList) max = Math.max(max, vm.getStateCount());
+		return max;
+	}
+	
 	/**
-	 * Record a calculation for potential future use.
+	 * Record a calculation for potential future use. Only exact calculations should be recorded, as a stored
+	 * value is returned for every later request with the same VM states and CPU use (see isSampled).
+	 * @param host
 	 * @param vmList
 	 * @param overloadP
 	 * @param threshold
 	 */
-	private void recordCalculation(ArrayList<VmMarkovChain> vmList, double overloadP, double threshold) {
-		//repopulate VM list if empty
-		if (previousVms.size() == 0) {			
-			for (VmMarkovChain vm : vmList) previousVms.put(vm.id, vm);
-		}
-		
-		//record threshold
-		previousThreshold = threshold;
-		
-		//add calculation
-		PCalculation c = new PCalculation(vmList, overloadP);
-		pCalculations.put(c.code, c);
+	public void recordCalculation(HostData host, ArrayList<VmMarkovChain> vmList, double overloadP, double threshold) {
+		calculations.record(vmList, getVmUtil(host, vmList), overloadP, threshold, simulation.getSimulationTime());
 	}
 	
 	/**
 	 * Look for a previously calculated result for the current situation
+	 * @param host
 	 * @param vmList
 	 * @param threshold
-	 * @return
+	 * @return the stored overload probability, or -1 if there is no valid stored calculation
 	 */
-	private double getExistingCalculation(ArrayList<VmMarkovChain> vmList, double threshold) {
-		boolean valid = true;
-		double p = -1;
-		
-		/*
-		 * First we need to verify that the previously stored calculations are still valid.
-		 * They are NOT valid if:
-		 *  -the probability threshold has changed;
-		 *  -the host now has a different number of VMs;
-		 *  -or the host has different VMs.
-		 *  
-		 *  If the stored values are found to be invalid, we clear them all and start fresh.
-		 */
-		
-		//verify threshold
-		if (threshold != previousThreshold) valid = false;
+	public double getExistingCalculation(HostData host, ArrayList<VmMarkovChain> vmList, double threshold) {
+		StressProbabilityMetrics metrics = simulation.getSimulationMetrics().getCustomMetricCollection(StressProbabilityMetrics.class);
 		
-		//verify number of VMs
-		if (vmList.size() != previousVms.size()) valid = false;
-		
-		//verify which VMs
-		for (VmMarkovChain vm : vmList) {
-			if (!previousVms.containsKey(vm.id)) valid = false;
-		}
-
-		if (!valid) {
-			//if not valid, clear all
-			pCalculations.clear();
-			previousVms.clear();
+		double p = calculations.get(vmList, getVmUtil(host, vmList), threshold);
+		if (p == -1) {
+			metrics.addCalculationCacheMiss();
 		} else {
-			
-			/*
-			 * The set of stored calculations is potentially valid. We look for this particular state combination,
-			 * using the vm state encoding.
-			 */
-			
-			//if valid, look for existing calculation
-			String code = encodeVmStates(vmList);
-			
-			PCalculation calc = pCalculations.get(code);
-			if (calc != null) {
-				
-				/*
-				 * Finally, we need to verify that none of the current utilization state transition probabilities
-				 * have been updated *after* the calculation. If so, we throw out the calculation.
-				 */
-				
-				//verify its timestamp compared to all vm state timestamps
-				valid = true;
-				for (VmMarkovChain vm : vmList) {
-					if (vm.getCurrentState().getLastProbabilityUpdate() > calc.timestamp) valid = false;
-				}
-				
-				if (!valid) {
-					//if not valid, remove
-					pCalculations.remove(code);
-				} else {
-					//if valid, return value
-					p = calc.overloadP;
-				}
-			}
+			metrics.addCalculationCacheHit();
 		}
 		
 		return p;
 	}
 	
-	/**
-	 * Build a String encoding of the current states of a list of VMs. List is first sorted by
-	 * VM id, and then encoded as a string.
-	 * @param vmList
-	 * @return
-	 */
-	private String encodeVmStates(ArrayList<VmMarkovChain> vmList) {
-		char[] code = new char[vmList.size()];
-		
-		//sort vm list
-		ArrayList<VmMarkovChain> sorted = new ArrayList<VmMarkovChain>();
-		sorted.addAll(vmList);
-		Collections.sort(sorted, new Comparator<VmMarkovChain>() {
-
-			@Override
-			public int compare(VmMarkovChain arg0, VmMarkovChain arg1) {
-				return arg1.id - arg0.id;
-			}
-			
-		});
-		
-		//build string code
-		for (int i = 0; i < sorted.size(); ++i) {
-			code[i] = (char)(sorted.get(i).getCurrentStateIndex() + 97); //48 for numbers, but this allows more states while printable for debugging
-		}
-		
-		return new String(code);
-	}
-	
-	/**
-	 * Represents a previously completed probability calculation
-	 * @author michael
-	 *
-	 */
-	public class PCalculation {
-		long timestamp;
-		String code;
-		double overloadP;
-		
-		public PCalculation(ArrayList<VmMarkovChain> vmList, double overloadP) {
-			this.timestamp = simulation.getSimulationTime();
-			this.code = encodeVmStates(vmList);
-			this.overloadP = overloadP;
-		}
-		
-	}
-	
 }
-
@@ -0,0 +1,94 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import java.util.Arrays;
+
+/**
+ * Settings of the VmMarkovChains kept in a MarkovChainStore. The store is created with a configuration, and
+ * its chains read their settings from it, so that runs with different settings (e.g., in MarkovChainReplay)
+ * do not change any global state. Configurations are immutable.
+ *
+ * Chains start with the default layout. If learnSamples > 0, once a chain has recorded that many samples it
+ * switches to a layout of learnedStates states based on the quantiles of the samples, plus extraBoundaries
+ * (e.g., for finer states near the host threshold), and starts over recording transitions.
+ *
+ * @author michael
+ *
+ */
+public class MarkovChainConfig {
+
+	public static final int DEFAULT_LEARNED_STATES = 5;
+	public static final double DEFAULT_MIN_STATE_WIDTH = 0.02;
+
+	public static final MarkovChainConfig DEFAULT = new MarkovChainConfig(VmMarkovChain.STATE_RANGES);
+
+	private final StateLayout defaultLayout; //layouts are immutable, so they are shared by the chains
+	private final int learnSamples; //if > 0, number of samples from which each chain learns its own state layout
+	private final int learnedStates;
+	private final double[] extraBoundaries; //boundaries added to learned layouts, e.g. {0.85, 0.9, 0.95}
+	private final double minStateWidth; //learned states narrower than this are merged
+
+	/**
+	 * Create a configuration whose chains use the given state ranges, as a list of increasing boundaries from 0 to 1,
+	 * and never learn their own layout.
+	 * @param stateRanges
+	 */
+	public MarkovChainConfig(double[] stateRanges) {
+		this(stateRanges, 0, DEFAULT_LEARNED_STATES, new double[0], DEFAULT_MIN_STATE_WIDTH);
+	}
+
+	/**
+	 * Create a configuration whose chains start with the given state ranges and, if learnSamples > 0, switch to
+	 * a layout learned from their first learnSamples samples.
+	 * @param stateRanges
+	 * @param learnSamples
+	 * @param learnedStates
+	 * @param extraBoundaries
+	 * @param minStateWidth
+	 */
+	public MarkovChainConfig(double[] stateRanges, int learnSamples, int learnedStates, double[] extraBoundaries, double minStateWidth) {
+		defaultLayout = new StateLayout(stateRanges);
+		this.learnSamples = learnSamples;
+		this.learnedStates = learnedStates;
+		this.extraBoundaries = Arrays.copyOf(extraBoundaries, extraBoundaries.length);
+		this.minStateWidth = minStateWidth;
+	}
+
+	public StateLayout getDefaultLayout() {
+		return defaultLayout;
+	}
+
+	public int getLearnSamples() {
+		return learnSamples;
+	}
+
+	public int getLearnedStates() {
+		return learnedStates;
+	}
+
+	public double[] getExtraBoundaries() {
+		return Arrays.copyOf(extraBoundaries, extraBoundaries.length);
+	}
+
+	public double getMinStateWidth() {
+		return minStateWidth;
+	}
+
+	/**
+	 * Learn a layout from the given samples, with this configuration's learning settings.
+	 * @param samples
+	 * @return
+	 */
+	public StateLayout learnLayout(double[] samples) {
+		return StateLayout.quantiles(samples, learnedStates, extraBoundaries, minStateWidth);
+	}
+
+	/**
+	 * Get the highest number of states a chain may have with this configuration.
+	 * @return
+	 */
+	public int getMaxStates() {
+		if (learnSamples > 0) return Math.max(defaultLayout.size(), learnedStates + extraBoundaries.length);
+		return defaultLayout.size();
+	}
+
+}
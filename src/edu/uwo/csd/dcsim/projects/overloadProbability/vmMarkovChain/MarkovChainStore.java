@@ -0,0 +1,379 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for the Markov chains of many VMs. Each VM gets a slot, and the data of all
+ * slots is kept in a few contiguous arrays (rather than a set of objects and arrays per VM), so that each
+ * VM's transition matrix is a contiguous block of values, one row per state. Chains may have different
+ * numbers of states, up to the maximum the store is created with; rows and matrices are laid out for the
+ * maximum number of states.
+ *
+ * Slots are looked up by VM ID through an open addressing map, and are recycled when VMs are removed.
+ *
+ * Transition counts are accumulated as they are recorded, while the transition probabilities used for
+ * calculations are only updated when a row is published (see VmMarkovChain subclasses).
+ *
+ * @author michael
+ *
+ */
+public class MarkovChainStore {
+
+	private static final int EMPTY = -1;
+
+	private final MarkovChainConfig config;
+	private final int N; //maximum number of states, fixed when the store is created
+	private final int MATRIX;
+
+	//per slot data
+	private int[] vmIds;
+	private int[] stateCounts;
+	private long[] cpu;
+	private int[] currentStates;
+	private long[] transitionCounts; //total number of recorded transitions
+	private long[] version; //incremented every time a row is published
+	private long[] lastSeen;
+
+	//per slot and state data, indexed by [slot * N + state]
+	private long[] rowTotals; //recorded transitions out of the state
+	private long[] lastProbabilityUpdate;
+
+	//per slot and transition data, indexed by [slot * MATRIX + from * N + to]
+	private long[] counts; //recorded transitions
+	private double[] probabilities; //published transition probabilities
+
+	private int nSlots = 0; //slots ever used
+	private int[] freeSlots; //stack of removed slots, available for reuse
+	private int nFree = 0;
+
+	//VM ID -> slot map, linear probing
+	private int[] mapKeys;
+	private int[] mapSlots;
+	private int mapSize = 0;
+
+	public MarkovChainStore() {
+		this(16);
+	}
+
+	public MarkovChainStore(int capacity) {
+		this(capacity, MarkovChainConfig.DEFAULT);
+	}
+
+	public MarkovChainStore(MarkovChainConfig config) {
+		this(16, config);
+	}
+
+	public MarkovChainStore(int capacity, MarkovChainConfig config) {
+		capacity = Math.max(1, capacity);
+		this.config = config;
+		N = config.getMaxStates();
+		MATRIX = N * N;
+
+		vmIds = new int[capacity];
+		stateCounts = new int[capacity];
+		cpu = new long[capacity];
+		currentStates = new int[capacity];
+		transitionCounts = new long[capacity];
+		version = new long[capacity];
+		lastSeen = new long[capacity];
+		rowTotals = new long[capacity * N];
+		lastProbabilityUpdate = new long[capacity * N];
+		counts = new long[capacity * MATRIX];
+		probabilities = new double[capacity * MATRIX];
+		freeSlots = new int[capacity];
+
+		int mapCapacity = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		mapKeys = new int[mapCapacity];
+		mapSlots = new int[mapCapacity];
+		Arrays.fill(mapKeys, EMPTY);
+	}
+
+	/**
+	 * Get the slot holding the given VM's chain.
+	 * @param vmId
+	 * @return the slot, or -1 if the VM has no chain
+	 */
+	public int getSlot(int vmId) {
+		int i = findIndex(vmId);
+		return (mapKeys[i] == EMPTY) ? -1 : mapSlots[i];
+	}
+
+	/**
+	 * Add a chain for the given VM, starting at the given state with every state transitioning to itself.
+	 * @param vmId
+	 * @param vmCpu
+	 * @param nStates
+	 * @param state
+	 * @return the slot assigned to the VM
+	 */
+	public int add(int vmId, long vmCpu, int nStates, int state) {
+		if (getSlot(vmId) != -1) throw new IllegalStateException("VM #" + vmId + " already has a chain");
+		if (nStates > N) throw new IllegalArgumentException("Store holds chains of up to " + N + " states, not " + nStates);
+
+		int slot;
+		if (nFree > 0) {
+			slot = freeSlots[--nFree];
+		} else {
+			if (nSlots == vmIds.length) grow();
+			slot = nSlots++;
+		}
+
+		vmIds[slot] = vmId;
+		cpu[slot] = vmCpu;
+		version[slot] = 0;
+		lastSeen[slot] = 0;
+		reset(slot, nStates, state, 0);
+
+		//add to map, growing it at half occupancy
+		if ((mapSize + 1) * 2 > mapKeys.length) rehash(mapKeys.length * 2);
+		int i = findIndex(vmId);
+		mapKeys[i] = vmId;
+		mapSlots[i] = slot;
+		++mapSize;
+
+		return slot;
+	}
+
+	/**
+	 * Discard the transitions recorded in a slot, changing its number of states. The chain starts over at the given
+	 * state, with every state transitioning to itself.
+	 * @param slot
+	 * @param nStates
+	 * @param state
+	 * @param time the time recorded as the last probability update of every state
+	 */
+	public void reset(int slot, int nStates, int state, long time) {
+		if (nStates > N) throw new IllegalArgumentException("Store holds chains of up to " + N + " states, not " + nStates);
+
+		stateCounts[slot] = nStates;
+		currentStates[slot] = state;
+		transitionCounts[slot] = 0;
+		++version[slot];
+		Arrays.fill(rowTotals, slot * N, slot * N + N, 0);
+		Arrays.fill(lastProbabilityUpdate, slot * N, slot * N + N, time);
+		Arrays.fill(counts, slot * MATRIX, slot * MATRIX + MATRIX, 0);
+		Arrays.fill(probabilities, slot * MATRIX, slot * MATRIX + MATRIX, 0);
+
+		//initialize the transition probability of remaining in the same state to '1'
+		for (int s = 0; s < nStates; ++s) probabilities[slot * MATRIX + s * N + s] = 1;
+	}
+
+	/**
+	 * Remove the given VM's chain, making its slot available for reuse.
+	 * @param vmId
+	 * @return true if the VM had a chain
+	 */
+	public boolean remove(int vmId) {
+		int i = findIndex(vmId);
+		if (mapKeys[i] == EMPTY) return false;
+
+		freeSlots[nFree++] = mapSlots[i];
+
+		//delete by shifting back the following entries of the probe sequence, so that no tombstones are needed
+		int mask = mapKeys.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (mapKeys[j] == EMPTY) break;
+
+			int home = hash(mapKeys[j]) & mask;
+			//move entry j into the hole at i if its home position is not in (i, j]
+			if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+				mapKeys[i] = mapKeys[j];
+				mapSlots[i] = mapSlots[j];
+				i = j;
+			}
+		}
+		mapKeys[i] = EMPTY;
+		--mapSize;
+
+		return true;
+	}
+
+	/**
+	 * Get the configuration of the store's chains.
+	 * @return
+	 */
+	public MarkovChainConfig getConfig() {
+		return config;
+	}
+
+	public int getMaxStateCount() {
+		return N;
+	}
+
+	public int getStateCount(int slot) {
+		return stateCounts[slot];
+	}
+
+	/**
+	 * Get the number of VMs with a chain.
+	 * @return
+	 */
+	public int size() {
+		return mapSize;
+	}
+
+	/**
+	 * Get the number of slots in use or available for reuse; slots are numbered from 0 to getSlotCount() - 1.
+	 * @return
+	 */
+	public int getSlotCount() {
+		return nSlots;
+	}
+
+	public boolean isUsed(int slot) {
+		return getSlot(vmIds[slot]) == slot;
+	}
+
+	/**
+	 * Record a transition, updating the transition counts (but not the published probabilities).
+	 * @param slot
+	 * @param from
+	 * @param to
+	 */
+	public void recordTransition(int slot, int from, int to) {
+		++counts[slot * MATRIX + from * N + to];
+		++rowTotals[slot * N + from];
+		++transitionCounts[slot];
+	}
+
+	/**
+	 * Get the transition probability calculated from the recorded counts, which may not be published yet.
+	 * @param slot
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public double getCountedTransitionProbability(int slot, int from, int to) {
+		long total = rowTotals[slot * N + from];
+		if (total == 0) return 0;
+		return counts[slot * MATRIX + from * N + to] / (double)total;
+	}
+
+	/**
+	 * Publish the transition probabilities of a state, calculated from the recorded counts.
+	 * @param slot
+	 * @param from
+	 */
+	public void publishTransitionProbabilities(int slot, int from) {
+		int row = slot * MATRIX + from * N;
+		for (int to = 0; to < stateCounts[slot]; ++to) {
+			probabilities[row + to] = getCountedTransitionProbability(slot, from, to);
+		}
+		++version[slot];
+	}
+
+	public double getTransitionProbability(int slot, int from, int to) {
+		return probabilities[slot * MATRIX + from * N + to];
+	}
+
+	public long getTransitionCount(int slot, int from, int to) {
+		return counts[slot * MATRIX + from * N + to];
+	}
+
+	/**
+	 * Get the array holding the published transition probabilities of all slots. The row of a state starts at
+	 * getRowOffset(slot, state).
+	 * @return
+	 */
+	public double[] getTransitionProbabilities() {
+		return probabilities;
+	}
+
+	public int getRowOffset(int slot, int state) {
+		return slot * MATRIX + state * N;
+	}
+
+	public int getVmId(int slot) {
+		return vmIds[slot];
+	}
+
+	public long getCpu(int slot) {
+		return cpu[slot];
+	}
+
+	public int getCurrentState(int slot) {
+		return currentStates[slot];
+	}
+
+	public void setCurrentState(int slot, int state) {
+		currentStates[slot] = state;
+	}
+
+	public long getTransitionCount(int slot) {
+		return transitionCounts[slot];
+	}
+
+	public long getVersion(int slot) {
+		return version[slot];
+	}
+
+	public long getLastProbabilityUpdate(int slot, int state) {
+		return lastProbabilityUpdate[slot * N + state];
+	}
+
+	public void setLastProbabilityUpdate(int slot, int state, long time) {
+		lastProbabilityUpdate[slot * N + state] = time;
+	}
+
+	public long getLastSeen(int slot) {
+		return lastSeen[slot];
+	}
+
+	public void setLastSeen(int slot, long time) {
+		lastSeen[slot] = time;
+	}
+
+	private void grow() {
+		int capacity = vmIds.length * 2;
+
+		vmIds = Arrays.copyOf(vmIds, capacity);
+		stateCounts = Arrays.copyOf(stateCounts, capacity);
+		cpu = Arrays.copyOf(cpu, capacity);
+		currentStates = Arrays.copyOf(currentStates, capacity);
+		transitionCounts = Arrays.copyOf(transitionCounts, capacity);
+		version = Arrays.copyOf(version, capacity);
+		lastSeen = Arrays.copyOf(lastSeen, capacity);
+		rowTotals = Arrays.copyOf(rowTotals, capacity * N);
+		lastProbabilityUpdate = Arrays.copyOf(lastProbabilityUpdate, capacity * N);
+		counts = Arrays.copyOf(counts, capacity * MATRIX);
+		probabilities = Arrays.copyOf(probabilities, capacity * MATRIX);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+
+	private void rehash(int mapCapacity) {
+		int[] keys = mapKeys;
+		int[] slots = mapSlots;
+
+		mapKeys = new int[mapCapacity];
+		mapSlots = new int[mapCapacity];
+		Arrays.fill(mapKeys, EMPTY);
+
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] != EMPTY) {
+				int j = findIndex(keys[i]);
+				mapKeys[j] = keys[i];
+				mapSlots[j] = slots[i];
+			}
+		}
+	}
+
+	/**
+	 * Find the map position holding the given VM ID, or the empty position where it would be stored.
+	 * @param vmId
+	 * @return
+	 */
+	private int findIndex(int vmId) {
+		int mask = mapKeys.length - 1;
+		int i = hash(vmId) & mask;
+		while (mapKeys[i] != EMPTY && mapKeys[i] != vmId) i = (i + 1) & mask;
+		return i;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
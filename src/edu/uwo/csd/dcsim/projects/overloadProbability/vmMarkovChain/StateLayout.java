@@ -0,0 +1,122 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import java.util.Arrays;
+
+import edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain.VmMarkovChain.UtilizationState;
+
+/**
+ * The utilization states of a VmMarkovChain, defined by a list of increasing boundaries from 0 to 1. Chains
+ * may have different layouts (see MarkovChainConfig).
+ *
+ * States are found through a lookup table on quantized utilization: each of the LOOKUP_SIZE quanta holds the
+ * first state overlapping it, so finding a state takes a table access and, when a boundary falls inside the
+ * quantum, a short scan.
+ *
+ * @author michael
+ *
+ */
+public class StateLayout {
+
+	public static final int LOOKUP_SIZE = 1024;
+
+	private final double[] ranges;
+	private final UtilizationState[] states;
+	private final int[] lookup;
+
+	public StateLayout(double[] ranges) {
+		if (ranges.length < 2 || ranges[0] != 0 || ranges[ranges.length - 1] < 1) throw new IllegalArgumentException("State ranges must go from 0 to 1");
+		for (int i = 1; i < ranges.length; ++i) {
+			if (ranges[i] <= ranges[i - 1]) throw new IllegalArgumentException("State ranges must be increasing");
+		}
+
+		this.ranges = ranges.clone();
+
+		states = new UtilizationState[ranges.length - 1];
+		for (int i = 0; i < states.length; ++i) {
+			states[i] = new UtilizationState(i, ranges[i], ranges[i + 1]);
+		}
+
+		//lookup[q] = first state whose upper bound is >= the lowest utilization of quantum q
+		lookup = new int[LOOKUP_SIZE + 1];
+		int s = 0;
+		for (int q = 0; q <= LOOKUP_SIZE; ++q) {
+			double util = q / (double)LOOKUP_SIZE;
+			while (s < states.length - 1 && util > ranges[s + 1]) ++s;
+			lookup[q] = s;
+		}
+	}
+
+	/**
+	 * Create a layout of n states of equal size.
+	 * @param n
+	 * @return
+	 */
+	public static StateLayout uniform(int n) {
+		double[] ranges = new double[n + 1];
+		for (int i = 0; i <= n; ++i) ranges[i] = i / (double)n;
+		ranges[n] = 1;
+		return new StateLayout(ranges);
+	}
+
+	/**
+	 * Create a layout of (up to) n states, each covering about the same number of the given utilization samples,
+	 * plus the given extra boundaries (e.g., to get finer states near the host utilization threshold). States
+	 * narrower than minWidth are merged.
+	 * @param samples
+	 * @param n
+	 * @param extraBoundaries
+	 * @param minWidth
+	 * @return
+	 */
+	public static StateLayout quantiles(double[] samples, int n, double[] extraBoundaries, double minWidth) {
+		double[] sorted = samples.clone();
+		Arrays.sort(sorted);
+
+		double[] boundaries = new double[n - 1 + extraBoundaries.length];
+		for (int i = 1; i < n; ++i) {
+			boundaries[i - 1] = (sorted.length == 0) ? i / (double)n : sorted[(int)((long)i * (sorted.length - 1) / n)];
+		}
+		System.arraycopy(extraBoundaries, 0, boundaries, n - 1, extraBoundaries.length);
+		Arrays.sort(boundaries);
+
+		//build ranges, dropping boundaries too close to the previous one (or to 1)
+		double[] ranges = new double[boundaries.length + 2];
+		int count = 1; //ranges[0] = 0
+		for (double b : boundaries) {
+			if (b - ranges[count - 1] >= minWidth && 1 - b >= minWidth) ranges[count++] = b;
+		}
+		ranges[count++] = 1;
+
+		return new StateLayout(Arrays.copyOf(ranges, count));
+	}
+
+	/**
+	 * Find the state containing the given utilization.
+	 * @param util
+	 * @return
+	 */
+	public int findState(double util) {
+		if (util > ranges[ranges.length - 1]) throw new RuntimeException("Utilization State not found! util=" + util);
+
+		int q = (int)(util * LOOKUP_SIZE);
+		if (q < 0) q = 0;
+		if (q > LOOKUP_SIZE) q = LOOKUP_SIZE;
+
+		int s = lookup[q];
+		while (s < states.length - 1 && util > ranges[s + 1]) ++s;
+		return s;
+	}
+
+	public int size() {
+		return states.length;
+	}
+
+	public UtilizationState[] getStates() {
+		return states;
+	}
+
+	public double[] getRanges() {
+		return ranges.clone();
+	}
+
+}
@@ -1,8 +1,18 @@
 package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
 
+import java.util.ArrayList;
+
 import edu.uwo.csd.dcsim.core.Simulation;
 import edu.uwo.csd.dcsim.management.VmStatus;
 
+/**
+ * A VM's utilization Markov chain. The chain's data is held in a slot of a MarkovChainStore, which may be
+ * shared by the chains of many VMs; this object only refers to it.
+ *
+ * Chains start with the default state layout of their store's configuration, and may learn their own layout
+ * from their first samples (see MarkovChainConfig).
+ *
+ */
 public abstract class VmMarkovChain implements Comparable<VmMarkovChain> {
 
 //	public static final double[] STATE_RANGES = {0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
@@ -10,78 +20,226 @@ public abstract class VmMarkovChain implements Comparable<VmMarkovChain> {
 	public static final int N_STATES = STATE_RANGES.length - 1;
 	
 	protected Simulation simulation;
+	protected long time = 0; //time of the last recorded state
+	
+	protected MarkovChainStore store;
+	protected int slot;
+	protected StateLayout layout;
+	
+	private double[] learningSamples = null;
+	private int nLearningSamples = 0;
 	
-	protected int id;
-	protected UtilizationState[] states = new UtilizationState[N_STATES];
-	protected UtilizationState currentState = null;
-	protected long cpu;
-	protected long globalTransitionCount = 0;
+	private ArrayList<double[][]> transitionPowers = new ArrayList<double[][]>(); //cached powers of the transition matrix, P^(index + 1)
+	private long transitionPowersVersion = 0; //store version the cached powers were computed with
 	
 	public static long nUpdates = 0; //TODO remove
 	
+	/**
+	 * Create a chain with its own store. Used for VMs that are not tracked by a VmMarkovChainManager.
+	 * @param vmStatus
+	 * @param simulation
+	 */
 	public VmMarkovChain(VmStatus vmStatus, Simulation simulation) {
-		this.simulation = simulation;
+		this(vmStatus, simulation, new MarkovChainStore(1));
+	}
+	
+	public VmMarkovChain(VmStatus vmStatus, Simulation simulation, MarkovChainStore store) {
+		//cpu = vmStatus.getCoreCapacity() * vmStatus.getCores(); //TODO should this be host core capacity?
+		this(vmStatus.getId(), vmStatus.getHostCoreCapacity() * vmStatus.getCores(), calculateUtilization(vmStatus), store);
 		
-		//initialize states
-		states = createUtilizationStates();
-		for (UtilizationState state : states) state.initialize();
+		this.simulation = simulation;
+		time = simulation.getSimulationTime();
+	}
 		
-		//set current state
-		currentState = states[findState(getUtilization(vmStatus))];
+	/**
+	 * Create a chain outside of a simulation (e.g., to replay a trace), starting at the given utilization.
+	 * @param id
+	 * @param cpu
+	 * @param utilization
+	 * @param store
+	 */
+	public VmMarkovChain(int id, long cpu, double utilization, MarkovChainStore store) {
+		this.store = store;
+		layout = store.getConfig().getDefaultLayout();
+		slot = store.add(id, cpu, layout.size(), findState(utilization));
 		
-		id = vmStatus.getId();
-		//cpu = vmStatus.getCoreCapacity() * vmStatus.getCores(); //TODO should this be host core capacity?
-		cpu = vmStatus.getHostCoreCapacity() * vmStatus.getCores();
+		if (store.getConfig().getLearnSamples() > 0) {
+			learningSamples = new double[store.getConfig().getLearnSamples()];
+			learningSamples[nLearningSamples++] = utilization;
+		}
 	}
-	
+		
 	public void recordState(VmStatus vmStatus) {
-		UtilizationState nextState = states[findState(getUtilization(vmStatus))];
+		recordUtilization(getUtilization(vmStatus), simulation.getSimulationTime());
+	}
+		
+	/**
+	 * Record the VM's utilization at the given time, transitioning to the matching state.
+	 * @param utilization
+	 * @param time
+	 */
+	public void recordUtilization(double utilization, long time) {
+		this.time = time;
+		
+		if (learningSamples != null) {
+			learningSamples[nLearningSamples++] = utilization;
+			
+			//switch to a layout learned from the samples, and start over
+			if (nLearningSamples == learningSamples.length) {
+				layout = store.getConfig().learnLayout(learningSamples);
+				learningSamples = null;
+				store.reset(slot, layout.size(), findState(utilization), time);
+				return;
+			}
+		}
 		
-		updateTransitionP(currentState, nextState);
+		int nextState = findState(utilization);
 		
-		currentState = nextState;
+		updateTransitionP(getCurrentStateIndex(), nextState);
+		
+		store.setCurrentState(slot, nextState);
 	}
 	
 	public int getCurrentStateIndex() {
-		return findStateIndex(currentState);
+		return store.getCurrentState(slot);
 	}
 	
 	protected double getUtilization(VmStatus vm) {
+		return calculateUtilization(vm);
+	}
+	
+	private static double calculateUtilization(VmStatus vm) {
 		return vm.getResourcesInUse().getCpu() / (double)(vm.getHostCoreCapacity() * vm.getCores());
 	}
 	
 	protected int findState(double util) {
-		for (int i = 0; i < states.length; ++i) {
-			if (util <= states[i].rangeUpper) return i;
-		}
-		throw new RuntimeException("Utilization State not found! util=" + util);
+		return layout.findState(util);
 	}
 	
 	protected int findStateIndex(UtilizationState state) {
-		for (int i = 0; i < states.length; ++i) {
-			if (states[i] == state) return i;
+		return state.index;
+	}
+	
+	/**
+	 * Get the probabilities of transitioning from the current state to each state in the given number of
+	 * steps, i.e., the current state's row of P^steps. Powers of the transition matrix are cached, and
+	 * only recomputed after the transition probabilities are updated.
+	 * @param steps
+	 * @return
+	 */
+	public double[] getTransitionProbabilities(int steps) {
+		//discard cached powers if the transition probabilities have been updated since they were computed
+		if (transitionPowersVersion != store.getVersion(slot)) {
+			transitionPowers.clear();
+			transitionPowersVersion = store.getVersion(slot);
+		}
+		
+		double[] p = store.getTransitionProbabilities();
+		int n = layout.size();
+		
+		//compute missing powers, P^k = P^(k-1) * P
+		while (transitionPowers.size() < steps) {
+			double[][] power = new double[n][n];
+			
+			if (transitionPowers.isEmpty()) {
+				for (int i = 0; i < n; ++i) {
+					System.arraycopy(p, store.getRowOffset(slot, i), power[i], 0, n);
+				}
+			} else {
+				double[][] previous = transitionPowers.get(transitionPowers.size() - 1);
+				for (int i = 0; i < n; ++i) {
+					for (int m = 0; m < n; ++m) {
+						if (previous[i][m] == 0) continue;
+						int row = store.getRowOffset(slot, m);
+						for (int j = 0; j < n; ++j) {
+							power[i][j] += previous[i][m] * p[row + j];
+						}
+					}
+				}
+			}
+			
+			transitionPowers.add(power);
 		}
-		return -1;
+		
+		return transitionPowers.get(steps - 1)[getCurrentStateIndex()];
+	}
+	
+	/**
+	 * Get the published probability of transitioning from the current state to the given state.
+	 * @param toState
+	 * @return
+	 */
+	public double getTransitionProbability(int toState) {
+		return store.getTransitionProbability(slot, getCurrentStateIndex(), toState);
+	}
+	
+	/**
+	 * Get a copy of the published probabilities of transitioning from the current state to each state.
+	 * @return
+	 */
+	public double[] getTransitionProbabilities() {
+		double[] row = new double[layout.size()];
+		System.arraycopy(store.getTransitionProbabilities(), store.getRowOffset(slot, getCurrentStateIndex()), row, 0, row.length);
+		return row;
+	}
+	
+	/**
+	 * Get the number of recorded transitions from the current state to the given state.
+	 * @param toState
+	 * @return
+	 */
+	public long getTransitionCount(int toState) {
+		return store.getTransitionCount(slot, getCurrentStateIndex(), toState);
+	}
+	
+	/**
+	 * Get the time at which the transition probabilities of the current state were last updated.
+	 * @return
+	 */
+	public long getLastProbabilityUpdate() {
+		return store.getLastProbabilityUpdate(slot, getCurrentStateIndex());
 	}
 	
 	public UtilizationState getCurrentState() {
-		return currentState;
+		return layout.getStates()[getCurrentStateIndex()];
 	}
 	
 	public UtilizationState[] getStates() {
-		return states;
+		return layout.getStates();
+	}
+	
+	public int getStateCount() {
+		return layout.size();
+	}
+	
+	public StateLayout getLayout() {
+		return layout;
 	}
 	
 	public long getCpu() {
-		return cpu;
+		return store.getCpu(slot);
 	}
 	
 	public int getId() {
-		return id;
+		return store.getVmId(slot);
+	}
+	
+	public int getSlot() {
+		return slot;
+	}
+	
+	/**
+	 * Get the version of the chain's published transition probabilities, which changes whenever they are updated.
+	 * @return
+	 */
+	public long getVersion() {
+		return store.getVersion(slot);
 	}
 	
 	public void printTransitionMatrix() {
-		System.out.println("Based on " + globalTransitionCount + " transitions");
+		UtilizationState[] states = layout.getStates();
+		
+		System.out.println("Based on " + store.getTransitionCount(slot) + " transitions");
 		System.out.printf("             ");
 		for (int i = 0; i < states.length; ++i) {
 			System.out.printf("[%.1f--%.1f] ", states[i].rangeLower, states[i].rangeUpper);
@@ -89,40 +247,24 @@ public abstract class VmMarkovChain implements Comparable<VmMarkovChain> {
 		System.out.println("");
 		
 		for (int i = 0; i < states.length; ++i) {
-			if (findStateIndex(currentState) == i) {
+			if (getCurrentStateIndex() == i) {
 				System.out.printf("[%.1f--%.1f]*->", states[i].rangeLower, states[i].rangeUpper);
 			} else {
 				System.out.printf("[%.1f--%.1f] ->", states[i].rangeLower, states[i].rangeUpper);
 			}
-			for (int j = 0; j < states[i].transitionProbabilities.length; ++j) {
-				System.out.printf("   %-8.3f", states[i].transitionProbabilities[j]);
+			for (int j = 0; j < states.length; ++j) {
+				System.out.printf("   %-8.3f", store.getTransitionProbability(slot, i, j));
 			}
 			System.out.println("");
 			System.out.println("nUpdates=" + nUpdates + "\n");
 		}
 	}
 	
-	public UtilizationState[] createUtilizationStates() {
-		UtilizationState[] states = new UtilizationState[N_STATES];
-		
-		for (int i = 0; i < STATE_RANGES.length - 1; ++i) {
-			states[i] = new UtilizationState(STATE_RANGES[i], STATE_RANGES[i + 1]);
-		}
-		
-		return states;
-	}
-	
-	public void resetWorkingTransitions() {
-		for (UtilizationState state : states) {
-			state.resetWorkingTransitions();
-		}
-	}
-	
 	public int getPotentialIncrease() {
 		int val = 0;
 		
-		for (int i = getCurrentStateIndex() + 1; i < states.length; ++i) {
-			val += currentState.transitionProbabilities[i] * states[i].getValue() * cpu;
+		for (int i = getCurrentStateIndex() + 1; i < layout.size(); ++i) {
+			val += getTransitionProbability(i) * layout.getStates()[i].getValue() * getCpu();
 		}
 		
 		return val;
@@ -133,46 +275,30 @@ public abstract class VmMarkovChain implements Comparable<VmMarkovChain> {
 		return getPotentialIncrease() - o.getPotentialIncrease();
 	}
 	
-	protected abstract void updateTransitionP(UtilizationState currentState, UtilizationState toState);
+	/**
+	 * Publish the transition probabilities of a state, calculated from the transitions recorded so far.
+	 * @param state
+	 */
+	protected void updateTransitionProbabilities(int state) {
+		store.publishTransitionProbabilities(slot, state);
+		nUpdates++;
+	}
+	
+	protected abstract void updateTransitionP(int currentState, int toState);
 	
-	public class UtilizationState {
+	public static class UtilizationState {
+		protected int index;
 		protected double rangeLower;
 		protected double rangeUpper;
 
-		protected double[] workingTransitionProbabilities = new double[N_STATES];
-		
-		protected double[] transitionProbabilities = new double[N_STATES];
-		protected long totalTransitions = 0;
-		protected long[] transitionCounts = new long[N_STATES];
-		
-		protected double[] newTransitionProbabilities = new double[N_STATES];
-		protected long newTotalTransitions = 0;
-		protected long[] newTransitionCounts = new long[N_STATES];
-		
-		protected long lastProbabilityUpdate = 0;
-		
-		
-			
-		protected UtilizationState(double rangeLower, double rangeUpper) {
+		protected UtilizationState(int index, double rangeLower, double rangeUpper) {
+			this.index = index;
 			this.rangeLower = rangeLower;
 			this.rangeUpper = rangeUpper;
-			
-			for (int i = 0; i < transitionProbabilities.length; ++i) transitionProbabilities[i] = 0;
-		}
-		
-		/**
-		 * Initialize the transition probability of remaining in the same state to '1'
-		 */
-		public void initialize() {
-			transitionProbabilities[findStateIndex(this)] = 1;
 		}
 		
-		protected void updateTransitionProbabilities(){
-			transitionProbabilities = newTransitionProbabilities;
-			totalTransitions = newTotalTransitions;
-			transitionCounts = newTransitionCounts;
-			
-			nUpdates++;
+		public int getIndex() {
+			return index;
 		}
 		
 		public double getRangeUpper() {
@@ -188,25 +314,6 @@ public abstract class VmMarkovChain implements Comparable<VmMarkovChain> {
 			return (rangeUpper + rangeLower) / 2;
 		}
 		
-		public double[] getWorkingTransitionProbabilities() {
-			return workingTransitionProbabilities;
-		}
-		
-		public void resetWorkingTransitions() {
-			for (int i = 0; i < transitionProbabilities.length; ++i) {
-				workingTransitionProbabilities[i] = transitionProbabilities[i];
-			}
-		}
-		
-		public double[] getTransitionProbabilities() {
-			return transitionProbabilities;
-		}
-		
-		public long getLastProbabilityUpdate() {
-			return lastProbabilityUpdate;
-		}
-				
 	}
 	
 }
-
@@ -11,22 +11,23 @@ public class VmMarkovChainOriginal extends VmMarkovChain {
 		super(vmStatus, simulation);
 	}
 
-	protected void updateTransitionP(UtilizationState currentState, UtilizationState toState) {
+	public VmMarkovChainOriginal(VmStatus vmStatus, Simulation simulation, MarkovChainStore store) {
+		super(vmStatus, simulation, store);
+	}
+	
+	public VmMarkovChainOriginal(int id, long cpu, double utilization, MarkovChainStore store) {
+		super(id, cpu, utilization, store);
+	}
+	
+	protected void updateTransitionP(int currentState, int toState) {
 		//update count values
-		++currentState.newTransitionCounts[findStateIndex(toState)];
-		++currentState.newTotalTransitions;
-		++globalTransitionCount;
-
-		//calculate new transition matrix
-		for (int i = 0; i < currentState.newTransitionProbabilities.length; ++i) {
-			currentState.newTransitionProbabilities[i] = currentState.newTransitionCounts[i] / (double) currentState.newTotalTransitions;
-		}
+		store.recordTransition(slot, currentState, toState);
 		
 		//immediately update
-		if (globalTransitionCount > INIT_TRANSITIONS) currentState.updateTransitionProbabilities();
+		if (store.getTransitionCount(slot) > INIT_TRANSITIONS) updateTransitionProbabilities(currentState);
 		
 		//update timestamp
-		currentState.lastProbabilityUpdate = simulation.getSimulationTime();
+		store.setLastProbabilityUpdate(slot, currentState, time);
 	}
 	
 }
@@ -12,32 +12,33 @@ public class VmMarkovChainUpdateOnChange extends VmMarkovChain {
 		super(vmStatus, simulation);
 	}
 
-	protected void updateTransitionP(UtilizationState currentState, UtilizationState toState) {
+	public VmMarkovChainUpdateOnChange(VmStatus vmStatus, Simulation simulation, MarkovChainStore store) {
+		super(vmStatus, simulation, store);
+	}
+	
+	public VmMarkovChainUpdateOnChange(int id, long cpu, double utilization, MarkovChainStore store) {
+		super(id, cpu, utilization, store);
+	}
+	
+	protected void updateTransitionP(int currentState, int toState) {
 		//update count values
-		++currentState.newTransitionCounts[findStateIndex(toState)];
-		++currentState.newTotalTransitions;
-		++globalTransitionCount;
-		
-		//calculate new transition matrix
-		for (int i = 0; i < currentState.newTransitionProbabilities.length; ++i) {
-			currentState.newTransitionProbabilities[i] = currentState.newTransitionCounts[i] / (double) currentState.newTotalTransitions;
-		}
+		store.recordTransition(slot, currentState, toState);
 
 		//don't allow live calculated transition probabilities until after a minimum number of recorded transitions 
-		if (globalTransitionCount > INIT_TRANSITIONS) {
+		if (store.getTransitionCount(slot) > INIT_TRANSITIONS) {
 			boolean changed = false;
 			//check to see if any transition probabilities have changed significantly
-			for (int i = 0; i < currentState.newTransitionProbabilities.length; ++i) {
-				double diff = Math.abs(currentState.newTransitionProbabilities[i] - currentState.transitionProbabilities[i]);  
+			for (int i = 0; i < layout.size(); ++i) {
+				double diff = Math.abs(store.getCountedTransitionProbability(slot, currentState, i) - store.getTransitionProbability(slot, currentState, i));
 				if (diff >= CHANGE_T) changed = true;
 			}
 			
 			//if changed, update for all UtilizationStates
 			if (changed) {
-				currentState.updateTransitionProbabilities();
+				updateTransitionProbabilities(currentState);
 				
 				//update timestamp
-				currentState.lastProbabilityUpdate = simulation.getSimulationTime();
+				store.setLastProbabilityUpdate(slot, currentState, time);
 			}
 		}
 	}
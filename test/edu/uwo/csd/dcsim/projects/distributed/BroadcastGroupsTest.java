@@ -0,0 +1,93 @@
+package edu.uwo.csd.dcsim.projects.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests of the hierarchy of broadcast groups that unanswered requests are escalated through (see 
+ * BroadcastGroups).
+ *
+ */
+public class BroadcastGroupsTest {
+
+	@Test
+	public void testGroupsPerLevel() {
+		BroadcastGroups groups = new BroadcastGroups(new int[] {4, 16});
+		assertEquals(3, groups.getLevelCount());
+		
+		//level 0: groups of 4 hosts
+		assertSame(groups.getGroup(0, 0), groups.getGroup(3, 0));
+		assertNotSame(groups.getGroup(3, 0), groups.getGroup(4, 0));
+		assertEquals(1, groups.getGroupIndex(7, 0));
+		
+		//level 1: groups of 16 hosts
+		assertSame(groups.getGroup(0, 1), groups.getGroup(15, 1));
+		assertNotSame(groups.getGroup(15, 1), groups.getGroup(16, 1));
+		assertEquals(2, groups.getGroupIndex(40, 1));
+		
+		//top level (and above): every host
+		assertSame(groups.getTopGroup(), groups.getGroup(0, 2));
+		assertSame(groups.getTopGroup(), groups.getGroup(1000, 2));
+		assertSame(groups.getTopGroup(), groups.getGroup(1000, 5));
+		assertEquals(0, groups.getGroupIndex(1000, 2));
+	}
+	
+	/**
+	 * Escalating a request from a host's group to the next level must reach every host of the group, so the
+	 * groups of each level must be nested in those of the next level.
+	 */
+	@Test
+	public void testGroupsAreNested() {
+		BroadcastGroups groups = new BroadcastGroups(new int[] {3, 6, 24});
+		
+		for (int level = 0; level < groups.getLevelCount() - 1; ++level) {
+			for (int a = 0; a < 100; ++a) {
+				for (int b = 0; b < 100; ++b) {
+					if (groups.getGroupIndex(a, level) == groups.getGroupIndex(b, level)) {
+						assertEquals("hosts " + a + " and " + b + " at level " + level, 
+								groups.getGroupIndex(a, level + 1), groups.getGroupIndex(b, level + 1));
+						assertSame(groups.getGroup(a, level + 1), groups.getGroup(b, level + 1));
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testPartitions() {
+		BroadcastGroups groups = new BroadcastGroups(new int[] {4});
+		//groups of the lowest level are created as hosts join them
+		for (int host = 0; host < 10; ++host) {
+			groups.getGroup(host, 0);
+		}
+		
+		assertEquals(3, groups.getPartitionCount());
+		assertEquals(0, groups.getPartitionHostIndex(0));
+		assertEquals(8, groups.getPartitionHostIndex(2));
+		assertEquals(2, groups.getGroupIndex(groups.getPartitionHostIndex(2), 0));
+	}
+	
+	@Test
+	public void testNoPartitioning() {
+		BroadcastGroups groups = new BroadcastGroups(new int[0]);
+		
+		assertEquals(1, groups.getLevelCount());
+		assertSame(groups.getTopGroup(), groups.getGroup(0, 0));
+		assertSame(groups.getTopGroup(), groups.getGroup(500, 0));
+		assertEquals(0, groups.getPartitionHostIndex(3));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizesMustIncrease() {
+		new BroadcastGroups(new int[] {8, 8});
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizesMustBePositive() {
+		new BroadcastGroups(new int[] {0, 8});
+	}
+
+}
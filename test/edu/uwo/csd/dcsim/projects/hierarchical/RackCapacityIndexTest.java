@@ -0,0 +1,153 @@
+package edu.uwo.csd.dcsim.projects.hierarchical;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uwo.csd.dcsim.DataCentre;
+import edu.uwo.csd.dcsim.core.Simulation;
+import edu.uwo.csd.dcsim.host.Rack;
+import edu.uwo.csd.dcsim.projects.hierarchical.manfi2014.ManFI2014TestEnvironment;
+
+/**
+ * Tests of the order in which RackCapacityIndex returns Racks, and of its updates as the Racks' status 
+ * changes. The Racks are taken from the ManFI 2014 data centre; their status vectors are set by hand.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class RackCapacityIndexTest {
+
+	private RackCapacityIndex index;
+	private RackData rackA;
+	private RackData rackB;
+	private RackData rackC;
+	private long time = 0;
+
+	@BeforeClass
+	public static void initializeLogging() {
+		Simulation.initializeLogging();
+	}
+
+	@Before
+	public void setUp() {
+		DataCentre dc = ManFI2014TestEnvironment.createInfrastructure(new Simulation("RackCapacityIndexTest", 1));
+		List<Rack> racks = dc.getClusters().get(0).getRacks();
+
+		index = new RackCapacityIndex();
+		rackA = new RackData(racks.get(0), null);
+		rackB = new RackData(racks.get(1), null);
+		rackC = new RackData(racks.get(2), null);
+	}
+
+	@Test
+	public void testCapableRacksByActiveHosts() {
+		// < active , suspended , powered off , largest VM flavour with spare capacity >
+		this.setStatus(rackA, 5, 0, 5, 2);
+		this.setStatus(rackB, 8, 0, 2, 4);
+		this.setStatus(rackC, 3, 0, 7, 1);
+
+		assertRacks(index.getCapableRacks(0), rackB, rackA, rackC);
+		assertRacks(index.getCapableRacks(2), rackB, rackA);
+		assertRacks(index.getCapableRacks(4), rackB);
+		assertRacks(index.getCapableRacks(5));
+
+		assertSame(rackA, index.getMostLoadedCapableRack(2));
+		assertSame(rackB, index.getMostLoadedCapableRack(1));
+		assertNull(index.getMostLoadedCapableRack(5));
+		assertSame(rackB, index.getMaxSpareCapacityRack());
+	}
+
+	@Test
+	public void testRacksWithInactiveHosts() {
+		this.setStatus(rackA, 8, 2, 0, 0);
+		this.setStatus(rackB, 9, 0, 1, 0);
+		this.setStatus(rackC, 6, 1, 3, 0);
+
+		// Most loaded first, i.e., fewest inactive Hosts.
+		assertRacks(index.getRacksWithInactiveHosts(), rackB, rackA, rackC);
+		assertSame(rackA, index.getMostLoadedRackWithSuspendedHosts());
+		assertSame(rackB, index.getMostLoadedRackWithPoweredOffHosts());
+	}
+
+	@Test
+	public void testTiesBrokenByRackId() {
+		this.setStatus(rackC, 4, 0, 6, 3);
+		this.setStatus(rackA, 4, 0, 6, 3);
+		this.setStatus(rackB, 4, 0, 6, 3);
+
+		assertRacks(index.getCapableRacks(0), rackA, rackB, rackC);
+		assertRacks(index.getRacksWithInactiveHosts(), rackA, rackB, rackC);
+	}
+
+	@Test
+	public void testUpdate() {
+		this.setStatus(rackA, 5, 1, 4, 2);
+		this.setStatus(rackB, 8, 0, 2, 4);
+		assertSame(rackB, index.getMostLoadedCapableRack(0));
+		assertSame(rackA, index.getMostLoadedRackWithSuspendedHosts());
+
+		// Rack B loses its spare capacity and powers off its Hosts; Rack A activates its suspended Host.
+		this.setStatus(rackB, 2, 0, 8, -1);
+		this.setStatus(rackA, 6, 0, 4, 2);
+		assertRacks(index.getCapableRacks(0), rackA);
+		assertRacks(index.getRacksWithInactiveHosts(), rackA, rackB);
+		assertNull(index.getMostLoadedRackWithSuspendedHosts());
+		assertSame(rackA, index.getMostLoadedRackWithPoweredOffHosts());
+	}
+
+	@Test
+	public void testInvalidAndRemovedRacksAreNotReturned() {
+		this.setStatus(rackA, 5, 1, 4, 2);
+		this.setStatus(rackB, 8, 1, 1, 4);
+		this.setStatus(rackC, 3, 0, 7, 1);
+
+		rackB.invalidateStatus(time++);
+		index.update(rackB);
+		index.remove(rackC);
+
+		assertRacks(index.getCapableRacks(0), rackA);
+		assertRacks(index.getRacksWithInactiveHosts(), rackA);
+		assertSame(rackA, index.getMaxSpareCapacityRack());
+
+		// A newer status makes the Rack valid again.
+		this.setStatus(rackB, 8, 1, 1, 4);
+		assertRacks(index.getCapableRacks(0), rackB, rackA);
+	}
+
+	/**
+	 * Gives the Rack a new status, with all the active Hosts' spare capacity in the bucket of the given VM
+	 * flavour (none if the flavour is negative), and re-indexes it.
+	 */
+	private void setStatus(RackData rack, int active, int suspended, int poweredOff, int flavour) {
+		RackStatusVector statusVector = new RackStatusVector();
+		statusVector.vector[statusVector.iActive] = active;
+		statusVector.vector[statusVector.iSuspended] = suspended;
+		statusVector.vector[statusVector.iPoweredOff] = poweredOff;
+		if (flavour >= 0)
+			statusVector.vector[statusVector.iVmVector + flavour] = active;
+
+		rack.addRackStatus(new RackStatus(rack.getRack(), statusVector, 0, time++), 1);
+		index.update(rack);
+	}
+
+	private static void assertRacks(Iterable<RackData> actual, RackData... expected) {
+		List<RackData> racks = new ArrayList<RackData>();
+		for (RackData rack : actual) {
+			racks.add(rack);
+		}
+
+		assertEquals(expected.length, racks.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertSame(expected[i], racks.get(i));
+		}
+	}
+
+}
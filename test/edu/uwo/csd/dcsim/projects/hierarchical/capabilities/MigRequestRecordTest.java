@@ -0,0 +1,151 @@
+package edu.uwo.csd.dcsim.projects.hierarchical.capabilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uwo.csd.dcsim.common.SimTime;
+import edu.uwo.csd.dcsim.core.Simulation;
+import edu.uwo.csd.dcsim.management.AutonomicManager;
+import edu.uwo.csd.dcsim.management.VmStatus;
+import edu.uwo.csd.dcsim.projects.hierarchical.MigRequestEntry;
+
+/**
+ * Tests of the indexing of migration requests by < origin , request ID > in MigRequestRecord, and of the
+ * expiration of timed entries through its timing wheel.
+ *
+ * @author Gaston Keller
+ *
+ */
+public class MigRequestRecordTest {
+
+	private static final long TIMEOUT = SimTime.minutes(30);
+
+	private AutonomicManager originA;
+	private AutonomicManager originB;
+
+	@Before
+	public void setUp() {
+		Simulation simulation = new Simulation("MigRequestRecordTest", 1);
+		originA = new AutonomicManager(simulation);
+		originB = new AutonomicManager(simulation);
+	}
+
+	@Test
+	public void testEntriesKeyedByOriginAndRequestId() {
+		MigRequestRecord record = new MigRequestRecord();
+		long id = record.nextRequestId();
+		assertEquals(id + 1, record.nextRequestId());
+
+		MigRequestEntry a1 = newEntry(originA, 1);
+		MigRequestEntry b1 = newEntry(originB, 1);
+		MigRequestEntry a2 = newEntry(originA, 2);
+		record.addEntry(a1);
+		record.addEntry(b1);
+		record.addEntry(a2);
+
+		assertSame(a1, record.getEntry(1, originA));
+		assertSame(b1, record.getEntry(1, originB));
+		assertSame(a2, record.getEntry(2, originA));
+		assertNull(record.getEntry(2, originB));
+
+		// Only the recorded entry itself is removed, not another request with the same key.
+		assertFalse(record.removeEntry(newEntry(originA, 1)));
+		assertTrue(record.removeEntry(a1));
+		assertFalse(record.removeEntry(a1));
+		assertNull(record.getEntry(1, originA));
+		assertSame(b1, record.getEntry(1, originB));
+	}
+
+	@Test
+	public void testExpireEntries() {
+		MigRequestRecord record = new MigRequestRecord(TIMEOUT);
+		MigRequestEntry first = newEntry(originA, 1);
+		MigRequestEntry second = newEntry(originA, 2);
+		record.addEntry(first, 0);
+		record.addEntry(second, SimTime.minutes(10));
+
+		assertTrue(record.expireEntries(TIMEOUT - 1).isEmpty());
+
+		Collection<MigRequestEntry> expired = record.expireEntries(TIMEOUT);
+		assertEquals(1, expired.size());
+		assertSame(first, expired.iterator().next());
+		assertNull(record.getEntry(1, originA));
+		assertTrue(record.hasExpired(1, originA));
+		assertFalse(record.hasExpired(1, originB));
+
+		assertSame(second, record.getEntry(2, originA));
+		assertFalse(record.hasExpired(2, originA));
+
+		expired = record.expireEntries(SimTime.minutes(40));
+		assertEquals(1, expired.size());
+		assertSame(second, expired.iterator().next());
+		assertTrue(record.getEntries().isEmpty());
+	}
+
+	@Test
+	public void testEntriesNotYetDueInSameSlot() {
+		MigRequestRecord record = new MigRequestRecord(TIMEOUT);
+		MigRequestEntry first = newEntry(originA, 1);
+		MigRequestEntry second = newEntry(originA, 2);
+
+		// A full timeout apart, so both timers fall in the same wheel slot.
+		record.addEntry(first, 0);
+		record.addEntry(second, TIMEOUT);
+
+		Collection<MigRequestEntry> expired = record.expireEntries(TIMEOUT);
+		assertEquals(1, expired.size());
+		assertSame(first, expired.iterator().next());
+
+		expired = record.expireEntries(2 * TIMEOUT);
+		assertEquals(1, expired.size());
+		assertSame(second, expired.iterator().next());
+	}
+
+	@Test
+	public void testExpireAfterLongGap() {
+		MigRequestRecord record = new MigRequestRecord(TIMEOUT);
+		record.expireEntries(0);
+		for (int i = 1; i <= 100; i++) {
+			record.addEntry(newEntry(originA, i), i * SimTime.minutes(1));
+		}
+
+		// Much longer than the wheel covers: every slot is visited once, and every entry expires once.
+		assertEquals(100, record.expireEntries(SimTime.days(1)).size());
+		assertTrue(record.expireEntries(SimTime.days(2)).isEmpty());
+		assertTrue(record.getEntries().isEmpty());
+	}
+
+	@Test
+	public void testRemovedEntriesDoNotExpire() {
+		MigRequestRecord record = new MigRequestRecord(TIMEOUT);
+		MigRequestEntry entry = newEntry(originA, 1);
+		record.addEntry(entry, 0);
+		assertTrue(record.removeEntry(entry));
+
+		assertTrue(record.expireEntries(TIMEOUT).isEmpty());
+		assertFalse(record.hasExpired(1, originA));
+	}
+
+	@Test
+	public void testNoTimeout() {
+		MigRequestRecord record = new MigRequestRecord();
+		MigRequestEntry entry = newEntry(originA, 1);
+		record.addEntry(entry, 0);
+
+		assertTrue(record.expireEntries(SimTime.days(1)).isEmpty());
+		assertSame(entry, record.getEntry(1, originA));
+	}
+
+	private static MigRequestEntry newEntry(AutonomicManager origin, long requestId) {
+		return new MigRequestEntry((VmStatus) null, origin, requestId);
+	}
+
+}
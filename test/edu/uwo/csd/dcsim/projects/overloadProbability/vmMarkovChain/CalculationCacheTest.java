@@ -0,0 +1,141 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the key of the stored overload probability calculations of a host (CalculationCache): the states
+ * and CPU use of the host's VMs, the set of VMs and the threshold.
+ *
+ */
+public class CalculationCacheTest {
+
+	private static final double THRESHOLD = 0.9;
+	
+	//utilization values within each of the default states
+	private static final double LOW = 0.1;
+	private static final double MEDIUM = 0.5;
+	private static final double HIGH = 0.9;
+	
+	private CalculationCache cache;
+	private MarkovChainStore store;
+	private VmMarkovChain vm1;
+	private VmMarkovChain vm2;
+	private ArrayList<VmMarkovChain> vms;
+	
+	@Before
+	public void setUp() {
+		cache = new CalculationCache();
+		store = new MarkovChainStore();
+		vm1 = new VmMarkovChainOriginal(1, 2500, LOW, store);
+		vm2 = new VmMarkovChainOriginal(2, 2500, MEDIUM, store);
+		vms = list(vm1, vm2);
+	}
+	
+	@Test
+	public void testSameStatesAndCpu() {
+		cache.record(vms, new int[] {250, 1250}, 0.25, THRESHOLD, 10);
+		
+		assertEquals(0.25, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+		
+		//the order of the VMs does not matter
+		assertEquals(0.25, cache.get(list(vm2, vm1), new int[] {1250, 250}, THRESHOLD), 0);
+	}
+	
+	@Test
+	public void testDifferentCpuInSameStates() {
+		cache.record(vms, new int[] {250, 1250}, 0.25, THRESHOLD, 10);
+		
+		//same state indices, different CPU use
+		assertEquals(-1, cache.get(vms, new int[] {300, 1250}, THRESHOLD), 0);
+		assertEquals(-1, cache.get(vms, new int[] {1250, 250}, THRESHOLD), 0);
+		
+		//recording the new CPU use replaces the calculation
+		cache.record(vms, new int[] {300, 1250}, 0.3, THRESHOLD, 10);
+		assertEquals(0.3, cache.get(vms, new int[] {300, 1250}, THRESHOLD), 0);
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void testDifferentStates() {
+		cache.record(vms, new int[] {250, 1250}, 0.25, THRESHOLD, 10);
+		
+		vm1.recordUtilization(HIGH, 20);
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+		
+		cache.record(vms, new int[] {250, 1250}, 0.75, THRESHOLD, 20);
+		assertEquals(0.75, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+		assertEquals(2, cache.size());
+		
+		//back to the first combination of states, whose calculation is stale: leaving the first state updated its probabilities
+		vm1.recordUtilization(LOW, 30);
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+	}
+	
+	@Test
+	public void testDifferentVmsOrThreshold() {
+		cache.record(vms, new int[] {250, 1250}, 0.25, THRESHOLD, 10);
+		
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, 0.8), 0);
+		assertEquals(-1, cache.get(list(vm1), new int[] {250}, THRESHOLD), 0);
+		
+		VmMarkovChain vm3 = new VmMarkovChainOriginal(3, 2500, MEDIUM, store);
+		assertEquals(-1, cache.get(list(vm1, vm3), new int[] {250, 1250}, THRESHOLD), 0);
+		
+		//a calculation for other VMs starts over
+		cache.record(list(vm1, vm3), new int[] {250, 1250}, 0.5, THRESHOLD, 10);
+		assertEquals(1, cache.size());
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+	}
+	
+	@Test
+	public void testProbabilityUpdatedAfterCalculation() {
+		vm1.recordUtilization(LOW, 5);
+		cache.record(vms, new int[] {250, 1250}, 0.25, THRESHOLD, 10);
+		
+		//a transition out of the VM's current state updates its transition probabilities
+		vm1.recordUtilization(LOW, 20);
+		assertEquals(-1, cache.get(vms, new int[] {250, 1250}, THRESHOLD), 0);
+	}
+	
+	@Test
+	public void testManyCalculations() {
+		VmMarkovChain vm3 = new VmMarkovChainOriginal(3, 2500, LOW, store);
+		ArrayList<VmMarkovChain> host = list(vm1, vm2, vm3);
+		double[] utils = {LOW, 0.3, MEDIUM, 0.7, HIGH};
+		
+		//every combination of states, at the same time, so that every calculation stays valid
+		for (int i = 0; i < 125; ++i) {
+			setStates(host, utils, i);
+			cache.record(host, new int[] {i, 2 * i, 3 * i}, i / 125.0, THRESHOLD, 0);
+		}
+		assertEquals(125, cache.size());
+		
+		for (int i = 0; i < 125; ++i) {
+			setStates(host, utils, i);
+			assertEquals(i / 125.0, cache.get(host, new int[] {i, 2 * i, 3 * i}, THRESHOLD), 0);
+		}
+	}
+	
+	/**
+	 * Move each VM to the state given by a digit (base utils.length) of the given combination.
+	 */
+	private static void setStates(ArrayList<VmMarkovChain> vmList, double[] utils, int combination) {
+		for (VmMarkovChain vm : vmList) {
+			vm.recordUtilization(utils[combination % utils.length], 0);
+			combination /= utils.length;
+		}
+	}
+	
+	private static ArrayList<VmMarkovChain> list(VmMarkovChain... vmList) {
+		ArrayList<VmMarkovChain> list = new ArrayList<VmMarkovChain>();
+		for (VmMarkovChain vm : vmList) list.add(vm);
+		return list;
+	}
+
+}
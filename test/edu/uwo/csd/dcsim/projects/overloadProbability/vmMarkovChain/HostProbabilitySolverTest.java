@@ -0,0 +1,106 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the convolution solver of HostProbabilitySolver against the exact enumeration, without running a
+ * simulation. Chains are trained on fixed (seeded) random walks of utilization and grouped into hosts of 1 to
+ * MAX_VMS VMs, which are evaluated at several thresholds.
+ *
+ * The convolution rounds each VM's CPU use to the nearest bucket (see HostProbabilitySolver.getQuantum), so its
+ * result must lie between the exact probabilities at the threshold raised and lowered by the largest rounding
+ * error, nVms * quantum / 2 (plus TOLERANCE, for floating point error).
+ *
+ */
+public class HostProbabilitySolverTest {
+
+	private static final long SEED = 6198634853110L;
+	private static final int MAX_VMS = 6;
+	private static final int HOSTS_PER_SIZE = 20;
+	private static final int TRAINING_SAMPLES = 500;
+	private static final long VM_CPU = 2500;
+	private static final double HOST_CPU = 4 * VM_CPU;
+	private static final double[] THRESHOLDS = {0.5, 0.7, 0.85, 0.9, 1.0};
+	private static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void testConvolutionWithinRoundingBounds() {
+		Random random = new Random(SEED);
+		double quantum = HostProbabilitySolver.getQuantum(HOST_CPU);
+
+		for (int nVms = 1; nVms <= MAX_VMS; ++nVms) {
+			for (int h = 0; h < HOSTS_PER_SIZE; ++h) {
+				MarkovChainStore store = new MarkovChainStore(nVms);
+				ArrayList<VmMarkovChain> vms = new ArrayList<VmMarkovChain>();
+				int[] vmUtil = new int[nVms];
+				for (int i = 0; i < nVms; ++i) {
+					double util = train(random, vms, i, store);
+					vmUtil[i] = (int)Math.round(util * VM_CPU);
+				}
+
+				//widened by half a CPU unit, so that sums landing exactly on a bound are not lost to floating point error
+				double delta = (nVms * quantum / 2 + 0.5) / HOST_CPU;
+				for (double threshold : THRESHOLDS) {
+					double p = HostProbabilitySolver.computeConvolutionProbability(vms, vmUtil, HOST_CPU, threshold);
+					double exact = HostProbabilitySolver.computeExactProbability(vms, vmUtil, HOST_CPU, threshold);
+					double lower = HostProbabilitySolver.computeExactProbability(vms, vmUtil, HOST_CPU, threshold + delta);
+					double upper = HostProbabilitySolver.computeExactProbability(vms, vmUtil, HOST_CPU, threshold - delta);
+
+					assertTrue("Convolution out of bounds: nVms=" + nVms + ", threshold=" + threshold +
+							", p=" + p + ", exact=" + exact + ", bounds=[" + lower + ", " + upper + "]",
+							p >= lower - TOLERANCE && p <= upper + TOLERANCE);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExactProbabilityDecreasesWithThreshold() {
+		Random random = new Random(SEED);
+
+		for (int nVms = 1; nVms <= MAX_VMS; ++nVms) {
+			MarkovChainStore store = new MarkovChainStore(nVms);
+			ArrayList<VmMarkovChain> vms = new ArrayList<VmMarkovChain>();
+			int[] vmUtil = new int[nVms];
+			for (int i = 0; i < nVms; ++i) {
+				vmUtil[i] = (int)Math.round(train(random, vms, i, store) * VM_CPU);
+			}
+
+			double previous = 1;
+			for (double threshold : THRESHOLDS) {
+				double exact = HostProbabilitySolver.computeExactProbability(vms, vmUtil, HOST_CPU, threshold);
+				assertTrue("nVms=" + nVms + ", threshold=" + threshold + ", p=" + exact, exact >= 0 && exact <= previous + TOLERANCE);
+				previous = exact;
+			}
+		}
+	}
+
+	/**
+	 * Create a chain and train it on a random walk of utilization, adding it to vms. Returns the VM's last
+	 * (current) utilization.
+	 * @param random
+	 * @param vms
+	 * @param id
+	 * @param store
+	 * @return
+	 */
+	private static double train(Random random, ArrayList<VmMarkovChain> vms, int id, MarkovChainStore store) {
+		double util = random.nextDouble();
+		VmMarkovChain chain = new VmMarkovChainOriginal(id, VM_CPU, util, store);
+
+		double step = 0.05 + 0.2 * random.nextDouble(); //how fast the VM's utilization changes
+		for (int t = 1; t <= TRAINING_SAMPLES; ++t) {
+			util = Math.min(1, Math.max(0, util + step * random.nextGaussian()));
+			chain.recordUtilization(util, t * 5 * 60 * 1000l);
+		}
+
+		vms.add(chain);
+		return util;
+	}
+
+}
@@ -0,0 +1,112 @@
+package edu.uwo.csd.dcsim.projects.overloadProbability.vmMarkovChain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the VM ID -> slot map of MarkovChainStore, in particular removal by shifting back the entries
+ * of a probe sequence (no tombstones), and of the recycling of removed slots.
+ *
+ */
+public class MarkovChainStoreTest {
+
+	private static final MarkovChainConfig CONFIG = new MarkovChainConfig(new double[] {0, 0.25, 0.5, 0.75, 1.0});
+	
+	@Test
+	public void testAddAndLookup() {
+		MarkovChainStore store = new MarkovChainStore(2, CONFIG);
+		
+		int a = store.add(10, 2500, 4, 1);
+		int b = store.add(20, 1000, 4, 3);
+		int c = store.add(30, 500, 2, 0); //grows the store
+		
+		assertEquals(3, store.size());
+		assertEquals(a, store.getSlot(10));
+		assertEquals(b, store.getSlot(20));
+		assertEquals(c, store.getSlot(30));
+		assertEquals(-1, store.getSlot(40));
+		
+		assertEquals(20, store.getVmId(b));
+		assertEquals(1000, store.getCpu(b));
+		assertEquals(3, store.getCurrentState(b));
+		assertEquals(2, store.getStateCount(c));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testAddTwice() {
+		MarkovChainStore store = new MarkovChainStore(CONFIG);
+		store.add(1, 1000, 4, 0);
+		store.add(1, 1000, 4, 0);
+	}
+	
+	@Test
+	public void testRemove() {
+		MarkovChainStore store = new MarkovChainStore(CONFIG);
+		store.add(1, 1000, 4, 0);
+		store.add(2, 1000, 4, 0);
+		
+		assertTrue(store.remove(1));
+		assertFalse(store.remove(1));
+		assertFalse(store.remove(3));
+		
+		assertEquals(1, store.size());
+		assertEquals(-1, store.getSlot(1));
+		assertTrue(store.getSlot(2) != -1);
+	}
+	
+	/**
+	 * Random adds and removes on a dense range of IDs, so that probe sequences are long and wrap around the
+	 * end of the map. After every operation, every ID must map to the same slot as in a reference map.
+	 */
+	@Test
+	public void testRemoveKeepsProbeSequences() {
+		Random random = new Random(6198910678692541341l);
+		MarkovChainStore store = new MarkovChainStore(4, CONFIG);
+		Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+		
+		for (int op = 0; op < 5000; ++op) {
+			int vmId = random.nextInt(256);
+			if (reference.containsKey(vmId)) {
+				assertTrue(store.remove(vmId));
+				reference.remove(vmId);
+			} else {
+				reference.put(vmId, store.add(vmId, 1000, 4, 0));
+			}
+			
+			assertEquals(reference.size(), store.size());
+			for (int id = 0; id < 256; ++id) {
+				Integer slot = reference.get(id);
+				assertEquals("VM #" + id + " after operation " + op, (slot == null) ? -1 : slot.intValue(), store.getSlot(id));
+			}
+		}
+	}
+	
+	@Test
+	public void testRemovedSlotIsReused() {
+		MarkovChainStore store = new MarkovChainStore(CONFIG);
+		store.add(1, 1000, 4, 0);
+		int slot = store.add(2, 1000, 4, 2);
+		store.recordTransition(slot, 2, 3);
+		store.publishTransitionProbabilities(slot, 2);
+		
+		store.remove(2);
+		assertFalse(store.isUsed(slot));
+		
+		//the new chain gets the removed slot, starting over with every state transitioning to itself
+		assertEquals(slot, store.add(3, 500, 3, 1));
+		assertTrue(store.isUsed(slot));
+		assertEquals(2, store.getSlotCount());
+		assertEquals(0, store.getTransitionCount(slot));
+		assertEquals(0, store.getTransitionCount(slot, 2, 3));
+		assertEquals(1, store.getTransitionProbability(slot, 2, 2), 0);
+		assertEquals(0, store.getTransitionProbability(slot, 2, 3), 0);
+	}
+
+}